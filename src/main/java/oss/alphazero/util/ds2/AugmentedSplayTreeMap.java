@@ -0,0 +1,640 @@
+package oss.alphazero.util.ds2;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A top-down splay tree map whose nodes hold the aggregate of their subtree,
+ * per a {@link Monoid} on the values, so that the aggregate of a key range
+ * is O(log n) amortized instead of a scan - e.g. the count, sum, min and max
+ * of time bucketed metrics over any interval.
+ * <ol>
+ * <li>The splay keeps the aggregates as top-down-size-splay.c keeps subtree
+ * sizes: the nodes linked into the left and right trees on the way down are
+ * recorded, and their aggregates recomputed bottom up once the tree is
+ * assembled. A node rotated down is recomputed on the rotation.</li>
+ * <li>Updates act on the splayed root, and only recompute its aggregate.</li>
+ * <li>Range aggregates descend to both bounds without splaying, unless
+ * the paths are deep: see {@link #aggregate(Object, Object)}.</li>
+ * <li>The combine function must be associative, not necessarily commutative:
+ * values are combined in key order.</li>
+ * <li>{@link Monoid} has count, sum, min, max and {@link Summary} (all four)
+ * monoids.</li>
+ * <li>Null keys and values are not allowed and will throw {@link IllegalArgumentException}</li>
+ * </ol>
+ * Not thread safe - even lookups modify the tree.
+ *
+ * @param K key type
+ * @param V value type
+ * @param A aggregate type
+ *
+ * This code is in the public domain.
+ */
+public class AugmentedSplayTreeMap<K, V, A> {
+	// ------------------------------------------------------------------------
+	// Inner class: Monoid
+	// ------------------------------------------------------------------------
+	/**
+	 * Aggregates of values: an associative combine and its identity.
+	 * @param V value type
+	 * @param A aggregate type
+	 */
+	public interface Monoid<V, A> {
+		/** @return the aggregate of no values */
+		A identity();
+		/** @return the aggregate of value alone */
+		A lift(V value);
+		/** @return the aggregate of a followed by b; associative */
+		A combine(A a, A b);
+
+		/**
+		 * @return a monoid of the given functions
+		 * @throws IllegalArgumentException if lift or combine is null
+		 */
+		static <V, A> Monoid<V, A> of(A identity, Function<? super V, ? extends A> lift, BinaryOperator<A> combine) {
+			if (lift == null || combine == null)
+				throw new IllegalArgumentException(lift == null ? "null lift" : "null combine");
+			return new Monoid<V, A>() {
+				@Override public A identity() { return identity; }
+				@Override public A lift(V value) { return lift.apply(value); }
+				@Override public A combine(A a, A b) { return combine.apply(a, b); }
+			};
+		}
+
+		/** @return the number of values */
+		static <V> Monoid<V, Long> count() {
+			return of(0L, v -> 1L, Long::sum);
+		}
+
+		/** @return the sum of f over the values */
+		static <V> Monoid<V, Long> sum(ToLongFunction<? super V> f) {
+			return of(0L, v -> f.applyAsLong(v), Long::sum);
+		}
+
+		/** @return the least value - the first of equal ones; null if none */
+		static <V> Monoid<V, V> min(Comparator<? super V> order) {
+			return of(null, v -> v, (a, b) -> a == null ? b : b == null || order.compare(a, b) <= 0 ? a : b);
+		}
+
+		/** @return the greatest value - the first of equal ones; null if none */
+		static <V> Monoid<V, V> max(Comparator<? super V> order) {
+			return of(null, v -> v, (a, b) -> a == null ? b : b == null || order.compare(a, b) >= 0 ? a : b);
+		}
+
+		/** @return the count, sum, min and max of f over the values */
+		static <V> Monoid<V, Summary> summary(ToLongFunction<? super V> f) {
+			return of(Summary.EMPTY, v -> Summary.of(f.applyAsLong(v)), Summary::combine);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner class: Summary
+	// ------------------------------------------------------------------------
+	/**
+	 * Immutable count, sum, min and max of long values.
+	 */
+	public static final class Summary {
+		/** summary of no values: min is Long.MAX_VALUE, max is Long.MIN_VALUE */
+		public static final Summary EMPTY = new Summary(0, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+
+		public final long count;
+		public final long sum;
+		public final long min;
+		public final long max;
+
+		private Summary(long count, long sum, long min, long max) {
+			this.count = count;
+			this.sum = sum;
+			this.min = min;
+			this.max = max;
+		}
+
+		/** @return summary of v alone */
+		public static Summary of(long v) {
+			return new Summary(1, v, v, v);
+		}
+
+		/** @return summary of these values and those of s */
+		public Summary combine(Summary s) {
+			if (s.count == 0)
+				return this;
+			if (count == 0)
+				return s;
+			return new Summary(count + s.count, sum + s.sum, Math.min(min, s.min), Math.max(max, s.max));
+		}
+
+		/** @return sum / count; NaN if none */
+		public double mean() {
+			return count == 0 ? Double.NaN : (double) sum / count;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Summary))
+				return false;
+			final Summary s = (Summary) o;
+			return count == s.count && sum == s.sum && min == s.min && max == s.max;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(count) * 31 + Long.hashCode(sum);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count:%d sum:%d min:%d max:%d", count, sum, min, max);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner class: Node
+	// ------------------------------------------------------------------------
+	private static final class Node<K, V, A> {
+		final K key;
+		V value;
+		/** lift of value */
+		A item;
+		/** aggregate of the subtree */
+		A agg;
+		Node<K, V, A> left;
+		Node<K, V, A> right;
+
+		Node(K key, V value, A item) {
+			this.key = key;
+			this.value = value;
+			this.item = item;
+			this.agg = item;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	/** range aggregate paths longer than this many balanced heights are splayed */
+	public static final int DEEP_QUERY = 2;
+
+	/** header node - for splay */
+	private final Node<K, V, A> header = new Node<K, V, A>(null, null, null);
+
+	private Node<K, V, A> root = null;
+	private int size = 0;
+
+	/** nodes linked into the left and right trees by a splay */
+	private Node<K, V, A>[] lefts = newNodes(32);
+	private Node<K, V, A>[] rights = newNodes(32);
+
+	private final Monoid<? super V, A> monoid;
+
+	/** key order - null for natural order */
+	private final Comparator<? super K> comparator;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * Keys are ordered by their natural order and must implement
+	 * {@link Comparable}; else {@link ClassCastException} on first use.
+	 * @param monoid of the aggregates
+	 * @throws IllegalArgumentException if monoid is null
+	 */
+	public AugmentedSplayTreeMap(Monoid<? super V, A> monoid) {
+		this(monoid, null);
+	}
+
+	/**
+	 * @param monoid of the aggregates
+	 * @param comparator key order; null for natural order
+	 * @throws IllegalArgumentException if monoid is null
+	 */
+	public AugmentedSplayTreeMap(Monoid<? super V, A> monoid, Comparator<? super K> comparator) {
+		if (monoid == null)
+			throw new IllegalArgumentException("null monoid");
+		this.monoid = monoid;
+		this.comparator = comparator;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	@SuppressWarnings("unchecked")
+	private static <K, V, A> Node<K, V, A>[] newNodes(int n) {
+		return (Node<K, V, A>[]) new Node<?, ?, ?>[n];
+	}
+
+	/** compare per comparator or natural order */
+	@SuppressWarnings("unchecked")
+	private int compare(K k1, K k2) {
+		final Comparator<? super K> cmp = comparator;
+		return cmp == null ? ((Comparable<? super K>) k1).compareTo(k2) : cmp.compare(k1, k2);
+	}
+
+	/** recompute the aggregate of n from its children */
+	private void pull(Node<K, V, A> n) {
+		A a = n.item;
+		if (n.left != null)
+			a = monoid.combine(n.left.agg, a);
+		if (n.right != null)
+			a = monoid.combine(a, n.right.agg);
+		n.agg = a;
+	}
+
+	/**
+	 * Top-down splay, as in {@link SplayTreeMap}, that keeps the aggregates:
+	 * the left and right tree nodes are recomputed bottom up on assembly.
+	 * Tree must not be empty.
+	 * @return key compared to the (new) root key
+	 */
+	private int splay(K key) {
+		Node<K, V, A> l, r, t, y;
+		int nl = 0, nr = 0;
+		l = r = header;
+		t = root;
+		header.left = header.right = null;
+		int c = compare(key, t.key);
+		for (;;) {
+			if (c < 0) {
+				if (t.left == null) break;
+				if ((c = compare(key, t.left.key)) < 0) {
+					y = t.left;                            /* rotate right */
+					t.left = y.right;
+					y.right = t;
+					pull(t);
+					t = y;
+					if (t.left == null) break;
+				}
+				r.left = t;                                 /* link right */
+				r = t;
+				if (nr == rights.length)
+					rights = Arrays.copyOf(rights, nr * 2);
+				rights[nr++] = t;
+				t = t.left;
+				if (c < 0)
+					c = compare(key, t.key);
+			} else if (c > 0) {
+				if (t.right == null) break;
+				if ((c = compare(key, t.right.key)) > 0) {
+					y = t.right;                            /* rotate left */
+					t.right = y.left;
+					y.left = t;
+					pull(t);
+					t = y;
+					if (t.right == null) break;
+				}
+				l.right = t;                                /* link left */
+				l = t;
+				if (nl == lefts.length)
+					lefts = Arrays.copyOf(lefts, nl * 2);
+				lefts[nl++] = t;
+				t = t.right;
+				if (c > 0)
+					c = compare(key, t.key);
+			} else {
+				break;
+			}
+		}
+		l.right = t.left;                                   /* assemble */
+		r.left = t.right;
+		t.left = header.right;
+		t.right = header.left;
+		header.left = header.right = null;
+		while (nl > 0) {                                    /* bottom up */
+			pull(lefts[--nl]);
+			lefts[nl] = null;
+		}
+		while (nr > 0) {
+			pull(rights[--nr]);
+			rights[nr] = null;
+		}
+		pull(t);
+		root = t;
+		return c;
+	}
+
+	/**
+	 * Splay key to the root.
+	 * @return key compared to the (new) root key; -1 if the tree is empty
+	 * @throws IllegalArgumentException if key is null
+	 */
+	private int splayTo(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		if (root == null)
+			return -1;
+		return splay(key);
+	}
+
+	/**
+	 * Make n the root. Tree must have just been splayed for n.key,
+	 * with c the result of comparing n.key to the root key (non-zero).
+	 */
+	private void linkRoot(Node<K, V, A> n, int c) {
+		final Node<K, V, A> t = root;
+		if (t != null) {
+			if (c < 0) {
+				n.left = t.left;
+				n.right = t;
+				t.left = null;
+			} else {
+				n.right = t.right;
+				n.left = t;
+				t.right = null;
+			}
+			pull(t);
+			pull(n);
+		}
+		root = n;
+		size++;
+	}
+
+	/**
+	 * Unlink the root. Joins the subtrees by splaying the max of the left
+	 * subtree, which then has no right child.
+	 */
+	private void unlinkRoot() {
+		final Node<K, V, A> t = root;
+		if (t.left == null) {
+			root = t.right;
+		} else {
+			final Node<K, V, A> x = t.right;
+			root = t.left;
+			splay(t.key);
+			root.right = x;
+			pull(root);
+		}
+		t.left = t.right = null;
+		size--;
+	}
+
+	/** set the value of the root */
+	private void setRoot(V value) {
+		root.value = value;
+		root.item = monoid.lift(value);
+		pull(root);
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : AugmentedSplayTreeMap
+	// ------------------------------------------------------------------------
+	/**
+	 * @return the value of key; null if none
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V get(K key) {
+		return splayTo(key) == 0 ? root.value : null;
+	}
+
+	/**
+	 * @return true if key is mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public boolean containsKey(K key) {
+		return splayTo(key) == 0;
+	}
+
+	/**
+	 * Map key to value.
+	 * @return the previous value of key; null if none
+	 * @throws IllegalArgumentException if key or value is null
+	 */
+	final public V put(K key, V value) {
+		if (value == null)
+			throw new IllegalArgumentException("null value");
+		final int c = splayTo(key);
+		if (c == 0) {
+			final V oldv = root.value;
+			setRoot(value);
+			return oldv;
+		}
+		linkRoot(new Node<K, V, A>(key, value, monoid.lift(value)), c);
+		return null;
+	}
+
+	/**
+	 * Per {@link java.util.Map#merge(Object, Object, BiFunction)}, with one
+	 * splay - e.g. <code>merge(bucket, sample, Long::sum)</code>.
+	 * @return the new value of key; null if removed
+	 * @throws IllegalArgumentException if key or value is null
+	 * @throws ConcurrentModificationException if the function modified the map
+	 */
+	final public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (value == null)
+			throw new IllegalArgumentException("null value");
+		final int c = splayTo(key);
+		if (c != 0) {
+			linkRoot(new Node<K, V, A>(key, value, monoid.lift(value)), c);
+			return value;
+		}
+		final Node<K, V, A> r = root;
+		final int n = size;
+		final V merged = remappingFunction.apply(r.value, value);
+		checkUnmodified(r, n);
+		if (merged == null)
+			unlinkRoot();
+		else
+			setRoot(merged);
+		return merged;
+	}
+
+	/**
+	 * Remove the mapping of key.
+	 * @return its value; null if none
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V remove(K key) {
+		if (splayTo(key) != 0)
+			return null;
+		final V value = root.value;
+		unlinkRoot();
+		return value;
+	}
+
+	/**
+	 * @return the aggregate of all values, in O(1)
+	 */
+	final public A aggregate() {
+		return root == null ? monoid.identity() : root.agg;
+	}
+
+	/**
+	 * The aggregate of the values with keys in [from, to), in O(log n)
+	 * amortized. Descends to the node that splits the bounds, then to either
+	 * bound, without splaying; an end deeper than {@link #DEEP_QUERY} times
+	 * the height of a balanced tree is then splayed, to pay for its path.
+	 * @param from least key, inclusive; null for no bound
+	 * @param to greatest key, exclusive; null for no bound
+	 * @return the aggregate, in key order; the identity if the range is empty
+	 */
+	final public A aggregate(K from, K to) {
+		final A identity = monoid.identity();
+		if (root == null || (from != null && to != null && compare(from, to) >= 0))
+			return identity;
+		final int deep = DEEP_QUERY * (32 - Integer.numberOfLeadingZeros(size));
+		Node<K, V, A> t = root, last = null;
+		int depth = 0;
+		while (t != null) {                                 /* split node */
+			last = t;
+			depth++;
+			if (from != null && compare(t.key, from) < 0)
+				t = t.right;
+			else if (to != null && compare(t.key, to) >= 0)
+				t = t.left;
+			else
+				break;
+		}
+		if (t == null) {
+			if (depth > deep)
+				splay(last.key);
+			return identity;
+		}
+		final Node<K, V, A> split = t;
+		A lower = identity, upper = identity;               /* [from, split) and (split, to) */
+		Node<K, V, A> lowest = split, highest = split;
+		int ld = depth, hd = depth;
+		if (from == null) {
+			if (split.left != null)
+				lower = split.left.agg;
+		} else {
+			for (t = split.left; t != null; ld++) {
+				lowest = t;
+				if (compare(t.key, from) >= 0) {
+					A a = t.item;
+					if (t.right != null)
+						a = monoid.combine(a, t.right.agg);
+					lower = monoid.combine(a, lower);
+					t = t.left;
+				} else {
+					t = t.right;
+				}
+			}
+		}
+		if (to == null) {
+			if (split.right != null)
+				upper = split.right.agg;
+		} else {
+			for (t = split.right; t != null; hd++) {
+				highest = t;
+				if (compare(t.key, to) < 0) {
+					if (t.left != null)
+						upper = monoid.combine(upper, t.left.agg);
+					upper = monoid.combine(upper, t.item);
+					t = t.right;
+				} else {
+					t = t.left;
+				}
+			}
+		}
+		if (ld > deep)
+			splay(lowest.key);
+		if (hd > deep)
+			splay(highest.key);
+		return monoid.combine(monoid.combine(lower, split.item), upper);
+	}
+
+	/**
+	 * Visit the mappings with keys in [from, to) in key order. Splays from;
+	 * the rest of the range is walked without splaying.
+	 * @param from least key, inclusive; null for no bound
+	 * @param to greatest key, exclusive; null for no bound
+	 * @throws ConcurrentModificationException if the action modified the map
+	 */
+	final public void range(K from, K to, BiConsumer<? super K, ? super V> action) {
+		if (root == null)
+			return;
+		Node<K, V, A> t = root;
+		if (from != null) {
+			splay(from);
+			t = root;
+			if (compare(t.key, from) < 0)
+				t = t.right;                                /* root precedes the range */
+		}
+		final Node<K, V, A> r = root;
+		final int n = size;
+		final ArrayDeque<Node<K, V, A>> stack = new ArrayDeque<Node<K, V, A>>();
+		if (t == root && from != null) {
+			stack.push(t);                                  /* left subtree precedes it */
+			t = null;
+		}
+		while (t != null || !stack.isEmpty()) {
+			while (t != null) {
+				stack.push(t);
+				t = t.left;
+			}
+			t = stack.pop();
+			if (to != null && compare(t.key, to) >= 0)
+				return;
+			action.accept(t.key, t.value);
+			checkUnmodified(r, n);
+			t = t.right;
+		}
+	}
+
+	/**
+	 * @return the least key; null if empty
+	 */
+	final public K firstKey() {
+		Node<K, V, A> t = root;
+		if (t == null)
+			return null;
+		while (t.left != null)
+			t = t.left;
+		splay(t.key);
+		return t.key;
+	}
+
+	/**
+	 * @return the greatest key; null if empty
+	 */
+	final public K lastKey() {
+		Node<K, V, A> t = root;
+		if (t == null)
+			return null;
+		while (t.right != null)
+			t = t.right;
+		splay(t.key);
+		return t.key;
+	}
+
+	/**
+	 * @return number of mappings
+	 */
+	final public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if there are no mappings
+	 */
+	final public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * @return the monoid of the aggregates
+	 */
+	final public Monoid<? super V, A> monoid() {
+		return monoid;
+	}
+
+	/**
+	 * @return the key order; null if natural order
+	 */
+	final public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * Functions must not modify the map: the pending update acts on the root.
+	 */
+	private void checkUnmodified(Node<K, V, A> r, int n) {
+		if (root != r || size != n)
+			throw new ConcurrentModificationException("map modified by function");
+	}
+}
@@ -0,0 +1,629 @@
+package oss.alphazero.util.ds2;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A top-down splay tree map specialized for binary keys, in unsigned
+ * lexicographic order (shorter key first on a common prefix).
+ * <ol>
+ * <li>No per-entry objects: nodes are indices into parallel arrays (children,
+ * key address, key length, key prefix, value).</li>
+ * <li>Keys are copied into large slab buffers and referenced by slab and offset;
+ * the caller's array is not retained.</li>
+ * <li>Each node keeps the first 8 key bytes as an unsigned long, so most
+ * comparisons in splay do not touch the slab. Ties are settled with
+ * {@link Arrays#compareUnsigned(byte[], int, int, byte[], int, int)},
+ * which compares a long at a time.</li>
+ * <li>Lookups take a <code>byte[]</code>, a slice of one, or a {@link ByteBuffer},
+ * and do not allocate.</li>
+ * <li>Freed nodes are reused. Key bytes of removed entries are reclaimed by
+ * {@link #compact()}.</li>
+ * <li>Null keys are not allowed; null values are.</li>
+ * </ol>
+ * Not thread safe - even lookups modify the tree.
+ *
+ * @param V value type
+ *
+ * This code is in the public domain.
+ */
+public class ByteSplayTreeMap<V> {
+	/** default slab size */
+	public static final int SLAB_SIZE = 1 << 20;
+
+	/** no node */
+	private static final int NIL = -1;
+
+	/** node 0 is the splay header */
+	private static final int HEADER = 0;
+
+	private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/* nodes */
+	private int[] left;
+	private int[] right;
+	/** slab index << 32 | offset */
+	private long[] keyAddr;
+	/** key length; -1 for a free node */
+	private int[] keyLen;
+	/** first 8 key bytes, big endian, zero padded */
+	private long[] prefix;
+	private Object[] values;
+
+	/** next never used node index */
+	private int top = 1;
+	/** free node list, linked by right */
+	private int free = NIL;
+
+	private int root = NIL;
+	private int size = 0;
+
+	/* key arena */
+	private final int slabSize;
+	private byte[][] slabs;
+	private int slabCount = 0;
+	/** slab new keys are appended to */
+	private int cur = -1;
+	private int curPos = 0;
+	/** bytes in slabs */
+	private long arenaBytes = 0;
+	/** key bytes of removed entries */
+	private long garbageBytes = 0;
+
+	/** copy of a non-array ByteBuffer probe */
+	private byte[] scratch = new byte[64];
+
+	/** splays with longer access paths emit a JFR DeepSplayEvent */
+	private int deepSplayThreshold = SplayEvents.DEEP_SPLAY_THRESHOLD;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	public ByteSplayTreeMap() {
+		this(SLAB_SIZE);
+	}
+
+	/**
+	 * @param slabSize key slab size in bytes; keys longer than this get a slab of their own
+	 * @throws IllegalArgumentException if slabSize is less than 64
+	 */
+	public ByteSplayTreeMap(int slabSize) {
+		if(slabSize < 64)
+			throw new IllegalArgumentException("slabSize: " + slabSize);
+		this.slabSize = slabSize;
+		allocNodes(16);
+		slabs = new byte[4][];
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	private void allocNodes(int capacity) {
+		left    = left == null ? new int[capacity] : Arrays.copyOf(left, capacity);
+		right   = right == null ? new int[capacity] : Arrays.copyOf(right, capacity);
+		keyAddr = keyAddr == null ? new long[capacity] : Arrays.copyOf(keyAddr, capacity);
+		keyLen  = keyLen == null ? new int[capacity] : Arrays.copyOf(keyLen, capacity);
+		prefix  = prefix == null ? new long[capacity] : Arrays.copyOf(prefix, capacity);
+		values  = values == null ? new Object[capacity] : Arrays.copyOf(values, capacity);
+	}
+
+	private static long prefix(byte[] a, int off, int len) {
+		if (len >= 8)
+			return (long) LONG_BE.get(a, off);
+		long p = 0;
+		for (int i = 0; i < len; i++)
+			p = (p << 8) | (a[off + i] & 0xFF);
+		return p << (8 * (8 - len));
+	}
+
+	/** copy key into the arena; @return its address */
+	private long store(byte[] a, int off, int len) {
+		int s;
+		int pos;
+		if (len > slabSize) {
+			s = addSlab(len);
+			pos = 0;
+		} else {
+			if (cur == NIL || curPos + len > slabSize) {
+				cur = addSlab(slabSize);
+				curPos = 0;
+			}
+			s = cur;
+			pos = curPos;
+			curPos += len;
+		}
+		System.arraycopy(a, off, slabs[s], pos, len);
+		return ((long) s << 32) | pos;
+	}
+
+	private int addSlab(int bytes) {
+		if (slabCount == slabs.length)
+			slabs = Arrays.copyOf(slabs, slabCount * 2);
+		slabs[slabCount] = new byte[bytes];
+		arenaBytes += bytes;
+		return slabCount++;
+	}
+
+	private int newNode(byte[] a, int off, int len, long kp, Object value) {
+		int n;
+		if (free != NIL) {
+			n = free;
+			free = right[n];
+		} else {
+			if (top == left.length)
+				allocNodes(top + (top >> 1));
+			n = top++;
+		}
+		left[n] = right[n] = NIL;
+		keyAddr[n] = store(a, off, len);
+		keyLen[n] = len;
+		prefix[n] = kp;
+		values[n] = value;
+		return n;
+	}
+
+	private void freeNode(int n) {
+		garbageBytes += keyLen[n];
+		keyLen[n] = -1;
+		values[n] = null;
+		left[n] = NIL;
+		right[n] = free;
+		free = n;
+	}
+
+	/** compare key a[off, off+len) with prefix kp to the key of node t */
+	private int compare(byte[] a, int off, int len, long kp, int t) {
+		final long tp = prefix[t];
+		if (kp != tp)
+			return Long.compareUnsigned(kp, tp);
+		// first 8 bytes (zero padded) are equal: if either key is that short,
+		// it is a prefix of the other
+		final int tlen = keyLen[t];
+		if (len <= 8 || tlen <= 8)
+			return Integer.compare(len, tlen);
+		final long addr = keyAddr[t];
+		final int toff = (int) addr;
+		return Arrays.compareUnsigned(a, off + 8, off + len, slabs[(int) (addr >>> 32)], toff + 8, toff + tlen);
+	}
+
+	/**
+	 * Top-down splay of the key a[off, off+len); see {@link SplayTreeMap}.
+	 * Tree must not be empty.
+	 * @return key compared to the (new) root key
+	 */
+	private int splay(byte[] a, int off, int len, SplayOp op) {
+		final int[] left = this.left, right = this.right;
+		final long kp = prefix(a, off, len);
+		int l, r, t, y;
+		int depth = 1, rotations = 0;
+		l = r = HEADER;
+		t = root;
+		left[HEADER] = right[HEADER] = NIL;
+		int c = compare(a, off, len, kp, t);
+		for (;;) {
+			if (c < 0) {
+				if (left[t] == NIL) break;
+				if ((c = compare(a, off, len, kp, left[t])) < 0) {
+					y = left[t];                            /* rotate right */
+					left[t] = right[y];
+					right[y] = t;
+					t = y;
+					rotations++;
+					depth++;
+					if (left[t] == NIL) break;
+					left[r] = t;                            /* link right */
+					r = t;
+					t = left[t];
+					depth++;
+					c = compare(a, off, len, kp, t);
+				} else {
+					left[r] = t;                            /* link right */
+					r = t;
+					t = left[t];
+					depth++;
+				}
+			} else if (c > 0) {
+				if (right[t] == NIL) break;
+				if ((c = compare(a, off, len, kp, right[t])) > 0) {
+					y = right[t];                           /* rotate left */
+					right[t] = left[y];
+					left[y] = t;
+					t = y;
+					rotations++;
+					depth++;
+					if (right[t] == NIL) break;
+					right[l] = t;                           /* link left */
+					l = t;
+					t = right[t];
+					depth++;
+					c = compare(a, off, len, kp, t);
+				} else {
+					right[l] = t;                           /* link left */
+					l = t;
+					t = right[t];
+					depth++;
+				}
+			} else {
+				break;
+			}
+		}
+		right[l] = left[t];                                 /* assemble */
+		left[r] = right[t];
+		left[t] = right[HEADER];
+		right[t] = left[HEADER];
+		root = t;
+
+		if (SplayEvents.ENABLED && depth > deepSplayThreshold)
+			SplayEvents.deepSplay(getClass(), op, depth, rotations, size);
+
+		return c;
+	}
+
+	/** @return a splay result that is a miss for the empty tree */
+	private int splayTo(byte[] a, int off, int len, SplayOp op) {
+		if (a == null)
+			throw new IllegalArgumentException("null key");
+		if (off < 0 || len < 0 || off + len > a.length || off + len < 0)
+			throw new IndexOutOfBoundsException("off:" + off + " len:" + len + " length:" + a.length);
+		if (root == NIL)
+			return -1;
+		return splay(a, off, len, op);
+	}
+
+	/** make the new node n root; tree was just splayed for its key with result c */
+	private void linkRoot(int n, int c) {
+		if (root != NIL) {
+			if (c < 0) {
+				left[n] = left[root];
+				right[n] = root;
+				left[root] = NIL;
+			} else {
+				right[n] = right[root];
+				left[n] = root;
+				right[root] = NIL;
+			}
+		}
+		root = n;
+		size++;
+	}
+
+	private void unlinkRoot(SplayOp op) {
+		final int t = root;
+		if (left[t] == NIL) {
+			root = right[t];
+		} else {
+			final int x = right[t];
+			root = left[t];
+			final long addr = keyAddr[t];
+			splay(slabs[(int) (addr >>> 32)], (int) addr, keyLen[t], op);
+			right[root] = x;
+		}
+		freeNode(t);
+		size--;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V put(byte[] a, int off, int len, V value, boolean replace) {
+		final int c = splayTo(a, off, len, SplayOp.PUT);
+		if (c == 0) {
+			final V old = (V) values[root];
+			if (replace)
+				values[root] = value;
+			return old;
+		}
+		linkRoot(newNode(a, off, len, prefix(a, off, len), value), c);
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V lookup(byte[] a, int off, int len) {
+		return splayTo(a, off, len, SplayOp.FIND) == 0 ? (V) values[root] : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V unmap(byte[] a, int off, int len) {
+		if (splayTo(a, off, len, SplayOp.DELETE) != 0)
+			return null;
+		final V value = (V) values[root];
+		unlinkRoot(SplayOp.DELETE);
+		return value;
+	}
+
+	/** @return the backing array of the ByteBuffer probe, or scratch */
+	private byte[] array(ByteBuffer key) {
+		if (key.hasArray())
+			return key.array();
+		final int len = key.remaining();
+		if (scratch.length < len)
+			scratch = new byte[Math.max(len, scratch.length * 2)];
+		final int pos = key.position();
+		for (int i = 0; i < len; i++)
+			scratch[i] = key.get(pos + i);
+		return scratch;
+	}
+
+	private static int offset(ByteBuffer key) {
+		return key.hasArray() ? key.arrayOffset() + key.position() : 0;
+	}
+
+	private byte[] keyOf(int n) {
+		final long addr = keyAddr[n];
+		final int off = (int) addr;
+		return Arrays.copyOfRange(slabs[(int) (addr >>> 32)], off, off + keyLen[n]);
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : ByteSplayTreeMap
+	// ------------------------------------------------------------------------
+	/**
+	 * Map key to value. The key is copied.
+	 * @return the previous value; null if none
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V put(byte[] key, V value) {
+		return put(key, 0, key == null ? 0 : key.length, value, true);
+	}
+
+	/**
+	 * Map the key key[off, off+len) to value. The key is copied.
+	 * @return the previous value; null if none
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V put(byte[] key, int off, int len, V value) {
+		return put(key, off, len, value, true);
+	}
+
+	/**
+	 * Map key to value if key is not mapped. The key is copied.
+	 * @return true if added; false if key is already present
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public boolean insert(byte[] key, V value) {
+		final int n = size;
+		put(key, 0, key == null ? 0 : key.length, value, false);
+		return size != n;
+	}
+
+	/**
+	 * @return value of key; null if not mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V get(byte[] key) {
+		return lookup(key, 0, key == null ? 0 : key.length);
+	}
+
+	/**
+	 * @return value of the key key[off, off+len); null if not mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V get(byte[] key, int off, int len) {
+		return lookup(key, off, len);
+	}
+
+	/**
+	 * @param key the remaining bytes of the buffer; its position is not changed
+	 * @return value of key; null if not mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V get(ByteBuffer key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		return lookup(array(key), offset(key), key.remaining());
+	}
+
+	/**
+	 * @return true if key is mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public boolean containsKey(byte[] key) {
+		return splayTo(key, 0, key == null ? 0 : key.length, SplayOp.FIND) == 0;
+	}
+
+	/**
+	 * @return true if key[off, off+len) is mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public boolean containsKey(byte[] key, int off, int len) {
+		return splayTo(key, off, len, SplayOp.FIND) == 0;
+	}
+
+	/**
+	 * @param key the remaining bytes of the buffer; its position is not changed
+	 * @return true if key is mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public boolean containsKey(ByteBuffer key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		return splayTo(array(key), offset(key), key.remaining(), SplayOp.FIND) == 0;
+	}
+
+	/**
+	 * @return the removed value; null if key was not mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V remove(byte[] key) {
+		return unmap(key, 0, key == null ? 0 : key.length);
+	}
+
+	/**
+	 * @return the removed value of key[off, off+len); null if key was not mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V remove(byte[] key, int off, int len) {
+		return unmap(key, off, len);
+	}
+
+	/**
+	 * @param key the remaining bytes of the buffer; its position is not changed
+	 * @return the removed value; null if key was not mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V remove(ByteBuffer key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		return unmap(array(key), offset(key), key.remaining());
+	}
+
+	/**
+	 * @return a copy of the smallest key; null if empty
+	 */
+	final public byte[] minKey() {
+		if (root == NIL)
+			return null;
+		int x = root;
+		while (left[x] != NIL)
+			x = left[x];
+		final byte[] key = keyOf(x);
+		splay(key, 0, key.length, SplayOp.MIN);
+		return key;
+	}
+
+	/**
+	 * @return a copy of the largest key; null if empty
+	 */
+	final public byte[] maxKey() {
+		if (root == NIL)
+			return null;
+		int x = root;
+		while (right[x] != NIL)
+			x = right[x];
+		final byte[] key = keyOf(x);
+		splay(key, 0, key.length, SplayOp.MAX);
+		return key;
+	}
+
+	/** @return number of mappings */
+	final public int size() {
+		return size;
+	}
+
+	/** @return true if there are no mappings */
+	final public boolean isEmpty() {
+		return root == NIL;
+	}
+
+	/** Remove all mappings and release all storage. */
+	final public void clear() {
+		left = right = keyLen = null;
+		keyAddr = prefix = null;
+		values = null;
+		allocNodes(16);
+		top = 1;
+		free = NIL;
+		root = NIL;
+		size = 0;
+		slabs = new byte[4][];
+		slabCount = 0;
+		cur = NIL;
+		curPos = 0;
+		arenaBytes = garbageBytes = 0;
+	}
+
+	/** @return bytes allocated for key slabs */
+	final public long arenaBytes() {
+		return arenaBytes;
+	}
+
+	/** @return slab bytes held by keys of removed entries */
+	final public long garbageBytes() {
+		return garbageBytes;
+	}
+
+	/**
+	 * Copy the live keys into new slabs and the nodes into new arrays,
+	 * releasing the space of removed entries. Nodes and keys are laid out
+	 * in preorder, so that a node is near its left child and the top of
+	 * the tree is packed together. Shape of the tree is unchanged. O(n).
+	 */
+	final public void compact() {
+		final int n = size;
+		final int[] oleft = left, oright = right, olen = keyLen;
+		final long[] oaddr = keyAddr, oprefix = prefix;
+		final Object[] ovalues = values;
+		final byte[][] oslabs = slabs;
+
+		left = right = keyLen = null;
+		keyAddr = prefix = null;
+		values = null;
+		allocNodes(Math.max(16, n + 1));
+		top = n + 1;
+		free = NIL;
+		slabs = new byte[4][];
+		slabCount = 0;
+		cur = NIL;
+		curPos = 0;
+		arenaBytes = garbageBytes = 0;
+		if (root == NIL)
+			return;
+
+		// preorder walk: old node index on the stack, with the new parent as
+		// link: +parent for a right child, -parent for a left child, 0 for root
+		int[] stack = new int[64];
+		int sp = 0;
+		int next = 1;
+		stack[sp++] = root;
+		stack[sp++] = 0;
+		while (sp > 0) {
+			final int link = stack[--sp];
+			final int o = stack[--sp];
+			final int m = next++;
+			if (link == 0)
+				root = m;
+			else if (link > 0)
+				right[link] = m;
+			else
+				left[-link] = m;
+			left[m] = right[m] = NIL;
+			final long addr = oaddr[o];
+			keyAddr[m] = store(oslabs[(int) (addr >>> 32)], (int) addr, olen[o]);
+			keyLen[m] = olen[o];
+			prefix[m] = oprefix[o];
+			values[m] = ovalues[o];
+			if (sp + 4 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			if (oright[o] != NIL) {
+				stack[sp++] = oright[o];
+				stack[sp++] = m;
+			}
+			if (oleft[o] != NIL) {
+				stack[sp++] = oleft[o];
+				stack[sp++] = -m;
+			}
+		}
+	}
+
+	/**
+	 * Set the access path length above which a splay emits a JFR
+	 * {@link DeepSplayEvent}. See {@link SplayEvents}.
+	 * @param depth threshold; Integer.MAX_VALUE to disable
+	 * @throws IllegalArgumentException if depth is less than 1
+	 */
+	final public void setDeepSplayThreshold(int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("depth: " + depth);
+		deepSplayThreshold = depth;
+	}
+
+	// ------------------------------------------------------------------------
+	// Package API : inspection
+	// ------------------------------------------------------------------------
+	/**
+	 * @return a structural (non splaying) navigator over this tree
+	 */
+	final TreeShape.Navigator<Integer> navigator() {
+		return new TreeShape.Navigator<Integer>() {
+			@Override public Integer root() { return root == NIL ? null : root; }
+			@Override public Integer left(Integer n) { return left[n] == NIL ? null : left[n]; }
+			@Override public Integer right(Integer n) { return right[n] == NIL ? null : right[n]; }
+			@Override public Object key(Integer n) { return Arrays.toString(keyOf(n)); }
+		};
+	}
+}
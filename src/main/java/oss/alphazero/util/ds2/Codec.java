@@ -0,0 +1,110 @@
+package oss.alphazero.util.ds2;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Binary encoding of keys and values for {@link SplayImage}.
+ * <p>
+ * A key codec must be <i>order preserving</i>: the unsigned lexicographic
+ * order of the encodings is the order of the keys in the map. The provided
+ * codecs are order preserving for the natural order of their type (and for
+ * {@link KeyPrefix#UNSIGNED_BYTES} in case of {@link #BYTES}). Value codecs
+ * need not be.
+ *
+ * @param T encoded type
+ *
+ * This code is in the public domain.
+ */
+public interface Codec<T> {
+	/**
+	 * @param value non-null
+	 * @return encoding of value
+	 */
+	byte[] encode(T value);
+
+	/**
+	 * Decode without changing the position of buf.
+	 * @return value encoded in buf[off, off+len)
+	 */
+	T decode(ByteBuffer buf, int off, int len);
+
+	/**
+	 * CESU-8: each UTF-16 char as 1 to 3 bytes of UTF-8. Byte order is the
+	 * order of {@link String#compareTo(String)}, surrogate pairs included,
+	 * and the encoding is identical to UTF-8 for text without them.
+	 */
+	Codec<String> STRING = new Codec<String>() {
+		@Override public byte[] encode(String value) {
+			final int n = value.length();
+			byte[] b = new byte[n];
+			int j = 0;
+			for (int i = 0; i < n; i++) {
+				final char c = value.charAt(i);
+				if (j + 3 > b.length)
+					b = Arrays.copyOf(b, Math.max(j + 3, b.length * 2));
+				if (c < 0x80) {
+					b[j++] = (byte) c;
+				} else if (c < 0x800) {
+					b[j++] = (byte) (0xC0 | (c >> 6));
+					b[j++] = (byte) (0x80 | (c & 0x3F));
+				} else {
+					b[j++] = (byte) (0xE0 | (c >> 12));
+					b[j++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					b[j++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			return j == b.length ? b : Arrays.copyOf(b, j);
+		}
+		@Override public String decode(ByteBuffer buf, int off, int len) {
+			final char[] cs = new char[len];
+			int n = 0;
+			final int end = off + len;
+			for (int i = off; i < end; ) {
+				final int b = buf.get(i++) & 0xFF;
+				if (b < 0x80)
+					cs[n++] = (char) b;
+				else if (b < 0xE0)
+					cs[n++] = (char) (((b & 0x1F) << 6) | (buf.get(i++) & 0x3F));
+				else {
+					cs[n++] = (char) (((b & 0x0F) << 12) | ((buf.get(i) & 0x3F) << 6) | (buf.get(i + 1) & 0x3F));
+					i += 2;
+				}
+			}
+			return new String(cs, 0, n);
+		}
+	};
+
+	/** 8 bytes big endian, sign bit flipped */
+	Codec<Long> LONG = new Codec<Long>() {
+		@Override public byte[] encode(Long value) {
+			return ByteBuffer.allocate(8).putLong(value ^ Long.MIN_VALUE).array();
+		}
+		@Override public Long decode(ByteBuffer buf, int off, int len) {
+			return buf.getLong(off) ^ Long.MIN_VALUE;
+		}
+	};
+
+	/** 4 bytes big endian, sign bit flipped */
+	Codec<Integer> INT = new Codec<Integer>() {
+		@Override public byte[] encode(Integer value) {
+			return ByteBuffer.allocate(4).putInt(value ^ Integer.MIN_VALUE).array();
+		}
+		@Override public Integer decode(ByteBuffer buf, int off, int len) {
+			return buf.getInt(off) ^ Integer.MIN_VALUE;
+		}
+	};
+
+	/** identity (copy) */
+	Codec<byte[]> BYTES = new Codec<byte[]>() {
+		@Override public byte[] encode(byte[] value) {
+			return value.clone();
+		}
+		@Override public byte[] decode(ByteBuffer buf, int off, int len) {
+			final byte[] b = new byte[len];
+			for (int i = 0; i < len; i++)
+				b[i] = buf.get(off + i);
+			return b;
+		}
+	};
+}
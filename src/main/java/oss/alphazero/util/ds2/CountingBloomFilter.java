@@ -0,0 +1,196 @@
+package oss.alphazero.util.ds2;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * A counting Bloom filter: a set membership filter that supports removes,
+ * with no false negatives and a tunable false positive rate. Used by
+ * {@link SplayTreeMap#enableFilter(int)} to answer definite misses without
+ * a splay.
+ * <ol>
+ * <li>4 bit counters, 16 to a long, in a power of 2 table of about 10
+ * counters per expected key; 7 probes by double hashing. At the expected
+ * size about 1% of absent keys pass the filter.</li>
+ * <li>A counter that reaches 15 sticks - it is never decremented, so an
+ * overflow can cost false positives but never a false negative.</li>
+ * <li>The filter does not grow. Past the expected size the false positive
+ * rate climbs; {@link #fill()} and {@link #falsePositiveRate()} tell when
+ * to rebuild it larger.</li>
+ * <li>Keys are hashed by a {@link ToIntFunction}, which must be consistent
+ * with the key equality of the filtered map - e.g. <code>Arrays::hashCode</code>
+ * for <code>byte[]</code> keys.</li>
+ * <li>Only keys that were added may be removed.</li>
+ * </ol>
+ * Not thread safe.
+ *
+ * @param K key type
+ *
+ * This code is in the public domain.
+ */
+public class CountingBloomFilter<K> {
+	/** counters per expected key */
+	static final int COUNTERS_PER_KEY = 10;
+	/** probes per key - ln 2 * COUNTERS_PER_KEY */
+	static final int PROBES = 7;
+	/** sticky counter value */
+	static final int MAX_COUNT = 15;
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	private final long[] counters;
+	private final int mask;
+	private final int expected;
+	private final ToIntFunction<? super K> hash;
+
+	/** keys in the filter */
+	private int size = 0;
+	/** non-zero counters */
+	private int used = 0;
+	/** stuck counters */
+	private int saturated = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * @param expected number of keys
+	 * @param hash key hash, consistent with key equality
+	 * @throws IllegalArgumentException if expected is not positive or hash is null
+	 */
+	public CountingBloomFilter(int expected, ToIntFunction<? super K> hash) {
+		if (expected < 1 || expected > (1 << 30) / COUNTERS_PER_KEY)
+			throw new IllegalArgumentException("expected: " + expected);
+		if (hash == null)
+			throw new IllegalArgumentException("null hash");
+		final int m = Math.max(16, Integer.highestOneBit(expected * COUNTERS_PER_KEY - 1) << 1);
+		this.counters = new long[m >>> 4];
+		this.mask = m - 1;
+		this.expected = expected;
+		this.hash = hash;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	/** @return 64 bits of hash: two 32 bit hashes for double hashing */
+	private long mix(K key) {
+		long z = hash.applyAsInt(key) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 32)) * 0xD6E8FEB86659FD93L;
+		return z ^ (z >>> 32);
+	}
+
+	private int count(int i) {
+		return (int) (counters[i >>> 4] >>> ((i & 15) << 2)) & MAX_COUNT;
+	}
+
+	private void increment(int i) {
+		final int c = count(i);
+		if (c == MAX_COUNT)
+			return;
+		counters[i >>> 4] += 1L << ((i & 15) << 2);
+		if (c == 0)
+			used++;
+		else if (c == MAX_COUNT - 1)
+			saturated++;
+	}
+
+	private void decrement(int i) {
+		final int c = count(i);
+		if (c == MAX_COUNT || c == 0)
+			return;
+		counters[i >>> 4] -= 1L << ((i & 15) << 2);
+		if (c == 1)
+			used--;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : CountingBloomFilter
+	// ------------------------------------------------------------------------
+	/**
+	 * Add key. A key added twice must be removed twice.
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public void add(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		final long z = mix(key);
+		final int h1 = (int) z, h2 = (int) (z >>> 32) | 1;
+		for (int i = 0; i < PROBES; i++)
+			increment((h1 + i * h2) & mask);
+		size++;
+	}
+
+	/**
+	 * Remove key, which must have been added.
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public void remove(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		final long z = mix(key);
+		final int h1 = (int) z, h2 = (int) (z >>> 32) | 1;
+		for (int i = 0; i < PROBES; i++)
+			decrement((h1 + i * h2) & mask);
+		size--;
+	}
+
+	/**
+	 * @return false if key was definitely not added; true if it may have been
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public boolean mightContain(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		final long z = mix(key);
+		final int h1 = (int) z, h2 = (int) (z >>> 32) | 1;
+		for (int i = 0; i < PROBES; i++) {
+			final int j = (h1 + i * h2) & mask;
+			if ((counters[j >>> 4] & (15L << ((j & 15) << 2))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of keys in the filter
+	 */
+	final public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of keys the filter was sized for
+	 */
+	final public int expected() {
+		return expected;
+	}
+
+	/**
+	 * @return number of counters
+	 */
+	final public int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return number of counters stuck at their maximum
+	 */
+	final public int saturated() {
+		return saturated;
+	}
+
+	/**
+	 * @return the fraction of non-zero counters; about 1/2 at the expected size
+	 */
+	final public double fill() {
+		return (double) used / (mask + 1);
+	}
+
+	/**
+	 * @return estimated fraction of absent keys that pass the filter: fill()^probes
+	 */
+	final public double falsePositiveRate() {
+		return Math.pow(fill(), PROBES);
+	}
+}
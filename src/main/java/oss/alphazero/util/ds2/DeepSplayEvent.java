@@ -0,0 +1,36 @@
+package oss.alphazero.util.ds2;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event emitted by a splay whose access path is longer than the tree's
+ * deep splay threshold. See {@link SplayEvents}.
+ *
+ * This code is in the public domain.
+ */
+@Name("oss.alphazero.util.ds2.DeepSplay")
+@Label("Deep Splay")
+@Category({"DS2", "Splay Tree"})
+@Description("A splay whose access path exceeded the configured depth threshold")
+@StackTrace(true)
+final class DeepSplayEvent extends jdk.jfr.Event {
+	@Label("Tree Class")
+	String treeClass;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Depth")
+	@Description("Number of nodes on the splay access path")
+	int depth;
+
+	@Label("Rotations")
+	int rotations;
+
+	@Label("Tree Size")
+	int size;
+}
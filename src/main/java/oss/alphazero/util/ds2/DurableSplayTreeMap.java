@@ -0,0 +1,691 @@
+package oss.alphazero.util.ds2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * A {@link SplayTreeMap} made durable with a write-ahead log and checkpoints
+ * in a directory of the local file system.
+ * <ol>
+ * <li>Every mutation is appended to the log as a CRC protected record before it
+ * is acknowledged. Records of concurrent writers are written and synced
+ * together (group commit).</li>
+ * <li>When a record is synced is set by the {@link SyncPolicy}.</li>
+ * <li>A log write or sync failure fails the map: nothing more is acknowledged.
+ * See {@link #failure()}.</li>
+ * <li>A checkpoint starts a new log segment and writes a {@link SplayImage} of a
+ * snapshot of the map, while the map stays in use; older images and segments
+ * are then deleted. Checkpoints are taken on {@link #checkpoint()} and,
+ * optionally, in the background when the log exceeds a size. A failed
+ * background checkpoint is kept in {@link #checkpointFailure()} and retried
+ * only once the log has grown by another threshold.</li>
+ * <li>Opening the directory recovers the map: it loads the newest checkpoint and
+ * replays the log segments written after it. A torn record at the end of the
+ * last segment (a crash during a write) ends the replay and is truncated; a
+ * bad record in an earlier segment fails recovery, leaving the files as they are.</li>
+ * </ol>
+ * Directory contents: <code>checkpoint-&lt;seq&gt;.img</code> holds the state as
+ * of the start of segment <code>wal-&lt;seq&gt;.log</code>.
+ * <p>
+ * Thread safe: operations are serialized on the map (even lookups modify a
+ * splay tree), while waiting for the log sync happens outside of it.
+ *
+ * @param K key type
+ * @param V value type
+ *
+ * This code is in the public domain.
+ */
+public class DurableSplayTreeMap<K, V> implements AutoCloseable {
+	/** when logged mutations are forced to disk */
+	public enum SyncPolicy {
+		/** mutations return after their record is synced - group committed with concurrent writers */
+		EVERY_COMMIT,
+		/** a background thread syncs the log periodically - a crash loses at most one interval */
+		PERIODIC,
+		/** a background thread writes the log to the OS periodically but never syncs it - survives a process crash once written, but not an OS crash */
+		NEVER
+	}
+
+	private static final byte OP_PUT = 1;
+	private static final byte OP_DELETE = 2;
+	/** record header: body length, crc */
+	private static final int RECORD_HEADER = 8;
+	/** replay read buffer size */
+	private static final int READ_CHUNK = 1 << 20;
+
+	private static final Pattern WAL = Pattern.compile("wal-(\\d{16})\\.log");
+	private static final Pattern CHECKPOINT = Pattern.compile("checkpoint-(\\d{16})\\.img");
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	private final Path dir;
+	private final Codec<K> keys;
+	private final Codec<V> values;
+	private final SplayTreeMap<K, V> map;
+	private final SyncPolicy policy;
+
+	/* guarded by this */
+	private byte[] pending = new byte[1 << 16];
+	private int pendingBytes = 0;
+	/** records appended */
+	private long appended = 0;
+	private long checkpointBytes = 0;
+	private boolean closed = false;
+
+	/* guarded by syncLock */
+	private final Object syncLock = new Object();
+	private byte[] spare = new byte[1 << 16];
+	private FileChannel wal;
+	private long seq;
+	private volatile long walBytes = 0;
+	/** records written to the log */
+	private volatile long written = 0;
+	/** records synced */
+	private volatile long synced = 0;
+	/** first log write or sync failure - null while the log is sound */
+	private volatile IOException failure = null;
+
+	private final CRC32C crc = new CRC32C();
+	private final Thread syncer;
+
+	/** serializes checkpoints - lock order is checkpointLock, syncLock, this */
+	private final Object checkpointLock = new Object();
+	/** automatic checkpoint in progress - guarded by this */
+	private Thread checkpointer = null;
+	/** failure of the last automatic checkpoint; null if it succeeded - guarded by this */
+	private RuntimeException checkpointFailure = null;
+	/** log bytes an automatic checkpoint waits for on top of the threshold, after a failure - guarded by this */
+	private long checkpointBackoff = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * Open (recovering) or create a durable natural order map in dir.
+	 * @see #DurableSplayTreeMap(Path, Codec, Codec, Comparator, SyncPolicy, long)
+	 */
+	public DurableSplayTreeMap(Path dir, Codec<K> keys, Codec<V> values) throws IOException {
+		this(dir, keys, values, null, SyncPolicy.EVERY_COMMIT, 0);
+	}
+
+	/**
+	 * Open (recovering) or create a durable map in dir.
+	 * @param keys order preserving key codec, consistent with comparator
+	 * @param comparator map order; null for natural order
+	 * @param policy log sync policy
+	 * @param syncIntervalMillis interval of PERIODIC and NEVER policies
+	 * @throws IOException if recovery fails
+	 * @throws IllegalArgumentException if the interval is not positive for PERIODIC or NEVER
+	 */
+	public DurableSplayTreeMap(Path dir, Codec<K> keys, Codec<V> values, Comparator<? super K> comparator,
+			SyncPolicy policy, long syncIntervalMillis) throws IOException
+	{
+		if(policy == null)
+			throw new IllegalArgumentException("null policy");
+		if(policy != SyncPolicy.EVERY_COMMIT && syncIntervalMillis <= 0)
+			throw new IllegalArgumentException("syncIntervalMillis: " + syncIntervalMillis);
+		this.dir = Files.createDirectories(dir);
+		this.keys = keys;
+		this.values = values;
+		this.policy = policy;
+		this.map = recover(comparator);
+
+		if(policy == SyncPolicy.EVERY_COMMIT) {
+			syncer = null;
+		} else {
+			syncer = new Thread(() -> syncLoop(syncIntervalMillis), "ds2-wal-sync:" + dir.getFileName());
+			syncer.setDaemon(true);
+			syncer.start();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : recovery
+	// ------------------------------------------------------------------------
+	private SplayTreeMap<K, V> recover(Comparator<? super K> comparator) throws IOException {
+		final List<Long> checkpoints = list(CHECKPOINT);
+		final List<Long> segments = list(WAL);
+
+		// newest readable checkpoint
+		SplayTreeMap<K, V> m = null;
+		long from = 0;
+		for(int i = checkpoints.size() - 1; i >= 0 && m == null; i--) {
+			try {
+				m = SplayImage.load(checkpointPath(checkpoints.get(i)), keys, values, comparator);
+				from = checkpoints.get(i);
+			} catch (IOException e) {
+				// try an older one - the log still has its segments
+			}
+		}
+		if(m == null) {
+			if(!checkpoints.isEmpty() && (segments.isEmpty() || segments.get(0) > 0))
+				throw new IOException("no readable checkpoint in " + dir);
+			m = new SplayTreeMap<K, V>(comparator);
+		}
+
+		long last = from;
+		for(int i = 0; i < segments.size(); i++) {
+			final long s = segments.get(i);
+			if(s < from)
+				continue;
+			try(FileChannel ch = FileChannel.open(walPath(s), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				final long good = replay(m, ch);
+				if(good != ch.size()) {
+					if(i < segments.size() - 1)             /* records after it would be lost */
+						throw new IOException("torn record at " + good + " of log segment " + walPath(s) + " before the last segment");
+					ch.truncate(good);                      /* crash during a write of the last segment */
+					ch.force(true);
+				}
+			}
+			last = s;
+		}
+
+		// new segment for this session
+		seq = segments.isEmpty() && checkpoints.isEmpty() ? 0 : last + 1;
+		wal = FileChannel.open(walPath(seq), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		syncDir();
+		return m;
+	}
+
+	/**
+	 * Replay the segment, streamed through a READ_CHUNK buffer - a segment
+	 * may exceed the 2 GiB of a ByteBuffer.
+	 * @return the size of its valid prefix: the offset of the first torn
+	 * record, or the segment size
+	 */
+	private long replay(SplayTreeMap<K, V> m, FileChannel ch) throws IOException {
+		final long size = ch.size();
+		ByteBuffer buf = ByteBuffer.allocate(READ_CHUNK);
+		buf.limit(0);
+		long base = 0;                                      /* file offset of buf[0] */
+		long good = 0;
+		while(size - good >= RECORD_HEADER) {
+			int off = fill(ch, buf, base, good, RECORD_HEADER);
+			base = good - off;
+			final int len = buf.getInt(off);
+			final int sum = buf.getInt(off + 4);
+			if(len <= 0 || len > size - good - RECORD_HEADER)
+				break;
+			if(RECORD_HEADER + len > buf.capacity()) {         /* a record larger than the buffer */
+				final ByteBuffer big = ByteBuffer.allocate(RECORD_HEADER + len);
+				big.put(buf.array(), off, buf.limit() - off).flip();
+				buf = big;
+				base = good;
+			}
+			off = fill(ch, buf, base, good, RECORD_HEADER + len);
+			base = good - off;
+			crc.reset();
+			crc.update(buf.array(), off + RECORD_HEADER, len);
+			if((int) crc.getValue() != sum)
+				break;
+			apply(m, buf, off + RECORD_HEADER);
+			good += RECORD_HEADER + len;
+		}
+		return good;
+	}
+
+	/**
+	 * Make the n bytes at file offset pos available in buf, which holds the
+	 * bytes from file offset base, compacting it if needed.
+	 * @return index of pos in buf
+	 */
+	private static int fill(FileChannel ch, ByteBuffer buf, long base, long pos, int n) throws IOException {
+		int off = (int) (pos - base);
+		if(off + n <= buf.limit())
+			return off;
+		buf.position(off).compact();                        /* now from pos, ready to read */
+		while(buf.position() < n)
+			if(ch.read(buf, pos + buf.position()) < 0)
+				throw new IOException("log segment shorter than its size");
+		buf.flip();
+		return 0;
+	}
+
+	private void apply(SplayTreeMap<K, V> m, ByteBuffer buf, int off) {
+		final byte op = buf.get(off);
+		final int klen = buf.getInt(off + 1);
+		final K key = keys.decode(buf, off + 5, klen);
+		if(op == OP_PUT) {
+			final int vlen = buf.getInt(off + 5 + klen);
+			m.put(key, vlen < 0 ? null : values.decode(buf, off + 9 + klen, vlen));
+		} else {
+			m.remove(key);
+		}
+	}
+
+	private List<Long> list(Pattern pattern) throws IOException {
+		final List<Long> seqs = new ArrayList<Long>();
+		try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+			for(Path p : ds) {
+				final Matcher m = pattern.matcher(p.getFileName().toString());
+				if(m.matches())
+					seqs.add(Long.parseLong(m.group(1)));
+			}
+		}
+		Collections.sort(seqs);
+		return seqs;
+	}
+
+	private Path walPath(long s) {
+		return dir.resolve(String.format("wal-%016d.log", s));
+	}
+
+	private Path checkpointPath(long s) {
+		return dir.resolve(String.format("checkpoint-%016d.img", s));
+	}
+
+	/** make file creation, rename and deletion in dir durable - where the platform supports it */
+	private void syncDir() {
+		try(FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+			ch.force(true);
+		} catch (IOException e) {
+			// not supported (e.g. Windows)
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : log
+	// ------------------------------------------------------------------------
+	/**
+	 * Fail if a record can not be appended; caller holds this. Mutators check,
+	 * encode, change the map and only then append: a record that could not be
+	 * applied - e.g. of a key the comparator rejects - never reaches the log.
+	 */
+	private void checkWritable() {
+		if(closed)
+			throw new IllegalStateException("closed");
+		checkFailure();
+	}
+
+	/** append a record; caller holds this and checked it is writable. @return its sequence number */
+	private long append(byte op, byte[] key, byte[] value) {
+		final int body = 1 + 4 + key.length + (op == OP_PUT ? 4 + (value == null ? 0 : value.length) : 0);
+		final int need = pendingBytes + RECORD_HEADER + body;
+		if(need > pending.length)
+			pending = Arrays.copyOf(pending, Math.max(need, pending.length * 2));
+		final ByteBuffer buf = ByteBuffer.wrap(pending, pendingBytes, RECORD_HEADER + body);
+		buf.putInt(body).putInt(0).put(op).putInt(key.length).put(key);
+		if(op == OP_PUT) {
+			buf.putInt(value == null ? -1 : value.length);
+			if(value != null)
+				buf.put(value);
+		}
+		crc.reset();
+		crc.update(pending, pendingBytes + RECORD_HEADER, body);
+		ByteBuffer.wrap(pending).putInt(pendingBytes + 4, (int) crc.getValue());
+		pendingBytes += RECORD_HEADER + body;
+		return ++appended;
+	}
+
+	/**
+	 * Write all appended records to the log, and sync them if force.
+	 * Lock order is syncLock, then this.
+	 * Concurrent callers are batched: whoever holds syncLock writes the records
+	 * of all, the others find theirs already written when they get it.
+	 */
+	private void flush(long upTo, boolean force) {
+		checkFailure();
+		if(force ? synced >= upTo : written >= upTo)
+			return;
+		synchronized (syncLock) {
+			checkFailure();
+			if(force ? synced >= upTo : written >= upTo)
+				return;
+			final byte[] batch;
+			final int bytes;
+			final long last;
+			synchronized (this) {
+				batch = pending;
+				bytes = pendingBytes;
+				last = appended;
+				pending = spare;
+				pendingBytes = 0;
+			}
+			try {
+				final ByteBuffer buf = ByteBuffer.wrap(batch, 0, bytes);
+				while(buf.hasRemaining())
+					wal.write(buf);
+				walBytes += bytes;
+				written = last;
+				if(force) {
+					wal.force(false);
+					synced = last;
+				}
+			} catch (IOException e) {
+				failure = e;                                /* the batch is lost, maybe partly written */
+				throw new UncheckedIOException("log write failed", e);
+			} finally {
+				spare = batch;
+			}
+		}
+	}
+
+	/**
+	 * After a log failure, records may be lost behind acknowledged ones:
+	 * nothing more is acknowledged.
+	 */
+	private void checkFailure() {
+		if(failure != null)
+			throw new UncheckedIOException("log failed", failure);
+	}
+
+	/** after a mutation: wait per policy, start a checkpoint if due */
+	private void commit(long lsn) {
+		if(policy == SyncPolicy.EVERY_COMMIT)
+			flush(lsn, true);
+		checkpointInBackground();
+	}
+
+	private synchronized void checkpointInBackground() {
+		if(closed || checkpointer != null || checkpointBytes == 0
+				|| walBytes + pendingBytes <= checkpointBytes + checkpointBackoff)
+			return;
+		checkpointer = new Thread(() -> {
+			try {
+				checkpoint();
+			} catch (RuntimeException e) {
+				synchronized (this) {                       /* retried once the log grows by another threshold */
+					checkpointFailure = e;
+					checkpointBackoff = walBytes + pendingBytes;
+				}
+			} finally {
+				synchronized (this) {
+					checkpointer = null;
+				}
+			}
+		}, "ds2-checkpoint:" + dir.getFileName());
+		checkpointer.setDaemon(true);
+		checkpointer.start();
+	}
+
+	/**
+	 * Not interrupted on close: a thread interrupted during channel I/O
+	 * closes the channel.
+	 */
+	private void syncLoop(long intervalMillis) {
+		for(;;) {
+			final long upTo;
+			synchronized (this) {
+				try {
+					wait(intervalMillis);
+				} catch (InterruptedException e) {
+					return;
+				}
+				if(closed)
+					return;
+				upTo = appended;
+			}
+			try {
+				flush(upTo, policy == SyncPolicy.PERIODIC);
+			} catch (UncheckedIOException e) {
+				return;                                     // the map is failed: writers see it
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : DurableSplayTreeMap
+	// ------------------------------------------------------------------------
+	/**
+	 * Map key to value if key is not mapped.
+	 * @return true if added; false if key is already present
+	 * @throws IllegalArgumentException if key is null
+	 * @throws UncheckedIOException if the log write fails or has failed, see {@link #failure()}
+	 */
+	public boolean insert(K key, V value) {
+		if(key == null)
+			throw new IllegalArgumentException("null key");
+		final long lsn;
+		synchronized (this) {
+			checkWritable();
+			final byte[] k = keys.encode(key), v = value == null ? null : values.encode(value);
+			if(!map.insert(key, value))
+				return false;
+			lsn = append(OP_PUT, k, v);
+		}
+		commit(lsn);
+		return true;
+	}
+
+	/**
+	 * Remove key.
+	 * @return true if key was found and removed
+	 * @throws IllegalArgumentException if key is null
+	 * @throws UncheckedIOException if the log write fails or has failed, see {@link #failure()}
+	 */
+	public boolean delete(K key) {
+		if(key == null)
+			throw new IllegalArgumentException("null key");
+		final long lsn;
+		synchronized (this) {
+			checkWritable();
+			final byte[] k = keys.encode(key);
+			if(!map.delete(key))
+				return false;
+			lsn = append(OP_DELETE, k, null);
+		}
+		commit(lsn);
+		return true;
+	}
+
+	/**
+	 * Per {@link java.util.Map#put(Object, Object)}.
+	 * @throws IllegalArgumentException if key is null
+	 * @throws UncheckedIOException if the log write fails or has failed, see {@link #failure()}
+	 */
+	public V put(K key, V value) {
+		if(key == null)
+			throw new IllegalArgumentException("null key");
+		final long lsn;
+		final V old;
+		synchronized (this) {
+			checkWritable();
+			final byte[] k = keys.encode(key), v = value == null ? null : values.encode(value);
+			old = map.put(key, value);
+			lsn = append(OP_PUT, k, v);
+		}
+		commit(lsn);
+		return old;
+	}
+
+	/**
+	 * Per {@link java.util.Map#remove(Object)}.
+	 * @throws IllegalArgumentException if key is null
+	 * @throws UncheckedIOException if the log write fails or has failed, see {@link #failure()}
+	 */
+	public V remove(K key) {
+		if(key == null)
+			throw new IllegalArgumentException("null key");
+		final long lsn;
+		final V old;
+		synchronized (this) {
+			checkWritable();
+			final byte[] k = keys.encode(key);
+			final Map.Entry<K, V> t = map.unlink(key);
+			if(t == null)
+				return null;
+			old = t.getValue();
+			lsn = append(OP_DELETE, k, null);
+		}
+		commit(lsn);
+		return old;
+	}
+
+	/** @return value of key; null if not mapped */
+	public synchronized V get(K key) {
+		return map.get(key);
+	}
+
+	/** @return true if key is mapped */
+	public synchronized boolean containsKey(K key) {
+		return map.containsKey(key);
+	}
+
+	/** @return number of mappings */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/** @return smallest key; null if empty */
+	public synchronized K minKey() {
+		return map.minKey();
+	}
+
+	/** @return largest key; null if empty */
+	public synchronized K maxKey() {
+		return map.maxKey();
+	}
+
+	/**
+	 * Take a checkpoint when the log exceeds the given size.
+	 * @param bytes log size; 0 disables automatic checkpoints
+	 */
+	public synchronized void setCheckpointThreshold(long bytes) {
+		if(bytes < 0)
+			throw new IllegalArgumentException("bytes: " + bytes);
+		checkpointBytes = bytes;
+	}
+
+	/**
+	 * Sync all logged mutations, start a new log segment and write an image of
+	 * the map as of the segment start. Operations are blocked only to switch
+	 * segments and take a {@link SplayTreeMap#snapshot()}; the image is written
+	 * while the map is in use.
+	 * @throws UncheckedIOException on failure; the previous checkpoint and log remain valid
+	 */
+	public void checkpoint() {
+		synchronized (checkpointLock) {
+			final long next;
+			final SplayTreeMap.Snapshot<K, V> snapshot;
+			synchronized (syncLock) {
+				synchronized (this) {
+					if(closed)
+						throw new IllegalStateException("closed");
+					flush(appended, true);
+					next = seq + 1;
+					try {
+						final FileChannel nextWal = FileChannel.open(walPath(next), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+						syncDir();                          /* before any record synced to it is acknowledged */
+						wal.close();
+						wal = nextWal;
+					} catch (IOException e) {
+						throw new UncheckedIOException("checkpoint failed", e);
+					}
+					seq = next;
+					walBytes = 0;
+					snapshot = map.snapshot();
+				}
+			}
+			try (SplayTreeMap.Snapshot<K, V> s = snapshot) {
+				SplayImage.write(s, keys, values, checkpointPath(next));
+				syncDir();                                  /* the image, before the old files go */
+				for(long c : list(CHECKPOINT))
+					if(c < next)
+						Files.deleteIfExists(checkpointPath(c));
+				for(long w : list(WAL))
+					if(w < next)
+						Files.deleteIfExists(walPath(w));
+			} catch (IOException e) {
+				throw new UncheckedIOException("checkpoint failed", e);
+			}
+			synchronized (this) {
+				checkpointFailure = null;
+				checkpointBackoff = 0;
+			}
+		}
+	}
+
+	/**
+	 * Sync all logged mutations.
+	 * @throws UncheckedIOException if the log write fails or has failed, see {@link #failure()}
+	 */
+	public void sync() {
+		final long upTo;
+		synchronized (this) {
+			upTo = appended;
+		}
+		flush(upTo, true);
+	}
+
+	/**
+	 * Sync the log and release resources. Idempotent.
+	 * @throws IOException if the final sync fails
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if(closed)
+				return;
+			closed = true;
+			notifyAll();
+		}
+		final Thread c;
+		synchronized (this) {
+			c = checkpointer;
+		}
+		try {
+			if(syncer != null)
+				syncer.join();
+			if(c != null)
+				c.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			flush(appended, true);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			synchronized (syncLock) {
+				wal.close();
+			}
+		}
+	}
+
+	/**
+	 * A failed automatic checkpoint is not retried until the log grows by
+	 * another checkpoint threshold; meanwhile the log and the older files are
+	 * kept, and the map stays usable.
+	 * @return failure of the last automatic checkpoint; null if none since
+	 * the last successful checkpoint
+	 */
+	public synchronized RuntimeException checkpointFailure() {
+		return checkpointFailure;
+	}
+
+	/**
+	 * A failed log write or sync fails the map: further mutations, syncs,
+	 * checkpoints and close throw, since records of the failed batch may be
+	 * lost. Lookups still work. Reopen the directory to recover.
+	 * @return the log failure; null if the log is sound
+	 */
+	public IOException failure() {
+		return failure;
+	}
+
+	/** @return directory of the map */
+	public Path directory() {
+		return dir;
+	}
+
+	/** @return sync policy of the map */
+	public SyncPolicy syncPolicy() {
+		return policy;
+	}
+}
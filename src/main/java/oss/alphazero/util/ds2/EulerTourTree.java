@@ -0,0 +1,432 @@
+package oss.alphazero.util.ds2;
+
+import java.util.Arrays;
+
+/**
+ * Euler-tour trees: a forest on vertices 0 to n - 1 under edge insertions
+ * and deletions, each tree kept as its Euler tour in a splay tree sequence -
+ * for connectivity and component or subtree aggregates of long vertex
+ * weights, without traversing the graph.
+ * <ol>
+ * <li>A tour has a node for each vertex and two for each edge, one per
+ * direction: the tour of the subtree hanging off edge (p, v) lies between
+ * (p, v) and (v, p). A splay tree holds a tour in order, and the vertex
+ * count and weight sum of its subtrees.</li>
+ * <li>{@link #link(int, int)} and {@link #cut(int, int)} reroot, split and
+ * join tours; {@link #connected(int, int)}, {@link #componentSize(int)} and
+ * {@link #subtreeSize(int, int)} read the aggregates. All are O(log n)
+ * amortized.</li>
+ * <li>Splays are bottom-up, on parent links.</li>
+ * <li>Storage is parallel arrays, and a hash of edges on long keys - no per
+ * vertex or edge objects.</li>
+ * <li>Vertices out of range and links that would close a cycle throw {@link IllegalArgumentException}</li>
+ * </ol>
+ * Not thread safe - even queries restructure the trees.
+ *
+ * This code is in the public domain.
+ */
+public class EulerTourTree {
+	/** no node */
+	private static final int NIL = -1;
+
+	/** no edge key */
+	private static final long NO_KEY = -1L;
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	private final int n;
+
+	/*
+	 * tour nodes: vertex v is node v; edge pair k - edge (u, v) with u < v -
+	 * is node n + 2k for (u, v), and n + 2k + 1 for (v, u)
+	 */
+	private final int[] left;
+	private final int[] right;
+	private final int[] parent;
+	/** nodes in the splay subtree */
+	private final int[] size;
+	/** vertex nodes in the splay subtree */
+	private final int[] count;
+	/** vertex weights in the splay subtree - the weight of a vertex node is its own */
+	private final long[] sum;
+	private final long[] weight;
+
+	/** free edge pairs */
+	private final int[] free;
+	private int freeCount;
+
+	/* edges: open addressing, linear probing, on key (min << 32 | max) */
+	private final long[] keys;
+	private final int[] pairs;
+	private final int mask;
+	private int edges = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * A forest of n single vertex trees, of weight 0.
+	 * @param n number of vertices
+	 * @throws IllegalArgumentException if n is negative
+	 */
+	public EulerTourTree(int n) {
+		if (n < 0)
+			throw new IllegalArgumentException("n: " + n);
+		this.n = n;
+		final int pairCount = Math.max(n - 1, 0);          /* a forest has fewer edges than vertices */
+		final int nodes = n + 2 * pairCount;
+		left = new int[nodes];
+		right = new int[nodes];
+		parent = new int[nodes];
+		Arrays.fill(left, NIL);
+		Arrays.fill(right, NIL);
+		Arrays.fill(parent, NIL);
+		size = new int[nodes];
+		Arrays.fill(size, 1);
+		count = new int[nodes];
+		Arrays.fill(count, 0, n, 1);
+		sum = new long[nodes];
+		weight = new long[n];
+
+		free = new int[pairCount];
+		for (int k = 0; k < pairCount; k++)
+			free[k] = pairCount - 1 - k;
+		freeCount = pairCount;
+
+		final int capacity = Integer.highestOneBit(Math.max(2 * pairCount, 1)) << 1;
+		keys = new long[capacity];
+		Arrays.fill(keys, NO_KEY);
+		pairs = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : splay sequences
+	// ------------------------------------------------------------------------
+	private void check(int v) {
+		if (v < 0 || v >= n)
+			throw new IllegalArgumentException("vertex: " + v);
+	}
+
+	private void pull(int x) {
+		final int l = left[x], r = right[x];
+		int z = 1, c = x < n ? 1 : 0;
+		long s = x < n ? weight[x] : 0;
+		if (l != NIL) {
+			z += size[l];
+			c += count[l];
+			s += sum[l];
+		}
+		if (r != NIL) {
+			z += size[r];
+			c += count[r];
+			s += sum[r];
+		}
+		size[x] = z;
+		count[x] = c;
+		sum[x] = s;
+	}
+
+	/** rotate x above its parent */
+	private void rotate(int x) {
+		final int p = parent[x], g = parent[p];
+		if (left[p] == x) {
+			final int b = right[x];
+			left[p] = b;
+			if (b != NIL) parent[b] = p;
+			right[x] = p;
+		} else {
+			final int b = left[x];
+			right[p] = b;
+			if (b != NIL) parent[b] = p;
+			left[x] = p;
+		}
+		parent[p] = x;
+		parent[x] = g;
+		if (g != NIL) {
+			if (left[g] == p) left[g] = x;
+			else right[g] = x;
+		}
+		pull(p);
+	}
+
+	/** bottom-up splay of x to the root of its splay tree */
+	private void splay(int x) {
+		while (parent[x] != NIL) {
+			final int p = parent[x], g = parent[p];
+			if (g != NIL)
+				rotate((left[g] == p) == (left[p] == x) ? p : x);   /* zig-zig : zig-zag */
+			rotate(x);
+		}
+		pull(x);
+	}
+
+	/** @return the last node of the sequence of root t, splayed */
+	private int last(int t) {
+		while (right[t] != NIL)
+			t = right[t];
+		splay(t);
+		return t;
+	}
+
+	/** @return the sequence a followed by b, as the root of its splay tree */
+	private int join(int a, int b) {
+		if (a == NIL)
+			return b;
+		if (b == NIL)
+			return a;
+		a = last(a);
+		right[a] = b;
+		parent[b] = a;
+		pull(a);
+		return a;
+	}
+
+	/** splay x and cut the sequence before it: @return what preceded x */
+	private int splitBefore(int x) {
+		splay(x);
+		final int l = left[x];
+		if (l != NIL) {
+			left[x] = NIL;
+			parent[l] = NIL;
+			pull(x);
+		}
+		return l;
+	}
+
+	/** splay x and cut the sequence after it: @return what followed x */
+	private int splitAfter(int x) {
+		splay(x);
+		final int r = right[x];
+		if (r != NIL) {
+			right[x] = NIL;
+			parent[r] = NIL;
+			pull(x);
+		}
+		return r;
+	}
+
+	/** @return x's position in its sequence; splayed */
+	private int index(int x) {
+		splay(x);
+		return left[x] == NIL ? 0 : size[left[x]];
+	}
+
+	/** rotate the tour of v's tree to start at v: @return its root */
+	private int reroot(int v) {
+		final int before = splitBefore(v);
+		return join(v, before);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : edges
+	// ------------------------------------------------------------------------
+	private static long key(int u, int v) {
+		return u < v ? (long) u << 32 | v : (long) v << 32 | u;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+	}
+
+	/** @return the pair of edge key; NIL if none */
+	private int pair(long key) {
+		for (int i = slot(key); keys[i] != NO_KEY; i = (i + 1) & mask)
+			if (keys[i] == key)
+				return pairs[i];
+		return NIL;
+	}
+
+	private void putPair(long key, int pair) {
+		int i = slot(key);
+		while (keys[i] != NO_KEY)
+			i = (i + 1) & mask;
+		keys[i] = key;
+		pairs[i] = pair;
+		edges++;
+	}
+
+	/** remove key - present - shifting back the probe run after it */
+	private void removePair(long key) {
+		int i = slot(key);
+		while (keys[i] != key)
+			i = (i + 1) & mask;
+		for (int j = (i + 1) & mask; keys[j] != NO_KEY; j = (j + 1) & mask) {
+			final int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - i) & mask)) {      /* home not in (i, j] */
+				keys[i] = keys[j];
+				pairs[i] = pairs[j];
+				i = j;
+			}
+		}
+		keys[i] = NO_KEY;
+		edges--;
+	}
+
+	/** @return the tour node of edge (u, v) of pair k */
+	private int edgeNode(int k, int u, int v) {
+		return n + 2 * k + (u < v ? 0 : 1);
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : EulerTourTree
+	// ------------------------------------------------------------------------
+	/**
+	 * Add edge (u, v), joining their trees.
+	 * @throws IllegalArgumentException if u and v are connected
+	 */
+	final public void link(int u, int v) {
+		if (connected(u, v))
+			throw new IllegalArgumentException("connected: " + u + " " + v);
+		final int k = free[--freeCount];
+		putPair(key(u, v), k);
+		final int uv = edgeNode(k, u, v), vu = edgeNode(k, v, u);
+		final int tu = reroot(u), tv = reroot(v);
+		join(join(join(tu, uv), tv), vu);
+	}
+
+	/**
+	 * Remove edge (u, v), splitting their tree.
+	 * @return false if there is no such edge
+	 */
+	final public boolean cut(int u, int v) {
+		check(u);
+		check(v);
+		final long key = key(u, v);
+		final int k = pair(key);
+		if (k == NIL)
+			return false;
+		int e1 = edgeNode(k, u, v), e2 = edgeNode(k, v, u);
+		if (index(e1) > index(e2)) {
+			final int e = e1;
+			e1 = e2;
+			e2 = e;
+		}
+		final int a = splitBefore(e1);                      /* a e1 b e2 c */
+		final int c = splitAfter(e2);
+		splitAfter(e1);                                     /* b e2 */
+		splitBefore(e2);
+		join(a, c);
+		removePair(key);
+		free[freeCount++] = k;
+		return true;
+	}
+
+	/**
+	 * @return true if u and v are in the same tree
+	 */
+	final public boolean connected(int u, int v) {
+		check(u);
+		check(v);
+		if (u == v)
+			return true;
+		splay(u);
+		splay(v);
+		return parent[u] != NIL;                            /* v's splay moved u below it */
+	}
+
+	/**
+	 * @return true if edge (u, v) is in the forest
+	 */
+	final public boolean hasEdge(int u, int v) {
+		check(u);
+		check(v);
+		return pair(key(u, v)) != NIL;
+	}
+
+	/**
+	 * @return the number of vertices in v's tree
+	 */
+	final public int componentSize(int v) {
+		check(v);
+		splay(v);
+		return count[v];
+	}
+
+	/**
+	 * @return the sum of the weights in v's tree
+	 */
+	final public long componentSum(int v) {
+		check(v);
+		splay(v);
+		return sum[v];
+	}
+
+	/**
+	 * @return the number of vertices in the subtree of v, with p its parent -
+	 * v's side of edge (p, v)
+	 * @throws IllegalArgumentException if there is no edge (p, v)
+	 */
+	final public int subtreeSize(int v, int p) {
+		final int k = edge(v, p);
+		final int between = prefixCount(edgeNode(k, v, p)) - prefixCount(edgeNode(k, p, v));
+		return between > 0 ? between : componentSize(v) + between;
+	}
+
+	/**
+	 * @return the sum of the weights in the subtree of v, with p its parent
+	 * @throws IllegalArgumentException if there is no edge (p, v)
+	 */
+	final public long subtreeSum(int v, int p) {
+		final int k = edge(v, p);
+		final int pv = edgeNode(k, p, v), vp = edgeNode(k, v, p);
+		final int between = prefixCount(vp) - prefixCount(pv);
+		final long sumBetween = prefixSum(vp) - prefixSum(pv);
+		return between > 0 ? sumBetween : componentSum(v) + sumBetween;
+	}
+
+	/**
+	 * @return the weight of v
+	 */
+	final public long weight(int v) {
+		check(v);
+		return weight[v];
+	}
+
+	/**
+	 * Set the weight of v.
+	 */
+	final public void setWeight(int v, long w) {
+		check(v);
+		splay(v);
+		weight[v] = w;
+		pull(v);
+	}
+
+	/**
+	 * @return number of vertices
+	 */
+	final public int size() {
+		return n;
+	}
+
+	/**
+	 * @return number of edges
+	 */
+	final public int edges() {
+		return edges;
+	}
+
+	/** @return the pair of edge (p, v) */
+	private int edge(int v, int p) {
+		check(v);
+		check(p);
+		final int k = pair(key(v, p));
+		if (k == NIL)
+			throw new IllegalArgumentException("no edge: " + p + " " + v);
+		return k;
+	}
+
+	/** @return vertices before node x in its tour */
+	private int prefixCount(int x) {
+		splay(x);
+		return left[x] == NIL ? 0 : count[left[x]];
+	}
+
+	/** @return weights before node x in its tour */
+	private long prefixSum(int x) {
+		splay(x);
+		return left[x] == NIL ? 0 : sum[left[x]];
+	}
+}
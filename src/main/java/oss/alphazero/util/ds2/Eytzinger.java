@@ -0,0 +1,74 @@
+package oss.alphazero.util.ds2;
+
+/**
+ * Eytzinger (BFS) layout of a sorted sequence: the implicit complete binary
+ * search tree with root at slot 1 and the children of slot k at 2k and 2k+1.
+ * Searching it touches the top levels in the first cache lines and needs no
+ * child pointers.
+ *
+ * This code is in the public domain.
+ */
+final class Eytzinger {
+	private Eytzinger() { }
+
+	/**
+	 * @param n number of elements
+	 * @return rank[k] = index in sorted order of the element at slot k, for
+	 * k in 1..n; rank[0] is unused
+	 */
+	static int[] ranks(int n) {
+		final int[] rank = new int[n + 1];
+		int k = first(n);
+		for (int r = 0; r < n; r++) {
+			rank[k] = r;
+			k = next(k, n);
+		}
+		return rank;
+	}
+
+	/** @return slot of the smallest element; 0 if n is 0 */
+	static int first(int n) {
+		if (n == 0)
+			return 0;
+		int k = 1;
+		while (k <= n / 2)
+			k *= 2;
+		return k;
+	}
+
+	/** @return slot of the largest element; 0 if n is 0 */
+	static int last(int n) {
+		if (n == 0)
+			return 0;
+		int k = 1;
+		while (k <= (n - 1) / 2)
+			k = 2 * k + 1;
+		return k;
+	}
+
+	/** @return slot of the in-order predecessor of slot k; 0 if none */
+	static int prev(int k, int n) {
+		if (k <= n / 2) {                                   /* has a left child */
+			k = 2 * k;
+			while (k <= (n - 1) / 2)
+				k = 2 * k + 1;
+			return k;
+		}
+		while ((k & 1) == 0)                                /* up from left children */
+			k >>= 1;
+		return k >> 1;
+	}
+
+	/** @return slot of the in-order successor of slot k; 0 if none */
+	static int next(int k, int n) {
+		if (k <= (n - 1) / 2) {                             /* has a right child */
+			k = 2 * k + 1;
+			while (k <= n / 2)
+				k *= 2;
+			return k;
+		}
+		while ((k & 1) == 1)                                /* up from right children */
+			k >>= 1;
+		return k >> 1;
+	}
+}
@@ -0,0 +1,629 @@
+package oss.alphazero.util.ds2;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable sorted map in {@link Eytzinger} layout, made by
+ * {@link SplayTreeMap#freeze()} for read-only phases.
+ * <ol>
+ * <li>Keys in Eytzinger order in one array, values in a parallel array - no
+ * nodes. The top levels of the search share the first cache lines.</li>
+ * <li>With the {@link KeyPrefix} of the map, the key prefixes are laid out
+ * the same way in a <code>long[]</code>, and the search reads key objects
+ * only on prefix ties.</li>
+ * <li>Searches descend the full height with a single, data dependent
+ * increment per level and no early exit; the result slot is recovered from
+ * the path bits. Each lookup is O(log n) compares, in every case.</li>
+ * <li>Full {@link NavigableMap} read support: navigation, sub, head, tail and
+ * descending views, key sets and iteration in either order. Views share the
+ * arrays. The size of a bounded view is counted on first use, in O(m).</li>
+ * <li>All mutators throw {@link UnsupportedOperationException}.</li>
+ * <li>Safe to share across threads without locks: the arrays are only
+ * written before the map is published through final fields.</li>
+ * <li>Null key is not allowed. Null values are allowed.</li>
+ * </ol>
+ *
+ * @param K key type
+ * @param V value type
+ *
+ * This code is in the public domain.
+ */
+public class FrozenMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	/** keys by slot 1..n; slot 0 unused */
+	private final Object[] keys;
+	/** values by slot 1..n; slot 0 unused */
+	private final Object[] values;
+	/** key prefixes by slot 1..n - null if not used */
+	private final long[] prefixes;
+	private final int n;
+
+	/** key order - null for natural order */
+	private final Comparator<? super K> comparator;
+
+	/** key prefix - null if not used */
+	private final KeyPrefix<? super K> keyPrefix;
+
+	/* view bounds, in key order: fromStart and toEnd for no bound */
+	private final boolean fromStart, toEnd;
+	private final K lo, hi;
+	private final boolean loInclusive, hiInclusive;
+	private final boolean descending;
+
+	/** size + 1 of a bounded view - 0 until counted; racy but idempotent */
+	private int counted = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * @param keys by Eytzinger slot 1..n, strictly increasing in key order
+	 * @param values by slot 1..n
+	 * @param prefixes of the keys by slot 1..n; null if keyPrefix is null
+	 */
+	FrozenMap(Object[] keys, Object[] values, long[] prefixes, int n,
+			Comparator<? super K> comparator, KeyPrefix<? super K> keyPrefix) {
+		this.keys = keys;
+		this.values = values;
+		this.prefixes = prefixes;
+		this.n = n;
+		this.comparator = comparator;
+		this.keyPrefix = keyPrefix;
+		this.fromStart = this.toEnd = true;
+		this.lo = this.hi = null;
+		this.loInclusive = this.hiInclusive = true;
+		this.descending = false;
+	}
+
+	/** a view of m */
+	private FrozenMap(FrozenMap<K, V> m, boolean fromStart, K lo, boolean loInclusive,
+			boolean toEnd, K hi, boolean hiInclusive, boolean descending) {
+		this.keys = m.keys;
+		this.values = m.values;
+		this.prefixes = m.prefixes;
+		this.n = m.n;
+		this.comparator = m.comparator;
+		this.keyPrefix = m.keyPrefix;
+		this.fromStart = fromStart;
+		this.lo = lo;
+		this.loInclusive = loInclusive;
+		this.toEnd = toEnd;
+		this.hi = hi;
+		this.hiInclusive = hiInclusive;
+		this.descending = descending;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : search
+	// ------------------------------------------------------------------------
+	@SuppressWarnings("unchecked")
+	private int compare(Object k1, Object k2) {
+		final Comparator<? super K> cmp = comparator;
+		return cmp == null ? ((Comparable<Object>) k1).compareTo(k2) : cmp.compare((K) k1, (K) k2);
+	}
+
+	/** compare the key at slot k to key, with prefix kp - a long compare unless prefixes tie */
+	private int compare(int k, Object key, long kp) {
+		if (prefixes != null && prefixes[k] != kp)
+			return Long.compareUnsigned(prefixes[k], kp);
+		return compare(keys[k], key);
+	}
+
+	@SuppressWarnings("unchecked")
+	private long prefix(Object key) {
+		return keyPrefix == null ? 0 : keyPrefix.prefix((K) key);
+	}
+
+	/*
+	 * The descents below go right at slot k while the key there is less than
+	 * (or not greater than) key, to a slot past n. The path taken is the bits
+	 * of the final k below its leading 1: the answer is the last slot where
+	 * the descent went left (ceiling, higher) or right (floor, lower).
+	 */
+
+	/** @return slot of the least key greater than or equal to key; 0 if none */
+	private int ceiling(Object key) {
+		final long kp = prefix(key);
+		int k = 1;
+		while (k <= n)
+			k = 2 * k + (compare(k, key, kp) < 0 ? 1 : 0);
+		return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+	}
+
+	/** @return slot of the least key greater than key; 0 if none */
+	private int higher(Object key) {
+		final long kp = prefix(key);
+		int k = 1;
+		while (k <= n)
+			k = 2 * k + (compare(k, key, kp) <= 0 ? 1 : 0);
+		return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+	}
+
+	/** @return slot of the greatest key less than or equal to key; 0 if none */
+	private int floor(Object key) {
+		final long kp = prefix(key);
+		int k = 1;
+		while (k <= n)
+			k = 2 * k + (compare(k, key, kp) <= 0 ? 1 : 0);
+		return k >> (Integer.numberOfTrailingZeros(k) + 1);
+	}
+
+	/** @return slot of the greatest key less than key; 0 if none */
+	private int lower(Object key) {
+		final long kp = prefix(key);
+		int k = 1;
+		while (k <= n)
+			k = 2 * k + (compare(k, key, kp) < 0 ? 1 : 0);
+		return k >> (Integer.numberOfTrailingZeros(k) + 1);
+	}
+
+	/** @return slot of key; 0 if none */
+	private int slot(Object key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		if (!inRange(key))
+			return 0;
+		final int k = ceiling(key);
+		return k != 0 && compare(keys[k], key) == 0 ? k : 0;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : view bounds, in key order
+	// ------------------------------------------------------------------------
+	private boolean tooLow(Object key) {
+		if (fromStart)
+			return false;
+		final int c = compare(key, lo);
+		return c < 0 || (c == 0 && !loInclusive);
+	}
+
+	private boolean tooHigh(Object key) {
+		if (toEnd)
+			return false;
+		final int c = compare(key, hi);
+		return c > 0 || (c == 0 && !hiInclusive);
+	}
+
+	private boolean inRange(Object key) {
+		return !tooLow(key) && !tooHigh(key);
+	}
+
+	/** in range, counting exclusive bounds in */
+	private boolean inClosedRange(Object key) {
+		return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(hi, key) >= 0);
+	}
+
+	private boolean inRange(Object key, boolean inclusive) {
+		return inclusive ? inRange(key) : inClosedRange(key);
+	}
+
+	/** @return k if in range; else 0 */
+	private int clipHigh(int k) {
+		return k == 0 || tooHigh(keys[k]) ? 0 : k;
+	}
+
+	/** @return k if in range; else 0 */
+	private int clipLow(int k) {
+		return k == 0 || tooLow(keys[k]) ? 0 : k;
+	}
+
+	private int absLowest() {
+		return clipHigh(fromStart ? Eytzinger.first(n) : loInclusive ? ceiling(lo) : higher(lo));
+	}
+
+	private int absHighest() {
+		return clipLow(toEnd ? Eytzinger.last(n) : hiInclusive ? floor(hi) : lower(hi));
+	}
+
+	private int absCeiling(Object key) {
+		return tooLow(key) ? absLowest() : clipHigh(ceiling(key));
+	}
+
+	private int absHigher(Object key) {
+		return tooLow(key) ? absLowest() : clipHigh(higher(key));
+	}
+
+	private int absFloor(Object key) {
+		return tooHigh(key) ? absHighest() : clipLow(floor(key));
+	}
+
+	private int absLower(Object key) {
+		return tooHigh(key) ? absHighest() : clipLow(lower(key));
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : view order
+	// ------------------------------------------------------------------------
+	private int first() {
+		return descending ? absHighest() : absLowest();
+	}
+
+	private int last() {
+		return descending ? absLowest() : absHighest();
+	}
+
+	/** @return slot after k in view order; 0 if none */
+	private int next(int k) {
+		return descending ? clipLow(Eytzinger.prev(k, n)) : clipHigh(Eytzinger.next(k, n));
+	}
+
+	private int ceilingSlot(Object key) {
+		check(key);
+		return descending ? absFloor(key) : absCeiling(key);
+	}
+
+	private int higherSlot(Object key) {
+		check(key);
+		return descending ? absLower(key) : absHigher(key);
+	}
+
+	private int floorSlot(Object key) {
+		check(key);
+		return descending ? absCeiling(key) : absFloor(key);
+	}
+
+	private int lowerSlot(Object key) {
+		check(key);
+		return descending ? absHigher(key) : absLower(key);
+	}
+
+	private static void check(Object key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+	}
+
+	@SuppressWarnings("unchecked")
+	private K key(int k) {
+		return k == 0 ? null : (K) keys[k];
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map.Entry<K, V> entry(int k) {
+		return k == 0 ? null : new AbstractMap.SimpleImmutableEntry<K, V>((K) keys[k], (V) values[k]);
+	}
+
+	private FrozenMap<K, V> view(boolean fromStart, K lo, boolean loInclusive,
+			boolean toEnd, K hi, boolean hiInclusive, boolean descending) {
+		return new FrozenMap<K, V>(this, fromStart, lo, loInclusive, toEnd, hi, hiInclusive, descending);
+	}
+
+	private FrozenMap<K, V> descending() {
+		return view(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+	}
+
+	private Iterator<K> keyIterator() {
+		return new Slots<K>() {
+			@Override K at(int k) { return key(k); }
+		};
+	}
+
+	/** iterator of slots in view order */
+	private abstract class Slots<T> implements Iterator<T> {
+		private int k = first();
+		@Override public boolean hasNext() {
+			return k != 0;
+		}
+		@Override public T next() {
+			if (k == 0)
+				throw new NoSuchElementException();
+			final int j = k;
+			k = FrozenMap.this.next(k);
+			return at(j);
+		}
+		abstract T at(int k);
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : Map<K, V>
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc) @see java.util.Map#get(java.lang.Object) */
+	@SuppressWarnings("unchecked")
+	@Override final
+	public V get(Object key) {
+		final int k = slot(key);
+		return k == 0 ? null : (V) values[k];
+	}
+
+	/* (non-Javadoc) @see java.util.Map#getOrDefault(java.lang.Object, java.lang.Object) */
+	@SuppressWarnings("unchecked")
+	@Override final
+	public V getOrDefault(Object key, V defaultValue) {
+		final int k = slot(key);
+		return k == 0 ? defaultValue : (V) values[k];
+	}
+
+	/* (non-Javadoc) @see java.util.Map#containsKey(java.lang.Object) */
+	@Override final
+	public boolean containsKey(Object key) {
+		return slot(key) != 0;
+	}
+
+	/* (non-Javadoc) @see java.util.Map#containsValue(java.lang.Object) */
+	@Override
+	public boolean containsValue(Object value) {
+		for (int k = first(); k != 0; k = next(k))
+			if (value == null ? values[k] == null : value.equals(values[k]))
+				return true;
+		return false;
+	}
+
+	/* (non-Javadoc) @see java.util.Map#size() */
+	@Override
+	public int size() {
+		if (fromStart && toEnd)
+			return n;
+		int s = counted - 1;
+		if (s < 0) {
+			s = 0;
+			for (int k = absLowest(); k != 0; k = clipHigh(Eytzinger.next(k, n)))
+				s++;
+			counted = s + 1;
+		}
+		return s;
+	}
+
+	/* (non-Javadoc) @see java.util.Map#isEmpty() */
+	@Override
+	public boolean isEmpty() {
+		return fromStart && toEnd ? n == 0 : absLowest() == 0;
+	}
+
+	/* (non-Javadoc) @see java.util.Map#forEach(java.util.function.BiConsumer) */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		for (int k = first(); k != 0; k = next(k))
+			action.accept((K) keys[k], (V) values[k]);
+	}
+
+	/* (non-Javadoc) @see java.util.Map#entrySet() */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override public Iterator<Map.Entry<K, V>> iterator() {
+				return new Slots<Map.Entry<K, V>>() {
+					@Override Map.Entry<K, V> at(int k) { return entry(k); }
+				};
+			}
+			@Override public int size() {
+				return FrozenMap.this.size();
+			}
+			@Override public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry) || ((Map.Entry<?, ?>) o).getKey() == null)
+					return false;
+				final Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				final int k = slot(e.getKey());
+				return k != 0 && (e.getValue() == null ? values[k] == null : e.getValue().equals(values[k]));
+			}
+		};
+	}
+
+	/* (non-Javadoc) @see java.util.Map#keySet() */
+	@Override
+	public Set<K> keySet() {
+		return navigableKeySet();
+	}
+
+	/* (non-Javadoc) @see java.util.Map#values() */
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override public Iterator<V> iterator() {
+				return new Slots<V>() {
+					@SuppressWarnings("unchecked")
+					@Override V at(int k) { return (V) values[k]; }
+				};
+			}
+			@Override public int size() {
+				return FrozenMap.this.size();
+			}
+		};
+	}
+
+	/** NOT SUPPORTED - read-only */
+	@Override
+	public V put(K key, V value) {
+		throw new UnsupportedOperationException("FrozenMap is read-only");
+	}
+
+	/** NOT SUPPORTED - read-only */
+	@Override
+	public V remove(Object key) {
+		throw new UnsupportedOperationException("FrozenMap is read-only");
+	}
+
+	/** NOT SUPPORTED - read-only */
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		throw new UnsupportedOperationException("FrozenMap is read-only");
+	}
+
+	/** NOT SUPPORTED - read-only */
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("FrozenMap is read-only");
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : NavigableMap<K, V>
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc) @see java.util.SortedMap#comparator() */
+	@Override
+	public Comparator<? super K> comparator() {
+		return descending ? Collections.reverseOrder(comparator) : comparator;
+	}
+
+	/* (non-Javadoc) @see java.util.SortedMap#firstKey() */
+	@Override
+	public K firstKey() {
+		final int k = first();
+		if (k == 0)
+			throw new NoSuchElementException();
+		return key(k);
+	}
+
+	/* (non-Javadoc) @see java.util.SortedMap#lastKey() */
+	@Override
+	public K lastKey() {
+		final int k = last();
+		if (k == 0)
+			throw new NoSuchElementException();
+		return key(k);
+	}
+
+	@Override public Map.Entry<K, V> firstEntry()                { return entry(first()); }
+	@Override public Map.Entry<K, V> lastEntry()                 { return entry(last()); }
+	@Override public Map.Entry<K, V> lowerEntry(K key)           { return entry(lowerSlot(key)); }
+	@Override public Map.Entry<K, V> floorEntry(K key)           { return entry(floorSlot(key)); }
+	@Override public Map.Entry<K, V> ceilingEntry(K key)         { return entry(ceilingSlot(key)); }
+	@Override public Map.Entry<K, V> higherEntry(K key)          { return entry(higherSlot(key)); }
+	@Override public K lowerKey(K key)                           { return key(lowerSlot(key)); }
+	@Override public K floorKey(K key)                           { return key(floorSlot(key)); }
+	@Override public K ceilingKey(K key)                         { return key(ceilingSlot(key)); }
+	@Override public K higherKey(K key)                          { return key(higherSlot(key)); }
+
+	/** NOT SUPPORTED - read-only */
+	@Override
+	public Map.Entry<K, V> pollFirstEntry() {
+		throw new UnsupportedOperationException("FrozenMap is read-only");
+	}
+
+	/** NOT SUPPORTED - read-only */
+	@Override
+	public Map.Entry<K, V> pollLastEntry() {
+		throw new UnsupportedOperationException("FrozenMap is read-only");
+	}
+
+	/* (non-Javadoc) @see java.util.NavigableMap#descendingMap() */
+	@Override
+	public NavigableMap<K, V> descendingMap() {
+		return descending();
+	}
+
+	/* (non-Javadoc) @see java.util.NavigableMap#navigableKeySet() */
+	@Override
+	public NavigableSet<K> navigableKeySet() {
+		return new KeySet(this);
+	}
+
+	/* (non-Javadoc) @see java.util.NavigableMap#descendingKeySet() */
+	@Override
+	public NavigableSet<K> descendingKeySet() {
+		return new KeySet(descending());
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a key is null or out of the range of
+	 * this map, or fromKey is after toKey
+	 */
+	@Override
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		check(fromKey);
+		check(toKey);
+		if (!inRange(fromKey, fromInclusive))
+			throw new IllegalArgumentException("fromKey out of range");
+		if (!inRange(toKey, toInclusive))
+			throw new IllegalArgumentException("toKey out of range");
+		if (descending ? compare(toKey, fromKey) > 0 : compare(fromKey, toKey) > 0)
+			throw new IllegalArgumentException("fromKey > toKey");
+		return descending
+				? view(false, toKey, toInclusive, false, fromKey, fromInclusive, true)
+				: view(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if toKey is null or out of the range of this map
+	 */
+	@Override
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+		check(toKey);
+		if (!inRange(toKey, inclusive))
+			throw new IllegalArgumentException("toKey out of range");
+		return descending
+				? view(false, toKey, inclusive, toEnd, hi, hiInclusive, true)
+				: view(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if fromKey is null or out of the range of this map
+	 */
+	@Override
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+		check(fromKey);
+		if (!inRange(fromKey, inclusive))
+			throw new IllegalArgumentException("fromKey out of range");
+		return descending
+				? view(fromStart, lo, loInclusive, false, fromKey, inclusive, true)
+				: view(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+	}
+
+	@Override public SortedMap<K, V> subMap(K fromKey, K toKey)  { return subMap(fromKey, true, toKey, false); }
+	@Override public SortedMap<K, V> headMap(K toKey)            { return headMap(toKey, false); }
+	@Override public SortedMap<K, V> tailMap(K fromKey)          { return tailMap(fromKey, true); }
+
+	// ------------------------------------------------------------------------
+	// Inner class: KeySet
+	// ------------------------------------------------------------------------
+	/** the keys of a (view) map */
+	private final class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+		private final FrozenMap<K, V> m;
+
+		KeySet(FrozenMap<K, V> m) {
+			this.m = m;
+		}
+
+		@Override public Iterator<K> iterator()             { return m.keyIterator(); }
+		@Override public Iterator<K> descendingIterator()   { return m.descending().keyIterator(); }
+		@Override public int size()                         { return m.size(); }
+		@Override public boolean isEmpty()                  { return m.isEmpty(); }
+		@Override public boolean contains(Object o)         { return o != null && m.containsKey(o); }
+		@Override public Comparator<? super K> comparator() { return m.comparator(); }
+		@Override public K first()                          { return m.firstKey(); }
+		@Override public K last()                           { return m.lastKey(); }
+		@Override public K lower(K e)                       { return m.lowerKey(e); }
+		@Override public K floor(K e)                       { return m.floorKey(e); }
+		@Override public K ceiling(K e)                     { return m.ceilingKey(e); }
+		@Override public K higher(K e)                      { return m.higherKey(e); }
+		@Override public NavigableSet<K> descendingSet()    { return new KeySet(m.descending()); }
+
+		@Override public NavigableSet<K> subSet(K from, boolean fromInclusive, K to, boolean toInclusive) {
+			return new KeySet((FrozenMap<K, V>) m.subMap(from, fromInclusive, to, toInclusive));
+		}
+		@Override public NavigableSet<K> headSet(K to, boolean inclusive) {
+			return new KeySet((FrozenMap<K, V>) m.headMap(to, inclusive));
+		}
+		@Override public NavigableSet<K> tailSet(K from, boolean inclusive) {
+			return new KeySet((FrozenMap<K, V>) m.tailMap(from, inclusive));
+		}
+		@Override public SortedSet<K> subSet(K from, K to)  { return subSet(from, true, to, false); }
+		@Override public SortedSet<K> headSet(K to)         { return headSet(to, false); }
+		@Override public SortedSet<K> tailSet(K from)       { return tailSet(from, true); }
+
+		/** NOT SUPPORTED - read-only */
+		@Override public K pollFirst() {
+			throw new UnsupportedOperationException("FrozenMap is read-only");
+		}
+		/** NOT SUPPORTED - read-only */
+		@Override public K pollLast() {
+			throw new UnsupportedOperationException("FrozenMap is read-only");
+		}
+	}
+}
@@ -0,0 +1,319 @@
+package oss.alphazero.util.ds2;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link SplayTreeMap} with a hash index from key to tree node: point
+ * lookups - get, containsKey, and removes and puts of keys not in the map -
+ * go through the hash, in O(1) and without a splay. Ordered ops use the tree.
+ * <ol>
+ * <li>The index is open addressing with linear probing, on cached key
+ * hashes, at a load of at most 1/2. Deletes shift back the probe run - no
+ * tombstones.</li>
+ * <li>Hash hits do not restructure the tree, so it no longer adapts to the
+ * lookups. {@link #setSplayEvery(int)} splays every k-th hit, to keep some
+ * locality for the ordered ops.</li>
+ * <li>Keys must have {@link Object#equals(Object)} and {@link Object#hashCode()}
+ * consistent with the key order.</li>
+ * <li>Null key is not allowed. Null values are allowed.</li>
+ * <li>Like {@link SplayTreeMap}, {@link Map} support is partial: no views.</li>
+ * </ol>
+ * Not thread safe - ordered ops and sampled hits restructure the tree.
+ *
+ * @param K key type
+ * @param V value type
+ *
+ * This code is in the public domain.
+ */
+public class HashedSplayTreeMap<K, V> implements Map<K, V> {
+	/** initial index capacity */
+	static final int CAPACITY = 16;
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	private final Comparator<? super K> comparator;
+
+	private SplayTreeMap<K, V> tree;
+
+	/* index: tree nodes by key hash */
+	private Map.Entry<K, V>[] entries;
+	private int[] hashes;
+	private int mask;
+
+	/** splay every k-th hash hit - 0 for never */
+	private int splayEvery = 0;
+	/** hits to the next splay */
+	private int countdown = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * Keys are ordered by their natural order and must implement
+	 * {@link Comparable}; else {@link ClassCastException} on first use.
+	 */
+	public HashedSplayTreeMap() {
+		this(null);
+	}
+
+	/**
+	 * @param comparator key order; null for natural order
+	 */
+	public HashedSplayTreeMap(Comparator<? super K> comparator) {
+		this.comparator = comparator;
+		this.tree = new SplayTreeMap<K, V>(comparator);
+		index(CAPACITY);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	@SuppressWarnings("unchecked")
+	private void index(int capacity) {
+		entries = (Map.Entry<K, V>[]) new Map.Entry<?, ?>[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	private static int hash(Object key) {
+		final int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/** @return the slot of key; -1 if none */
+	private int slot(Object key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		final int h = hash(key);
+		for (int i = h & mask; entries[i] != null; i = (i + 1) & mask)
+			if (hashes[i] == h && key.equals(entries[i].getKey()))
+				return i;
+		return -1;
+	}
+
+	/** @return the node of key; null if none */
+	@SuppressWarnings("unchecked")
+	private Map.Entry<K, V> entry(Object key) {
+		final int i = slot(key);
+		if (i < 0)
+			return null;
+		final Map.Entry<K, V> e = entries[i];
+		if (splayEvery > 0 && --countdown <= 0) {
+			countdown = splayEvery;
+			tree.find((K) key);
+		}
+		return e;
+	}
+
+	/** index e - not in the index */
+	private void add(Map.Entry<K, V> e) {
+		if (2 * (tree.size() + 1) > entries.length) {
+			final Map.Entry<K, V>[] old = entries;
+			final int[] oldHashes = hashes;
+			index(old.length * 2);
+			for (int j = 0; j < old.length; j++)
+				if (old[j] != null)
+					put(old[j], oldHashes[j]);
+		}
+		put(e, hash(e.getKey()));
+	}
+
+	private void put(Map.Entry<K, V> e, int h) {
+		int i = h & mask;
+		while (entries[i] != null)
+			i = (i + 1) & mask;
+		entries[i] = e;
+		hashes[i] = h;
+	}
+
+	/** remove the entry at slot i, shifting back the probe run after it */
+	private void remove(int i) {
+		for (int j = (i + 1) & mask; entries[j] != null; j = (j + 1) & mask) {
+			final int home = hashes[j] & mask;
+			if (((j - home) & mask) >= ((j - i) & mask)) {      /* home not in (i, j] */
+				entries[i] = entries[j];
+				hashes[i] = hashes[j];
+				i = j;
+			}
+		}
+		entries[i] = null;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : HashedSplayTreeMap
+	// ------------------------------------------------------------------------
+	/**
+	 * Splay the tree on every k-th hash hit, so the tree keeps adapting to
+	 * the lookups at 1/k of the cost.
+	 * @param k hits per splay; 0 never splays on hits
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	final public void setSplayEvery(int k) {
+		if (k < 0)
+			throw new IllegalArgumentException("k: " + k);
+		splayEvery = countdown = k;
+	}
+
+	/**
+	 * @return hits per splay; 0 if hits do not splay
+	 */
+	final public int splayEvery() {
+		return splayEvery;
+	}
+
+	/**
+	 * @return the smallest key; null if empty
+	 */
+	final public K firstKey() {
+		return tree.minKey();
+	}
+
+	/**
+	 * @return the largest key; null if empty
+	 */
+	final public K lastKey() {
+		return tree.maxKey();
+	}
+
+	/**
+	 * @return the greatest key less than or equal to key; null if none
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public K floorKey(K key) {
+		return tree.floorKey(key);
+	}
+
+	/**
+	 * @return the least key greater than or equal to key; null if none
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public K ceilingKey(K key) {
+		return tree.ceilingKey(key);
+	}
+
+	/**
+	 * Visit the mappings with keys in [from, to) in key order.
+	 * See {@link SplayTreeMap#range(Object, Object, BiConsumer)}.
+	 * @param from least key, inclusive; null for the least key of the map
+	 * @param to greatest key, exclusive; null for no bound
+	 */
+	final public void range(K from, K to, BiConsumer<? super K, ? super V> action) {
+		tree.range(from, to, action);
+	}
+
+	/**
+	 * @return the key order; null if natural order
+	 */
+	final public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : Map<K, V>
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc) @see java.util.Map#containsKey(java.lang.Object) */
+	@Override final
+	public boolean containsKey(Object key) {
+		return entry(key) != null;
+	}
+
+	/* (non-Javadoc) @see java.util.Map#get(java.lang.Object) */
+	@Override final
+	public V get(Object key) {
+		final Map.Entry<K, V> e = entry(key);
+		return e == null ? null : e.getValue();
+	}
+
+	/* (non-Javadoc) @see java.util.Map#getOrDefault(java.lang.Object, java.lang.Object) */
+	@Override final
+	public V getOrDefault(Object key, V defaultValue) {
+		final Map.Entry<K, V> e = entry(key);
+		return e == null ? defaultValue : e.getValue();
+	}
+
+	/* (non-Javadoc) @see java.util.Map#put(java.lang.Object, java.lang.Object) */
+	@Override final
+	public V put(K key, V value) {
+		final Map.Entry<K, V> e = entry(key);
+		if (e != null)
+			return e.setValue(value);
+		tree.insert(key, value);
+		add(tree.find(key));                                /* the root: no rotation */
+		return null;
+	}
+
+	/* (non-Javadoc) @see java.util.Map#remove(java.lang.Object) */
+	@SuppressWarnings("unchecked")
+	@Override final
+	public V remove(Object key) {
+		final int i = slot(key);
+		if (i < 0)
+			return null;
+		final V value = entries[i].getValue();
+		remove(i);
+		tree.delete((K) key);
+		return value;
+	}
+
+	/* (non-Javadoc) @see java.util.Map#size() */
+	@Override final
+	public int size() {
+		return tree.size();
+	}
+
+	/* (non-Javadoc) @see java.util.Map#isEmpty() */
+	@Override final
+	public boolean isEmpty() {
+		return tree.isEmpty();
+	}
+
+	/* (non-Javadoc) @see java.util.Map#putAll(java.util.Map) */
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		for(Map.Entry<? extends K, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	/* (non-Javadoc) @see java.util.Map#clear() */
+	@Override
+	public void clear() {
+		tree = new SplayTreeMap<K, V>(comparator);
+		index(CAPACITY);
+	}
+
+	/* (non-Javadoc) @see java.util.Map#forEach(java.util.function.BiConsumer) */
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		tree.range(null, null, action);
+	}
+
+	/** NOT SUPPORTED */
+	@Override
+	public boolean containsValue(Object value) {
+		throw new RuntimeException ("Map<K,V>#containsValue is not supported!");
+	}
+
+	/** NOT SUPPORTED */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		throw new RuntimeException ("Map<K,V>#entrySet is not supported!");
+	}
+
+	/** NOT SUPPORTED */
+	@Override
+	public Set<K> keySet() {
+		throw new RuntimeException ("Map<K,V>#keySet is not supported!");
+	}
+
+	/** NOT SUPPORTED */
+	@Override
+	public Collection<V> values() {
+		throw new RuntimeException ("Map<K,V>#values is not supported!");
+	}
+}
@@ -0,0 +1,95 @@
+package oss.alphazero.util.ds2;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An order preserving 64-bit key prefix: for keys a and b,
+ * <code>a &lt; b</code> implies <code>prefix(a) &lt;= prefix(b)</code>,
+ * with prefixes compared as <i>unsigned</i> longs.
+ * <p>
+ * A {@link SplayTreeMap} created with a KeyPrefix stores the prefix of each
+ * key in its node, and the splay settles a comparison with a single long
+ * compare when the prefixes differ -- without touching the key object. The
+ * full key compare runs only when prefixes tie. A prefix must be consistent
+ * with the order of the map it is used with.
+ * <p>
+ * Prefixes only help if keys tend to differ in their first few characters
+ * (bytes). Keys sharing a long common prefix, e.g. URLs with the same scheme
+ * and host, always tie; strip the common part or supply a custom KeyPrefix.
+ *
+ * @param K key type
+ *
+ * This code is in the public domain.
+ */
+public interface KeyPrefix<K> {
+	/**
+	 * @param key non-null key
+	 * @return order preserving prefix of key
+	 */
+	long prefix(K key);
+
+	/**
+	 * First 8 chars of a String in natural order, 8 bits per char. A char
+	 * that does not fit in 8 bits is encoded as 0xFF and ends the prefix;
+	 * short strings are padded with 0.
+	 */
+	KeyPrefix<String> STRING = new KeyPrefix<String>() {
+		@Override public long prefix(String key) {
+			long p = 0;
+			final int n = Math.min(8, key.length());
+			int i = 0;
+			for (; i < n; i++) {
+				final char c = key.charAt(i);
+				if (c >= 0xFF) {
+					p = (p << 8) | 0xFF;
+					i++;
+					break;
+				}
+				p = (p << 8) | c;
+			}
+			return p << (8 * (8 - i));
+		}
+	};
+
+	/**
+	 * First 8 bytes of a byte[], big endian, zero padded. Consistent with
+	 * {@link #UNSIGNED_BYTES}.
+	 */
+	KeyPrefix<byte[]> BYTES = new KeyPrefix<byte[]>() {
+		@Override public long prefix(byte[] key) {
+			long p = 0;
+			final int n = Math.min(8, key.length);
+			for (int i = 0; i < n; i++)
+				p = (p << 8) | (key[i] & 0xFF);
+			return p << (8 * (8 - n));
+		}
+	};
+
+	/**
+	 * Long keys in natural order: the whole key, sign bit flipped, so
+	 * prefixes of distinct keys never tie.
+	 */
+	KeyPrefix<Long> LONG = new KeyPrefix<Long>() {
+		@Override public long prefix(Long key) {
+			return key ^ Long.MIN_VALUE;
+		}
+	};
+
+	/**
+	 * Integer keys in natural order: the whole key, sign extended and sign
+	 * bit flipped, so prefixes of distinct keys never tie.
+	 */
+	KeyPrefix<Integer> INT = new KeyPrefix<Integer>() {
+		@Override public long prefix(Integer key) {
+			return (long) key ^ Long.MIN_VALUE;
+		}
+	};
+
+	/** unsigned lexicographic order of byte[] keys */
+	Comparator<byte[]> UNSIGNED_BYTES = new Comparator<byte[]>() {
+		@Override public int compare(byte[] a, byte[] b) {
+			return Arrays.compareUnsigned(a, b);
+		}
+	};
+}
@@ -0,0 +1,416 @@
+package oss.alphazero.util.ds2;
+
+import java.util.Arrays;
+
+/**
+ * Sleator and Tarjan's link-cut trees: a forest of rooted trees on vertices
+ * 0 to n - 1, under edge insertions and deletions, with path aggregates of
+ * long vertex weights - e.g. dynamic network topology, or the bottleneck and
+ * augment steps of max-flow, without recomputing after each edge change.
+ * <ol>
+ * <li>Each tree is split in preferred paths, each kept in a splay tree
+ * ordered by depth; {@link #access(int)} makes the path from the root to a
+ * vertex preferred. All ops are O(log n) amortized.</li>
+ * <li>Splays are bottom-up, on parent links: the parent link of a splay tree
+ * root is the path-parent link of its path.</li>
+ * <li>{@link #evert(int)} reroots a tree, by a lazy reversal of the path;
+ * {@link #pathAdd(int, long)} is a lazy add to the weights of a path.</li>
+ * <li>Storage is parallel arrays - 53 bytes a vertex - for millions of vertices.</li>
+ * <li>Vertices out of range and illegal links throw {@link IllegalArgumentException}</li>
+ * </ol>
+ * Not thread safe - even queries restructure the trees.
+ *
+ * This code is in the public domain.
+ */
+public class LinkCutTree {
+	/** no vertex */
+	public static final int NIL = -1;
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	private final int n;
+
+	/* splay tree links; parent of a splay root is its path-parent */
+	private final int[] left;
+	private final int[] right;
+	private final int[] parent;
+
+	/* per vertex weight, and aggregates of its splay subtree */
+	private final long[] weight;
+	private final long[] sum;
+	private final long[] min;
+	/** a vertex of least weight in the splay subtree */
+	private final int[] minVertex;
+	private final int[] size;
+
+	/* lazy ops, pending for the children */
+	/** the splay subtree is to be reversed */
+	private final boolean[] reversed;
+	private final long[] add;
+
+	/** splay path - pushed top down */
+	private int[] stack = new int[64];
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * A forest of n single vertex trees, of weight 0.
+	 * @param n number of vertices
+	 * @throws IllegalArgumentException if n is negative
+	 */
+	public LinkCutTree(int n) {
+		if (n < 0)
+			throw new IllegalArgumentException("n: " + n);
+		this.n = n;
+		left = new int[n];
+		right = new int[n];
+		parent = new int[n];
+		Arrays.fill(left, NIL);
+		Arrays.fill(right, NIL);
+		Arrays.fill(parent, NIL);
+		weight = new long[n];
+		sum = new long[n];
+		min = new long[n];
+		minVertex = new int[n];
+		size = new int[n];
+		for (int v = 0; v < n; v++) {
+			minVertex[v] = v;
+			size[v] = 1;
+		}
+		reversed = new boolean[n];
+		add = new long[n];
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	private void check(int v) {
+		if (v < 0 || v >= n)
+			throw new IllegalArgumentException("vertex: " + v);
+	}
+
+	/** @return true if x is the root of its splay tree */
+	private boolean isRoot(int x) {
+		final int p = parent[x];
+		return p == NIL || (left[p] != x && right[p] != x);
+	}
+
+	/** add d to the weights of x's splay subtree */
+	private void apply(int x, long d) {
+		weight[x] += d;
+		sum[x] += d * size[x];
+		min[x] += d;
+		add[x] += d;
+	}
+
+	/** push the lazy ops of x to its children */
+	private void push(int x) {
+		final int l = left[x], r = right[x];
+		if (reversed[x]) {
+			left[x] = r;
+			right[x] = l;
+			if (l != NIL) reversed[l] ^= true;
+			if (r != NIL) reversed[r] ^= true;
+			reversed[x] = false;
+		}
+		if (add[x] != 0) {
+			if (l != NIL) apply(l, add[x]);
+			if (r != NIL) apply(r, add[x]);
+			add[x] = 0;
+		}
+	}
+
+	/** recompute the aggregates of x from its children */
+	private void pull(int x) {
+		final int l = left[x], r = right[x];
+		long s = weight[x], m = weight[x];
+		int mv = x, z = 1;
+		if (l != NIL) {
+			s += sum[l];
+			z += size[l];
+			if (min[l] <= m) { m = min[l]; mv = minVertex[l]; }
+		}
+		if (r != NIL) {
+			s += sum[r];
+			z += size[r];
+			if (min[r] < m) { m = min[r]; mv = minVertex[r]; }
+		}
+		sum[x] = s;
+		min[x] = m;
+		minVertex[x] = mv;
+		size[x] = z;
+	}
+
+	/** rotate x above its parent */
+	private void rotate(int x) {
+		final int p = parent[x], g = parent[p];
+		final boolean top = isRoot(p);
+		if (left[p] == x) {
+			final int b = right[x];
+			left[p] = b;
+			if (b != NIL) parent[b] = p;
+			right[x] = p;
+		} else {
+			final int b = left[x];
+			right[p] = b;
+			if (b != NIL) parent[b] = p;
+			left[x] = p;
+		}
+		parent[p] = x;
+		parent[x] = g;                                      /* or path-parent */
+		if (!top) {
+			if (left[g] == p) left[g] = x;
+			else right[g] = x;
+		}
+		pull(p);
+	}
+
+	/** bottom-up splay of x to the root of its splay tree */
+	private void splay(int x) {
+		int top = 0;
+		stack[top++] = x;
+		for (int y = x; !isRoot(y); y = parent[y]) {
+			if (top == stack.length)
+				stack = Arrays.copyOf(stack, top * 2);
+			stack[top++] = parent[y];
+		}
+		while (top > 0)
+			push(stack[--top]);                             /* top down */
+		while (!isRoot(x)) {
+			final int p = parent[x];
+			if (!isRoot(p)) {
+				final int g = parent[p];
+				rotate((left[g] == p) == (left[p] == x) ? p : x);   /* zig-zig : zig-zag */
+			}
+			rotate(x);
+		}
+		pull(x);
+	}
+
+	/**
+	 * Make the path from the root of x's tree to x preferred: x is then the
+	 * root of its splay tree, which holds that path and nothing deeper.
+	 * @return the last path-parent crossed - the lca of x and the vertex accessed before
+	 */
+	private int access(int x) {
+		int last = NIL;
+		for (int y = x; y != NIL; y = parent[y]) {
+			splay(y);
+			right[y] = last;
+			pull(y);
+			last = y;
+		}
+		splay(x);
+		return last;
+	}
+
+	/** @return the root of x's tree; splayed */
+	private int root(int x) {
+		access(x);
+		int r = x;
+		for (push(r); left[r] != NIL; push(r))
+			r = left[r];
+		splay(r);
+		return r;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : LinkCutTree
+	// ------------------------------------------------------------------------
+	/**
+	 * Make w the parent of v.
+	 * @param v root of its tree
+	 * @param w vertex of another tree
+	 * @throws IllegalArgumentException if v is not a root, or v and w are connected
+	 */
+	final public void link(int v, int w) {
+		check(v);
+		check(w);
+		access(v);
+		if (left[v] != NIL)                                 /* v has ancestors */
+			throw new IllegalArgumentException("not a root: " + v);
+		if (root(w) == v)
+			throw new IllegalArgumentException("connected: " + v + " " + w);
+		access(v);                                          /* v alone on its path */
+		parent[v] = w;
+	}
+
+	/**
+	 * Remove the edge of v to its parent.
+	 * @return false if v is a root
+	 */
+	final public boolean cut(int v) {
+		check(v);
+		access(v);
+		final int l = left[v];
+		if (l == NIL)
+			return false;
+		parent[l] = NIL;
+		left[v] = NIL;
+		pull(v);
+		return true;
+	}
+
+	/**
+	 * @return the parent of v; NIL if v is a root
+	 */
+	final public int parent(int v) {
+		check(v);
+		access(v);
+		int p = left[v];
+		if (p == NIL)
+			return NIL;
+		for (push(p); right[p] != NIL; push(p))
+			p = right[p];
+		splay(p);
+		return p;
+	}
+
+	/**
+	 * @return the root of v's tree
+	 */
+	final public int findRoot(int v) {
+		check(v);
+		return root(v);
+	}
+
+	/**
+	 * Make v the root of its tree, reversing the parent links on the path
+	 * from the old root to v.
+	 */
+	final public void evert(int v) {
+		check(v);
+		access(v);
+		reversed[v] ^= true;
+	}
+
+	/**
+	 * @return true if u and v are in the same tree
+	 */
+	final public boolean connected(int u, int v) {
+		check(u);
+		check(v);
+		return u == v || root(u) == root(v);
+	}
+
+	/**
+	 * @return the lowest common ancestor of u and v; NIL if not connected
+	 */
+	final public int lca(int u, int v) {
+		if (!connected(u, v))
+			return NIL;
+		access(u);
+		return access(v);
+	}
+
+	/**
+	 * @return the weight of v
+	 */
+	final public long weight(int v) {
+		check(v);
+		splay(v);                                           /* pushes pending adds */
+		return weight[v];
+	}
+
+	/**
+	 * Set the weight of v.
+	 */
+	final public void setWeight(int v, long w) {
+		check(v);
+		access(v);
+		weight[v] = w;
+		pull(v);
+	}
+
+	/**
+	 * @return the sum of the weights on the path from the root of v's tree to v
+	 */
+	final public long pathSum(int v) {
+		check(v);
+		access(v);
+		return sum[v];
+	}
+
+	/**
+	 * @return the least weight on the path from the root of v's tree to v
+	 */
+	final public long pathMin(int v) {
+		check(v);
+		access(v);
+		return min[v];
+	}
+
+	/**
+	 * @return a vertex of least weight on the path from the root of v's tree to v
+	 */
+	final public int pathMinVertex(int v) {
+		check(v);
+		access(v);
+		return minVertex[v];
+	}
+
+	/**
+	 * Add d to the weights on the path from the root of v's tree to v.
+	 */
+	final public void pathAdd(int v, long d) {
+		check(v);
+		access(v);
+		apply(v, d);
+	}
+
+	/**
+	 * @return the sum of the weights on the path from u to v
+	 * @throws IllegalArgumentException if u and v are not connected
+	 */
+	final public long pathSum(int u, int v) {
+		final int r = expose(u, v);
+		final long s = sum[v];
+		evert(r);
+		return s;
+	}
+
+	/**
+	 * @return the least weight on the path from u to v
+	 * @throws IllegalArgumentException if u and v are not connected
+	 */
+	final public long pathMin(int u, int v) {
+		final int r = expose(u, v);
+		final long m = min[v];
+		evert(r);
+		return m;
+	}
+
+	/**
+	 * Add d to the weights on the path from u to v.
+	 * @throws IllegalArgumentException if u and v are not connected
+	 */
+	final public void pathAdd(int u, int v, long d) {
+		final int r = expose(u, v);
+		apply(v, d);
+		evert(r);
+	}
+
+	/**
+	 * @return number of vertices
+	 */
+	final public int size() {
+		return n;
+	}
+
+	/**
+	 * Make the path from u to v the splay tree of v, by rerooting at u.
+	 * @return the root, to restore
+	 */
+	private int expose(int u, int v) {
+		check(u);
+		check(v);
+		final int r = root(u);
+		if (u != v && root(v) != r)
+			throw new IllegalArgumentException("not connected: " + u + " " + v);
+		evert(u);
+		access(v);
+		return r;
+	}
+}
@@ -0,0 +1,568 @@
+package oss.alphazero.util.ds2;
+
+import java.util.Comparator;
+
+/**
+ * Sleator and Wang's multi-splay tree: an ordered set with the API of
+ * {@link SplayTree}, and O(log log n)-competitive access sequences, vs.
+ * the O(log n) of a plain splay tree - for working sets with a structure
+ * that splaying all the way to the root does not learn.
+ * <ol>
+ * <li>A balanced reference tree P over the keys is split in preferred
+ * paths - each node's preferred child is on the side of its last access.
+ * Each path is kept in its own splay tree, and the splay trees are linked
+ * into a single binary search tree. Nodes hold their fixed depth in P, and
+ * the least depth in their splay subtree.</li>
+ * <li>An access splays up the splay trees of the search path; at each
+ * boundary it switches a preferred child, by a cut and a join of splay
+ * trees, as in Tango trees. O(log n) amortized per op.</li>
+ * <li>Inserts add leaves of P, and a scapegoat rebuild of the P subtree
+ * keeps P's height O(log n). Deletes move keys down to a leaf of P, and
+ * remove it; P is rebuilt when deletes shrink it by a third.</li>
+ * <li>{@link Node}s are handles on tree positions: a delete may move
+ * another key into the node of the deleted key.</li>
+ * <li>Null key values are not allowed and will throw {@link IllegalArgumentException}</li>
+ * <li>Keys are ordered by natural order or a {@link Comparator}.</li>
+ * </ol>
+ * Not thread safe - even lookups restructure the tree.
+ *
+ * @param K key type
+ *
+ * This code is in the public domain.
+ */
+public class MultiSplayTree<K> {
+	/** scapegoat balance: a P subtree is rebuilt if a child holds more than ALPHA of it */
+	private static final double ALPHA = 2.0 / 3;
+
+	public class Node {
+		Node(K key) {
+			this.key = key;
+		}
+		private K key;
+		private Node left;
+		private Node right;
+		/** BST parent - across splay trees */
+		private Node parent;
+		/** root of its splay tree - a preferred path */
+		private boolean isRoot = true;
+		/** depth in the reference tree */
+		private int depth;
+		/** least depth in its splay subtree */
+		private int minDepth;
+
+		/* read only accessors for traversals */
+		final public K key() { return key; }
+		final public Node right() { return right;}
+		final public Node left() { return left;}
+		@Override final
+		public String toString () {
+			K kR = right != null ? right.key : null;
+			K kL = left != null ? left.key : null;
+			return String.format("Node[%s] => (L:%s, R:%s)", key, kL, kR);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** root node (initially null) */
+	private Node root = null;
+
+	/** number of keys */
+	private int size = 0;
+
+	/** size at the last full rebuild, or since: deletes rebuild below ALPHA of it */
+	private int maxSize = 0;
+
+	/** key order - null for natural order */
+	private final Comparator<? super K> comparator;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * Keys are ordered by their natural order and must implement
+	 * {@link Comparable}; else {@link ClassCastException} on first use.
+	 */
+	public MultiSplayTree() {
+		this(null);
+	}
+
+	/**
+	 * @param comparator key order; null for natural order
+	 */
+	public MultiSplayTree(Comparator<? super K> comparator) {
+		this.comparator = comparator;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : splay trees
+	// ------------------------------------------------------------------------
+	/** compare per comparator or natural order */
+	@SuppressWarnings("unchecked")
+	private int compare(K k1, K k2) {
+		final Comparator<? super K> cmp = comparator;
+		return cmp == null ? ((Comparable<? super K>) k1).compareTo(k2) : cmp.compare(k1, k2);
+	}
+
+	/** @return true if n is a child in the same splay tree */
+	private boolean inPath(Node n) {
+		return n != null && !n.isRoot;
+	}
+
+	private void pull(Node x) {
+		int m = x.depth;
+		if (inPath(x.left) && x.left.minDepth < m) m = x.left.minDepth;
+		if (inPath(x.right) && x.right.minDepth < m) m = x.right.minDepth;
+		x.minDepth = m;
+	}
+
+	/** rotate x above its parent, in their splay tree */
+	private void rotate(Node x) {
+		final Node p = x.parent, g = p.parent;
+		if (p.left == x) {
+			p.left = x.right;
+			if (x.right != null) x.right.parent = p;
+			x.right = p;
+		} else {
+			p.right = x.left;
+			if (x.left != null) x.left.parent = p;
+			x.left = p;
+		}
+		p.parent = x;
+		x.parent = g;
+		if (g != null) {
+			if (g.left == p) g.left = x;
+			else g.right = x;
+		} else {
+			root = x;
+		}
+		if (p.isRoot) {
+			p.isRoot = false;
+			x.isRoot = true;
+		}
+		pull(p);
+	}
+
+	/** bottom-up splay of x in its splay tree - to its root, or under stop */
+	private void splay(Node x, Node stop) {
+		while (!x.isRoot && x.parent != stop) {
+			final Node p = x.parent;
+			if (!p.isRoot && p.parent != stop)
+				rotate((p.parent.left == p) == (p.left == x) ? p : x);   /* zig-zig : zig-zag */
+			rotate(x);
+		}
+		pull(x);
+	}
+
+	/** @return the next node in x's splay tree; null if none */
+	private Node pathSuccessor(Node x) {
+		if (inPath(x.right)) {
+			x = x.right;
+			while (inPath(x.left))
+				x = x.left;
+			return x;
+		}
+		while (!x.isRoot && x.parent.right == x)
+			x = x.parent;
+		return x.isRoot ? null : x.parent;
+	}
+
+	/** @return the previous node in x's splay tree; null if none */
+	private Node pathPredecessor(Node x) {
+		if (inPath(x.left)) {
+			x = x.left;
+			while (inPath(x.right))
+				x = x.right;
+			return x;
+		}
+		while (!x.isRoot && x.parent.left == x)
+			x = x.parent;
+		return x.isRoot ? null : x.parent;
+	}
+
+	/** @return the node of the splay subtree x nearest its parent's key with depth less than d */
+	private Node shallower(Node x, int d, boolean leftmost) {
+		for (;;) {
+			final Node near = leftmost ? x.left : x.right;
+			if (inPath(near) && near.minDepth < d)
+				x = near;
+			else if (x.depth < d)
+				return x;
+			else
+				x = leftmost ? x.right : x.left;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : multi-splay
+	// ------------------------------------------------------------------------
+	/**
+	 * Make the path of P from its root to x preferred, and x the root.
+	 */
+	private void access(final Node x) {
+		Node v = x;
+		splay(v, null);
+		while (v.parent != null) {
+			final Node u = v.parent;                        /* v hangs off u's path */
+			final int d = v.minDepth - 1;                   /* of the P parent of v's path */
+			final Node z;
+			final boolean left;                             /* v's side of z */
+			if (u.depth == d) {
+				z = u;
+				left = u.left == v;
+			} else if (u.left == v) {
+				z = pathPredecessor(u);
+				left = false;
+			} else {
+				z = pathSuccessor(u);
+				left = true;
+			}
+			splay(z, null);
+
+			// cut: the path below z is on the other side, up to the nearest shallower node
+			final Node c = left ? z.right : z.left;
+			if (inPath(c)) {
+				if (c.minDepth > d) {
+					c.isRoot = true;
+				} else {
+					final Node b = shallower(c, d, left);
+					splay(b, z);
+					final Node deeper = left ? b.left : b.right;
+					if (inPath(deeper))
+						deeper.isRoot = true;
+					pull(b);
+				}
+			}
+			// join: v's path, next to z or to the nearest node on its side
+			final Node j = left ? z.left : z.right;
+			if (j != v) {
+				final Node a = shallower(j, d, !left);
+				splay(a, z);
+				(left ? a.right : a.left).isRoot = false;   /* v */
+				pull(a);
+			} else {
+				v.isRoot = false;
+			}
+			pull(z);
+			v = z;
+		}
+		splay(x, null);
+	}
+
+	/** @return the last node on the search path of key; root must not be null */
+	private Node search(K key) {
+		Node t = root;
+		for (;;) {
+			final int c = compare(key, t.key);
+			final Node next = c < 0 ? t.left : c > 0 ? t.right : null;
+			if (next == null)
+				return t;
+			t = next;
+		}
+	}
+
+	private Node first(Node x) {
+		if (x != null)
+			while (x.left != null)
+				x = x.left;
+		return x;
+	}
+
+	private Node last(Node x) {
+		if (x != null)
+			while (x.right != null)
+				x = x.right;
+		return x;
+	}
+
+	/** @return the next node in key order; null if none */
+	private Node successor(Node x) {
+		if (x.right != null)
+			return first(x.right);
+		while (x.parent != null && x.parent.right == x)
+			x = x.parent;
+		return x.parent;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Node[] nodes(int n) {
+		return (Node[]) new MultiSplayTree<?>.Node[n];
+	}
+
+	/** @return the nodes in key order after lo, and before hi; null for no bound */
+	private int collect(Node lo, Node hi, Node[] into) {
+		int i = 0;
+		for (Node x = lo == null ? first(root) : successor(lo); x != hi; x = successor(x)) {
+			if (into != null)
+				into[i] = x;
+			i++;
+		}
+		return i;
+	}
+
+	/** @return the P subtree of nodes[lo, hi), each its own path, at depth d */
+	private Node build(Node[] nodes, int lo, int hi, int d, Node parent) {
+		if (lo >= hi)
+			return null;
+		final int mid = (lo + hi) >>> 1;
+		final Node x = nodes[mid];
+		x.parent = parent;
+		x.isRoot = true;
+		x.depth = x.minDepth = d;
+		x.left = build(nodes, lo, mid, d + 1, x);
+		x.right = build(nodes, mid + 1, hi, d + 1, x);
+		return x;
+	}
+
+	/** scapegoat: x is a new leaf of P, too deep - rebuild the P subtree of an ancestor */
+	private void rebuildAbove(Node x) {
+		access(x);
+		final Node[] path = nodes(x.depth + 1);          /* root to x, in key order */
+		int count = 0;
+		Node y = x;
+		while (inPath(y.left))
+			y = y.left;
+		for (; y != null; y = pathSuccessor(y))
+			path[count++] = y;
+		final int[] pos = new int[count];                   /* by depth */
+		for (int i = 0; i < count; i++)
+			pos[path[i].depth] = i;
+
+		int n = 1;                                          /* P subtree size of path[pos[d + 1]] */
+		for (int d = x.depth - 1; d >= 0; d--) {
+			final int p = pos[d], c = pos[d + 1];
+			final Node lo = bound(path, p, d, -1), hi = bound(path, p, d, 1);
+			final int sub = n + 1 + (c < p ? collect(path[p], hi, null) : collect(lo, path[p], null));
+			if (n > ALPHA * sub) {
+				final Node[] nodes = nodes(sub);
+				collect(lo, hi, nodes);
+				replace(lo, hi, nodes, d);
+				return;
+			}
+			n = sub;
+		}
+	}
+
+	/** @return the nearest node of the path on side dir of path[p], shallower than d */
+	private Node bound(Node[] path, int p, int d, int dir) {
+		for (int i = p + dir; i >= 0 && i < path.length; i += dir)
+			if (path[i].depth < d)
+				return path[i];
+		return null;
+	}
+
+	/** replace the nodes between lo and hi - of the root's path - by a P subtree at depth d */
+	private void replace(Node lo, Node hi, Node[] nodes, int d) {
+		if (lo != null)
+			splay(lo, null);
+		if (hi != null)
+			splay(hi, lo);                                  /* nodes are hi.left, or lo.right */
+		final Node t = build(nodes, 0, nodes.length, d, null);
+		if (hi != null) {
+			hi.left = t;
+			t.parent = hi;
+			pull(hi);
+		} else if (lo != null) {
+			lo.right = t;
+			t.parent = lo;
+		} else {
+			root = t;
+		}
+		if (lo != null)
+			pull(lo);
+	}
+
+	/** x is the root, and a leaf of P */
+	private void removeRoot(Node x) {
+		Node r = x.right;
+		if (x.left != null) {
+			final Node l = x.left;
+			final Node pred = last(l);                      /* an ancestor in P: on the root's path */
+			splay(pred, x);
+			pred.right = r;
+			if (r != null)
+				r.parent = pred;
+			r = pred;
+		}
+		root = r;
+		if (r != null) {
+			r.parent = null;
+			r.isRoot = true;
+			pull(r);
+		}
+		x.left = x.right = x.parent = null;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : MultiSplayTree
+	// ------------------------------------------------------------------------
+	/**
+	 * Insert into the tree.
+	 * @param key the item to insert.
+	 * @return true if successfully added; false if item is already present.
+	 */
+	final public boolean insert(K key) {
+		if(key == null)
+			throw new IllegalArgumentException("null key");
+
+		if (isEmpty()) {
+			root = new Node(key);
+			size = maxSize = 1;
+			return true;
+		}
+
+		final Node w = search(key);
+		final int c = compare(key, w.key);
+		access(w);
+		if (c == 0)
+			return false;
+
+		// the new key is a leaf of P, under the deeper of its neighbors w and o
+		final Node o = c < 0 ? last(w.left) : first(w.right);
+		Node parent = w;
+		if (o != null && o.depth > w.depth) {
+			access(o);
+			parent = o;
+		}
+		final Node lo = c < 0 ? o : w, hi = c < 0 ? w : o;
+		final Node x = new Node(key);
+		x.depth = x.minDepth = parent.depth + 1;
+		if (lo != null && lo.right == null) {
+			lo.right = x;
+			x.parent = lo;
+		} else {
+			hi.left = x;
+			x.parent = hi;
+		}
+		size++;
+		if (size > maxSize)
+			maxSize = size;
+
+		if (x.depth > Math.log(size) / Math.log(1 / ALPHA))
+			rebuildAbove(x);
+		access(x);
+		return true;
+	}
+
+	/**
+	 * Remove item from the tree.  Note that an access is performed
+	 * on tree even if the key does not exist.
+	 *
+	 * @param key the item to remove.
+	 * @return true if key was found and removed. false otherwise.
+	 */
+	final public boolean delete(K key) {
+		if(key == null)
+			throw new IllegalArgumentException("null key");
+
+		if (isEmpty())
+			return false;
+
+		Node x = search(key);
+		access(x);
+		if (compare(key, x.key) != 0)
+			return false;
+
+		// move the key down P to a leaf: swap with a deeper neighbor
+		for (;;) {
+			final Node pred = last(x.left), succ = first(x.right);
+			final Node next = pred != null && pred.depth > x.depth ? pred
+					: succ != null && succ.depth > x.depth ? succ : null;
+			if (next == null)
+				break;
+			x.key = next.key;
+			next.key = key;
+			x = next;
+			access(x);
+		}
+		removeRoot(x);
+		size--;
+
+		if (size < ALPHA * maxSize)
+			rebalance();
+		return true;
+	}
+
+	/**
+	 * @return the smallest item in tree; null if empty
+	 */
+	final public K minKey() {
+		if(isEmpty())
+			return null;
+		final Node x = first(root);
+		access(x);
+		return x.key;
+	}
+
+	/**
+	 * @return the largest key in the tree; null if empty
+	 */
+	final public K maxKey() {
+		if(isEmpty())
+			return null;
+		final Node x = last(root);
+		access(x);
+		return x.key;
+	}
+
+	/**
+	 * Find a key in the tree. The tree is accessed regardless
+	 * of whether item exists or not. Null keys are not contained.
+	 * @return true if contained; false otherwise
+	 */
+	final public boolean contains(K key) {
+		if(key == null)
+			return false;
+		return find(key) != null;
+	}
+
+	/**
+	 * Access the node with given key. On a miss, the last node
+	 * of the search path is accessed.
+	 * @param key
+	 * @return the node of key; null if not found
+	 */
+	final public Node find(K key){
+		if(key == null)
+			throw new IllegalArgumentException("null key");
+
+		if (isEmpty())
+			return null;
+
+		final Node x = search(key);
+		access(x);
+		return compare(key, x.key) == 0 ? x : null;
+	}
+
+	/**
+	 * @return the key order; null if natural order
+	 */
+	final public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * Test if the tree is logically empty.
+	 * @return true if empty, false otherwise.
+	 */
+	final public boolean isEmpty() {
+		return root == null;
+	}
+
+	final public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Rebuild the reference tree P perfectly balanced, each node on a path of
+	 * its own - forgets the preferred paths. O(n).
+	 */
+	final public void rebalance() {
+		final Node[] nodes = nodes(size);
+		collect(null, null, nodes);
+		root = build(nodes, 0, size, 0, null);
+		maxSize = size;
+	}
+}
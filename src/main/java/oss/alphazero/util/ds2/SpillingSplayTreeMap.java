@@ -0,0 +1,811 @@
+package oss.alphazero.util.ds2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A top-down splay tree map with an on-heap node budget: cold subtrees are
+ * spilled to a memory-mapped file and reloaded when touched.
+ * <ol>
+ * <li>Splaying moves accessed keys to the root, so the subtrees that have not
+ * been touched for a while hang deep in the tree. Each node records the
+ * operation that last splayed it to the root.</li>
+ * <li>When the number of entries on the heap exceeds the budget, the subtrees
+ * hanging off the paths to the most recently touched entries are serialized
+ * into the spill file and replaced by a stub each, until the heap is down to
+ * 3/4 of the budget.</li>
+ * <li>A subtree is written in preorder, each entry with the size of its left
+ * subtree, so every subtree of a spilled one is a range of the file. A splay
+ * that reaches a stub reloads the root entry only, with stubs for its children:
+ * the mapped file is read along the access path and nothing more.</li>
+ * <li>Reloaded entries are garbage in the spill file, reclaimed by
+ * {@link #compact()}, which also runs when the garbage outgrows the spilled entries.</li>
+ * </ol>
+ * The budget is soft: subtrees smaller than {@value #MIN_SPILL} entries are not
+ * spilled, and stubs take (a little) heap. Keys and values are serialized with
+ * the given {@link Codec}s; the key codec need not be order preserving.
+ * Null keys are not allowed; null values are.
+ * <p>
+ * Not thread safe - even lookups modify the tree. I/O errors of the spill file
+ * are thrown as {@link UncheckedIOException}.
+ *
+ * @param K key type
+ * @param V value type
+ *
+ * This code is in the public domain.
+ */
+public class SpillingSplayTreeMap<K, V> implements AutoCloseable {
+	/** smallest subtree (entries) worth a stub */
+	public static final int MIN_SPILL = 16;
+
+	/** spill file mapping size; larger records get a mapping of their own */
+	static final int SEGMENT_SIZE = 1 << 24;
+
+	/* record entry: flags, left subtree entry count and bytes, key length, key [, value length, value] */
+	private static final byte NULL_VALUE = 1;
+	private static final int ENTRY_SIZE = 17;
+	/* reference to a spilled subtree: flag, address, bytes, entry count */
+	private static final byte REF = 2;
+	private static final int REF_SIZE = 17;
+
+	// ------------------------------------------------------------------------
+	// Inner class: Node
+	// ------------------------------------------------------------------------
+	private static class Node<K, V> {
+		Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+		K key;
+		V value;
+		Node<K, V> left;
+		Node<K, V> right;
+		/** tick of the last splay to the root */
+		long touched;
+	}
+
+	/** a spilled subtree */
+	private static final class Stub<K, V> extends Node<K, V> {
+		Stub(long addr, int len, int count) {
+			super(null, null);
+			this.addr = addr;
+			this.len = len;
+			this.count = count;
+		}
+		/** segment << 32 | offset of the subtree in the spill file */
+		long addr;
+		/** subtree bytes */
+		final int len;
+		/** entries in the subtree */
+		final int count;
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	private final Node<K, V> header = new Node<K, V>(null, null);
+	private Node<K, V> root = null;
+
+	/** number of key-value mappings */
+	private int size = 0;
+	/** mappings on the heap */
+	private int live = 0;
+	/** heap entries that trigger a spill */
+	private final int budget;
+	/** heap entries that trigger the next spill, if the last could not get under budget */
+	private int nextSpill = 0;
+	/** operation counter */
+	private long tick = 0;
+
+	private final Comparator<? super K> comparator;
+	private final Codec<K> keys;
+	private final Codec<V> values;
+
+	/* spill file */
+	private final Path path;
+	private FileChannel channel;
+	private List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	/** file length mapped so far */
+	private long mapped = 0;
+	/** write position in the last segment */
+	private int segmentPos = 0;
+	/** bytes of records referenced by stubs */
+	private long spillBytes = 0;
+	/** bytes of reloaded records */
+	private long garbageBytes = 0;
+
+	/** record serialization buffer */
+	private byte[] out = new byte[4096];
+	private int outLen;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * Natural key order.
+	 * @see #SpillingSplayTreeMap(Path, int, Codec, Codec, Comparator)
+	 */
+	public SpillingSplayTreeMap(Path spillFile, int budget, Codec<K> keys, Codec<V> values) throws IOException {
+		this(spillFile, budget, keys, values, null);
+	}
+
+	/**
+	 * @param spillFile created, or truncated; deleted on {@link #close()}
+	 * @param budget entries kept on the heap, at least 4 * {@value #MIN_SPILL}
+	 * @param keys key serialization
+	 * @param values value serialization
+	 * @param comparator key order; null for natural order
+	 * @throws IOException if the spill file can not be created
+	 */
+	public SpillingSplayTreeMap(Path spillFile, int budget, Codec<K> keys, Codec<V> values, Comparator<? super K> comparator) throws IOException {
+		if (budget < 4 * MIN_SPILL)
+			throw new IllegalArgumentException("budget: " + budget);
+		if (keys == null || values == null)
+			throw new NullPointerException(keys == null ? "keys" : "values");
+		this.path = spillFile;
+		this.budget = budget;
+		this.keys = keys;
+		this.values = values;
+		this.comparator = comparator;
+		this.channel = open(spillFile);
+	}
+
+	private static FileChannel open(Path path) throws IOException {
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	/** compare per comparator or natural order */
+	@SuppressWarnings("unchecked")
+	private int compare(K k1, K k2) {
+		final Comparator<? super K> cmp = comparator;
+		return cmp == null ? ((Comparable<? super K>) k1).compareTo(k2) : cmp.compare(k1, k2);
+	}
+
+	/** @return n, or the reloaded subtree if n is a stub */
+	private Node<K, V> live(Node<K, V> n) {
+		return n instanceof Stub ? reload((Stub<K, V>) n) : n;
+	}
+
+	/** @return left child of t, reloaded if spilled */
+	private Node<K, V> left(Node<K, V> t) {
+		final Node<K, V> x = t.left;
+		return x instanceof Stub ? (t.left = reload((Stub<K, V>) x)) : x;
+	}
+
+	/** @return right child of t, reloaded if spilled */
+	private Node<K, V> right(Node<K, V> t) {
+		final Node<K, V> x = t.right;
+		return x instanceof Stub ? (t.right = reload((Stub<K, V>) x)) : x;
+	}
+
+	/**
+	 * Top-down splay, as {@link SplayTreeMap}, reloading the spilled subtrees
+	 * on the access path. The new root is marked as touched.
+	 * @return key compared to the (new) root key
+	 */
+	private int splay(K key) {
+		Node<K, V> l, r, t, y;
+		l = r = header;
+		t = root = live(root);
+		header.left = header.right = null;
+		int c = compare(key, t.key);                        /* one compare per node */
+		for (;;) {
+			if (c < 0) {
+				if (left(t) == null) break;
+				if ((c = compare(key, t.left.key)) < 0) {
+					y = t.left;                             /* rotate right */
+					t.left = y.right;
+					y.right = t;
+					t = y;
+					if (left(t) == null) break;
+					r.left = t;                             /* link right */
+					r = t;
+					t = t.left;
+					c = compare(key, t.key);
+				} else {
+					r.left = t;                             /* link right */
+					r = t;
+					t = t.left;
+				}
+			} else if (c > 0) {
+				if (right(t) == null) break;
+				if ((c = compare(key, t.right.key)) > 0) {
+					y = t.right;                            /* rotate left */
+					t.right = y.left;
+					y.left = t;
+					t = y;
+					if (right(t) == null) break;
+					l.right = t;                            /* link left */
+					l = t;
+					t = t.right;
+					c = compare(key, t.key);
+				} else {
+					l.right = t;                            /* link left */
+					l = t;
+					t = t.right;
+				}
+			} else {
+				break;
+			}
+		}
+		l.right = t.left;                                   /* assemble */
+		r.left = t.right;
+		t.left = header.right;
+		t.right = header.left;
+		root = t;
+		t.touched = ++tick;
+		return c;
+	}
+
+	/**
+	 * @return key compared to the (new) root key; -1 if the tree is empty
+	 * @throws IllegalArgumentException if key is null
+	 */
+	private int splayTo(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		if (root == null)
+			return -1;
+		return splay(key);
+	}
+
+	/** make n the root; c is n.key compared to the root key */
+	private void linkRoot(Node<K, V> n, int c) {
+		if (root != null) {
+			if (c < 0) {
+				n.left = root.left;
+				n.right = root;
+				root.left = null;
+			} else {
+				n.right = root.right;
+				n.left = root;
+				root.right = null;
+			}
+		}
+		n.touched = ++tick;
+		root = n;
+		size++;
+		live++;
+		enforceBudget();
+	}
+
+	/** unlink the root */
+	private void unlinkRoot() {
+		final Node<K, V> t = root;
+		if (t.left == null) {
+			root = t.right == null ? null : live(t.right);
+		} else {
+			final Node<K, V> x = t.right;
+			root = t.left;
+			splay(t.key);
+			root.right = x;
+		}
+		t.left = t.right = null;
+		size--;
+		live--;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : spill
+	// ------------------------------------------------------------------------
+	/**
+	 * Spill cold subtrees if over budget, down to 3/4 of it: keep the paths to
+	 * the most recently touched entries, halving their number until enough is
+	 * spilled. A spill that can not get back under budget (small subtrees only)
+	 * defers the next one by a quarter budget.
+	 */
+	private void enforceBudget() {
+		if (live <= budget || live <= nextSpill)
+			return;
+		final int target = budget - budget / 4;
+		for (int keep = target; live > target && keep > 0; keep /= 2)
+			spillCold(keep, target);
+		nextSpill = live > budget ? live + budget / 4 : 0;
+		if (garbageBytes > SEGMENT_SIZE && garbageBytes > spillBytes)
+			compact();
+	}
+
+	/**
+	 * Spill the maximal subtrees with at least MIN_SPILL entries on the heap and
+	 * none of the keep most recently touched entries, until no more than target
+	 * entries are on the heap.
+	 */
+	private void spillCold(int keep, int target) {
+		// preorder of the heap tree; stubs included
+		final List<Node<K, V>> order = new ArrayList<Node<K, V>>(live + live / 4);
+		final long[] ticks = new long[live];
+		int n = 0;
+		final ArrayDeque<Node<K, V>> stack = new ArrayDeque<Node<K, V>>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			final Node<K, V> x = stack.pop();
+			order.add(x);
+			if (x instanceof Stub)
+				continue;
+			ticks[n++] = x.touched;
+			if (x.right != null) stack.push(x.right);
+			if (x.left != null) stack.push(x.left);
+		}
+		if (keep >= n)
+			return;
+		Arrays.sort(ticks, 0, n);
+		final long cutoff = ticks[n - keep];
+
+		// reverse preorder visits children before their parent: per subtree
+		// its size in the order, heap entries and last touch
+		final int m = order.size();
+		final int[] span = new int[m];
+		final int[] heap = new int[m];
+		final long[] last = new long[m];
+		for (int i = m - 1; i >= 0 && live > target; i--) {
+			final Node<K, V> x = order.get(i);
+			span[i] = 1;
+			if (x instanceof Stub) {
+				last[i] = Long.MIN_VALUE;
+				continue;
+			}
+			final int li = x.left == null ? -1 : i + 1;
+			final int ri = x.right == null ? -1 : i + 1 + (li < 0 ? 0 : span[li]);
+			heap[i] = 1;
+			last[i] = x.touched;
+			if (li >= 0) { span[i] += span[li]; heap[i] += heap[li]; last[i] = Math.max(last[i], last[li]); }
+			if (ri >= 0) { span[i] += span[ri]; heap[i] += heap[ri]; last[i] = Math.max(last[i], last[ri]); }
+
+			// a cold child of a hot node (or of the root) is a maximal cold subtree
+			if (last[i] >= cutoff || i == 0) {
+				if (li >= 0 && last[li] < cutoff && heap[li] >= MIN_SPILL)
+					x.left = spill(x.left);
+				if (ri >= 0 && last[ri] < cutoff && heap[ri] >= MIN_SPILL && live > target)
+					x.right = spill(x.right);
+			}
+		}
+	}
+
+	/**
+	 * Serialize the subtree n, in preorder, into the spill file. Each entry has
+	 * the entry count and byte length of its left subtree, so any subtree of the
+	 * record is a range of it. Stubs in the subtree are written as references.
+	 */
+	private Stub<K, V> spill(Node<K, V> n) {
+		outLen = 0;
+		int entries = 0, heap = 0;
+		// frames of the entries whose subtrees are being written
+		Node<K, V>[] fn = newNodes(32);
+		int[] fpos = new int[32], fent = new int[32];
+		byte[] fstate = new byte[32];
+		int sp = 0;
+		Node<K, V> x = n;
+		for (;;) {
+			if (x != null) {
+				if (x instanceof Stub) {
+					final Stub<K, V> s = (Stub<K, V>) x;
+					ensure(REF_SIZE);
+					out[outLen++] = REF;
+					putLong(s.addr);
+					putInt(s.len);
+					putInt(s.count);
+					entries += s.count;
+				} else {
+					final byte[] k = keys.encode(x.key);
+					final byte[] v = x.value == null ? null : values.encode(x.value);
+					if (sp == fn.length) {
+						fn = Arrays.copyOf(fn, sp * 2);
+						fpos = Arrays.copyOf(fpos, sp * 2);
+						fent = Arrays.copyOf(fent, sp * 2);
+						fstate = Arrays.copyOf(fstate, sp * 2);
+					}
+					fn[sp] = x;
+					fpos[sp] = outLen;
+					fstate[sp] = 0;
+					ensure(ENTRY_SIZE + k.length + (v == null ? 0 : v.length));
+					out[outLen++] = v == null ? NULL_VALUE : 0;
+					outLen += 8;                            /* left count and bytes: patched */
+					putInt(k.length);
+					System.arraycopy(k, 0, out, outLen, k.length);
+					outLen += k.length;
+					if (v != null) {
+						putInt(v.length);
+						System.arraycopy(v, 0, out, outLen, v.length);
+						outLen += v.length;
+					}
+					entries++;
+					heap++;
+					fent[sp] = entries;
+					setInt(fpos[sp] + 5, outLen);               /* left subtree start, for now */
+					sp++;
+				}
+			}
+			if (sp == 0)
+				break;
+			final int f = sp - 1;
+			if (fstate[f] == 0) {                           /* write left subtree */
+				fstate[f] = 1;
+				x = fn[f].left;
+			} else if (fstate[f] == 1) {                    /* patch, write right subtree */
+				fstate[f] = 2;
+				setInt(fpos[f] + 1, entries - fent[f]);
+				setInt(fpos[f] + 5, outLen - getInt(fpos[f] + 5));
+				x = fn[f].right;
+			} else {
+				fn[--sp] = null;
+				x = null;
+			}
+		}
+		live -= heap;
+		return new Stub<K, V>(append(out, outLen), outLen, entries);
+	}
+
+	/**
+	 * @return stub of the subtree at addr in the spill file, resolving a reference
+	 */
+	private Stub<K, V> stub(long addr, int len, int count) {
+		final ByteBuffer buf = segments.get((int) (addr >>> 32));
+		final int pos = (int) addr;
+		if (buf.get(pos) != REF)
+			return new Stub<K, V>(addr, len, count);
+		garbageBytes += REF_SIZE;
+		spillBytes -= REF_SIZE;
+		return new Stub<K, V>(buf.getLong(pos + 1), buf.getInt(pos + 9), buf.getInt(pos + 13));
+	}
+
+	/**
+	 * Reload the root of the spilled subtree of s. Its subtrees remain spilled.
+	 */
+	private Node<K, V> reload(Stub<K, V> s) {
+		final ByteBuffer buf = segments.get((int) (s.addr >>> 32));
+		final int pos = (int) s.addr;
+		final int flags = buf.get(pos);
+		final int leftCount = buf.getInt(pos + 1);
+		final int leftBytes = buf.getInt(pos + 5);
+		final int klen = buf.getInt(pos + 9);
+		int end = pos + 13 + klen;
+		V value = null;
+		if ((flags & NULL_VALUE) == 0) {
+			final int vlen = buf.getInt(end);
+			value = values.decode(buf, end + 4, vlen);
+			end += 4 + vlen;
+		}
+		final Node<K, V> x = new Node<K, V>(keys.decode(buf, pos + 13, klen), value);
+		final int entryLen = end - pos;
+		final int rightCount = s.count - 1 - leftCount;
+		if (leftCount > 0)
+			x.left = stub(s.addr + entryLen, leftBytes, leftCount);
+		if (rightCount > 0)
+			x.right = stub(s.addr + entryLen + leftBytes, s.len - entryLen - leftBytes, rightCount);
+		live++;
+		garbageBytes += entryLen;
+		spillBytes -= entryLen;
+		return x;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K, V> Node<K, V>[] newNodes(int n) {
+		return (Node<K, V>[]) new Node<?, ?>[n];
+	}
+
+	private void ensure(int n) {
+		if (outLen + n > out.length)
+			out = Arrays.copyOf(out, Math.max(outLen + n, out.length * 2));
+	}
+
+	private void putInt(int v) {
+		setInt(outLen, v);
+		outLen += 4;
+	}
+
+	private void putLong(long v) {
+		putInt((int) (v >>> 32));
+		putInt((int) v);
+	}
+
+	private void setInt(int pos, int v) {
+		out[pos] = (byte) (v >>> 24);
+		out[pos + 1] = (byte) (v >>> 16);
+		out[pos + 2] = (byte) (v >>> 8);
+		out[pos + 3] = (byte) v;
+	}
+
+	private int getInt(int pos) {
+		return (out[pos] << 24) | ((out[pos + 1] & 0xFF) << 16) | ((out[pos + 2] & 0xFF) << 8) | (out[pos + 3] & 0xFF);
+	}
+
+	/** @return address of the record b[0, len) appended to the spill file */
+	private long append(byte[] b, int len) {
+		MappedByteBuffer seg = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+		if (seg == null || segmentPos + len > seg.capacity()) {
+			final int n = Math.max(SEGMENT_SIZE, len);
+			try {
+				seg = channel.map(FileChannel.MapMode.READ_WRITE, mapped, n);
+			} catch (IOException e) {
+				throw new UncheckedIOException("spill file mapping failed", e);
+			}
+			segments.add(seg);
+			mapped += n;
+			segmentPos = 0;
+		}
+		final ByteBuffer d = seg.duplicate();
+		d.position(segmentPos);
+		d.put(b, 0, len);
+		final long addr = ((long) (segments.size() - 1) << 32) | segmentPos;
+		segmentPos += len;
+		spillBytes += len;
+		return addr;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API
+	// ------------------------------------------------------------------------
+	/**
+	 * Insert the mapping if key is not present.
+	 * @return true if added; false if key is already present
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public boolean insert(K key, V value) {
+		final int c = splayTo(key);
+		if (c == 0)
+			return false;
+		linkRoot(new Node<K, V>(key, value), c);
+		return true;
+	}
+
+	/**
+	 * @return true if key was found and removed
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public boolean delete(K key) {
+		if (splayTo(key) != 0) {
+			enforceBudget();
+			return false;
+		}
+		unlinkRoot();
+		enforceBudget();
+		return true;
+	}
+
+	/**
+	 * Per {@link java.util.Map#put(Object, Object)}.
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V put(K key, V value) {
+		final int c = splayTo(key);
+		if (c == 0) {
+			final V oldv = root.value;
+			root.value = value;
+			enforceBudget();
+			return oldv;
+		}
+		linkRoot(new Node<K, V>(key, value), c);
+		return null;
+	}
+
+	/**
+	 * Per {@link java.util.Map#remove(Object)}.
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V remove(K key) {
+		if (splayTo(key) != 0) {
+			enforceBudget();
+			return null;
+		}
+		final V value = root.value;
+		unlinkRoot();
+		enforceBudget();
+		return value;
+	}
+
+	/**
+	 * @return value of key; null if not present (or null)
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V get(K key) {
+		final boolean hit = splayTo(key) == 0;
+		enforceBudget();
+		return hit ? root.value : null;
+	}
+
+	/**
+	 * @return true if key is present
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public boolean containsKey(K key) {
+		final boolean hit = splayTo(key) == 0;
+		enforceBudget();
+		return hit;
+	}
+
+	/**
+	 * @return the smallest key; null if empty
+	 */
+	final public K minKey() {
+		if (root == null)
+			return null;
+		Node<K, V> x = root;
+		while (left(x) != null)
+			x = x.left;
+		splay(x.key);
+		enforceBudget();
+		return x.key;
+	}
+
+	/**
+	 * @return the largest key; null if empty
+	 */
+	final public K maxKey() {
+		if (root == null)
+			return null;
+		Node<K, V> x = root;
+		while (right(x) != null)
+			x = x.right;
+		splay(x.key);
+		enforceBudget();
+		return x.key;
+	}
+
+	/** @return number of mappings */
+	final public int size() {
+		return size;
+	}
+
+	/** @return true if there are no mappings */
+	final public boolean isEmpty() {
+		return root == null;
+	}
+
+	/** @return the key order; null if natural order */
+	final public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	/** @return the heap entry budget */
+	final public int budget() {
+		return budget;
+	}
+
+	/** @return number of mappings on the heap */
+	final public int heapEntries() {
+		return live;
+	}
+
+	/** @return number of mappings in the spill file */
+	final public int spilledEntries() {
+		return size - live;
+	}
+
+	/** @return bytes of the spilled subtrees */
+	final public long spillBytes() {
+		return spillBytes;
+	}
+
+	/** @return bytes of reloaded subtrees still in the spill file */
+	final public long garbageBytes() {
+		return garbageBytes;
+	}
+
+	/**
+	 * Rewrite the spill file with the spilled entries only. Does not reload them.
+	 * @throws UncheckedIOException on failure; the map is unchanged
+	 */
+	final public void compact() {
+		final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		final List<Stub<K, V>> stubs = new ArrayList<Stub<K, V>>();
+		final ArrayDeque<Node<K, V>> stack = new ArrayDeque<Node<K, V>>();
+		if (root != null)
+			stack.push(root);
+		while (!stack.isEmpty()) {
+			final Node<K, V> x = stack.pop();
+			if (x instanceof Stub) {
+				stubs.add((Stub<K, V>) x);
+				continue;
+			}
+			if (x.right != null) stack.push(x.right);
+			if (x.left != null) stack.push(x.left);
+		}
+
+		final List<MappedByteBuffer> old = segments;
+		final FileChannel oldChannel = channel;
+		final long oldMapped = mapped, oldSpillBytes = spillBytes;
+		final int oldPos = segmentPos;
+		final long[] addrs = new long[stubs.size()];
+		try {
+			channel = open(tmp);
+			segments = new ArrayList<MappedByteBuffer>();
+			mapped = 0;
+			segmentPos = 0;
+			spillBytes = 0;
+			// copy the subtree of each stub, then the subtrees it references;
+			// a copied reference is patched with the address of its copy
+			final ArrayDeque<long[]> refs = new ArrayDeque<long[]>();   /* old address, bytes, address of the reference */
+			for (int i = 0; i < addrs.length; i++) {
+				final Stub<K, V> s = stubs.get(i);
+				addrs[i] = copy(old, s.addr, s.len, refs);
+				while (!refs.isEmpty()) {
+					final long[] ref = refs.pop();
+					final long addr = copy(old, ref[0], (int) ref[1], refs);
+					segments.get((int) (ref[2] >>> 32)).putLong((int) ref[2] + 1, addr);
+				}
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | UncheckedIOException e) {
+			try {
+				if (channel != oldChannel)
+					channel.close();
+				Files.deleteIfExists(tmp);
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			channel = oldChannel;
+			segments = old;
+			mapped = oldMapped;
+			segmentPos = oldPos;
+			spillBytes = oldSpillBytes;
+			throw e instanceof UncheckedIOException ? (UncheckedIOException) e
+					: new UncheckedIOException("spill file compaction failed", (IOException) e);
+		}
+		for (int i = 0; i < addrs.length; i++)
+			stubs.get(i).addr = addrs[i];
+		garbageBytes = 0;
+		try {
+			oldChannel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Append a copy of the len bytes of the subtree at addr in the from segments,
+	 * and push the references in it to refs.
+	 * @return address of the copy
+	 */
+	private long copy(List<MappedByteBuffer> from, long addr, int len, ArrayDeque<long[]> refs) {
+		final ByteBuffer b = from.get((int) (addr >>> 32)).duplicate();
+		b.position((int) addr);
+		outLen = 0;
+		ensure(len);
+		b.get(out, 0, len);
+		final long copy = append(out, len);
+		for (int pos = 0; pos < len; ) {
+			if (out[pos] == REF) {
+				final long ref = ((long) getInt(pos + 1) << 32) | (getInt(pos + 5) & 0xFFFFFFFFL);
+				refs.push(new long[] { ref, getInt(pos + 9), copy + pos });
+				pos += REF_SIZE;
+			} else {
+				final int klen = getInt(pos + 9);
+				pos += 13 + klen;
+				if ((out[pos - 13 - klen] & NULL_VALUE) == 0)
+					pos += 4 + getInt(pos);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Close and delete the spill file. The map must not be used afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		root = null;
+		segments = new ArrayList<MappedByteBuffer>();
+		try {
+			channel.close();
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+}
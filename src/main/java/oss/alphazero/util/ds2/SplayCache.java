@@ -0,0 +1,327 @@
+package oss.alphazero.util.ds2;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A bounded, ordered cache on a {@link SplayTreeMap}: unlike a
+ * {@link java.util.LinkedHashMap} LRU, it answers {@link #range(Object, Object, BiConsumer) range}
+ * scans.
+ * <ol>
+ * <li>Capacity is in entries, or in the weights given by a {@link Weigher}.</li>
+ * <li>The splay tree is the recency order: accessed keys are splayed to the root
+ * and cold ones sink to the leaves. When the cache is over capacity, it
+ * descends from the root to a few leaves along random paths, without splaying,
+ * and evicts one of them per the {@link Eviction} policy: the deepest, or the
+ * least recently used by the access ticks kept in the entries. There is no
+ * separate recency list.</li>
+ * <li>Hit, miss and eviction counters, and {@link EvictionListener}s.</li>
+ * </ol>
+ * Not thread safe: like the map, even lookups modify the cache.
+ *
+ * @param K key type
+ * @param V value type
+ *
+ * This code is in the public domain.
+ */
+public class SplayCache<K, V> {
+	/** which of the sampled leaves is evicted */
+	public enum Eviction {
+		/** the deepest - no per access bookkeeping */
+		DEEP,
+		/** the least recently used per access ticks - approximate LRU */
+		LRU
+	}
+
+	/** weight of an entry against the capacity */
+	@FunctionalInterface
+	public interface Weigher<K, V> {
+		/** @return non-negative weight of the mapping, e.g. its size in bytes */
+		int weigh(K key, V value);
+	}
+
+	/** notified of entries evicted for capacity - not of removed or replaced ones */
+	@FunctionalInterface
+	public interface EvictionListener<K, V> {
+		void onEviction(K key, V value);
+	}
+
+	/** leaves sampled per eviction */
+	static final int SAMPLES = 4;
+
+	/** cached value: weight and last access tick */
+	private static final class Slot<V> {
+		final V value;
+		final int weight;
+		long tick;
+
+		Slot(V value, int weight, long tick) {
+			this.value = value;
+			this.weight = weight;
+			this.tick = tick;
+		}
+	}
+
+	private static final Comparator<Slot<?>> BY_TICK = (a, b) -> Long.compare(a.tick, b.tick);
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	private final SplayTreeMap<K, Slot<V>> map;
+	private final long capacity;
+	private final Weigher<? super K, ? super V> weigher;
+	private final Eviction eviction;
+	private final List<EvictionListener<? super K, ? super V>> listeners = new CopyOnWriteArrayList<EvictionListener<? super K, ? super V>>();
+	private final Random rnd = new Random();
+
+	/** sum of the weights of the entries */
+	private long weight = 0;
+	/** access clock */
+	private long ticks = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * A natural order, approximate LRU cache of up to capacity entries.
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public SplayCache(int capacity) {
+		this(capacity, null, null, Eviction.LRU);
+	}
+
+	/**
+	 * @param capacity maximum total weight
+	 * @param weigher weight of entries; null for a weight of 1 per entry
+	 * @param comparator key order; null for natural order
+	 * @param eviction which cold entry to evict
+	 * @throws IllegalArgumentException if capacity is not positive or eviction is null
+	 */
+	public SplayCache(long capacity, Weigher<? super K, ? super V> weigher, Comparator<? super K> comparator, Eviction eviction) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity: " + capacity);
+		if (eviction == null)
+			throw new IllegalArgumentException("null eviction");
+		this.map = new SplayTreeMap<K, Slot<V>>(comparator);
+		this.capacity = capacity;
+		this.weigher = weigher;
+		this.eviction = eviction;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	private int weigh(K key, V value) {
+		if (weigher == null)
+			return 1;
+		final int w = weigher.weigh(key, value);
+		if (w < 0)
+			throw new IllegalArgumentException("negative weight of " + key + ": " + w);
+		return w;
+	}
+
+	/** evict sampled cold entries until within capacity */
+	private void evict() {
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		final Comparator<? super Slot<V>> order = eviction == Eviction.LRU ? (Comparator) BY_TICK : null;
+		while (weight > capacity) {
+			final K key = map.sampleLeaf(SAMPLES, rnd, order);
+			final Slot<V> slot = map.remove(key);
+			weight -= slot.weight;
+			evicted(key, slot);
+		}
+	}
+
+	private void evicted(K key, Slot<V> slot) {
+		evictions++;
+		for (EvictionListener<? super K, ? super V> l : listeners)
+			l.onEviction(key, slot.value);
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : SplayCache
+	// ------------------------------------------------------------------------
+	/**
+	 * @return the cached value of key; null on a miss (or if null is cached)
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public V get(K key) {
+		final Slot<V> slot = map.get(key);
+		if (slot == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		slot.tick = ++ticks;
+		return slot.value;
+	}
+
+	/**
+	 * Cache the mapping, then evict cold entries while over capacity. An entry
+	 * heavier than the capacity is evicted right away, in place of any others;
+	 * the value it replaces is removed.
+	 * @return the previously cached value; null if none
+	 * @throws IllegalArgumentException if key is null, or its weight is negative
+	 */
+	final public V put(K key, V value) {
+		if (key == null)
+			throw new IllegalArgumentException("null key");
+		final Slot<V> slot = new Slot<V>(value, weigh(key, value), ++ticks);
+		final Slot<V> old;
+		if (slot.weight > capacity) {
+			old = map.remove(key);
+			evicted(key, slot);
+		} else {
+			old = map.put(key, slot);
+			weight += slot.weight;
+		}
+		if (old != null)
+			weight -= old.weight;
+		evict();
+		return old == null ? null : old.value;
+	}
+
+	/**
+	 * Per {@link java.util.Map#computeIfAbsent(Object, Function)}: on a miss,
+	 * cache the loaded value, unless null. A loaded value heavier than the
+	 * capacity is returned but evicted right away.
+	 * @throws IllegalArgumentException if key is null
+	 * @throws java.util.ConcurrentModificationException if the loader modified the cache
+	 */
+	final public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+		@SuppressWarnings("unchecked")
+		final Slot<V>[] loaded = (Slot<V>[]) new Slot<?>[1];    /* set on a miss */
+		final Slot<V> slot = map.computeIfAbsent(key, k -> {
+			final V value = loader.apply(k);
+			if (value == null)
+				return null;
+			loaded[0] = new Slot<V>(value, weigh(k, value), ++ticks);
+			return loaded[0].weight > capacity ? null : loaded[0];
+		});
+		if (slot != null && slot != loaded[0]) {
+			hits++;
+			slot.tick = ++ticks;
+			return slot.value;
+		}
+		misses++;
+		if (loaded[0] == null)
+			return null;
+		if (slot == null) {
+			evicted(key, loaded[0]);
+			return loaded[0].value;
+		}
+		weight += slot.weight;
+		evict();
+		return slot.value;
+	}
+
+	/**
+	 * Remove the mapping - not an eviction.
+	 * @return the removed value; null if none
+	 */
+	final public V remove(K key) {
+		final Slot<V> slot = map.remove(key);
+		if (slot == null)
+			return null;
+		weight -= slot.weight;
+		return slot.value;
+	}
+
+	/**
+	 * Whether key is cached. Not counted as a hit or miss and does not refresh
+	 * the entry, but it is splayed.
+	 */
+	final public boolean containsKey(K key) {
+		return map.containsKey(key);
+	}
+
+	/**
+	 * Visit the cached mappings with keys in [from, to) in key order, per
+	 * {@link SplayTreeMap#range(Object, Object, BiConsumer)}. Scans are not
+	 * counted as hits and do not refresh the entries, so a large scan does not
+	 * flush the hot ones.
+	 * @param from least key, inclusive; null for no bound
+	 * @param to greatest key, exclusive; null for no bound
+	 */
+	final public void range(K from, K to, BiConsumer<? super K, ? super V> action) {
+		map.range(from, to, (k, slot) -> action.accept(k, slot.value));
+	}
+
+	/** @param listener notified of each eviction, on the evicting thread */
+	final public void addEvictionListener(EvictionListener<? super K, ? super V> listener) {
+		if (listener == null)
+			throw new IllegalArgumentException("null listener");
+		listeners.add(listener);
+	}
+
+	final public void removeEvictionListener(EvictionListener<? super K, ? super V> listener) {
+		listeners.remove(listener);
+	}
+
+	/** @return number of cached entries */
+	final public int size() {
+		return map.size();
+	}
+
+	/** @return total weight of the cached entries; size if unweighed */
+	final public long weight() {
+		return weight;
+	}
+
+	/** @return maximum total weight */
+	final public long capacity() {
+		return capacity;
+	}
+
+	/** @return eviction policy */
+	final public Eviction eviction() {
+		return eviction;
+	}
+
+	/** @return key order; null for natural order */
+	final public Comparator<? super K> comparator() {
+		return map.comparator();
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : stats
+	// ------------------------------------------------------------------------
+	/** @return lookups that found a cached value */
+	final public long hits() {
+		return hits;
+	}
+
+	/** @return lookups that did not */
+	final public long misses() {
+		return misses;
+	}
+
+	/** @return hits / (hits + misses); NaN if none */
+	final public double hitRatio() {
+		return (double) hits / (hits + misses);
+	}
+
+	/** @return entries evicted for capacity */
+	final public long evictions() {
+		return evictions;
+	}
+
+	/** Zero the hit, miss and eviction counters. */
+	final public void resetStats() {
+		hits = misses = evictions = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SplayCache[size:%d weight:%d/%d %s hits:%d misses:%d evictions:%d]",
+				size(), weight, capacity, eviction, hits, misses, evictions);
+	}
+}
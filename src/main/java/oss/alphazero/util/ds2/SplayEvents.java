@@ -0,0 +1,158 @@
+package oss.alphazero.util.ds2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * JDK Flight Recorder support for {@link SplayTree} and {@link SplayTreeMap}.
+ * <ol>
+ * <li>{@link DeepSplayEvent}: emitted by any splay whose access path is longer than
+ * the tree's threshold. The default threshold is set with
+ * <code>-Dds2.jfr.deepSplayThreshold=&lt;depth&gt;</code> (default 1024) and can be
+ * changed per tree with <code>setDeepSplayThreshold(int)</code>.</li>
+ * <li>{@link SplayShapeEvent}: periodic (default every 10s) access path summary of
+ * trees that opted in with <code>enableShapeEvents(String)</code>.</li>
+ * </ol>
+ * Both are compiled out of the splay loop with <code>-Dds2.jfr=false</code>.
+ * <p>
+ * The shape summary is computed from the depths of the splays performed during
+ * the period and not by walking the tree: the periodic hook runs on a JFR thread
+ * and a splay tree cannot be safely inspected while its owner is using it. For a
+ * structural analysis use {@link TreeShape} from the owning thread.
+ *
+ * This code is in the public domain.
+ */
+public final class SplayEvents {
+	/** global switch - set with -Dds2.jfr=false to compile out event support */
+	static final boolean ENABLED = !"false".equals(System.getProperty("ds2.jfr"));
+
+	/** default deep splay threshold for new trees */
+	static final int DEEP_SPLAY_THRESHOLD = Integer.getInteger("ds2.jfr.deepSplayThreshold", 1024);
+
+	/** monitors of trees that opted in to shape events - weakly held by their trees */
+	private static final Map<Monitor, Boolean> monitors = new WeakHashMap<Monitor, Boolean>();
+
+	/** set once the periodic hook is registered with JFR */
+	private static boolean hooked = false;
+
+	private SplayEvents() { }
+
+	// ------------------------------------------------------------------------
+	// Inner class: Monitor
+	// ------------------------------------------------------------------------
+	/**
+	 * Per-tree access path counters for the periodic shape event. Updated by
+	 * the tree's owner thread, read (racily) by the JFR periodic thread: a
+	 * summary may be off by the splays that raced with it.
+	 */
+	static final class Monitor {
+		final String name;
+		final String treeClass;
+
+		/* updated by owner */
+		long splays;
+		long depthSum;
+		int maxDepth;
+		int size;
+
+		/* owned by the periodic hook */
+		private long lastSplays;
+		private long lastDepthSum;
+
+		Monitor(String name, String treeClass) {
+			this.name = name;
+			this.treeClass = treeClass;
+		}
+
+		final void onSplay(int depth, int size) {
+			this.splays++;
+			this.depthSum += depth;
+			if (depth > maxDepth)
+				maxDepth = depth;
+			this.size = size;
+		}
+
+		final void emit() {
+			final SplayShapeEvent e = new SplayShapeEvent();
+			final long splays = this.splays;
+			final long depthSum = this.depthSum;
+			final int size = this.size;
+
+			e.tree = name;
+			e.treeClass = treeClass;
+			e.size = size;
+			e.optimalDepth = 32 - Integer.numberOfLeadingZeros(size);
+			e.splays = splays - lastSplays;
+			e.meanDepth = e.splays == 0 ? 0 : (double)(depthSum - lastDepthSum) / e.splays;
+			e.maxDepth = maxDepth;
+			e.skew = e.optimalDepth == 0 ? 0 : e.meanDepth / e.optimalDepth;
+			e.commit();
+
+			lastSplays = splays;
+			lastDepthSum = depthSum;
+			maxDepth = 0;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Trees only
+	// ------------------------------------------------------------------------
+	/** emit a deep splay event - called off the hot path by the trees */
+	static void deepSplay(Class<?> treeClass, SplayOp op, int depth, int rotations, int size) {
+		final DeepSplayEvent e = new DeepSplayEvent();
+		if (!e.isEnabled())
+			return;
+		e.treeClass = treeClass.getSimpleName();
+		e.operation = op.name();
+		e.depth = depth;
+		e.rotations = rotations;
+		e.size = size;
+		e.commit();
+	}
+
+	/** create and register a monitor for a tree */
+	static Monitor monitor(String name, Class<?> treeClass, int size) {
+		if (name == null)
+			throw new IllegalArgumentException("null name");
+		if (!ENABLED)
+			throw new IllegalStateException("JFR events are disabled (-Dds2.jfr=false)");
+
+		final Monitor m = new Monitor(name, treeClass.getSimpleName());
+		m.size = size;
+		synchronized (monitors) {
+			if (!hooked) {
+				FlightRecorder.addPeriodicEvent(SplayShapeEvent.class, new Runnable() {
+					@Override public void run() { emitShapes(); }
+				});
+				hooked = true;
+			}
+			monitors.put(m, Boolean.TRUE);
+		}
+		return m;
+	}
+
+	/** unregister a monitor; no-op if null */
+	static void unmonitor(Monitor m) {
+		if (m == null)
+			return;
+		synchronized (monitors) {
+			monitors.remove(m);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	private static void emitShapes() {
+		final List<Monitor> snapshot;
+		synchronized (monitors) {
+			snapshot = new ArrayList<Monitor>(monitors.keySet());
+		}
+		for (Monitor m : snapshot)
+			m.emit();
+	}
+}
@@ -0,0 +1,530 @@
+package oss.alphazero.util.ds2;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Frozen, memory-mappable image of a {@link SplayTreeMap}.
+ * <p>
+ * Layout (all numbers big endian):
+ * <pre>
+ * header   64 bytes   magic "DS2I", version, flags, count,
+ *                     index offset, data offset, data length,
+ *                     warm start offset, warm start length
+ * index    count * 16 per entry, in Eytzinger order of the keys:
+ *                     data offset (8), key length (4), value length (4; -1 for null)
+ * data                key and value bytes per entry, in key order
+ * warm     optional, per {@link WarmStart}: the tree shape, 2 bits per node in
+ *                     preorder, or the key order ranks (4) of the hot keys
+ * </pre>
+ * Keys are encoded with an order preserving {@link Codec} and the index is the
+ * implicit balanced search tree of the sorted keys, so a {@link Reader} queries
+ * the mapped file directly: no deserialization and O(log n) binary compares
+ * per lookup. {@link #load(Path, Codec, Codec, Comparator)} builds a mutable
+ * SplayTreeMap from the (sorted) data in O(n): balanced, or warm started
+ * with the exact shape or the hot keys of the map the image was written from.
+ * <p>
+ * Images are written to a temporary file that is then atomically renamed, so
+ * a reader never sees a partial image. Images are limited to 2GB. An image of
+ * a {@link SplayTreeMap.Snapshot} can be written in the background while the
+ * map is in use, see {@link #writeAsync(SplayTreeMap, Codec, Codec, Path, Executor)}.
+ *
+ * This code is in the public domain.
+ */
+public final class SplayImage {
+	/** "DS2I" */
+	public static final int MAGIC = 0x44533249;
+	/** 2: shape and index entries are validated on load and open */
+	public static final int VERSION = 2;
+
+	static final int HEADER_SIZE = 64;
+	static final int ENTRY_SIZE = 16;
+
+	/* header flags: warm start section */
+	static final int FLAG_SHAPE = 1;
+	static final int FLAG_HOT = 2;
+
+	private SplayImage() { }
+
+	// ------------------------------------------------------------------------
+	// Inner class: WarmStart
+	// ------------------------------------------------------------------------
+	/**
+	 * What an image records of the tree, beyond its mappings, so that a
+	 * loaded map has its hot keys near the root from the start.
+	 */
+	public static final class WarmStart {
+		/** mappings only: loaded balanced */
+		public static final WarmStart NONE = new WarmStart(0, 0);
+		/** the exact tree shape, 2 bits per entry: loaded as it was */
+		public static final WarmStart SHAPE = new WarmStart(FLAG_SHAPE, 0);
+
+		/**
+		 * The k keys nearest the root, see {@link SplayTreeMap#hotKeys(int)}:
+		 * loaded balanced, then {@link SplayTreeMap#warm(java.util.List) warmed}.
+		 * 4 bytes per key.
+		 */
+		public static WarmStart hot(int k) {
+			if (k <= 0)
+				throw new IllegalArgumentException("k: " + k);
+			return new WarmStart(FLAG_HOT, k);
+		}
+
+		final int flag;
+		final int k;
+
+		private WarmStart(int flag, int k) {
+			this.flag = flag;
+			this.k = k;
+		}
+
+		/** @return the warm start section */
+		byte[] encode(byte[] shape, int[] ranks) {
+			if (flag == FLAG_SHAPE)
+				return shape;
+			if (flag == FLAG_HOT) {
+				final ByteBuffer b = ByteBuffer.allocate(4 * ranks.length);
+				for (int r : ranks)
+					b.putInt(r);
+				return b.array();
+			}
+			return new byte[0];
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : write / load
+	// ------------------------------------------------------------------------
+	/**
+	 * Write an image of the map, without warm start. The map is not splayed.
+	 * @see #write(SplayTreeMap, Codec, Codec, Path, WarmStart)
+	 */
+	public static <K, V> void write(SplayTreeMap<K, V> map, Codec<? super K> keys, Codec<? super V> values, Path path) throws IOException {
+		write(map, keys, values, path, WarmStart.NONE);
+	}
+
+	/**
+	 * Write an image of the map. The map is not splayed.
+	 * @throws IllegalArgumentException if the key codec does not preserve the map order
+	 * @throws IOException on write failure; the target is unchanged
+	 */
+	public static <K, V> void write(SplayTreeMap<K, V> map, Codec<? super K> keys, Codec<? super V> values, Path path, WarmStart warm) throws IOException {
+		final byte[] section = warm.encode(warm.flag == FLAG_SHAPE ? map.shape() : null, warm.flag == FLAG_HOT ? map.hotRanks(warm.k) : null);
+		write(map.size(), sink -> map.inOrder((k, v) -> sink.accept(keys.encode(k), v == null ? null : values.encode(v))), warm.flag, section, path);
+	}
+
+	/**
+	 * Write an image of a snapshot, without warm start.
+	 * @see #write(SplayTreeMap.Snapshot, Codec, Codec, Path, WarmStart)
+	 */
+	public static <K, V> void write(SplayTreeMap.Snapshot<K, V> snapshot, Codec<? super K> keys, Codec<? super V> values, Path path) throws IOException {
+		write(snapshot, keys, values, path, WarmStart.NONE);
+	}
+
+	/**
+	 * Write an image of a snapshot. Any thread may write it while the map is in use.
+	 * @throws IllegalArgumentException if the key codec does not preserve the map order
+	 * @throws IOException on write failure; the target is unchanged
+	 */
+	public static <K, V> void write(SplayTreeMap.Snapshot<K, V> snapshot, Codec<? super K> keys, Codec<? super V> values, Path path, WarmStart warm) throws IOException {
+		final byte[] section = warm.encode(warm.flag == FLAG_SHAPE ? SplayTreeMap.shape(snapshot) : null,
+				warm.flag == FLAG_HOT ? SplayTreeMap.hotRanks(snapshot, warm.k) : null);
+		write(snapshot.size(), sink -> snapshot.forEach((k, v) -> sink.accept(keys.encode(k), v == null ? null : values.encode(v))), warm.flag, section, path);
+	}
+
+	/**
+	 * Checkpoint the map in the background, without warm start.
+	 * @see #writeAsync(SplayTreeMap, Codec, Codec, Path, WarmStart, Executor)
+	 */
+	public static <K, V> CompletableFuture<Path> writeAsync(SplayTreeMap<K, V> map, Codec<? super K> keys, Codec<? super V> values,
+			Path path, Executor executor)
+	{
+		return writeAsync(map, keys, values, path, WarmStart.NONE, executor);
+	}
+
+	/**
+	 * Checkpoint the map in the background: take a {@link SplayTreeMap#snapshot()}
+	 * and write its image with the executor. The calling thread must own the map;
+	 * the map may be used as soon as this returns.
+	 * @return completes when the image is written (exceptionally per {@link #write(SplayTreeMap.Snapshot, Codec, Codec, Path, WarmStart)})
+	 */
+	public static <K, V> CompletableFuture<Path> writeAsync(SplayTreeMap<K, V> map, Codec<? super K> keys, Codec<? super V> values,
+			Path path, WarmStart warm, Executor executor)
+	{
+		final SplayTreeMap.Snapshot<K, V> snapshot = map.snapshot();
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try (SplayTreeMap.Snapshot<K, V> s = snapshot) {
+					write(s, keys, values, path, warm);
+					return path;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, executor);
+		} catch (RuntimeException e) {
+			snapshot.close();                               /* rejected */
+			throw e;
+		}
+	}
+
+	/**
+	 * Write an image of n encoded entries in key order, streamed from source:
+	 * the data is written first, then the warm start section, header and index.
+	 * @throws IllegalArgumentException if the keys are not strictly increasing
+	 */
+	static void write(int n, Consumer<BiConsumer<byte[], byte[]>> source, int flags, byte[] warm, Path path) throws IOException {
+		final long indexOffset = HEADER_SIZE;
+		final long dataOffset = indexOffset + (long) n * ENTRY_SIZE;
+		final long[] offsets = new long[n];
+		final int[] keyLens = new int[n];
+		final int[] valLens = new int[n];
+
+		final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ch.position(dataOffset);
+			final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+			final long[] length = { 0 };
+			final int[] i = { 0 };
+			final byte[][] prev = { null };
+			try {
+				source.accept((k, v) -> {
+					final int e = i[0]++;
+					if (e >= n)
+						throw new IllegalStateException("more than " + n + " entries");
+					if (prev[0] != null && compare(prev[0], k) >= 0)
+						throw new IllegalArgumentException("key codec does not preserve map order at " + e);
+					prev[0] = k;
+					offsets[e] = length[0];
+					keyLens[e] = k.length;
+					valLens[e] = v == null ? -1 : v.length;
+					length[0] += k.length + (v == null ? 0 : v.length);
+					if (dataOffset + length[0] > Integer.MAX_VALUE)
+						throw new UncheckedIOException(new IOException("image too large: " + (dataOffset + length[0])));
+					try {
+						data.write(k);
+						if (v != null)
+							data.write(v);
+					} catch (IOException x) {
+						throw new UncheckedIOException(x);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			if (i[0] != n)
+				throw new IllegalStateException(i[0] + " entries, expected " + n);
+			final long warmOffset = dataOffset + length[0];
+			if (warmOffset + warm.length > Integer.MAX_VALUE)
+				throw new IOException("image too large: " + (warmOffset + warm.length));
+			data.write(warm);
+			data.flush();
+
+			ch.position(0);
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(flags);
+			out.writeInt(n);
+			out.writeLong(indexOffset);
+			out.writeLong(dataOffset);
+			out.writeLong(length[0]);
+			out.writeLong(warmOffset);
+			out.writeLong(warm.length);
+			out.write(new byte[HEADER_SIZE - 56]);
+
+			final int[] rank = Eytzinger.ranks(n);
+			for (int k = 1; k <= n; k++) {
+				final int r = rank[k];
+				out.writeLong(offsets[r]);
+				out.writeInt(keyLens[r]);
+				out.writeInt(valLens[r]);
+			}
+			out.flush();
+			ch.force(true);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Load an image into a new natural order SplayTreeMap.
+	 * @see #load(Path, Codec, Codec, Comparator)
+	 */
+	public static <K, V> SplayTreeMap<K, V> load(Path path, Codec<K> keys, Codec<V> values) throws IOException {
+		return load(path, keys, values, null);
+	}
+
+	/**
+	 * Load an image into a new SplayTreeMap in O(n): with the shape of an image
+	 * written with {@link WarmStart#SHAPE}, else balanced and, for an image
+	 * written with {@link WarmStart#hot(int)}, warmed with the hot keys.
+	 * @param comparator order of the map; null for natural order
+	 * @throws IOException if the file is not a valid image
+	 * @throws IllegalArgumentException if the image order is not the map order
+	 */
+	public static <K, V> SplayTreeMap<K, V> load(Path path, Codec<K> keys, Codec<V> values, Comparator<? super K> comparator) throws IOException {
+		try (Reader<K, V> image = open(path, keys, values)) {
+			final int n = image.size();
+			@SuppressWarnings("unchecked")
+			final K[] ks = (K[]) new Object[n];
+			@SuppressWarnings("unchecked")
+			final V[] vs = (V[]) new Object[n];
+			final int[] i = { 0 };
+			image.forEach((k, v) -> {
+				ks[i[0]] = k;
+				vs[i[0]++] = v;
+			});
+			final SplayTreeMap<K, V> map = new SplayTreeMap<K, V>(comparator);
+			final ByteBuffer warm = image.warmStart();
+			if ((image.flags & FLAG_SHAPE) != 0) {
+				final byte[] shape = new byte[warm.remaining()];
+				warm.get(shape);
+				if (!SplayTreeMap.isShape(shape, n))
+					throw new IOException("corrupt image shape: " + path);
+				map.buildShaped(ks, vs, n, shape);
+				return map;
+			}
+			map.buildSorted(ks, vs, n);
+			if ((image.flags & FLAG_HOT) != 0) {
+				final List<K> hot = new ArrayList<K>(warm.remaining() / 4);
+				while (warm.remaining() >= 4) {
+					final int r = warm.getInt();
+					if (r < 0 || r >= n)
+						throw new IOException("corrupt image hot keys: " + path);
+					hot.add(ks[r]);
+				}
+				map.warm(hot);
+			}
+			return map;
+		}
+	}
+
+	/**
+	 * Map an image for read only queries.
+	 * @throws IOException if the file is not a valid image
+	 */
+	public static <K, V> Reader<K, V> open(Path path, Codec<K> keys, Codec<V> values) throws IOException {
+		return new Reader<K, V>(path, keys, values);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	/** unsigned lexicographic */
+	private static int compare(byte[] a, byte[] b) {
+		return java.util.Arrays.compareUnsigned(a, b);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner class: Reader
+	// ------------------------------------------------------------------------
+	/**
+	 * Read only view of a mapped image. Thread safe: queries use absolute
+	 * reads of the mapping and do not modify it. {@link #close()} unmaps the
+	 * image and must not race queries.
+	 */
+	public static final class Reader<K, V> implements Closeable {
+		/** Unsafe.invokeCleaner, bound; null if the JDK does not allow it */
+		private static final MethodHandle UNMAP = unmapper();
+
+		private final MappedByteBuffer buf;
+		private final Codec<K> keys;
+		private final Codec<V> values;
+		private final int n;
+		private final int index;
+		private final int data;
+		private final int flags;
+		private final int warm;
+		private final int warmLength;
+		private volatile boolean closed = false;
+
+		private Reader(Path path, Codec<K> keys, Codec<V> values) throws IOException {
+			final MappedByteBuffer mapped;
+			try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+				final long size = ch.size();
+				if (size > Integer.MAX_VALUE)
+					throw new IOException("image too large: " + size);
+				if (size < HEADER_SIZE)
+					throw new IOException("not a DS2 image: " + path);
+				mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			if (mapped.getInt(0) != MAGIC)
+				throw new IOException("not a DS2 image: " + path);
+			if (mapped.getInt(4) != VERSION)
+				throw new IOException("unsupported image version " + mapped.getInt(4) + ": " + path);
+			this.buf = mapped;
+			this.keys = keys;
+			this.values = values;
+			this.n = mapped.getInt(12);
+			this.index = (int) mapped.getLong(16);
+			this.data = (int) mapped.getLong(24);
+			this.flags = mapped.getInt(8);
+			final long dataLength = mapped.getLong(32);
+			final long warmLength = mapped.getLong(48);
+			final long warmOffset = warmLength == 0 ? data + dataLength : mapped.getLong(40);   /* 0 before warm start */
+			if (n < 0 || index != HEADER_SIZE || data != index + (long) n * ENTRY_SIZE || dataLength < 0
+					|| warmOffset != data + dataLength || warmLength < 0 || warmOffset + warmLength != mapped.capacity())
+				throw new IOException("corrupt image header: " + path);
+			this.warm = (int) warmOffset;
+			this.warmLength = (int) warmLength;
+
+			// every entry within the data section, so queries need no checks
+			for (int e = index; e < data; e += ENTRY_SIZE) {
+				final long off = mapped.getLong(e);
+				final int klen = mapped.getInt(e + 8), vlen = mapped.getInt(e + 12);
+				if (off < 0 || klen < 0 || vlen < -1 || off + klen + Math.max(vlen, 0) > dataLength)
+					throw new IOException("corrupt image index entry " + (e - index) / ENTRY_SIZE + ": " + path);
+			}
+		}
+
+		private static MethodHandle unmapper() {
+			try {
+				final Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+				final Field theUnsafe = unsafe.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				return MethodHandles.lookup()
+						.findVirtual(unsafe, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+						.bindTo(theUnsafe.get(null));
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				return null;                                /* unmapped when collected */
+			}
+		}
+
+		private void checkOpen() {
+			if (closed)
+				throw new IllegalStateException("closed");
+		}
+
+		/** compare probe to the key at slot k */
+		private int compare(byte[] probe, int k) {
+			final int e = index + (k - 1) * ENTRY_SIZE;
+			final int off = data + (int) buf.getLong(e);
+			final int len = buf.getInt(e + 8);
+			final int m = Math.min(probe.length, len);
+			int i = 0;
+			for (; i + 8 <= m; i += 8) {
+				final long a = ((long) (probe[i] & 0xFF) << 56) | ((long) (probe[i + 1] & 0xFF) << 48)
+						| ((long) (probe[i + 2] & 0xFF) << 40) | ((long) (probe[i + 3] & 0xFF) << 32)
+						| ((long) (probe[i + 4] & 0xFF) << 24) | ((probe[i + 5] & 0xFF) << 16)
+						| ((probe[i + 6] & 0xFF) << 8) | (probe[i + 7] & 0xFF);
+				final long b = buf.getLong(off + i);
+				if (a != b)
+					return Long.compareUnsigned(a, b);
+			}
+			for (; i < m; i++) {
+				final int c = (probe[i] & 0xFF) - (buf.get(off + i) & 0xFF);
+				if (c != 0)
+					return c;
+			}
+			return probe.length - len;
+		}
+
+		/** @return slot of the encoded key; 0 if not found */
+		private int find(byte[] key) {
+			int k = 1;
+			while (k <= n) {
+				final int c = compare(key, k);
+				if (c == 0)
+					return k;
+				k = 2 * k + (c > 0 ? 1 : 0);
+			}
+			return 0;
+		}
+
+		private V valueAt(int k) {
+			final int e = index + (k - 1) * ENTRY_SIZE;
+			final int vlen = buf.getInt(e + 12);
+			if (vlen < 0)
+				return null;
+			return values.decode(buf, data + (int) buf.getLong(e) + buf.getInt(e + 8), vlen);
+		}
+
+		/** @return number of entries */
+		public int size() {
+			return n;
+		}
+
+		/** @return the warm start section */
+		ByteBuffer warmStart() {
+			checkOpen();
+			final ByteBuffer b = buf.duplicate();
+			b.position(warm).limit(warm + warmLength);
+			return b.slice();
+		}
+
+		/** @return value of key; null if not present (or null) */
+		public V get(K key) {
+			return getEncoded(keys.encode(key));
+		}
+
+		/** @return value of the encoded key; null if not present (or null) */
+		public V getEncoded(byte[] key) {
+			checkOpen();
+			final int k = find(key);
+			return k == 0 ? null : valueAt(k);
+		}
+
+		/** @return true if key is present */
+		public boolean containsKey(K key) {
+			return containsEncodedKey(keys.encode(key));
+		}
+
+		/** @return true if the encoded key is present */
+		public boolean containsEncodedKey(byte[] key) {
+			checkOpen();
+			return find(key) != 0;
+		}
+
+		/** Visit all entries in key order. */
+		public void forEach(BiConsumer<? super K, ? super V> action) {
+			checkOpen();
+			for (int k = Eytzinger.first(n); k != 0; k = Eytzinger.next(k, n)) {
+				final int e = index + (k - 1) * ENTRY_SIZE;
+				action.accept(keys.decode(buf, data + (int) buf.getLong(e), buf.getInt(e + 8)), valueAt(k));
+			}
+		}
+
+		/**
+		 * Unmap the image; later queries throw IllegalStateException. Where the
+		 * JDK does not allow an explicit unmap, the mapping is released when
+		 * the reader is garbage collected.
+		 */
+		@Override
+		public synchronized void close() {
+			if (closed)
+				return;
+			closed = true;
+			if (UNMAP != null) {
+				try {
+					UNMAP.invokeExact((ByteBuffer) buf);
+				} catch (Throwable e) {
+					throw new IllegalStateException("unmap failed", e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package oss.alphazero.util.ds2;
+
+/**
+ * The public operation on whose behalf a splay is performed.
+ * Reported in {@link DeepSplayEvent}s.
+ *
+ * This code is in the public domain.
+ */
+enum SplayOp {
+	INSERT,
+	DELETE,
+	FIND,
+	MIN,
+	MAX,
+	/** Map#put, putIfAbsent, replace */
+	PUT,
+	/** Map#compute family and merge */
+	COMPUTE
+}
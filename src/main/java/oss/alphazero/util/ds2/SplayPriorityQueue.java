@@ -0,0 +1,476 @@
+package oss.alphazero.util.ds2;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * A priority queue on a top-down splay tree: per Sleator and Tarjan, splay
+ * trees are efficient priority queues, in particular for the near monotonic
+ * insertions of timers and event simulation, where inserts at the far end of
+ * the tree and polls of the near end are O(1) amortized.
+ * <ol>
+ * <li>{@link #peekFirst()} is O(1) amortized: the least element is cached,
+ * and found again on the first peek after it is polled.</li>
+ * <li>{@link #pollFirst()} and {@link #pollLast()} remove either end.</li>
+ * <li>Equal elements are polled in insertion order (FIFO).</li>
+ * <li>The {@link #iterator()} returns the elements in queue order.</li>
+ * <li>{@link #removeIf(java.util.function.Predicate)} is O(n), and rebalances
+ * the tree.</li>
+ * <li>Null elements are not allowed and will throw {@link IllegalArgumentException}</li>
+ * </ol>
+ * Not thread safe.
+ *
+ * @param E element type
+ *
+ * This code is in the public domain.
+ */
+public class SplayPriorityQueue<E> extends AbstractQueue<E>
+{
+	// ------------------------------------------------------------------------
+	// Inner class: Node
+	// ------------------------------------------------------------------------
+	private static final class Node<E>
+	{
+		Node(E e, long seq) {
+			this.e = e;
+			this.seq = seq;
+		}
+
+		/** element */
+		final E e;
+		/** insertion order - ties equal elements */
+		final long seq;
+		Node<E> left;
+		Node<E> right;
+	}
+
+	/* splay bounds: below or above any element */
+	private static final int LEAST = -1;
+	private static final int GREATEST = 1;
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	/** header node - for splay */
+	private final Node<E> header = new Node<E>(null, 0);
+
+	private Node<E> root = null;
+
+	/** least node - null if empty or unknown */
+	private Node<E> min = null;
+
+	/** min is known - false after the least node is removed, until the next peek */
+	private boolean minKnown = true;
+
+	private int size = 0;
+
+	/** last insertion sequence number */
+	private long seqs = 0;
+
+	/** structural modifications - for iterators */
+	private int modCount = 0;
+
+	/** element order - null for natural order */
+	private final Comparator<? super E> comparator;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * Elements are ordered by their natural order and must implement
+	 * {@link Comparable}; else {@link ClassCastException} on first use.
+	 */
+	public SplayPriorityQueue() {
+		this(null);
+	}
+
+	/**
+	 * @param comparator element order; null for natural order
+	 */
+	public SplayPriorityQueue(Comparator<? super E> comparator) {
+		this.comparator = comparator;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	/** compare per comparator or natural order */
+	@SuppressWarnings("unchecked")
+	private int compare(E e1, E e2) {
+		final Comparator<? super E> cmp = comparator;
+		return cmp == null ? ((Comparable<? super E>) e1).compareTo(e2) : cmp.compare(e1, e2);
+	}
+
+	/** compare (e, seq) - or the bound, if not 0 - to node t */
+	private int compare(E e, long seq, int bound, Node<E> t) {
+		if (bound != 0)
+			return bound;
+		final int c = compare(e, t.e);
+		return c != 0 ? c : Long.compare(seq, t.seq);
+	}
+
+	/**
+	 * Top-down splay of (e, seq), or of the least or greatest node per bound,
+	 * as in {@link SplayTree}. Tree must not be empty.
+	 * @return (e, seq) compared to the (new) root
+	 */
+	private int splay(E e, long seq, int bound) {
+		Node<E> l, r, t, y;
+		l = r = header;
+		t = root;
+		header.left = header.right = null;
+		int c = compare(e, seq, bound, t);
+		for (;;) {
+			if (c < 0) {
+				if (t.left == null) break;
+				if ((c = compare(e, seq, bound, t.left)) < 0) {
+					y = t.left;                            /* rotate right */
+					t.left = y.right;
+					y.right = t;
+					t = y;
+					if (t.left == null) break;
+					r.left = t;                             /* link right */
+					r = t;
+					t = t.left;
+					c = compare(e, seq, bound, t);
+				} else {
+					r.left = t;                             /* link right */
+					r = t;
+					t = t.left;
+				}
+			} else if (c > 0) {
+				if (t.right == null) break;
+				if ((c = compare(e, seq, bound, t.right)) > 0) {
+					y = t.right;                            /* rotate left */
+					t.right = y.left;
+					y.left = t;
+					t = y;
+					if (t.right == null) break;
+					l.right = t;                            /* link left */
+					l = t;
+					t = t.right;
+					c = compare(e, seq, bound, t);
+				} else {
+					l.right = t;                            /* link left */
+					l = t;
+					t = t.right;
+				}
+			} else {
+				break;
+			}
+		}
+		l.right = t.left;                                   /* assemble */
+		r.left = t.right;
+		t.left = header.right;
+		t.right = header.left;
+		root = t;
+		return c;
+	}
+
+	private void forgetMin() {
+		min = null;
+		minKnown = root == null;
+	}
+
+	private static <E> Node<E> leftmost(Node<E> t) {
+		if (t != null)
+			while (t.left != null)
+				t = t.left;
+		return t;
+	}
+
+	/** Unlink the root, which was just splayed. */
+	private void unlinkRoot() {
+		final Node<E> t = root;
+		if (t.left == null) {
+			root = t.right;
+		} else {
+			final Node<E> x = t.right;
+			root = t.left;
+			splay(null, 0, GREATEST);                       /* no right child */
+			root.right = x;
+		}
+		t.left = t.right = null;
+		if (t == min)
+			forgetMin();
+		size--;
+		modCount++;
+	}
+
+	/** @return the first node equal to o; null if none */
+	@SuppressWarnings("unchecked")
+	private Node<E> lookup(Object o) {
+		if (o == null || root == null)
+			return null;
+		final E e = (E) o;
+		splay(e, Long.MIN_VALUE, 0);                        /* before any equal element */
+		final ArrayDeque<Node<E>> stack = new ArrayDeque<Node<E>>();
+		if (compare(e, root.e) <= 0)
+			stack.push(root);                               /* root is the first candidate */
+		else
+			pushLeft(stack, root.right);
+		while (!stack.isEmpty()) {
+			final Node<E> n = stack.pop();
+			if (compare(e, n.e) < 0)
+				return null;
+			if (o.equals(n.e))
+				return n;
+			pushLeft(stack, n.right);
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the node of e and seq, in O(log n) amortized.
+	 * @return true if it was queued
+	 */
+	private boolean remove(E e, long seq) {
+		if (root == null || splay(e, seq, 0) != 0)
+			return false;
+		unlinkRoot();
+		return true;
+	}
+
+	/** balanced tree of the in order nodes [from, to) */
+	private static <E> Node<E> build(List<Node<E>> nodes, int from, int to) {
+		if (from >= to)
+			return null;
+		final int mid = (from + to) >>> 1;
+		final Node<E> n = nodes.get(mid);
+		n.left = build(nodes, from, mid);
+		n.right = build(nodes, mid + 1, to);
+		return n;
+	}
+
+	/** push t and its left spine */
+	private static <E> void pushLeft(ArrayDeque<Node<E>> stack, Node<E> t) {
+		for (; t != null; t = t.left)
+			stack.push(t);
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : SplayPriorityQueue
+	// ------------------------------------------------------------------------
+	/**
+	 * @return the least element, in O(1) amortized; null if empty
+	 */
+	final public E peekFirst() {
+		if (!minKnown) {
+			min = leftmost(root);                           /* charged to the poll */
+			minKnown = true;
+		}
+		return min == null ? null : min.e;
+	}
+
+	/**
+	 * @return the greatest element, without splaying; null if empty
+	 */
+	final public E peekLast() {
+		Node<E> t = root;
+		if (t == null)
+			return null;
+		while (t.right != null)
+			t = t.right;
+		return t.e;
+	}
+
+	/**
+	 * Remove the least element - the first inserted of equal ones.
+	 * @return the element; null if empty
+	 */
+	final public E pollFirst() {
+		if (root == null)
+			return null;
+		splay(null, 0, LEAST);
+		final Node<E> t = root;                             /* no left child */
+		root = t.right;
+		t.right = null;
+		forgetMin();
+		size--;
+		modCount++;
+		return t.e;
+	}
+
+	/**
+	 * Remove the greatest element - the last inserted of equal ones.
+	 * @return the element; null if empty
+	 */
+	final public E pollLast() {
+		if (root == null)
+			return null;
+		splay(null, 0, GREATEST);
+		final Node<E> t = root;                             /* no right child */
+		root = t.left;
+		t.left = null;
+		if (t == min)
+			forgetMin();                                    /* was the only one */
+		size--;
+		modCount++;
+		return t.e;
+	}
+
+	/**
+	 * @return the element order; null if natural order
+	 */
+	final public Comparator<? super E> comparator() {
+		return comparator;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : Queue<E>
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc) @see java.util.Queue#offer(java.lang.Object) */
+	@Override final
+	public boolean offer(E e) {
+		if (e == null)
+			throw new IllegalArgumentException("null element");
+		final Node<E> n = new Node<E>(e, ++seqs);
+		if (root != null) {
+			if (splay(e, n.seq, 0) < 0) {
+				n.left = root.left;
+				n.right = root;
+				root.left = null;
+			} else {
+				n.right = root.right;
+				n.left = root;
+				root.right = null;
+			}
+		}
+		root = n;
+		if (minKnown && (min == null || compare(e, min.e) < 0))
+			min = n;
+		size++;
+		modCount++;
+		return true;
+	}
+
+	/* (non-Javadoc) @see java.util.Queue#poll() */
+	@Override final
+	public E poll() {
+		return pollFirst();
+	}
+
+	/* (non-Javadoc) @see java.util.Queue#peek() */
+	@Override final
+	public E peek() {
+		return peekFirst();
+	}
+
+	/* (non-Javadoc) @see java.util.Collection#size() */
+	@Override final
+	public int size() {
+		return size;
+	}
+
+	/* (non-Javadoc) @see java.util.Collection#isEmpty() */
+	@Override final
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/** O(log n + m) amortized, for m elements equal per the order. Splays. */
+	@Override final
+	public boolean contains(Object o) {
+		return lookup(o) != null;
+	}
+
+	/**
+	 * Remove the first element equal to o, in O(log n + m) amortized for m
+	 * elements equal per the order.
+	 */
+	@Override final
+	public boolean remove(Object o) {
+		final Node<E> n = lookup(o);
+		return n != null && remove(n.e, n.seq);
+	}
+
+	/**
+	 * Remove the elements matching filter in O(n), rebuilding the tree
+	 * balanced - e.g. to purge lazily cancelled elements.
+	 */
+	@Override final
+	public boolean removeIf(Predicate<? super E> filter) {
+		final List<Node<E>> keep = new ArrayList<Node<E>>(size);
+		final ArrayDeque<Node<E>> stack = new ArrayDeque<Node<E>>();
+		pushLeft(stack, root);
+		while (!stack.isEmpty()) {
+			final Node<E> n = stack.pop();
+			pushLeft(stack, n.right);
+			if (!filter.test(n.e))
+				keep.add(n);
+		}
+		if (keep.size() == size)
+			return false;
+		root = build(keep, 0, keep.size());
+		min = keep.isEmpty() ? null : keep.get(0);
+		minKnown = true;
+		size = keep.size();
+		modCount++;
+		return true;
+	}
+
+	/* (non-Javadoc) @see java.util.Collection#clear() */
+	@Override final
+	public void clear() {
+		root = min = null;
+		minKnown = true;
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * The elements in queue order, without splaying. Supports
+	 * {@link Iterator#remove()}.
+	 * @throws ConcurrentModificationException on next() after the queue is
+	 * modified other than through the iterator
+	 */
+	@Override final
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			private final ArrayDeque<Node<E>> stack = new ArrayDeque<Node<E>>();
+			private Node<E> last = null;
+			private int expected = modCount;
+			{
+				pushLeft(stack, root);
+			}
+			@Override public boolean hasNext() {
+				return !stack.isEmpty();
+			}
+			@Override public E next() {
+				if (modCount != expected)
+					throw new ConcurrentModificationException();
+				if (stack.isEmpty())
+					throw new NoSuchElementException();
+				last = stack.pop();
+				pushLeft(stack, last.right);
+				return last.e;
+			}
+			@Override public void remove() {
+				if (last == null)
+					throw new IllegalStateException();
+				if (modCount != expected)
+					throw new ConcurrentModificationException();
+				SplayPriorityQueue.this.remove(last.e, last.seq);
+				expected = modCount;
+				// the splay reshaped the tree: seek the successor of last
+				stack.clear();
+				for (Node<E> t = root; t != null; )
+					if (compare(last.e, last.seq, 0, t) < 0) {
+						stack.push(t);
+						t = t.left;
+					} else {
+						t = t.right;
+					}
+				last = null;
+			}
+		};
+	}
+}
@@ -0,0 +1,386 @@
+package oss.alphazero.util.ds2;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.function.Consumer;
+
+/**
+ * A sequence on a top-down splay tree with implicit keys: the position of
+ * a node is the size of what precedes it, derived from subtree sizes as in
+ * Sleator's top-down-size-splay.c, so positional edits do not renumber - e.g.
+ * large editable text and log buffers, where {@link java.util.ArrayList}'s
+ * middle inserts are O(n).
+ * <ol>
+ * <li>{@link #get(int)}, {@link #set(int, Object)}, {@link #add(int, Object)}
+ * and {@link #remove(int)} are O(log n) amortized; sequential access is O(1)
+ * amortized.</li>
+ * <li>{@link #removeRange(int, int)}, {@link #split(int)}, {@link #concat(SplayRope)}
+ * and {@link #reverse(int, int)} are O(log n) amortized. Reversal is lazy:
+ * a flag on the subtree root, pushed down to the children on the way down.</li>
+ * <li>{@link #addAll(int, Collection)} is O(m + log n) for m elements: they
+ * are built into a balanced subtree, which is joined in.</li>
+ * <li>Null elements are allowed.</li>
+ * </ol>
+ * Not thread safe - even reads modify the tree.
+ *
+ * @param E element type
+ *
+ * This code is in the public domain.
+ */
+public class SplayRope<E> extends AbstractList<E>
+{
+	// ------------------------------------------------------------------------
+	// Inner class: Node
+	// ------------------------------------------------------------------------
+	private static final class Node<E> {
+		E e;
+		Node<E> left;
+		Node<E> right;
+		/** subtree size */
+		int size = 1;
+		/** the subtree is to be reversed - pushed down before its children are read */
+		boolean reversed;
+
+		Node(E e) {
+			this.e = e;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	/** header node - for splay */
+	private final Node<E> header = new Node<E>(null);
+
+	private Node<E> root = null;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * An empty rope.
+	 */
+	public SplayRope() {
+	}
+
+	/**
+	 * A rope of the elements of c, in its iteration order, as a balanced tree.
+	 * @param c elements
+	 */
+	public SplayRope(Collection<? extends E> c) {
+		final Object[] a = c.toArray();
+		root = build(a, 0, a.length);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	private static int size(Node<?> n) {
+		return n == null ? 0 : n.size;
+	}
+
+	/** push a pending reversal of n's subtree to its children */
+	private static <E> void push(Node<E> n) {
+		if (n != null && n.reversed) {
+			final Node<E> l = n.left;
+			n.left = n.right;
+			n.right = l;
+			if (n.left != null)
+				n.left.reversed ^= true;
+			if (n.right != null)
+				n.right.reversed ^= true;
+			n.reversed = false;
+		}
+	}
+
+	private static void update(Node<?> n) {
+		n.size = size(n.left) + size(n.right) + 1;
+	}
+
+	/** balanced tree of a[from, to) */
+	@SuppressWarnings("unchecked")
+	private static <E> Node<E> build(Object[] a, int from, int to) {
+		if (from >= to)
+			return null;
+		final int mid = (from + to) >>> 1;
+		final Node<E> n = new Node<E>((E) a[mid]);
+		n.left = build(a, from, mid);
+		n.right = build(a, mid + 1, to);
+		update(n);
+		return n;
+	}
+
+	/**
+	 * Top-down splay of the node at index i of the tree t, as in
+	 * top-down-size-splay.c: the sizes of the left and right trees are summed
+	 * on the way down and set on their nodes after. Pending reversals are
+	 * pushed down to each node on the path before its children are read.
+	 * @param i in [0, size(t))
+	 * @return the new root of t - the node at index i
+	 */
+	private Node<E> splay(Node<E> t, int i) {
+		Node<E> l, r, y;
+		int lsize = 0, rsize = 0;
+		l = r = header;
+		header.left = header.right = null;
+		push(t);
+		for (;;) {
+			final int ls = size(t.left);
+			if (i < ls) {
+				y = t.left;
+				push(y);
+				if (i < size(y.left)) {
+					t.left = y.right;                       /* rotate right */
+					y.right = t;
+					update(t);
+					t = y;
+				}
+				r.left = t;                                 /* link right */
+				r = t;
+				rsize += 1 + size(t.right);
+				t = t.left;
+				push(t);
+			} else if (i > ls) {
+				i -= ls + 1;
+				y = t.right;
+				push(y);
+				final int ys = size(y.left);
+				if (i > ys) {
+					t.right = y.left;                       /* rotate left */
+					y.left = t;
+					update(t);
+					t = y;
+					i -= ys + 1;
+				}
+				l.right = t;                                /* link left */
+				l = t;
+				lsize += 1 + size(t.left);
+				t = t.right;
+				push(t);
+			} else {
+				break;
+			}
+		}
+		lsize += size(t.left);
+		rsize += size(t.right);
+		t.size = lsize + rsize + 1;
+		l.right = r.left = null;
+		for (y = header.right; y != null; y = y.right) {     /* sizes of the left tree */
+			y.size = lsize;
+			lsize -= 1 + size(y.left);
+		}
+		for (y = header.left; y != null; y = y.left) {      /* sizes of the right tree */
+			y.size = rsize;
+			rsize -= 1 + size(y.right);
+		}
+		l.right = t.left;                                   /* assemble */
+		r.left = t.right;
+		t.left = header.right;
+		t.right = header.left;
+		header.left = header.right = null;
+		return t;
+	}
+
+	/** @return a followed by b */
+	private Node<E> join(Node<E> a, Node<E> b) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		a = splay(a, a.size - 1);                           /* no right child */
+		a.right = b;
+		a.size += b.size;
+		return a;
+	}
+
+	/**
+	 * Split the tree at index i: the root is left with [0, i).
+	 * @return [i, size)
+	 */
+	private Node<E> detach(int i) {
+		final Node<E> t = root;
+		if (i == size(t))
+			return null;
+		final Node<E> s = splay(t, i);
+		root = s.left;
+		s.left = null;
+		update(s);
+		return s;
+	}
+
+	private static void checkIndex(int i, int n) {
+		if (i < 0 || i >= n)
+			throw new IndexOutOfBoundsException("index: " + i + " size: " + n);
+	}
+
+	private static void checkPosition(int i, int n) {
+		if (i < 0 || i > n)
+			throw new IndexOutOfBoundsException("index: " + i + " size: " + n);
+	}
+
+	private static void checkRange(int from, int to, int n) {
+		if (from < 0 || to > n || from > to)
+			throw new IndexOutOfBoundsException("from: " + from + " to: " + to + " size: " + n);
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : SplayRope
+	// ------------------------------------------------------------------------
+	/**
+	 * Split this rope at index: keeps [0, index), in O(log n) amortized.
+	 * @return a new rope of the elements [index, size)
+	 * @throws IndexOutOfBoundsException if index is not in [0, size]
+	 */
+	final public SplayRope<E> split(int index) {
+		checkPosition(index, size());
+		final SplayRope<E> tail = new SplayRope<E>();
+		tail.root = detach(index);
+		modCount++;
+		return tail;
+	}
+
+	/**
+	 * Append the elements of other, in O(log n) amortized. Other is left empty.
+	 * @throws IllegalArgumentException if other is this rope
+	 */
+	final public void concat(SplayRope<E> other) {
+		if (other == this)
+			throw new IllegalArgumentException("concat to self");
+		root = join(root, other.root);
+		other.root = null;
+		other.modCount++;
+		modCount++;
+	}
+
+	/**
+	 * Reverse the order of the elements [from, to), in O(log n) amortized.
+	 * @throws IndexOutOfBoundsException if the range is not in [0, size]
+	 */
+	final public void reverse(int from, int to) {
+		checkRange(from, to, size());
+		if (to - from < 2)
+			return;
+		final Node<E> c = detach(to);
+		final Node<E> b = detach(from);
+		b.reversed ^= true;
+		root = join(join(root, b), c);
+		modCount++;
+	}
+
+	/**
+	 * Remove the elements [from, to), in O(log n) amortized.
+	 * @throws IndexOutOfBoundsException if the range is not in [0, size]
+	 */
+	@Override final
+	public void removeRange(int from, int to) {
+		checkRange(from, to, size());
+		if (from == to)
+			return;
+		final Node<E> c = detach(to);
+		detach(from);
+		root = join(root, c);
+		modCount++;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : List<E>
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc) @see java.util.List#get(int) */
+	@Override final
+	public E get(int index) {
+		checkIndex(index, size());
+		root = splay(root, index);
+		return root.e;
+	}
+
+	/* (non-Javadoc) @see java.util.List#set(int, java.lang.Object) */
+	@Override final
+	public E set(int index, E e) {
+		checkIndex(index, size());
+		root = splay(root, index);
+		final E olde = root.e;
+		root.e = e;
+		return olde;
+	}
+
+	/* (non-Javadoc) @see java.util.List#add(int, java.lang.Object) */
+	@Override final
+	public void add(int index, E e) {
+		checkPosition(index, size());
+		final Node<E> n = new Node<E>(e);
+		n.right = detach(index);
+		n.left = root;
+		update(n);
+		root = n;
+		modCount++;
+	}
+
+	/* (non-Javadoc) @see java.util.List#remove(int) */
+	@Override final
+	public E remove(int index) {
+		checkIndex(index, size());
+		final Node<E> t = splay(root, index);
+		root = join(t.left, t.right);
+		modCount++;
+		return t.e;
+	}
+
+	/* (non-Javadoc) @see java.util.List#addAll(int, java.util.Collection) */
+	@Override final
+	public boolean addAll(int index, Collection<? extends E> c) {
+		checkPosition(index, size());
+		final Object[] a = c.toArray();
+		if (a.length == 0)
+			return false;
+		final Node<E> tail = detach(index);
+		root = join(join(root, SplayRope.<E>build(a, 0, a.length)), tail);
+		modCount++;
+		return true;
+	}
+
+	/* (non-Javadoc) @see java.util.Collection#addAll(java.util.Collection) */
+	@Override final
+	public boolean addAll(Collection<? extends E> c) {
+		return addAll(size(), c);
+	}
+
+	/**
+	 * In order, without splaying.
+	 * @throws ConcurrentModificationException if the action accessed the rope
+	 * by index - which splays it - or modified it
+	 */
+	@Override final
+	public void forEach(Consumer<? super E> action) {
+		final Node<E> r = root;
+		final int n = modCount;
+		final ArrayDeque<Node<E>> stack = new ArrayDeque<Node<E>>();
+		Node<E> t = root;
+		while (t != null || !stack.isEmpty()) {
+			for (; t != null; t = t.left) {
+				push(t);
+				stack.push(t);
+			}
+			t = stack.pop();
+			action.accept(t.e);
+			if (root != r || modCount != n)
+				throw new ConcurrentModificationException("rope modified by action");
+			t = t.right;
+		}
+	}
+
+	/* (non-Javadoc) @see java.util.Collection#clear() */
+	@Override final
+	public void clear() {
+		root = null;
+		modCount++;
+	}
+
+	/* (non-Javadoc) @see java.util.Collection#size() */
+	@Override final
+	public int size() {
+		return size(root);
+	}
+}
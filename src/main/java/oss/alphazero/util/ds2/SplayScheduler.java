@@ -0,0 +1,272 @@
+package oss.alphazero.util.ds2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A timer scheduler on a {@link SplayPriorityQueue}, with timers armed and
+ * cancelled by key - e.g. the timeouts of requests or connections, most of
+ * which are cancelled before they expire.
+ * <ol>
+ * <li>Arming a timer is O(1) amortized for near monotonic deadlines, as a
+ * constant delay gives. Cancelling it is O(1): the timer is marked, and dropped
+ * when it reaches the head of the queue, or in an O(n) purge once cancelled
+ * timers outnumber the pending ones - so they take at most as much memory.</li>
+ * <li>Arming a key again re-arms it: at most one timer per key.</li>
+ * <li>Timers of equal deadlines expire in the order armed.</li>
+ * <li>Expired tasks run on the scheduler thread, outside its lock: keep them
+ * short, or hand them off to an executor. A task may arm and cancel timers.
+ * A task that throws is reported to the thread's uncaught exception handler.</li>
+ * </ol>
+ * Thread safe.
+ *
+ * @param K timer key type - per {@link Object#hashCode()} and {@link Object#equals(Object)}
+ *
+ * This code is in the public domain.
+ */
+public class SplayScheduler<K> implements AutoCloseable {
+	/** an armed timer */
+	private static final class Timer<K> {
+		final K key;
+		/** per System.nanoTime */
+		final long deadline;
+		final Runnable task;
+		/** dropped when polled or purged */
+		boolean cancelled;
+
+		Timer(K key, long deadline, Runnable task) {
+			this.key = key;
+			this.deadline = deadline;
+			this.task = task;
+		}
+	}
+
+	/** nanoTime order: deadlines are within 2^62 ns of each other */
+	private static final Comparator<Timer<?>> BY_DEADLINE = (a, b) -> Long.signum(a.deadline - b.deadline);
+
+	/** longest delay - see BY_DEADLINE */
+	private static final long MAX_DELAY = Long.MAX_VALUE >> 1;
+
+	/** fewest cancelled timers to purge */
+	private static final int MIN_PURGE = 1024;
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	/** a lock, not the monitor, for nanosecond timed waits */
+	private final ReentrantLock lock = new ReentrantLock();
+	/** signalled on a new first deadline, and on close */
+	private final Condition rearmed = lock.newCondition();
+
+	/* guarded by lock */
+	private final SplayPriorityQueue<Timer<K>> queue = new SplayPriorityQueue<Timer<K>>(BY_DEADLINE);
+	private final Map<K, Timer<K>> timers = new HashMap<K, Timer<K>>();
+	/** cancelled timers in the queue */
+	private int cancelled = 0;
+	private boolean closed = false;
+
+	private final Thread thread;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	/**
+	 * Start a scheduler with a daemon thread named "ds2-splay-scheduler".
+	 */
+	public SplayScheduler() {
+		this("ds2-splay-scheduler");
+	}
+
+	/**
+	 * Start a scheduler with a daemon thread.
+	 * @param name of the scheduler thread
+	 */
+	public SplayScheduler(String name) {
+		thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	/** @return the first pending timer; drops cancelled ones. Lock held. */
+	private Timer<K> first() {
+		Timer<K> t;
+		while ((t = queue.peekFirst()) != null && t.cancelled) {
+			queue.pollFirst();
+			cancelled--;
+		}
+		return t;
+	}
+
+	/** mark t cancelled, purge if due. Lock held. */
+	private void cancel(Timer<K> t) {
+		t.cancelled = true;
+		if (++cancelled > Math.max(MIN_PURGE, timers.size())) {
+			queue.removeIf(x -> x.cancelled);
+			cancelled = 0;
+		}
+	}
+
+	/** scheduler thread: wait for the first deadline, run the expired tasks */
+	private void run() {
+		final List<Timer<K>> expired = new ArrayList<Timer<K>>();
+		try {
+			for (;;) {
+				lock.lock();
+				try {
+					for (;;) {
+						if (closed)
+							return;
+						final Timer<K> first = first();
+						if (first == null) {
+							rearmed.await();
+						} else {
+							final long delay = first.deadline - System.nanoTime();
+							if (delay <= 0)
+								break;
+							rearmed.awaitNanos(delay);
+						}
+					}
+					final long now = System.nanoTime();
+					for (Timer<K> t = first(); t != null && t.deadline - now <= 0; t = first()) {
+						queue.pollFirst();
+						timers.remove(t.key);
+						expired.add(t);
+					}
+				} finally {
+					lock.unlock();
+				}
+				for (Timer<K> t : expired) {
+					try {
+						t.task.run();
+					} catch (Throwable e) {
+						final Thread self = Thread.currentThread();
+						self.getUncaughtExceptionHandler().uncaughtException(self, e);
+					}
+				}
+				expired.clear();
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : SplayScheduler
+	// ------------------------------------------------------------------------
+	/**
+	 * Arm a timer for key, replacing its pending timer if any.
+	 * @param delay from now; 0 or less to expire right away
+	 * @param task run when the timer expires
+	 * @return true if a pending timer of key was replaced
+	 * @throws IllegalArgumentException if key, unit or task is null
+	 * @throws IllegalStateException if the scheduler is closed
+	 */
+	final public boolean schedule(K key, long delay, TimeUnit unit, Runnable task) {
+		if (key == null || unit == null || task == null)
+			throw new IllegalArgumentException(key == null ? "null key" : unit == null ? "null unit" : "null task");
+		final long nanos = Math.min(Math.max(unit.toNanos(delay), 0), MAX_DELAY);
+		lock.lock();
+		try {
+			if (closed)
+				throw new IllegalStateException("scheduler closed");
+			final Timer<K> t = new Timer<K>(key, System.nanoTime() + nanos, task);
+			final Timer<K> old = timers.put(key, t);
+			if (old != null)
+				cancel(old);
+			queue.offer(t);
+			if (queue.peekFirst() == t)
+				rearmed.signal();                           /* new first deadline */
+			return old != null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Cancel the pending timer of key.
+	 * @return true if it was pending; false if none, or it expired
+	 */
+	final public boolean cancel(K key) {
+		lock.lock();
+		try {
+			final Timer<K> t = timers.remove(key);
+			if (t == null)
+				return false;
+			cancel(t);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return true if a timer of key is pending
+	 */
+	final public boolean isScheduled(K key) {
+		lock.lock();
+		try {
+			return timers.containsKey(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the remaining delay of the pending timer of key; null if none
+	 */
+	final public Long delay(K key, TimeUnit unit) {
+		lock.lock();
+		try {
+			final Timer<K> t = timers.get(key);
+			return t == null ? null : unit.convert(t.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of pending timers
+	 */
+	final public int size() {
+		lock.lock();
+		try {
+			return timers.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stop the scheduler thread and drop the pending timers. Waits for running
+	 * tasks to complete, unless called by one of them. Idempotent.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			queue.clear();
+			timers.clear();
+			cancelled = 0;
+			rearmed.signal();
+		} finally {
+			lock.unlock();
+		}
+		if (Thread.currentThread() != thread) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package oss.alphazero.util.ds2;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Periodic JFR event summarizing the shape of a monitored tree, as seen by
+ * the splays performed during the period. See {@link SplayEvents}.
+ *
+ * This code is in the public domain.
+ */
+@Name("oss.alphazero.util.ds2.SplayShape")
+@Label("Splay Tree Shape")
+@Category({"DS2", "Splay Tree"})
+@Description("Access path summary of a monitored splay tree")
+@Period("10 s")
+@StackTrace(false)
+final class SplayShapeEvent extends jdk.jfr.Event {
+	@Label("Tree")
+	String tree;
+
+	@Label("Tree Class")
+	String treeClass;
+
+	@Label("Tree Size")
+	int size;
+
+	@Label("Optimal Depth")
+	@Description("floor(log2(size)) + 1, the height of a perfectly balanced tree")
+	int optimalDepth;
+
+	@Label("Splays")
+	@Description("Splays during the period")
+	long splays;
+
+	@Label("Mean Depth")
+	@Description("Mean splay access path length during the period")
+	double meanDepth;
+
+	@Label("Max Depth")
+	@Description("Longest splay access path during the period")
+	int maxDepth;
+
+	@Label("Skew")
+	@Description("Mean depth over optimal depth; 1.0 or less is balanced")
+	double skew;
+}
@@ -0,0 +1,160 @@
+package oss.alphazero.util.ds2;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-instance operation counters for {@link SplayTree} and {@link SplayTreeMap}.
+ * <p>
+ * Stats are compiled out unless the JVM is started with <code>-Dds2.stats=true</code>:
+ * all recording sites are guarded by {@link #ENABLED}, a static final flag that the
+ * JIT constant folds, so with stats off the hot path pays nothing and the
+ * counters stay at zero. With stats on, a tree records only after {@link SplayTree#enableStats()} (resp.
+ * {@link SplayTreeMap#enableStats()}) has been called on it.
+ * <p>
+ * Counters are plain fields updated by the (single) thread using the tree. Reads
+ * from other threads, e.g. via JMX, are racy snapshots -- good enough for
+ * monitoring, but not for exact accounting.
+ *
+ * This code is in the public domain.
+ */
+public class SplayStats implements SplayStatsMXBean {
+	/** global switch - set with -Dds2.stats=true */
+	public static final boolean ENABLED = Boolean.getBoolean("ds2.stats");
+
+	/** path length histogram bucket count */
+	static final int BUCKETS = 32;
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	private long splays;
+	private long pathLength;
+	private long maxPathLength;
+	private long rotations;
+	private long comparisons;
+	private long findHits;
+	private long findMisses;
+	private long inserts;
+	private long deletes;
+	private long rebalances;
+	private final long[] histogram = new long[BUCKETS];
+	private long since = System.nanoTime();
+
+	private ObjectName objectName;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	SplayStats() { }
+
+	// ------------------------------------------------------------------------
+	// Recording (trees only)
+	// ------------------------------------------------------------------------
+	final void onSplay(int depth, int rotations, int comparisons) {
+		this.splays++;
+		this.pathLength += depth;
+		if(depth > maxPathLength)
+			maxPathLength = depth;
+		this.histogram[31 - Integer.numberOfLeadingZeros(depth | 1)]++;
+		this.rotations += rotations;
+		this.comparisons += comparisons;
+	}
+	final void onFind(boolean hit) {
+		if(hit) findHits++;
+		else findMisses++;
+	}
+	final void onInsert() { inserts++; }
+	final void onDelete() { deletes++; }
+	final void onRebalance() { rebalances++; }
+
+	// ------------------------------------------------------------------------
+	// JMX
+	// ------------------------------------------------------------------------
+	/**
+	 * Register with the platform MBean server as
+	 * <code>oss.alphazero.util.ds2:type=SplayStats,name=&lt;name&gt;</code>.
+	 * @param name unique name of the tree
+	 * @return this
+	 * @throws IllegalStateException if registration fails
+	 */
+	public final synchronized SplayStats register(String name) {
+		if(name == null)
+			throw new IllegalArgumentException("null name");
+		if(objectName != null)
+			throw new IllegalStateException("already registered as " + objectName);
+		try {
+			final ObjectName on = new ObjectName("oss.alphazero.util.ds2:type=SplayStats,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+			objectName = on;
+		} catch (JMException e) {
+			throw new IllegalStateException("failed to register stats " + name, e);
+		}
+		return this;
+	}
+
+	/** Unregister from the platform MBean server. No-op if not registered. */
+	public final synchronized void unregister() {
+		if(objectName == null)
+			return;
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			throw new IllegalStateException("failed to unregister stats " + objectName, e);
+		} finally {
+			objectName = null;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : SplayStatsMXBean
+	// ------------------------------------------------------------------------
+	@Override public long getSplays() { return splays; }
+	@Override public double getMeanPathLength() { return mean(pathLength, splays); }
+	@Override public long getMaxPathLength() { return maxPathLength; }
+	@Override public long[] getPathLengthHistogram() { return histogram.clone(); }
+	@Override public long getRotations() { return rotations; }
+	@Override public double getMeanRotationsPerSplay() { return mean(rotations, splays); }
+	@Override public long getComparisons() { return comparisons; }
+	@Override public double getMeanComparisonsPerSplay() { return mean(comparisons, splays); }
+	@Override public long getFindHits() { return findHits; }
+	@Override public long getFindMisses() { return findMisses; }
+	@Override public double getFindHitRatio() { return mean(findHits, findHits + findMisses); }
+	@Override public long getInserts() { return inserts; }
+	@Override public long getDeletes() { return deletes; }
+	@Override public long getRebalances() { return rebalances; }
+	@Override public double getInsertRate() { return rate(inserts); }
+	@Override public double getDeleteRate() { return rate(deletes); }
+
+	@Override
+	public void reset() {
+		splays = pathLength = maxPathLength = rotations = comparisons = 0;
+		findHits = findMisses = inserts = deletes = rebalances = 0;
+		java.util.Arrays.fill(histogram, 0L);
+		since = System.nanoTime();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SplayStats[splays:%d path(mean:%.2f max:%d) rot/splay:%.2f cmp/splay:%.2f hit-ratio:%.3f inserts:%d deletes:%d rebalances:%d]",
+				splays, getMeanPathLength(), maxPathLength, getMeanRotationsPerSplay(),
+				getMeanComparisonsPerSplay(), getFindHitRatio(), inserts, deletes, rebalances);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	private static double mean(long total, long n) {
+		return n == 0 ? 0 : (double) total / n;
+	}
+
+	private double rate(long n) {
+		final long elapsed = System.nanoTime() - since;
+		return elapsed <= 0 ? 0 : n / (elapsed / 1e9);
+	}
+}
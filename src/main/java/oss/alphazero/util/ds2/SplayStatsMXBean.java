@@ -0,0 +1,44 @@
+package oss.alphazero.util.ds2;
+
+/**
+ * JMX view of {@link SplayStats}. Register a tree's stats with
+ * {@link SplayStats#register(String)}.
+ *
+ * This code is in the public domain.
+ */
+public interface SplayStatsMXBean {
+	/** @return number of splay operations */
+	long getSplays();
+	/** @return mean number of nodes on the splay access path */
+	double getMeanPathLength();
+	/** @return longest splay access path observed */
+	long getMaxPathLength();
+	/** @return bucket i counts splays with path length in [2^i, 2^(i+1)) */
+	long[] getPathLengthHistogram();
+	/** @return total rotations */
+	long getRotations();
+	/** @return mean rotations per splay */
+	double getMeanRotationsPerSplay();
+	/** @return total key comparisons in splay */
+	long getComparisons();
+	/** @return mean key comparisons per splay */
+	double getMeanComparisonsPerSplay();
+	/** @return find() calls that found the key */
+	long getFindHits();
+	/** @return find() calls that did not find the key */
+	long getFindMisses();
+	/** @return hits / (hits + misses); 0 if no finds */
+	double getFindHitRatio();
+	/** @return successful inserts */
+	long getInserts();
+	/** @return successful deletes */
+	long getDeletes();
+	/** @return rebalances, explicit or by the latency guard */
+	long getRebalances();
+	/** @return successful inserts per second since creation or last reset */
+	double getInsertRate();
+	/** @return successful deletes per second since creation or last reset */
+	double getDeleteRate();
+	/** zero all counters */
+	void reset();
+}
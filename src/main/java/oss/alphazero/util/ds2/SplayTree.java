@@ -1,5 +1,7 @@
 package oss.alphazero.util.ds2;
 
+import java.util.Comparator;
+
 /**
  * Implements a top-down Splay Tree based on original work
  * of Danny Sleator available at http://www.link.cs.cmu.edu/splay/
@@ -7,6 +9,7 @@ package oss.alphazero.util.ds2;
  * <li>Modified for Java 5 and later, using Java generics.</li>
  * <li>Modified API for clarity</li>
  * <li>Null key values are not allowed and will throw {@link IllegalArgumentException}</li>
+ * <li>Keys are ordered by natural order or a {@link Comparator}.</li>
  * </ol>
  * 
  * @param K SprayTree node key type
@@ -19,7 +22,7 @@ package oss.alphazero.util.ds2;
  * @update:  Feb 10, 2012
  * 
  */
-public class SplayTree<K extends Comparable<K>>
+public class SplayTree<K>
 {
 	public class Node
 	{
@@ -59,14 +62,48 @@ public class SplayTree<K extends Comparable<K>>
 	/** number of key-value mappings */
 	private int size = 0;
 
+	/** operation counters - null unless enabled */
+	private SplayStats stats = null;
+
+	/** splays with longer access paths emit a JFR DeepSplayEvent */
+	private int deepSplayThreshold = SplayEvents.DEEP_SPLAY_THRESHOLD;
+
+	/** JFR shape event monitor - null unless enabled */
+	private SplayEvents.Monitor monitor = null;
+
+	/** latency guard factor - 0 if guard is disabled */
+	private double rebalanceFactor = 0;
+
+	/** key order - null for natural order */
+	private final Comparator<? super K> comparator;
+
 	// ------------------------------------------------------------------------
 	// Constructor
 	// ------------------------------------------------------------------------
-	public SplayTree() { }
+	/**
+	 * Keys are ordered by their natural order and must implement
+	 * {@link Comparable}; else {@link ClassCastException} on first use.
+	 */
+	public SplayTree() {
+		this(null);
+	}
+
+	/**
+	 * @param comparator key order; null for natural order
+	 */
+	public SplayTree(Comparator<? super K> comparator) {
+		this.comparator = comparator;
+	}
 
 	// ------------------------------------------------------------------------
 	// Inner Ops
 	// ------------------------------------------------------------------------
+	/** compare per comparator or natural order */
+	@SuppressWarnings("unchecked")
+	private int compare(K k1, K k2) {
+		final Comparator<? super K> cmp = comparator;
+		return cmp == null ? ((Comparable<? super K>) k1).compareTo(k2) : cmp.compare(k1, k2);
+	}
 	/** 
 	 * This method just illustrates the top-down method of
 	 * implementing the move-to-root operation and is not used
@@ -79,12 +116,12 @@ public class SplayTree<K extends Comparable<K>>
 		t = root;
 		header.left = header.right = null;
 		for (;;) {
-			if (key.compareTo(t.key) < 0) {
+			if (compare(key, t.key) < 0) {
 				if (t.left == null) break;
 				r.left = t;                                 /* link right */
 				r = t;
 				t = t.left;
-			} else if (key.compareTo(t.key) > 0) {
+			} else if (compare(key, t.key) > 0) {
 				if (t.right == null) break;
 				l.right = t;                                /* link left */
 				l = t;
@@ -113,37 +150,65 @@ public class SplayTree<K extends Comparable<K>>
 	 *   a key that's larger than any in the tree, the rightmost
 	 *   node of the tree becomes the root.  This property is used
 	 *   in the delete() method.
+	 *
+	 *   Each node on the access path is compared with key once.
+	 *
+	 * @return key compared to the (new) root key
 	 */
-	private void splay(K key) {
+	private int splay(K key, SplayOp op) {
 		Node l, r, t, y;
+		int depth = 1, rotations = 0, comparisons = 1;      /* for stats only */
 		l = r = header;
 		t = root;
 		header.left = header.right = null;
-		for (;;) {
-			if (key.compareTo(t.key) < 0) {
+		int c = compare(key, t.key);                        /* one compare per node: */
+		for (;;) {                                          /* c is key vs t.key */
+			if (c < 0) {
 				if (t.left == null) break;
-				if (key.compareTo(t.left.key) < 0) {
+				comparisons++;
+				if ((c = compare(key, t.left.key)) < 0) {
 					y = t.left;                            /* rotate right */
 					t.left = y.right;
 					y.right = t;
 					t = y;
+					rotations++;
+					depth++;
 					if (t.left == null) break;
+					r.left = t;                             /* link right */
+					r = t;
+					t = t.left;
+					depth++;
+					comparisons++;
+					c = compare(key, t.key);
+				} else {
+					r.left = t;                             /* link right */
+					r = t;
+					t = t.left;
+					depth++;
 				}
-				r.left = t;                                 /* link right */
-				r = t;
-				t = t.left;
-			} else if (key.compareTo(t.key) > 0) {
+			} else if (c > 0) {
 				if (t.right == null) break;
-				if (key.compareTo(t.right.key) > 0) {
+				comparisons++;
+				if ((c = compare(key, t.right.key)) > 0) {
 					y = t.right;                            /* rotate left */
 					t.right = y.left;
 					y.left = t;
 					t = y;
+					rotations++;
+					depth++;
 					if (t.right == null) break;
+					l.right = t;                            /* link left */
+					l = t;
+					t = t.right;
+					depth++;
+					comparisons++;
+					c = compare(key, t.key);
+				} else {
+					l.right = t;                            /* link left */
+					l = t;
+					t = t.right;
+					depth++;
 				}
-				l.right = t;                                /* link left */
-				l = t;
-				t = t.right;
 			} else {
 				break;
 			}
@@ -153,6 +218,63 @@ public class SplayTree<K extends Comparable<K>>
 		t.left = header.right;
 		t.right = header.left;
 		root = t;
+
+		if (SplayStats.ENABLED && stats != null)
+			stats.onSplay(depth, rotations, comparisons);
+		if (SplayEvents.ENABLED) {
+			if (depth > deepSplayThreshold)
+				SplayEvents.deepSplay(getClass(), op, depth, rotations, size);
+			if (monitor != null)
+				monitor.onSplay(depth, size);
+		}
+
+		// latency guard: rebuild and splay again on the balanced tree - which
+		// can not trip the guard again as its height is the bit length of size
+		if (rebalanceFactor > 0 && depth > rebalanceFactor * (32 - Integer.numberOfLeadingZeros(size))) {
+			rebalance();
+			return splay(key, op);
+		}
+		return c;
+	}
+
+	/**
+	 * Day-Stout-Warren: rotate the tree hanging off pseudo.right into a
+	 * right leaning vine (linked list).
+	 * @return number of nodes in the vine
+	 */
+	private int treeToVine(Node pseudo) {
+		Node tail = pseudo;
+		Node rest = tail.right;
+		int n = 0;
+		while (rest != null) {
+			if (rest.left == null) {
+				tail = rest;
+				rest = rest.right;
+				n++;
+			} else {
+				final Node x = rest.left;                   /* rotate right */
+				rest.left = x.right;
+				x.right = rest;
+				rest = x;
+				tail.right = x;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Day-Stout-Warren: left rotate every other node of the first
+	 * 2*count nodes of the vine.
+	 */
+	private void compress(Node pseudo, int count) {
+		Node scanner = pseudo;
+		for (int i = 0; i < count; i++) {
+			final Node child = scanner.right;               /* rotate left */
+			scanner.right = child.right;
+			scanner = scanner.right;
+			child.right = scanner.left;
+			scanner.left = child;
+		}
 	}
 
 	// ------------------------------------------------------------------------
@@ -171,13 +293,13 @@ public class SplayTree<K extends Comparable<K>>
 		if (isEmpty()) {
 			root = new Node(key);
 			size++;
+			if (SplayStats.ENABLED && stats != null)
+				stats.onInsert();
 			return true;
 		}
 
-		splay(key);
-
-		int c;
-		if ((c = key.compareTo(root.key)) == 0) 
+		final int c = splay(key, SplayOp.INSERT);
+		if (c == 0) 
 			return false;
 
 		Node n = new Node(key);
@@ -193,6 +315,9 @@ public class SplayTree<K extends Comparable<K>>
 		root = n;
 		size++;
 
+		if (SplayStats.ENABLED && stats != null)
+			stats.onInsert();
+
 		return true;
 	}
 
@@ -208,9 +333,11 @@ public class SplayTree<K extends Comparable<K>>
 		if(key == null)
 			throw new IllegalArgumentException("null key");
 
+		if (isEmpty())
+			return false;
+
 		// splay the tree - if key exists the root will be key
-		splay(key);
-		if (key.compareTo(root.key) != 0) {
+		if (splay(key, SplayOp.DELETE) != 0) {
 			return false; // not found
 		}
 
@@ -220,11 +347,14 @@ public class SplayTree<K extends Comparable<K>>
 		} else {
 			final Node x = root.right;
 			root = root.left;
-			splay(key);
+			splay(key, SplayOp.DELETE);
 			root.right = x;
 		}
 
 		size--;
+
+		if (SplayStats.ENABLED && stats != null)
+			stats.onDelete();
 		return true;
 	}
 
@@ -238,7 +368,7 @@ public class SplayTree<K extends Comparable<K>>
 		while(x.left != null) 
 			x = x.left;
 
-		splay(x.key);
+		splay(x.key, SplayOp.MIN);
 
 		return x.key;
 	}
@@ -254,7 +384,7 @@ public class SplayTree<K extends Comparable<K>>
 		while(x.right != null) 
 			x = x.right;
 
-		splay(x.key);
+		splay(x.key, SplayOp.MAX);
 
 		return x.key;
 	}
@@ -293,16 +423,25 @@ public class SplayTree<K extends Comparable<K>>
 		if(key == null)
 			throw new IllegalArgumentException("null key");
 
-		if (isEmpty()) 
+		if (isEmpty()) {
+			if (SplayStats.ENABLED && stats != null)
+				stats.onFind(false);
 			return null;
+		}
 
-		splay(key);
-
-		if(root.key.compareTo(key) != 0) 
-			return null;
+		final boolean hit = splay(key, SplayOp.FIND) == 0;
+		if (SplayStats.ENABLED && stats != null)
+			stats.onFind(hit);
 
-		return root;
+		return hit ? root : null;
 	}
+	/**
+	 * @return the key order; null if natural order
+	 */
+	final public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
 	/**
 	 * Test if the tree is logically empty.
 	 * @return true if empty, false otherwise.
@@ -315,7 +454,119 @@ public class SplayTree<K extends Comparable<K>>
 		return this.size;
 	}
 
+	/**
+	 * Enable operation counters for this tree. Counters only count if the
+	 * JVM is run with <code>-Dds2.stats=true</code>, else they stay at zero;
+	 * see {@link SplayStats}. Idempotent.
+	 * @return the stats of this tree
+	 */
+	final public SplayStats enableStats() {
+		if (stats == null)
+			stats = new SplayStats();
+		return stats;
+	}
+
+	/**
+	 * @return the stats of this tree; null if not enabled
+	 */
+	final public SplayStats stats() {
+		return stats;
+	}
+
+	/**
+	 * Rebuild the tree as a perfectly balanced tree (all levels full except
+	 * possibly the last, which is filled from the left) using the O(n) time,
+	 * O(1) space Day-Stout-Warren algorithm. Does not allocate.
+	 * <p>
+	 * Useful after batch loads, e.g. monotonic inserts, which leave the tree
+	 * as a linked list and the first access to its far end O(n).
+	 */
+	final public void rebalance() {
+		if (root == null)
+			return;
+		final Node pseudo = header;
+		pseudo.left = null;
+		pseudo.right = root;
+
+		int n = treeToVine(pseudo);
+		final int leaves = n + 1 - Integer.highestOneBit(n + 1);
+		compress(pseudo, leaves);
+		n -= leaves;
+		while (n > 1) {
+			n /= 2;
+			compress(pseudo, n);
+		}
+
+		root = pseudo.right;
+		pseudo.right = null;
+
+		if (SplayStats.ENABLED && stats != null)
+			stats.onRebalance();
+	}
+
+	/**
+	 * Set the latency guard: a splay whose access path is longer than
+	 * <code>factor * (floor(log2(size)) + 1)</code>, i.e. factor times the
+	 * height of a balanced tree, triggers a {@link #rebalance()}. This bounds
+	 * the worst case splay of the <i>next</i> accesses to O(log n) at the cost
+	 * of an O(n) rebuild. Disabled by default.
+	 * @param factor greater than 1.0 (3.0 is a reasonable start); 0 disables the guard
+	 * @throws IllegalArgumentException if factor is neither 0 nor greater than 1.0
+	 */
+	final public void setRebalanceFactor(double factor) {
+		if (factor != 0 && !(factor > 1.0))
+			throw new IllegalArgumentException("factor: " + factor);
+		rebalanceFactor = factor;
+	}
+
+	/**
+	 * Set the access path length above which a splay emits a JFR
+	 * {@link DeepSplayEvent}. See {@link SplayEvents}.
+	 * @param depth threshold; Integer.MAX_VALUE to disable
+	 * @throws IllegalArgumentException if depth is less than 1
+	 */
+	final public void setDeepSplayThreshold(int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("depth: " + depth);
+		deepSplayThreshold = depth;
+	}
+
+	/**
+	 * Emit periodic JFR {@link SplayShapeEvent}s for this tree. See {@link SplayEvents}.
+	 * Replaces any previous registration of this tree.
+	 * @param name of the tree in the events
+	 * @throws IllegalStateException if JFR events are disabled
+	 */
+	final public void enableShapeEvents(String name) {
+		final SplayEvents.Monitor m = SplayEvents.monitor(name, getClass(), size);
+		SplayEvents.unmonitor(monitor);
+		monitor = m;
+	}
 
+	/**
+	 * Stop emitting periodic JFR shape events for this tree.
+	 */
+	final public void disableShapeEvents() {
+		SplayEvents.unmonitor(monitor);
+		monitor = null;
+	}
+
+
+
+	// ------------------------------------------------------------------------
+	// Package API : inspection
+	// ------------------------------------------------------------------------
+	/**
+	 * @return a structural (non splaying) navigator over this tree
+	 */
+	final TreeShape.Navigator<Node> navigator() {
+		return new TreeShape.Navigator<Node>() {
+			@Override public Node root() { return root; }
+			@Override public Node left(Node n) { return n.left; }
+			@Override public Node right(Node n) { return n.right; }
+			@Override public Object key(Node n) { return n.key; }
+		};
+	}
 
 	// ========================================================================
 	// Statics for adhoc tests -- remove at will
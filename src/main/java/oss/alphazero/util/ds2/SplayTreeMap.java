@@ -1,8 +1,19 @@
 package oss.alphazero.util.ds2;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * Implements a top-down Splay Tree based on original work
@@ -14,7 +25,16 @@ import java.util.Set;
  * <li>Modified to (partially) support Map<K, V> semantics - original
  * coupled node key with node value</li>
  * <li>Null key is clearly not allowed.</li>
+ * <li>Keys are ordered by natural order or a {@link Comparator}.</li>
+ * <li>Optional order preserving key prefixes in nodes, see {@link KeyPrefix}.</li>
  * <li>Null values are allowed.</li>
+ * <li>Constant time, copy-on-write {@link #snapshot()}s.</li>
+ * <li>Immutable, array laid out copies for read phases: {@link #freeze()}.</li>
+ * <li>Warm start: {@link #hotKeys(int)} and {@link #warm(List)}.</li>
+ * <li>Range scans: {@link #range(Object, Object, BiConsumer)}; {@link #floorKey(Object)}
+ * and {@link #ceilingKey(Object)}.</li>
+ * <li>Optional membership filter: {@link #enableFilter(int)} answers definite
+ * misses without a splay.</li>
  * </ol>
  * 
  * @param K SplayTreeMap node key type
@@ -27,7 +47,7 @@ import java.util.Set;
  * @update:  Feb 10, 2012
  * 
  */
-public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
+public class SplayTreeMap<K, V> implements Map<K,V>
 {
 	// ------------------------------------------------------------------------
 	// Inner class: BinaryNode
@@ -37,17 +57,33 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		Node(K key, V value) {
 			this.key = key;
 			this.value = value;
+			this.prefix = key == null || keyPrefix == null ? 0 : keyPrefix.prefix(key);
+			this.epoch = SplayTreeMap.this.epoch;
 			left = right = null;
 		}
 
+		/** copy of n in the current epoch */
+		Node(Node n) {
+			this.key = n.key;
+			this.value = n.value;
+			this.prefix = n.prefix;
+			this.epoch = SplayTreeMap.this.epoch;
+			this.left = n.left;
+			this.right = n.right;
+		}
+
 		/** node key */
 		K key;
 		/** node value */
 		V value;
+		/** order preserving key prefix - 0 unless a KeyPrefix is set */
+		final long prefix;
 		/** left child */
 		Node left;
 		/** right child */
 		Node right;
+		/** epoch of creation - nodes of older epochs may be shared with a snapshot */
+		final int epoch;
 
 		/* (non-Javadoc) @see java.util.Map.Entry#getKey() */
 		@Override final
@@ -62,7 +98,7 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		/* (non-Javadoc) @see java.util.Map.Entry#setValue(java.lang.Object) */
 		@Override final
 		public V setValue(V value) {
-			V oldv = value;
+			final V oldv = this.value;
 			this.value = value;
 			return oldv;
 		} 
@@ -81,14 +117,84 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 	/** number of key-value mappings */
 	private int size = 0;
 
+	/** operation counters - null unless enabled */
+	private SplayStats stats = null;
+
+	/** splays with longer access paths emit a JFR DeepSplayEvent */
+	private int deepSplayThreshold = SplayEvents.DEEP_SPLAY_THRESHOLD;
+
+	/** JFR shape event monitor - null unless enabled */
+	private SplayEvents.Monitor monitor = null;
+
+	/** latency guard factor - 0 if guard is disabled */
+	private double rebalanceFactor = 0;
+
+	/** key order - null for natural order */
+	private final Comparator<? super K> comparator;
+
+	/** node key prefixes - null if not used */
+	private final KeyPrefix<? super K> keyPrefix;
+
+	/** current epoch - advanced by each snapshot */
+	private int epoch = 0;
+
+	/** open snapshots - closed from any thread */
+	private final AtomicInteger snapshots = new AtomicInteger();
+
+	/** membership filter in front of find - null unless enabled */
+	private CountingBloomFilter<K> filter = null;
+
 	// ------------------------------------------------------------------------
 	// Constructor
 	// ------------------------------------------------------------------------
-	public SplayTreeMap() { }
+	/**
+	 * Keys are ordered by their natural order and must implement
+	 * {@link Comparable}; else {@link ClassCastException} on first use.
+	 */
+	public SplayTreeMap() {
+		this(null);
+	}
+
+	/**
+	 * @param comparator key order; null for natural order
+	 */
+	public SplayTreeMap(Comparator<? super K> comparator) {
+		this(comparator, null);
+	}
+
+	/**
+	 * Store an order preserving prefix of each key in its node, so that most
+	 * comparisons in splay are a single long compare. See {@link KeyPrefix}.
+	 * @param comparator key order; null for natural order
+	 * @param keyPrefix prefix consistent with the key order; null for none
+	 */
+	public SplayTreeMap(Comparator<? super K> comparator, KeyPrefix<? super K> keyPrefix) {
+		this.comparator = comparator;
+		this.keyPrefix = keyPrefix;
+	}
 
 	// ------------------------------------------------------------------------
 	// Inner Ops
 	// ------------------------------------------------------------------------
+	/** compare per comparator or natural order */
+	@SuppressWarnings("unchecked")
+	private int compare(K k1, K k2) {
+		final Comparator<? super K> cmp = comparator;
+		return cmp == null ? ((Comparable<? super K>) k1).compareTo(k2) : cmp.compare(k1, k2);
+	}
+
+	/** compare key, with prefix kp, to the key of node t */
+	private int compare(K key, long kp, Node t) {
+		if (kp != t.prefix)
+			return Long.compareUnsigned(kp, t.prefix);
+		return compare(key, t.key);
+	}
+
+	/** @return n, or a copy of n if it may be shared with a snapshot */
+	private Node own(Node n) {
+		return n.epoch == epoch ? n : new Node(n);
+	}
+
 	/** 
 	 * This method just illustrates the top-down method of
 	 * implementing the move-to-root operation and <b>is not used
@@ -101,12 +207,12 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		t = root;
 		header.left = header.right = null;
 		for (;;) {
-			if (key.compareTo(t.key) < 0) {
+			if (compare(key, t.key) < 0) {
 				if (t.left == null) break;
 				r.left = t;                                 /* link right */
 				r = t;
 				t = t.left;
-			} else if (key.compareTo(t.key) > 0) {
+			} else if (compare(key, t.key) > 0) {
 				if (t.right == null) break;
 				l.right = t;                                /* link left */
 				l = t;
@@ -135,38 +241,75 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 	 *   a key that's larger than any in the tree, the rightmost
 	 *   node of the tree becomes the root.  This property is used
 	 *   in the delete() method.
+	 *
+	 *   Each node on the access path is compared with key once.
+	 *
+	 *   While a snapshot is open, nodes on the access path that
+	 *   may be shared with it are copied before they are modified.
+	 *
+	 * @return key compared to the (new) root key
 	 */
 
-	private void splay(K key) {
+	private int splay(K key, SplayOp op) {
 		Node l, r, t, y;
+		int depth = 1, rotations = 0, comparisons = 1;      /* for stats only */
+		final boolean cow = snapshots.get() != 0;
 		l = r = header;
-		t = root;
+		t = cow ? (root = own(root)) : root;
 		header.left = header.right = null;
-		for (;;) {
-			if (key.compareTo(t.key) < 0) {
+		final long kp = keyPrefix == null ? 0 : keyPrefix.prefix(key);
+		int c = compare(key, kp, t);                        /* one compare per node: */
+		for (;;) {                                          /* c is key vs t.key */
+			if (c < 0) {
 				if (t.left == null) break;
-				if (key.compareTo(t.left.key) < 0) {
+				if (cow) t.left = own(t.left);
+				comparisons++;
+				if ((c = compare(key, kp, t.left)) < 0) {
 					y = t.left;                            /* rotate right */
 					t.left = y.right;
 					y.right = t;
 					t = y;
+					rotations++;
+					depth++;
 					if (t.left == null) break;
+					if (cow) t.left = own(t.left);
+					r.left = t;                             /* link right */
+					r = t;
+					t = t.left;
+					depth++;
+					comparisons++;
+					c = compare(key, kp, t);
+				} else {
+					r.left = t;                             /* link right */
+					r = t;
+					t = t.left;
+					depth++;
 				}
-				r.left = t;                                 /* link right */
-				r = t;
-				t = t.left;
-			} else if (key.compareTo(t.key) > 0) {
+			} else if (c > 0) {
 				if (t.right == null) break;
-				if (key.compareTo(t.right.key) > 0) {
+				if (cow) t.right = own(t.right);
+				comparisons++;
+				if ((c = compare(key, kp, t.right)) > 0) {
 					y = t.right;                            /* rotate left */
 					t.right = y.left;
 					y.left = t;
 					t = y;
+					rotations++;
+					depth++;
 					if (t.right == null) break;
+					if (cow) t.right = own(t.right);
+					l.right = t;                            /* link left */
+					l = t;
+					t = t.right;
+					depth++;
+					comparisons++;
+					c = compare(key, kp, t);
+				} else {
+					l.right = t;                            /* link left */
+					l = t;
+					t = t.right;
+					depth++;
 				}
-				l.right = t;                                /* link left */
-				l = t;
-				t = t.right;
 			} else {
 				break;
 			}
@@ -176,6 +319,139 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		t.left = header.right;
 		t.right = header.left;
 		root = t;
+
+		if (SplayStats.ENABLED && stats != null)
+			stats.onSplay(depth, rotations, comparisons);
+		if (SplayEvents.ENABLED) {
+			if (depth > deepSplayThreshold)
+				SplayEvents.deepSplay(getClass(), op, depth, rotations, size);
+			if (monitor != null)
+				monitor.onSplay(depth, size);
+		}
+
+		// latency guard: rebuild and splay again on the balanced tree - which
+		// can not trip the guard again as its height is the bit length of size
+		if (rebalanceFactor > 0 && depth > rebalanceFactor * (32 - Integer.numberOfLeadingZeros(size))) {
+			rebalance();
+			return splay(key, op);
+		}
+		return c;
+	}
+
+	/**
+	 * Day-Stout-Warren: rotate the tree hanging off pseudo.right into a
+	 * right leaning vine (linked list).
+	 * @return number of nodes in the vine
+	 */
+	private int treeToVine(Node pseudo) {
+		Node tail = pseudo;
+		Node rest = tail.right;
+		int n = 0;
+		while (rest != null) {
+			if (rest.left == null) {
+				tail = rest;
+				rest = rest.right;
+				n++;
+			} else {
+				final Node x = rest.left;                   /* rotate right */
+				rest.left = x.right;
+				x.right = rest;
+				rest = x;
+				tail.right = x;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Day-Stout-Warren: left rotate every other node of the first
+	 * 2*count nodes of the vine.
+	 */
+	private void compress(Node pseudo, int count) {
+		Node scanner = pseudo;
+		for (int i = 0; i < count; i++) {
+			final Node child = scanner.right;               /* rotate left */
+			scanner.right = child.right;
+			scanner = scanner.right;
+			child.right = scanner.left;
+			scanner.left = child;
+		}
+	}
+
+	/**
+	 * Splay key to the root.
+	 * @return key compared to the (new) root key; -1 if the tree is empty
+	 * @throws IllegalArgumentException if key is null
+	 */
+	private int splayTo(K key, SplayOp op) {
+		if(key == null)
+			throw new IllegalArgumentException("null key");
+		if (root == null)
+			return -1;
+		return splay(key, op);
+	}
+
+	/**
+	 * Make n the root. Tree must have just been splayed for n.key,
+	 * with c the result of comparing n.key to the root key (non-zero).
+	 */
+	private void linkRoot(Node n, int c) {
+		if (root != null) {
+			if (c < 0) {
+				n.left = root.left;
+				n.right = root;
+				root.left = null;
+			} else {
+				n.right = root.right;
+				n.left = root;
+				root.right = null;
+			}
+		}
+		root = n;
+		size++;
+		if (filter != null)
+			filter.add(n.key);
+
+		if (SplayStats.ENABLED && stats != null)
+			stats.onInsert();
+	}
+
+	/**
+	 * Unlink the root. Joins the subtrees by splaying the max of the left
+	 * subtree, which then has no right child.
+	 */
+	private void unlinkRoot(SplayOp op) {
+		final Node t = root;
+		if (t.left == null) {
+			root = t.right;
+		} else {
+			final Node x = t.right;
+			root = t.left;
+			splay(t.key, op);
+			root.right = x;
+		}
+		t.left = t.right = null;
+		size--;
+		if (filter != null)
+			filter.remove(t.key);
+
+		if (SplayStats.ENABLED && stats != null)
+			stats.onDelete();
+	}
+
+	/**
+	 * Remapping functions must not modify the map: the pending
+	 * update acts on the root.
+	 */
+	private void checkUnmodified(Node r, int n) {
+		if (root != r || size != n)
+			throw new ConcurrentModificationException("map modified by function");
+	}
+
+	/** add the keys of the tree to the filter, if any - which must be empty */
+	private void refilter() {
+		if (filter != null)
+			inOrder(root, (k, v) -> filter.add(k));
 	}
 
 	// ------------------------------------------------------------------------
@@ -191,35 +467,11 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		if(key == null)
 			throw new IllegalArgumentException("null key");
 
-		// if empty then just add it
-		if (isEmpty()) {
-			root = new Node(key, value);
-			size++;
-			return true;
-		}
-
-		splay(key);
-
-		// check if key is already present
-		int c;
-		if ((c = key.compareTo(root.key)) == 0) 
-			return false;
-
-
-		// insert new node
-		Node n = new Node(key, value);
-		if (c < 0) {
-			n.left = root.left;
-			n.right = root;
-			root.left = null;
-		} else {
-			n.right = root.right;
-			n.left = root;
-			root.right = null;
-		}
-		root = n;
-		size++;
+		final int c = splayTo(key, SplayOp.INSERT);
+		if (c == 0)
+			return false; // already present
 
+		linkRoot(new Node(key, value), c);
 		return true;
 	}
 
@@ -234,24 +486,15 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 	final public boolean delete(K key) {
 		if(key == null)
 			throw new IllegalArgumentException("null key");
+		if (filter != null && !filter.mightContain(key))
+			return false;
 
 		// splay the tree - if key exists the root will be key
-		splay(key);
-		if (key.compareTo(root.key) != 0) {
+		if (splayTo(key, SplayOp.DELETE) != 0)
 			return false; // not found
-		}
 
 		// key exists and is root - delete it
-		if (root.left == null) {
-			root = root.right;
-		} else {
-			final Node x = root.right;
-			root = root.left;
-			splay(key);
-			root.right = x;
-		}
-		size--;
-
+		unlinkRoot(SplayOp.DELETE);
 		return true;
 	}
 
@@ -265,7 +508,7 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		while(x.left != null) 
 			x = x.left;
 
-		splay(x.key);
+		splay(x.key, SplayOp.MIN);
 
 		return x.key;
 	}
@@ -281,14 +524,97 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		while(x.right != null) 
 			x = x.right;
 
-		splay(x.key);
+		splay(x.key, SplayOp.MAX);
+
+		return x.key;
+	}
 
+	/**
+	 * Splays key; the floor, if not key itself, is walked to without splaying.
+	 * @return the greatest key less than or equal to key; null if none
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public K floorKey(K key) {
+		final int c = splayTo(key, SplayOp.FIND);
+		if (root == null)
+			return null;
+		if (c >= 0)
+			return root.key;
+		Node x = root.left;                                 /* root is the ceiling */
+		if (x == null)
+			return null;
+		while (x.right != null)
+			x = x.right;
 		return x.key;
 	}
 
+	/**
+	 * Splays key; the ceiling, if not key itself, is walked to without splaying.
+	 * @return the least key greater than or equal to key; null if none
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final public K ceilingKey(K key) {
+		final int c = splayTo(key, SplayOp.FIND);
+		if (root == null)
+			return null;
+		if (c <= 0)
+			return root.key;
+		Node x = root.right;                                /* root is the floor */
+		if (x == null)
+			return null;
+		while (x.left != null)
+			x = x.left;
+		return x.key;
+	}
+
+	/**
+	 * Visit the mappings with keys in [from, to) in key order. Splays from;
+	 * the rest of the range is walked without splaying, in O(log n + m)
+	 * amortized for m mappings in range.
+	 * @param from least key, inclusive; null for the least key of the map
+	 * @param to greatest key, exclusive; null for no bound
+	 * @throws ConcurrentModificationException if the action modified the map
+	 */
+	final public void range(K from, K to, BiConsumer<? super K, ? super V> action) {
+		if (root == null)
+			return;
+		Node t = root;
+		if (from != null) {
+			splay(from, SplayOp.FIND);
+			t = root;
+			if (compare(t.key, from) < 0) {
+				t = t.right;                                /* root precedes the range */
+			} else {
+				if (to != null && compare(t.key, to) >= 0)
+					return;
+				final Node r = root;
+				final int n = size;
+				action.accept(t.key, t.value);
+				checkUnmodified(r, n);
+				t = t.right;
+			}
+		}
+		final Node r = root;
+		final int n = size;
+		final java.util.ArrayDeque<Node> stack = new java.util.ArrayDeque<Node>();
+		while (t != null || !stack.isEmpty()) {
+			while (t != null) {
+				stack.push(t);
+				t = t.left;
+			}
+			t = stack.pop();
+			if (to != null && compare(t.key, to) >= 0)
+				return;
+			action.accept(t.key, t.value);
+			checkUnmodified(r, n);
+			t = t.right;
+		}
+	}
+
 	/**
 	 * Find a node in the tree. Splay operation is applied
-	 * to tree regardless of whether key specified exists or not.
+	 * to tree regardless of whether key specified exists or not,
+	 * unless the filter, if enabled, rules the key out.
 	 * @return the node (now root) if contained; null otherwise
 	 * @throws IllegalArgumentException if key is null
 	 * 
@@ -297,15 +623,31 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		if(key == null)
 			throw new IllegalArgumentException("null key");
 
-		if (isEmpty()) 
+		if (isEmpty() || filter != null && !filter.mightContain(key)) {
+			if (SplayStats.ENABLED && stats != null)
+				stats.onFind(false);
 			return null;
+		}
 
-		splay(key);
+		final boolean hit = splay(key, SplayOp.FIND) == 0;
+		if (SplayStats.ENABLED && stats != null)
+			stats.onFind(hit);
 
-		if(root.key.compareTo(key) != 0) 
-			return null;
+		return hit ? root : null;
+	}
 
-		return root;
+	/**
+	 * @return the key order; null if natural order
+	 */
+	final public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * @return the node key prefix; null if not used
+	 */
+	final public KeyPrefix<? super K> keyPrefix() {
+		return keyPrefix;
 	}
 
 	/**
@@ -316,6 +658,554 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		return root == null;
 	}
 
+	/**
+	 * Enable operation counters for this tree. Counters only count if the
+	 * JVM is run with <code>-Dds2.stats=true</code>, else they stay at zero;
+	 * see {@link SplayStats}. Idempotent.
+	 * @return the stats of this tree
+	 */
+	final public SplayStats enableStats() {
+		if (stats == null)
+			stats = new SplayStats();
+		return stats;
+	}
+
+	/**
+	 * @return the stats of this tree; null if not enabled
+	 */
+	final public SplayStats stats() {
+		return stats;
+	}
+
+	/**
+	 * Rebuild the tree as a perfectly balanced tree (all levels full except
+	 * possibly the last, which is filled from the left) using the O(n) time,
+	 * O(1) space Day-Stout-Warren algorithm. Does not allocate.
+	 * <p>
+	 * Useful after batch loads, e.g. monotonic inserts, which leave the tree
+	 * as a linked list and the first access to its far end O(n).
+	 * <p>
+	 * While a snapshot is open, the tree is instead rebuilt from new nodes,
+	 * balanced but with the last level not necessarily filled from the left.
+	 */
+	final public void rebalance() {
+		if (root == null)
+			return;
+		if (snapshots.get() != 0) {
+			// root may be a subtree of size nodes - e.g. the left side of a join
+			@SuppressWarnings("unchecked")
+			final K[] ks = (K[]) new Object[size];
+			@SuppressWarnings("unchecked")
+			final V[] vs = (V[]) new Object[size];
+			final int[] i = { 0 };
+			inOrder(root, (k, v) -> {
+				ks[i[0]] = k;
+				vs[i[0]++] = v;
+			});
+			root = build(ks, vs, 0, i[0]);
+			if (SplayStats.ENABLED && stats != null)
+				stats.onRebalance();
+			return;
+		}
+		final Node pseudo = header;
+		pseudo.left = null;
+		pseudo.right = root;
+
+		int n = treeToVine(pseudo);
+		final int leaves = n + 1 - Integer.highestOneBit(n + 1);
+		compress(pseudo, leaves);
+		n -= leaves;
+		while (n > 1) {
+			n /= 2;
+			compress(pseudo, n);
+		}
+
+		root = pseudo.right;
+		pseudo.right = null;
+
+		if (SplayStats.ENABLED && stats != null)
+			stats.onRebalance();
+	}
+
+	/**
+	 * Set the latency guard: a splay whose access path is longer than
+	 * <code>factor * (floor(log2(size)) + 1)</code>, i.e. factor times the
+	 * height of a balanced tree, triggers a {@link #rebalance()}. This bounds
+	 * the worst case splay of the <i>next</i> accesses to O(log n) at the cost
+	 * of an O(n) rebuild. Disabled by default.
+	 * @param factor greater than 1.0 (3.0 is a reasonable start); 0 disables the guard
+	 * @throws IllegalArgumentException if factor is neither 0 nor greater than 1.0
+	 */
+	final public void setRebalanceFactor(double factor) {
+		if (factor != 0 && !(factor > 1.0))
+			throw new IllegalArgumentException("factor: " + factor);
+		rebalanceFactor = factor;
+	}
+
+	/**
+	 * Set the access path length above which a splay emits a JFR
+	 * {@link DeepSplayEvent}. See {@link SplayEvents}.
+	 * @param depth threshold; Integer.MAX_VALUE to disable
+	 * @throws IllegalArgumentException if depth is less than 1
+	 */
+	final public void setDeepSplayThreshold(int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("depth: " + depth);
+		deepSplayThreshold = depth;
+	}
+
+	/**
+	 * Emit periodic JFR {@link SplayShapeEvent}s for this tree. See {@link SplayEvents}.
+	 * Replaces any previous registration of this tree.
+	 * @param name of the tree in the events
+	 * @throws IllegalStateException if JFR events are disabled
+	 */
+	final public void enableShapeEvents(String name) {
+		final SplayEvents.Monitor m = SplayEvents.monitor(name, getClass(), size);
+		SplayEvents.unmonitor(monitor);
+		monitor = m;
+	}
+
+	/**
+	 * Stop emitting periodic JFR shape events for this tree.
+	 */
+	final public void disableShapeEvents() {
+		SplayEvents.unmonitor(monitor);
+		monitor = null;
+	}
+
+	/**
+	 * Put a {@link CountingBloomFilter} in front of find, get, containsKey,
+	 * delete and remove: keys it rules out return without a splay, so misses
+	 * no longer pull their neighbours to the root. Keys are hashed with
+	 * {@link Object#hashCode()}, which must be consistent with the key order.
+	 * <p>
+	 * Replaces any previous filter, so this is also how to resize: call it
+	 * again with a larger expected size when {@link CountingBloomFilter#fill()}
+	 * runs past 1/2. O(n) to load the current keys.
+	 * @param expected number of keys
+	 * @return the filter
+	 * @throws IllegalArgumentException if expected is not positive
+	 */
+	final public CountingBloomFilter<K> enableFilter(int expected) {
+		return enableFilter(expected, Object::hashCode);
+	}
+
+	/**
+	 * See {@link #enableFilter(int)}.
+	 * @param expected number of keys
+	 * @param hash key hash consistent with the key order, e.g.
+	 * <code>Arrays::hashCode</code> for <code>byte[]</code> keys
+	 * @return the filter
+	 * @throws IllegalArgumentException if expected is not positive or hash is null
+	 */
+	final public CountingBloomFilter<K> enableFilter(int expected, ToIntFunction<? super K> hash) {
+		filter = new CountingBloomFilter<K>(expected, hash);
+		refilter();
+		return filter;
+	}
+
+	/**
+	 * @return the membership filter; null if not enabled
+	 */
+	final public CountingBloomFilter<K> filter() {
+		return filter;
+	}
+
+	/**
+	 * Remove the membership filter.
+	 */
+	final public void disableFilter() {
+		filter = null;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : snapshots
+	// ------------------------------------------------------------------------
+	/**
+	 * A read only, point in time view of a SplayTreeMap.
+	 * <p>
+	 * A snapshot does not change, and can be read by any thread while the map
+	 * is used by its owner; hand it over safely, e.g. through an
+	 * {@link java.util.concurrent.Executor}. Close it when done, from any
+	 * thread: until then, the map copies the nodes it would modify.
+	 */
+	public interface Snapshot<K, V> extends AutoCloseable {
+		/** @return number of mappings */
+		int size();
+
+		/** @return key order of the map; null for natural order */
+		Comparator<? super K> comparator();
+
+		/**
+		 * Visit all mappings in key order.
+		 * @throws IllegalStateException if the snapshot is closed
+		 */
+		void forEach(BiConsumer<? super K, ? super V> action);
+
+		/** Release the snapshot. Idempotent. */
+		@Override
+		void close();
+	}
+
+	/**
+	 * Take a snapshot of the map in constant time.
+	 * <p>
+	 * The nodes of the map are shared with the snapshot and copied on write:
+	 * while any snapshot is open, the first splay through a node after the
+	 * snapshot copies it, so the map holds up to twice its nodes and its
+	 * accesses allocate. An entry returned by {@link #find(Object)} must not be
+	 * modified once a snapshot is taken.
+	 * @return a snapshot; close it when done
+	 */
+	final public Snapshot<K, V> snapshot() {
+		snapshots.incrementAndGet();
+		epoch++;
+		return new View(root, size);
+	}
+
+	/** a snapshot: the root and size at the time */
+	final class View implements Snapshot<K, V> {
+		final Node root;
+		final int size;
+		private final AtomicBoolean open = new AtomicBoolean(true);
+
+		private View(Node root, int size) {
+			this.root = root;
+			this.size = size;
+		}
+		@Override public int size() {
+			return size;
+		}
+		@Override public Comparator<? super K> comparator() {
+			return comparator;
+		}
+		@Override public void forEach(BiConsumer<? super K, ? super V> action) {
+			check();
+			inOrder(root, action);
+		}
+		@Override public void close() {
+			if (open.compareAndSet(true, false))
+				snapshots.decrementAndGet();
+		}
+		void check() {
+			if (!open.get())
+				throw new IllegalStateException("snapshot closed");
+		}
+		byte[] shape() {
+			check();
+			return SplayTreeMap.this.shape(root, size);
+		}
+		int[] hotRanks(int k) {
+			check();
+			return SplayTreeMap.this.hotRanks(root, k);
+		}
+	}
+
+	/**
+	 * Copy the mappings into an immutable {@link FrozenMap} in O(n), for read
+	 * only phases: an array laid out sorted index with no splay writes, that
+	 * can be shared across threads without locks. Does not splay; the map
+	 * remains usable and later changes are not seen by the frozen map.
+	 * @return a frozen copy of this map
+	 */
+	final public FrozenMap<K, V> freeze() {
+		final int n = size;
+		final Object[] keys = new Object[n + 1];
+		final Object[] values = new Object[n + 1];
+		final long[] prefixes = keyPrefix == null ? null : new long[n + 1];
+		final int[] k = { Eytzinger.first(n) };
+		inOrder(root, (key, value) -> {
+			keys[k[0]] = key;
+			values[k[0]] = value;
+			if (prefixes != null)
+				prefixes[k[0]] = keyPrefix.prefix(key);
+			k[0] = Eytzinger.next(k[0], n);
+		});
+		return new FrozenMap<K, V>(keys, values, prefixes, n, comparator, keyPrefix);
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : warm start
+	// ------------------------------------------------------------------------
+	/**
+	 * The keys nearest the root, breadth first, without splaying. As accessed
+	 * keys are splayed to the root, these are (about) the most recently used.
+	 * @param k number of keys
+	 * @return up to k keys, root first
+	 * @see #warm(List)
+	 */
+	final public List<K> hotKeys(int k) {
+		final List<K> keys = new ArrayList<K>(Math.min(k, size));
+		for (Node n : breadthFirst(root, k))
+			keys.add(n.key);
+		return keys;
+	}
+
+	/**
+	 * Splay the given keys in reverse order, so that the first ends up at the
+	 * root, the next ones near it. Restores the hot set of a tree from its
+	 * {@link #hotKeys(int)}, e.g. after a bulk load. Absent keys are skipped.
+	 */
+	final public void warm(List<? extends K> hotKeys) {
+		for (ListIterator<? extends K> it = hotKeys.listIterator(hotKeys.size()); it.hasPrevious(); )
+			find(it.previous());
+	}
+
+	private List<Node> breadthFirst(Node r, int k) {
+		if (k < 0)
+			throw new IllegalArgumentException("k: " + k);
+		final List<Node> nodes = new ArrayList<Node>(Math.min(k, size));
+		if (r != null && k > 0)
+			nodes.add(r);
+		for (int i = 0; i < nodes.size() && nodes.size() < k; i++) {
+			final Node n = nodes.get(i);
+			if (n.left != null && nodes.size() < k)
+				nodes.add(n.left);
+			if (n.right != null && nodes.size() < k)
+				nodes.add(n.right);
+		}
+		return nodes;
+	}
+
+	// ------------------------------------------------------------------------
+	// Package API : inspection
+	// ------------------------------------------------------------------------
+	/**
+	 * @return a structural (non splaying) navigator over this tree
+	 */
+	final TreeShape.Navigator<Node> navigator() {
+		return new TreeShape.Navigator<Node>() {
+			@Override public Node root() { return root; }
+			@Override public Node left(Node n) { return n.left; }
+			@Override public Node right(Node n) { return n.right; }
+			@Override public Object key(Node n) { return n.key; }
+		};
+	}
+
+	/**
+	 * Sample cold mappings without splaying: descend from the root to a leaf
+	 * along a random path, per sample. As accessed keys are splayed to the
+	 * root, the leaves are the least recently used - approximately.
+	 * @param samples number of descents
+	 * @param order of the leaf values, least first; null to order by depth, deepest first
+	 * @return the key of the least leaf sampled; null if the map is empty
+	 */
+	final K sampleLeaf(int samples, java.util.Random rnd, Comparator<? super V> order) {
+		Node least = null;
+		int leastDepth = 0;
+		for (int i = 0; i < samples && root != null; i++) {
+			Node t = root;
+			int depth = 0;
+			long bits = 0;
+			for (;;) {
+				if ((depth & 63) == 0)
+					bits = rnd.nextLong();
+				final Node next = t.left == null ? t.right : t.right == null ? t.left
+						: (bits >>> (depth & 63) & 1) == 0 ? t.left : t.right;
+				if (next == null)
+					break;
+				t = next;
+				depth++;
+			}
+			if (least == null || (order == null ? depth > leastDepth : order.compare(t.value, least.value) < 0)) {
+				least = t;
+				leastDepth = depth;
+			}
+		}
+		return least == null ? null : least.key;
+	}
+
+	// ------------------------------------------------------------------------
+	// Package API : bulk
+	// ------------------------------------------------------------------------
+	/**
+	 * Visit all mappings in key order without splaying.
+	 */
+	final void inOrder(BiConsumer<? super K, ? super V> action) {
+		inOrder(root, action);
+	}
+
+	private void inOrder(Node t, BiConsumer<? super K, ? super V> action) {
+		final java.util.ArrayDeque<Node> stack = new java.util.ArrayDeque<Node>();
+		while (t != null || !stack.isEmpty()) {
+			while (t != null) {
+				stack.push(t);
+				t = t.left;
+			}
+			t = stack.pop();
+			action.accept(t.key, t.value);
+			t = t.right;
+		}
+	}
+
+	/**
+	 * The shape of the tree (or of a snapshot): per node in preorder, 2 bits
+	 * for its left and right child.
+	 */
+	final byte[] shape() {
+		return shape(root, size);
+	}
+
+	static byte[] shape(Snapshot<?, ?> snapshot) {
+		return ((SplayTreeMap<?, ?>.View) snapshot).shape();
+	}
+
+	private byte[] shape(Node r, int n) {
+		final byte[] shape = new byte[(2 * n + 7) / 8];
+		final java.util.ArrayDeque<Node> stack = new java.util.ArrayDeque<Node>();
+		if (r != null)
+			stack.push(r);
+		for (int i = 0; !stack.isEmpty(); i++) {
+			final Node t = stack.pop();
+			final int bits = (t.left != null ? 1 : 0) | (t.right != null ? 2 : 0);
+			shape[(2 * i) >>> 3] |= bits << ((2 * i) & 7);
+			if (t.right != null) stack.push(t.right);
+			if (t.left != null) stack.push(t.left);
+		}
+		return shape;
+	}
+
+	/**
+	 * In order ranks of the k keys nearest the root, per {@link #hotKeys(int)}.
+	 */
+	final int[] hotRanks(int k) {
+		return hotRanks(root, k);
+	}
+
+	static int[] hotRanks(Snapshot<?, ?> snapshot, int k) {
+		return ((SplayTreeMap<?, ?>.View) snapshot).hotRanks(k);
+	}
+
+	private int[] hotRanks(Node r, int k) {
+		final List<Node> hot = breadthFirst(r, k);
+		final java.util.IdentityHashMap<Node, Integer> index = new java.util.IdentityHashMap<Node, Integer>(hot.size());
+		for (int i = 0; i < hot.size(); i++)
+			index.put(hot.get(i), i);
+		final int[] ranks = new int[hot.size()];
+		final java.util.ArrayDeque<Node> stack = new java.util.ArrayDeque<Node>();
+		Node t = r;
+		for (int rank = 0; t != null || !stack.isEmpty(); rank++) {
+			while (t != null) {
+				stack.push(t);
+				t = t.left;
+			}
+			t = stack.pop();
+			final Integer i = index.get(t);
+			if (i != null)
+				ranks[i] = rank;
+			t = t.right;
+		}
+		return ranks;
+	}
+
+	/**
+	 * @return true if shape is the {@link #shape()} of a tree of n nodes
+	 */
+	static boolean isShape(byte[] shape, int n) {
+		if (shape.length < (2 * n + 7) / 8)
+			return false;
+		int pending = 0;                                    /* nodes awaiting their right child */
+		boolean wantsLeft = false;
+		for (int i = 0; i < n; i++) {
+			if (i > 0 && !wantsLeft) {
+				if (pending == 0)
+					return false;
+				pending--;
+			}
+			final int bits = (shape[(2 * i) >>> 3] >>> ((2 * i) & 7)) & 3;
+			if ((bits & 2) != 0)
+				pending++;
+			wantsLeft = (bits & 1) != 0;
+		}
+		return !wantsLeft && pending == 0;
+	}
+
+	/**
+	 * Build the tree of n sorted mappings with the given {@link #shape()} in O(n).
+	 * @throws IllegalStateException if the map is not empty
+	 * @throws IllegalArgumentException if the keys are not strictly increasing
+	 * in map order, or the shape is not one of n nodes
+	 */
+	final void buildShaped(K[] keys, V[] values, int n, byte[] shape) {
+		if (root != null)
+			throw new IllegalStateException("map is not empty");
+		for (int i = 1; i < n; i++)
+			if (compare(keys[i - 1], keys[i]) >= 0)
+				throw new IllegalArgumentException("keys not in map order at " + i);
+		if (!isShape(shape, n))
+			throw new IllegalArgumentException("not the shape of " + n + " nodes");
+
+		// link children in preorder numbering
+		final int[] left = new int[n], right = new int[n];
+		final int[] pending = new int[n];                   /* nodes awaiting their right child */
+		int sp = 0;
+		boolean wantsLeft = false;
+		for (int i = 0; i < n; i++) {
+			left[i] = right[i] = -1;
+			if (i > 0) {
+				if (wantsLeft)
+					left[i - 1] = i;
+				else
+					right[pending[--sp]] = i;
+			}
+			final int bits = (shape[(2 * i) >>> 3] >>> ((2 * i) & 7)) & 3;
+			if ((bits & 2) != 0)
+				pending[sp++] = i;
+			wantsLeft = (bits & 1) != 0;
+		}
+
+		// in order rank of each node, then the nodes
+		final int[] rank = new int[n];
+		int r = 0;
+		sp = 0;
+		for (int t = n > 0 ? 0 : -1; t >= 0 || sp > 0; ) {
+			while (t >= 0) {
+				pending[sp++] = t;
+				t = left[t];
+			}
+			t = pending[--sp];
+			rank[t] = r++;
+			t = right[t];
+		}
+		final List<Node> nodes = new ArrayList<Node>(n);
+		for (int i = 0; i < n; i++)
+			nodes.add(new Node(keys[rank[i]], values[rank[i]]));
+		for (int i = 0; i < n; i++) {
+			nodes.get(i).left = left[i] < 0 ? null : nodes.get(left[i]);
+			nodes.get(i).right = right[i] < 0 ? null : nodes.get(right[i]);
+		}
+		root = n > 0 ? nodes.get(0) : null;
+		size = n;
+		refilter();
+	}
+
+	/**
+	 * Build a balanced tree of n sorted mappings in O(n).
+	 * @throws IllegalStateException if the map is not empty
+	 * @throws IllegalArgumentException if the keys are not strictly increasing in map order
+	 */
+	final void buildSorted(K[] keys, V[] values, int n) {
+		if (root != null)
+			throw new IllegalStateException("map is not empty");
+		for (int i = 1; i < n; i++)
+			if (compare(keys[i - 1], keys[i]) >= 0)
+				throw new IllegalArgumentException("keys not in map order at " + i);
+		root = build(keys, values, 0, n);
+		size = n;
+		refilter();
+	}
+
+	private Node build(K[] keys, V[] values, int from, int to) {
+		if (from >= to)
+			return null;
+		final int mid = (from + to) >>> 1;
+		final Node n = new Node(keys[mid], values[mid]);
+		n.left = build(keys, values, from, mid);
+		n.right = build(keys, values, mid + 1, to);
+		return n;
+	}
+
 	// ------------------------------------------------------------------------
 	// Public API : Map<K, V>
 	// ------------------------------------------------------------------------
@@ -343,34 +1233,196 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 		return node.value;
 	}
 
+	/* (non-Javadoc) @see java.util.Map#getOrDefault(java.lang.Object, java.lang.Object) */
+	@SuppressWarnings("unchecked")
+	@Override final
+	public V getOrDefault(Object key, V defaultValue) {
+		final Node node = find((K)key);
+		return node == null ? defaultValue : node.value;
+	}
+
+	/*
+	 * The update operations below splay once and then act on the root,
+	 * instead of the find-then-insert/delete of the Map defaults.
+	 */
+
 	/* (non-Javadoc) @see java.util.Map#put(java.lang.Object, java.lang.Object) */
 	@Override final
 	public V put(K key, V value) {
-		final Node node = find((K)key);
-		if(node == null) {
-			if(!insert(key, value))
-				throw new RuntimeException("BUG: find returned null but insert failed!");
-			return null; // successful insert of new key per Map#put
-		}
-		return node.setValue(value);
+		final int c = splayTo(key, SplayOp.PUT);
+		if (c == 0)
+			return root.setValue(value);
+
+		linkRoot(new Node(key, value), c);
+		return null; // successful insert of new key per Map#put
+	}
+
+	/* (non-Javadoc) @see java.util.Map#putIfAbsent(java.lang.Object, java.lang.Object) */
+	@Override final
+	public V putIfAbsent(K key, V value) {
+		final int c = splayTo(key, SplayOp.PUT);
+		if (c == 0)
+			return root.value == null ? root.setValue(value) : root.value;
+
+		linkRoot(new Node(key, value), c);
+		return null;
+	}
+
+	/* (non-Javadoc) @see java.util.Map#replace(java.lang.Object, java.lang.Object) */
+	@Override final
+	public V replace(K key, V value) {
+		if (splayTo(key, SplayOp.PUT) != 0)
+			return null;
+		return root.setValue(value);
+	}
+
+	/* (non-Javadoc) @see java.util.Map#replace(java.lang.Object, java.lang.Object, java.lang.Object) */
+	@Override final
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (splayTo(key, SplayOp.PUT) != 0 || !eq(root.value, oldValue))
+			return false;
+		root.value = newValue;
+		return true;
 	}
 
 	/* (non-Javadoc) @see java.util.Map#remove(java.lang.Object) */
 	@SuppressWarnings("unchecked")
 	@Override final
 	public V remove(Object key) {
-		final Node node = find((K)key);
-		if(node == null)
-			return null; // wasn't there; null per Map#remove
+		final Map.Entry<K, V> t = unlink((K)key);
+		return t == null ? null : t.getValue(); // null if it wasn't there, per Map#remove
+	}
+
+	/**
+	 * Remove key in one splay.
+	 * @return its mapping, no longer in the tree; null if key is not mapped
+	 * @throws IllegalArgumentException if key is null
+	 */
+	final Map.Entry<K, V> unlink(K key) {
+		if (filter != null && key != null && !filter.mightContain(key))
+			return null;
+		if (splayTo(key, SplayOp.DELETE) != 0)
+			return null;
+
+		final Node t = root;
+		unlinkRoot(SplayOp.DELETE);
+		return t;
+	}
+
+	/* (non-Javadoc) @see java.util.Map#remove(java.lang.Object, java.lang.Object) */
+	@SuppressWarnings("unchecked")
+	@Override final
+	public boolean remove(Object key, Object value) {
+		if (splayTo((K)key, SplayOp.DELETE) != 0 || !eq(root.value, value))
+			return false;
+		unlinkRoot(SplayOp.DELETE);
+		return true;
+	}
 
-		// delete the node - save value for return
-		V value = node.value;
-		if(!delete((K)key))
-			throw new RuntimeException("BUG: find returned node but delete failed!");
+	/**
+	 * Per {@link Map#computeIfAbsent(Object, Function)}.
+	 * @throws ConcurrentModificationException if the function modified the map
+	 */
+	@Override final
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		if (mappingFunction == null)
+			throw new NullPointerException("mappingFunction");
+
+		final int c = splayTo(key, SplayOp.COMPUTE);
+		if (c == 0 && root.value != null)
+			return root.value;
+
+		final Node r = root;
+		final int n = size;
+		final V value = mappingFunction.apply(key);
+		checkUnmodified(r, n);
+		if (value == null)
+			return null;
 
+		if (c == 0)
+			root.value = value;
+		else
+			linkRoot(new Node(key, value), c);
 		return value;
 	}
 
+	/**
+	 * Per {@link Map#computeIfPresent(Object, BiFunction)}.
+	 * @throws ConcurrentModificationException if the function modified the map
+	 */
+	@Override final
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (remappingFunction == null)
+			throw new NullPointerException("remappingFunction");
+
+		if (splayTo(key, SplayOp.COMPUTE) != 0 || root.value == null)
+			return null;
+
+		final Node r = root;
+		final int n = size;
+		final V value = remappingFunction.apply(key, r.value);
+		checkUnmodified(r, n);
+		if (value == null)
+			unlinkRoot(SplayOp.COMPUTE);
+		else
+			root.value = value;
+		return value;
+	}
+
+	/**
+	 * Per {@link Map#compute(Object, BiFunction)}.
+	 * @throws ConcurrentModificationException if the function modified the map
+	 */
+	@Override final
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (remappingFunction == null)
+			throw new NullPointerException("remappingFunction");
+
+		final int c = splayTo(key, SplayOp.COMPUTE);
+		final Node r = root;
+		final int n = size;
+		final V value = remappingFunction.apply(key, c == 0 ? r.value : null);
+		checkUnmodified(r, n);
+		return update(key, value, c);
+	}
+
+	/**
+	 * Per {@link Map#merge(Object, Object, BiFunction)}.
+	 * @throws ConcurrentModificationException if the function modified the map
+	 */
+	@Override final
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (value == null || remappingFunction == null)
+			throw new NullPointerException(value == null ? "value" : "remappingFunction");
+
+		final int c = splayTo(key, SplayOp.COMPUTE);
+		if (c != 0 || root.value == null)
+			return update(key, value, c);
+
+		final Node r = root;
+		final int n = size;
+		final V merged = remappingFunction.apply(r.value, value);
+		checkUnmodified(r, n);
+		return update(key, merged, c);
+	}
+
+	/** compute/merge tail: c is the result of the splay for key */
+	private V update(K key, V value, int c) {
+		if (value == null) {
+			if (c == 0)
+				unlinkRoot(SplayOp.COMPUTE);
+		} else if (c == 0) {
+			root.value = value;
+		} else {
+			linkRoot(new Node(key, value), c);
+		}
+		return value;
+	}
+
+	private static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
 	/* (non-Javadoc) @see java.util.Map#size() */
 	@Override final
 	public int size() {
@@ -380,8 +1432,8 @@ public class SplayTreeMap<K extends Comparable<K>, V> implements Map<K,V>
 	/* (non-Javadoc) @see java.util.Map#putAll(java.util.Map) */
 	@Override
 	public void putAll(Map<? extends K, ? extends V> m) {
-		for(K k : m.keySet())
-			insert(k, m.get(k));
+		for(Map.Entry<? extends K, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
 	}
 
 	/** NOT SUPPORTED */
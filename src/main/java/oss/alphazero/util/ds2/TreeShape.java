@@ -0,0 +1,510 @@
+package oss.alphazero.util.ds2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only shape analysis of binary search trees -- {@link SplayTree},
+ * {@link SplayTreeMap} and {@link ByteSplayTreeMap} -- or any tree that
+ * can be walked with a {@link Navigator}.
+ * <p>
+ * The tree is walked, never searched, so inspection does <b>not</b> splay.
+ * It must not be modified by another thread during the walk.
+ * <p>
+ * A TreeShape is a snapshot taken at construction: the depth distribution
+ * and path length statistics of the whole tree, and a copy of its top levels
+ * (at most {@link #MAX_DRAW_NODES} nodes) for {@link #toAscii()} (a port of
+ * Sleator's <code>draw-tree.c</code>) and {@link #toDot()}. Subtrees below the
+ * copied levels are drawn as <code>(+n)</code> summary nodes, so large trees
+ * get a sampled picture of their top.
+ * <p>
+ * Depths are 1 based: the root is at depth 1, i.e. a node's depth is the
+ * length of the access path of a search for its key.
+ *
+ * This code is in the public domain.
+ */
+public final class TreeShape {
+	/**
+	 * Structural (non splaying) access to a binary tree.
+	 * @param N tree node type
+	 */
+	public interface Navigator<N> {
+		/** @return root node; null if tree is empty */
+		N root();
+		/** @return left child of n; null if none */
+		N left(N n);
+		/** @return right child of n; null if none */
+		N right(N n);
+		/** @return key (or element) of n */
+		Object key(N n);
+	}
+
+	/** maximum number of nodes copied for drawing */
+	public static final int MAX_DRAW_NODES = 200;
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	private int size;
+	private int height;
+	private long totalPathLength;
+	private long[] depthCounts = new long[0];
+	private int leftChildren;
+	private int rightChildren;
+	private int leftSpine;
+	private int rightSpine;
+	private int rootLeftSize;
+	private int rootRightSize;
+
+	/** drawable copy of the top levels of the tree */
+	private PNode proot;
+
+	// ------------------------------------------------------------------------
+	// Constructor
+	// ------------------------------------------------------------------------
+	private TreeShape() { }
+
+	/** @return shape of the given tree */
+	public static TreeShape of(SplayTree<?> tree) {
+		return of(tree.navigator());
+	}
+
+	/** @return shape of the given tree */
+	public static TreeShape of(SplayTreeMap<?, ?> tree) {
+		return of(tree.navigator());
+	}
+
+	/** @return shape of the given tree */
+	public static TreeShape of(ByteSplayTreeMap<?> tree) {
+		return of(tree.navigator());
+	}
+
+	/** @return shape of the tree walked by the navigator */
+	public static <N> TreeShape of(Navigator<N> nav) {
+		if(nav == null)
+			throw new IllegalArgumentException("null navigator");
+		final TreeShape shape = new TreeShape();
+		shape.analyze(nav);
+		shape.copyTop(nav);
+		return shape;
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : statistics
+	// ------------------------------------------------------------------------
+	/** @return number of nodes */
+	public int size() { return size; }
+
+	/** @return depth of the deepest node (0 if empty) */
+	public int height() { return height; }
+
+	/** @return height of a perfectly balanced tree of the same size */
+	public int optimalHeight() { return 32 - Integer.numberOfLeadingZeros(size); }
+
+	/** @return sum of the depths of all nodes */
+	public long totalPathLength() { return totalPathLength; }
+
+	/** @return total path length of a perfectly balanced tree of the same size */
+	public long optimalPathLength() { return optimalPathLength(size); }
+
+	/** @return total path length over optimal path length; 1.0 is perfectly balanced */
+	public double pathLengthRatio() {
+		final long opt = optimalPathLength();
+		return opt == 0 ? 1.0 : (double) totalPathLength / opt;
+	}
+
+	/** @return mean node depth */
+	public double meanDepth() { return size == 0 ? 0 : (double) totalPathLength / size; }
+
+	/** @return number of nodes at each depth; index 0 is unused */
+	public long[] depthDistribution() { return depthCounts.clone(); }
+
+	/** @return number of nodes that are a left child */
+	public int leftChildren() { return leftChildren; }
+
+	/** @return number of nodes that are a right child */
+	public int rightChildren() { return rightChildren; }
+
+	/**
+	 * @return (right children - left children) / (size - 1), in [-1, 1]:
+	 * -1 is a left linked list, +1 a right linked list.
+	 */
+	public double skew() {
+		return size < 2 ? 0 : (double)(rightChildren - leftChildren) / (size - 1);
+	}
+
+	/** @return (root left subtree size - root right subtree size) / size, in (-1, 1) */
+	public double rootBalance() {
+		return size == 0 ? 0 : (double)(rootLeftSize - rootRightSize) / size;
+	}
+
+	/** @return length of the left spine (root to minimum), in nodes */
+	public int leftSpine() { return leftSpine; }
+
+	/** @return length of the right spine (root to maximum), in nodes */
+	public int rightSpine() { return rightSpine; }
+
+	/**
+	 * @return a multi-line text report with the depth distribution bucketed by
+	 * powers of 2.
+	 */
+	public String summary() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format("size:%d height:%d (optimal:%d) mean-depth:%.2f path-length-ratio:%.3f%n",
+				size, height, optimalHeight(), meanDepth(), pathLengthRatio()));
+		sb.append(String.format("skew:%.3f root-balance:%.3f left-spine:%d right-spine:%d%n",
+				skew(), rootBalance(), leftSpine, rightSpine));
+		for(int lo = 1; lo <= height; lo <<= 1) {
+			final int hi = Math.min(height, 2*lo - 1);
+			long n = 0;
+			for(int d = lo; d <= hi; d++)
+				n += depthCounts[d];
+			final int bar = size == 0 ? 0 : (int) Math.round(50.0 * n / size);
+			sb.append(String.format("depth %6d..%-6d %9d ", lo, hi, n));
+			for(int i=0; i<bar; i++)
+				sb.append('#');
+			sb.append(String.format("%n"));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TreeShape[size:%d height:%d mean-depth:%.2f ratio:%.3f skew:%.3f]",
+				size, height, meanDepth(), pathLengthRatio(), skew());
+	}
+
+	// ------------------------------------------------------------------------
+	// Public API : drawing
+	// ------------------------------------------------------------------------
+	/**
+	 * Pretty-prints the copied top of the tree, as <code>draw-tree.c</code> does:
+	 * both edges down from a node have the same length, the minimum such that
+	 * the two subtrees are separated by at least two blanks.
+	 * @return the drawing; empty string if the tree is empty
+	 */
+	public String toAscii() {
+		if(proot == null)
+			return "";
+		final Drawing d = new Drawing();
+		d.computeEdgeLengths(proot);
+		for(int i=0; i<proot.height && i < MAX_HEIGHT; i++)
+			d.lprofile[i] = INFINITY;
+		d.computeLprofile(proot, 0, 0);
+		int xmin = 0;
+		for(int i=0; i<proot.height && i < MAX_HEIGHT; i++)
+			xmin = Math.min(xmin, d.lprofile[i]);
+		for(int i=0; i<proot.height; i++){
+			d.printNext = 0;
+			d.printLevel(proot, -xmin, i);
+			d.out.append('\n');
+		}
+		if(proot.height >= MAX_HEIGHT)
+			d.out.append(String.format("(This tree is taller than %d, and may be drawn incorrectly.)%n", MAX_HEIGHT));
+		return d.out.toString();
+	}
+
+	/**
+	 * @return Graphviz DOT digraph of the copied top of the tree. Elided
+	 * subtrees are drawn as boxes labeled with their size.
+	 */
+	public String toDot() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("digraph tree {\n");
+		sb.append("  node [shape=circle, fontsize=10];\n");
+		if(proot != null) {
+			final List<PNode> nodes = new ArrayList<PNode>();
+			nodes.add(proot);
+			for(int i=0; i<nodes.size(); i++){
+				final PNode n = nodes.get(i);
+				n.id = i;
+				if(n.left != null) nodes.add(n.left);
+				if(n.right != null) nodes.add(n.right);
+			}
+			for(PNode n : nodes){
+				sb.append(String.format("  n%d [label=\"%s\"%s];\n", n.id, escape(n.label),
+						n.elided ? ", shape=box, style=dashed" : ""));
+				if(n.left != null)
+					sb.append(String.format("  n%d:sw -> n%d;\n", n.id, n.left.id));
+				if(n.right != null)
+					sb.append(String.format("  n%d:se -> n%d;\n", n.id, n.right.id));
+			}
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : analysis
+	// ------------------------------------------------------------------------
+	/** single iterative pass - trees may be far too deep to recurse */
+	private <N> void analyze(Navigator<N> nav) {
+		final N root = nav.root();
+		if(root == null)
+			return;
+
+		for(N n = nav.left(root); n != null; n = nav.left(n)) leftSpine++;
+		for(N n = nav.right(root); n != null; n = nav.right(n)) rightSpine++;
+		leftSpine++;
+		rightSpine++;
+
+		long[] counts = new long[64];
+		final List<N> stack = new ArrayList<N>();
+		int[] depths = new int[64];
+		stack.add(root);
+		depths[0] = 1;
+		while(!stack.isEmpty()) {
+			final int top = stack.size() - 1;
+			final N n = stack.remove(top);
+			final int d = depths[top];
+
+			size++;
+			totalPathLength += d;
+			if(d > height) height = d;
+			if(d >= counts.length) counts = java.util.Arrays.copyOf(counts, counts.length * 2);
+			counts[d]++;
+
+			final N l = nav.left(n);
+			final N r = nav.right(n);
+			if(depths.length < stack.size() + 2)
+				depths = java.util.Arrays.copyOf(depths, depths.length * 2);
+			if(l != null) {
+				leftChildren++;
+				depths[stack.size()] = d + 1;
+				stack.add(l);
+			}
+			if(r != null) {
+				rightChildren++;
+				depths[stack.size()] = d + 1;
+				stack.add(r);
+			}
+		}
+		depthCounts = java.util.Arrays.copyOf(counts, height + 1);
+		rootLeftSize = subtreeSize(nav, nav.left(root));
+		rootRightSize = size - 1 - rootLeftSize;
+	}
+
+	private static <N> int subtreeSize(Navigator<N> nav, N t) {
+		if(t == null)
+			return 0;
+		int n = 0;
+		final List<N> stack = new ArrayList<N>();
+		stack.add(t);
+		while(!stack.isEmpty()) {
+			final N x = stack.remove(stack.size() - 1);
+			n++;
+			if(nav.left(x) != null) stack.add(nav.left(x));
+			if(nav.right(x) != null) stack.add(nav.right(x));
+		}
+		return n;
+	}
+
+	static long optimalPathLength(int n) {
+		long total = 0;
+		long level = 1;
+		for(int d = 1; n > 0; d++, level <<= 1) {
+			final long k = Math.min(level, n);
+			total += d * k;
+			n -= k;
+		}
+		return total;
+	}
+
+	/** copy the deepest top levels that fit in MAX_DRAW_NODES */
+	private <N> void copyTop(Navigator<N> nav) {
+		final N root = nav.root();
+		if(root == null)
+			return;
+		// nodes above maxDepth are copied, those at maxDepth + 1 are elided
+		int maxDepth = 1;
+		long n = depthCounts[1];
+		while(maxDepth < height) {
+			final long next = depthCounts[maxDepth + 1];
+			final long elided = maxDepth + 2 <= height ? depthCounts[maxDepth + 2] : 0;
+			if(n + next + elided > MAX_DRAW_NODES)
+				break;
+			maxDepth++;
+			n += next;
+		}
+		proot = copy(nav, root, 1, maxDepth);
+		proot.parentDir = 0;
+	}
+
+	private <N> PNode copy(Navigator<N> nav, N t, int depth, int maxDepth) {
+		final PNode pn = new PNode();
+		if(depth > maxDepth) {
+			pn.elided = true;
+			pn.setLabel("+" + subtreeSize(nav, t));
+			return pn;
+		}
+		pn.setLabel(String.valueOf(nav.key(t)));
+		final N l = nav.left(t);
+		final N r = nav.right(t);
+		if(l != null) {
+			pn.left = copy(nav, l, depth + 1, maxDepth);
+			pn.left.parentDir = -1;
+		}
+		if(r != null) {
+			pn.right = copy(nav, r, depth + 1, maxDepth);
+			pn.right.parentDir = 1;
+		}
+		return pn;
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops : drawing (port of draw-tree.c)
+	// ------------------------------------------------------------------------
+	static final int INFINITY = 1 << 20;
+	static final int LABLEN = 20;
+	static final int MAX_HEIGHT = 1000;
+
+	private static final class PNode {
+		PNode left, right;
+		int edgeLength;     /* length of the edge from this node to its children */
+		                    /* number of "\" or "/".  so it's at least 1         */
+		                    /* unless both children are null.  Then it's 0       */
+		int height;         /* The number of rows required to print this tree */
+		int lablen;
+		int parentDir;      /* -1=I am left, 0=I am root, 1=right       */
+		                    /* this is used to decide how to break ties */
+		                    /* when the label is of even length         */
+		String label;
+		boolean elided;     /* summary of a subtree below the copied levels */
+		int id;             /* DOT node id */
+
+		void setLabel(String s) {
+			label = s.length() > LABLEN ? s.substring(0, LABLEN) : s;
+			if(elided) label = "(" + label + ")";
+			lablen = label.length();
+		}
+	}
+
+	/**
+	 * The lprofile array is description of the left profile of a tree.
+	 * Assuming the root is located at (0,0), lprofile[i] is the leftmost
+	 * point used on row i of the tree.  rprofile is similarly defined.
+	 */
+	private static final class Drawing {
+		final int[] lprofile = new int[MAX_HEIGHT];
+		final int[] rprofile = new int[MAX_HEIGHT];
+		final StringBuilder out = new StringBuilder();
+		int printNext;
+
+		/*
+		 * fills in the lprofile array for the given tree.  It assumes that the
+		 * center of the label of the root of this tree is located at a position
+		 * (x,y).  It assumes that the edge_length fields have been computed.
+		 */
+		void computeLprofile(PNode pn, int x, int y) {
+			if(pn == null) return;
+			final int isleft = pn.parentDir == -1 ? 1 : 0;
+			if(y < MAX_HEIGHT)
+				lprofile[y] = Math.min(lprofile[y], x - ((pn.lablen - isleft) / 2));
+			if(pn.left != null) {
+				for(int i=1; i <= pn.edgeLength && y+i < MAX_HEIGHT; i++)
+					lprofile[y+i] = Math.min(lprofile[y+i], x-i);
+			}
+			computeLprofile(pn.left, x - pn.edgeLength - 1, y + pn.edgeLength + 1);
+			computeLprofile(pn.right, x + pn.edgeLength + 1, y + pn.edgeLength + 1);
+		}
+
+		void computeRprofile(PNode pn, int x, int y) {
+			if(pn == null) return;
+			final int notleft = pn.parentDir != -1 ? 1 : 0;
+			if(y < MAX_HEIGHT)
+				rprofile[y] = Math.max(rprofile[y], x + ((pn.lablen - notleft) / 2));
+			if(pn.right != null) {
+				for(int i=1; i <= pn.edgeLength && y+i < MAX_HEIGHT; i++)
+					rprofile[y+i] = Math.max(rprofile[y+i], x+i);
+			}
+			computeRprofile(pn.left, x - pn.edgeLength - 1, y + pn.edgeLength + 1);
+			computeRprofile(pn.right, x + pn.edgeLength + 1, y + pn.edgeLength + 1);
+		}
+
+		/* fills in the edge_length and height fields of the specified tree. */
+		void computeEdgeLengths(PNode pn) {
+			if(pn == null) return;
+			computeEdgeLengths(pn.left);
+			computeEdgeLengths(pn.right);
+
+			/* first fill in the edge_length of pn */
+			if(pn.right == null && pn.left == null) {
+				pn.edgeLength = 0;
+			} else {
+				int hmin;
+				if(pn.left != null) {
+					for(int i=0; i<pn.left.height && i < MAX_HEIGHT; i++)
+						rprofile[i] = -INFINITY;
+					computeRprofile(pn.left, 0, 0);
+					hmin = pn.left.height;
+				} else {
+					hmin = 0;
+				}
+				if(pn.right != null) {
+					for(int i=0; i<pn.right.height && i < MAX_HEIGHT; i++)
+						lprofile[i] = INFINITY;
+					computeLprofile(pn.right, 0, 0);
+					hmin = Math.min(pn.right.height, hmin);
+				} else {
+					hmin = 0;
+				}
+				int delta = 4;
+				for(int i=0; i<hmin && i < MAX_HEIGHT; i++) {
+					/* the "2" guarantees a gap of 2 between different parts of the tree */
+					delta = Math.max(delta, 2 + 1 + rprofile[i] - lprofile[i]);
+				}
+				/* If the node has two children of height 1, then we allow the
+				   two leaves to be within 1, instead of 2 */
+				if(((pn.left != null && pn.left.height == 1) ||
+					(pn.right != null && pn.right.height == 1)) && delta > 4) delta--;
+				pn.edgeLength = ((delta + 1) / 2) - 1;
+			}
+
+			/* now fill in the height of pn */
+			int h = 1;
+			if(pn.left != null)
+				h = Math.max(pn.left.height + pn.edgeLength + 1, h);
+			if(pn.right != null)
+				h = Math.max(pn.right.height + pn.edgeLength + 1, h);
+			pn.height = h;
+		}
+
+		/* prints the given level of the given tree, assuming that the node pn has the given x cordinate. */
+		void printLevel(PNode pn, int x, int level) {
+			if(pn == null) return;
+			final int isleft = pn.parentDir == -1 ? 1 : 0;
+			if(level == 0) {
+				int i;
+				for(i=0; i<(x - printNext - ((pn.lablen - isleft) / 2)); i++)
+					out.append(' ');
+				printNext += i;
+				out.append(pn.label);
+				printNext += pn.lablen;
+			} else if(pn.edgeLength >= level) {
+				if(pn.left != null) {
+					int i;
+					for(i=0; i<(x - printNext - level); i++)
+						out.append(' ');
+					printNext += i;
+					out.append('/');
+					printNext++;
+				}
+				if(pn.right != null) {
+					int i;
+					for(i=0; i<(x - printNext + level); i++)
+						out.append(' ');
+					printNext += i;
+					out.append('\\');
+					printNext++;
+				}
+			} else {
+				printLevel(pn.left, x - pn.edgeLength - 1, level - pn.edgeLength - 1);
+				printLevel(pn.right, x + pn.edgeLength + 1, level - pn.edgeLength - 1);
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.ByteSplayTreeMap;
+import oss.alphazero.util.ds2.KeyPrefix;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * Binary key index bench: {@link ByteSplayTreeMap} vs. {@link SplayTreeMap}
+ * and {@link TreeMap} of <code>byte[]</code> keys in unsigned order. Keys are
+ * 16 byte hashes. Reports build and lookup time, retained heap and GC activity.
+ * ByteSplayTreeMap lookups probe a slice of a reused buffer, the others need a
+ * <code>byte[]</code> per probe - as when keys arrive in a network buffer.
+ * <p>
+ * Usage: <code>java BenchByteKeys [nums [ops]]</code>
+ */
+public class BenchByteKeys {
+	static final int NUMS   = 1000000;
+	static final int OPS    = 2000000;
+	static final int WARMUP = 2;
+	static final int KEYLEN = 16;
+	static final long SEED  = 307;
+
+	interface Index {
+		void put(byte[] key, Integer value);
+		Integer get(byte[] buf, int off, int len);
+	}
+
+	public static void main(String [ ] args) {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## binary key bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		// all keys back to back in one buffer, as received
+		final byte[] keys = new byte[nums * KEYLEN];
+		new Random(SEED).nextBytes(keys);
+
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			run("TreeMap", treeMap(), keys, nums, ops, report);
+			run("SplayTreeMap", splayTreeMap(), keys, nums, ops, report);
+			run("ByteSplayTreeMap", byteSplayTreeMap(), keys, nums, ops, report);
+		}
+	}
+
+	static Index treeMap() {
+		final TreeMap<byte[], Integer> m = new TreeMap<byte[], Integer>(KeyPrefix.UNSIGNED_BYTES);
+		return new Index() {
+			@Override public void put(byte[] key, Integer value) { m.put(key, value); }
+			@Override public Integer get(byte[] buf, int off, int len) {
+				return m.get(Arrays.copyOfRange(buf, off, off + len));
+			}
+		};
+	}
+
+	static Index splayTreeMap() {
+		final SplayTreeMap<byte[], Integer> m = new SplayTreeMap<byte[], Integer>(KeyPrefix.UNSIGNED_BYTES, KeyPrefix.BYTES);
+		return new Index() {
+			@Override public void put(byte[] key, Integer value) { m.put(key, value); }
+			@Override public Integer get(byte[] buf, int off, int len) {
+				return m.get(Arrays.copyOfRange(buf, off, off + len));
+			}
+		};
+	}
+
+	static Index byteSplayTreeMap() {
+		final ByteSplayTreeMap<Integer> m = new ByteSplayTreeMap<Integer>();
+		return new Index() {
+			@Override public void put(byte[] key, Integer value) { m.put(key, value); }
+			@Override public Integer get(byte[] buf, int off, int len) { return m.get(buf, off, len); }
+		};
+	}
+
+	static void run(String name, Index index, byte[] keys, int nums, int ops, boolean report) {
+		final Runtime rt = Runtime.getRuntime();
+		System.gc();
+		final long heap0 = rt.totalMemory() - rt.freeMemory();
+		final long[] gc0 = gc();
+
+		long start = System.nanoTime();
+		for(int i = 0; i < nums; i++)
+			index.put(Arrays.copyOfRange(keys, i * KEYLEN, (i + 1) * KEYLEN), i);
+		final long build = System.nanoTime() - start;
+
+		final Random rnd = new Random(SEED);
+		long sum = 0;
+		start = System.nanoTime();
+		for(int i = 0; i < ops; i++)
+			sum += index.get(keys, rnd.nextInt(nums) * KEYLEN, KEYLEN);
+		final long lookup = System.nanoTime() - start;
+
+		final long[] gc1 = gc();
+		System.gc();
+		final long retained = rt.totalMemory() - rt.freeMemory() - heap0;
+		Reference.reachabilityFence(index);
+
+		if(report)
+			System.out.format("%-17s build:%6.1f ns/put  get:%6.1f ns/op  retained:%5d MB  gc:%4d (%5d ms)%s\n",
+					name, (double) build / nums, (double) lookup / ops, retained >> 20,
+					gc1[0] - gc0[0], gc1[1] - gc0[1], sum == 42 ? " " : "");
+	}
+
+	/** @return total gc count and time (ms) */
+	static long[] gc() {
+		long n = 0, ms = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			n += Math.max(0, gc.getCollectionCount());
+			ms += Math.max(0, gc.getCollectionTime());
+		}
+		return new long[]{ n, ms };
+	}
+}
@@ -0,0 +1,93 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import oss.alphazero.util.ds2.Codec;
+import oss.alphazero.util.ds2.SplayImage;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * Writer pauses during a checkpoint: a writer thread puts into a locked
+ * {@link SplayTreeMap} while the image is written with the lock held (stop
+ * the world), or from a {@link SplayTreeMap#snapshot()} outside of it.
+ * <p>
+ * Usage: <code>java BenchCheckpoint [nums]</code>
+ */
+public class BenchCheckpoint {
+	static final int NUMS   = 1000000;
+	static final int WARMUP = 2;
+	static final long SEED  = 307;
+
+	public static void main(String [ ] args) throws Exception {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## checkpoint bench nums:%d\n", nums);
+		System.out.println ("###################################\n");
+
+		final Path path = Files.createTempFile("ds2-bench", ".img");
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			for(int i = 0; i <= WARMUP; i++) {
+				run(nums, path, executor, false, i == WARMUP);
+				run(nums, path, executor, true, i == WARMUP);
+			}
+		} finally {
+			executor.shutdown();
+			Files.deleteIfExists(path);
+		}
+	}
+
+	static void run(int nums, Path path, ExecutorService executor, boolean snapshot, boolean report) throws Exception {
+		final SplayTreeMap<Long, Long> map = new SplayTreeMap<Long, Long>();
+		final Random rnd = new Random(SEED);
+		for(int i = 0; i < nums; i++)
+			map.put(rnd.nextLong(), (long) i);
+
+		// writer: puts under the lock until stopped, tracking the longest put
+		final long[] puts = { 0 }, maxPut = { 0 };
+		final boolean[] stop = { false };
+		final Thread writer = new Thread(() -> {
+			final Random r = new Random(SEED);
+			for(;;) {
+				final long start = System.nanoTime();
+				synchronized (map) {
+					if(stop[0])
+						return;
+					map.put(r.nextLong(), 0L);
+				}
+				maxPut[0] = Math.max(maxPut[0], System.nanoTime() - start);
+				puts[0]++;
+			}
+		});
+		writer.start();
+		Thread.sleep(100);
+
+		final long start = System.nanoTime();
+		if(snapshot) {
+			final java.util.concurrent.CompletableFuture<Path> done;
+			synchronized (map) {
+				done = SplayImage.writeAsync(map, Codec.LONG, Codec.LONG, path, executor);
+			}
+			done.join();
+		} else {
+			synchronized (map) {
+				SplayImage.write(map, Codec.LONG, Codec.LONG, path);
+			}
+		}
+		final long delta = System.nanoTime() - start;
+
+		synchronized (map) {
+			stop[0] = true;
+		}
+		writer.join();
+		if(report)
+			System.out.format("%-14s checkpoint: %7.1f ms  longest put: %8.3f ms  puts: %d\n",
+					snapshot ? "snapshot" : "stop the world", delta / 1e6, maxPut[0] / 1e6, puts[0]);
+	}
+}
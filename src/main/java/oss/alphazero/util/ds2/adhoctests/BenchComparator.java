@@ -0,0 +1,138 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.KeyPrefix;
+import oss.alphazero.util.ds2.SplayStats;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * Lookup bench of {@link SplayTreeMap} vs. {@link TreeMap} for keys whose
+ * comparison is not cheap:
+ * <ol>
+ * <li><b>String</b>: keys with a long common prefix, and keys that differ
+ * early, natural order - with and without {@link KeyPrefix#STRING}.</li>
+ * <li><b>composite</b>: a (tenant, id) key that is not {@link Comparable},
+ * ordered by a {@link Comparator} - both a combinator chain and a hand
+ * written one.</li>
+ * </ol>
+ * Each map is run with uniform and with skewed (90% of lookups on 10% of
+ * the keys) access. Run with <code>-Dds2.stats=true</code> to also report
+ * the mean key comparisons per splay.
+ * <p>
+ * Usage: <code>java BenchComparator [nums [ops]]</code>
+ */
+public class BenchComparator {
+	static final int NUMS   = 40000;
+	static final int OPS    = 2000000;
+	static final int WARMUP = 3;
+	static final long SEED  = 307;
+
+	/** composite key - deliberately not Comparable */
+	static final class Key {
+		final String tenant;
+		final long id;
+		Key(String tenant, long id) {
+			this.tenant = tenant;
+			this.id = id;
+		}
+	}
+
+	static final Comparator<Key> CHAINED = Comparator.comparing((Key k) -> k.tenant).thenComparingLong(k -> k.id);
+
+	static final Comparator<Key> HANDWRITTEN = new Comparator<Key>() {
+		@Override public int compare(Key a, Key b) {
+			final int c = a.tenant.compareTo(b.tenant);
+			return c != 0 ? c : Long.compare(a.id, b.id);
+		}
+	};
+
+	public static void main(String [ ] args) {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## comparator bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		final String[] strings = new String[nums];
+		for(int i = 0; i < nums; i++)
+			strings[i] = String.format("org.example.tenant-%04d/user/%08d", i % 64, i);
+		final String[] hashed = new String[nums];
+		for(int i = 0; i < nums; i++)
+			hashed[i] = String.format("%08x/user/%08d", i * 0x9E3779B9, i);
+		final Key[] keys = new Key[nums];
+		for(int i = 0; i < nums; i++)
+			keys[i] = new Key(String.format("tenant-%04d", i % 64), i);
+
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			if(report)
+				System.out.println("-- String keys, natural order --");
+			run("TreeMap", new TreeMap<String, Integer>(), strings, ops, report);
+			run("SplayTreeMap", new SplayTreeMap<String, Integer>(), strings, ops, report);
+			run("+KeyPrefix", new SplayTreeMap<String, Integer>(null, KeyPrefix.STRING), strings, ops, report);
+
+			if(report)
+				System.out.println("\n-- String keys, differing early, natural order --");
+			run("TreeMap", new TreeMap<String, Integer>(), hashed, ops, report);
+			run("SplayTreeMap", new SplayTreeMap<String, Integer>(), hashed, ops, report);
+			run("+KeyPrefix", new SplayTreeMap<String, Integer>(null, KeyPrefix.STRING), hashed, ops, report);
+
+			if(report)
+				System.out.println("\n-- composite keys, chained comparator --");
+			run("TreeMap", new TreeMap<Key, Integer>(CHAINED), keys, ops, report);
+			run("SplayTreeMap", new SplayTreeMap<Key, Integer>(CHAINED), keys, ops, report);
+
+			if(report)
+				System.out.println("\n-- composite keys, hand written comparator --");
+			run("TreeMap", new TreeMap<Key, Integer>(HANDWRITTEN), keys, ops, report);
+			run("SplayTreeMap", new SplayTreeMap<Key, Integer>(HANDWRITTEN), keys, ops, report);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K> void run(String name, Map<K, Integer> map, K[] keys, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		for(int i = 0; i < keys.length; i++) {
+			final int j = rnd.nextInt(i + 1);  // insert in shuffled order
+			final K k = keys[j];
+			keys[j] = keys[i];
+			keys[i] = k;
+		}
+		for(int i = 0; i < keys.length; i++)
+			map.put(keys[i], i);
+
+		final SplayStats stats = SplayStats.ENABLED && map instanceof SplayTreeMap
+				? ((SplayTreeMap<K, Integer>) map).enableStats() : null;
+
+		final long uniform = lookups(map, keys, ops, rnd, false);
+		final long skewed  = lookups(map, keys, ops, rnd, true);
+
+		if(report) {
+			System.out.format("%-14s uniform:%7.1f ns/op  skewed:%7.1f ns/op", name,
+					(double) uniform / ops, (double) skewed / ops);
+			if(stats != null)
+				System.out.format("  cmp/splay:%.2f", stats.getMeanComparisonsPerSplay());
+			System.out.println();
+		}
+	}
+
+	static <K> long lookups(Map<K, Integer> map, K[] keys, int ops, Random rnd, boolean skewed) {
+		final int n = keys.length;
+		final int hot = Math.max(1, n / 10);
+		long sum = 0;
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			final int j = skewed && rnd.nextInt(10) != 0 ? rnd.nextInt(hot) : rnd.nextInt(n);
+			sum += map.get(keys[j]);
+		}
+		final long delta = System.nanoTime() - start;
+		if(sum == 42)
+			System.out.print("");  // keep the loop
+		return delta;
+	}
+}
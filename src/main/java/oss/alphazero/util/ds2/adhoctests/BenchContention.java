@@ -0,0 +1,260 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * Contention bench for shared access to a {@link SplayTreeMap} behind the
+ * usual thread-safety wrappers, with {@link ConcurrentSkipListMap} as the
+ * lock-free reference.
+ * <p>
+ * <b>Note</b> that a read is a write in a splay tree: {@link SplayTreeMap#get(Object)}
+ * rotates nodes. So behind a {@link ReadWriteLock} <i>all</i> SplayTreeMap ops
+ * must take the write lock -- taking the read lock for get() will corrupt the
+ * tree. The <code>TreeMap/rwlock</code> setup (gets under the shared read lock)
+ * is included to show what read sharing would have bought.
+ * <p>
+ * Sweeps thread counts (1, 2, 4, .. #cores) and read/write mixes, with
+ * platform threads and -- if the running JDK has them -- virtual threads.
+ * Reports throughput and fairness: Jain's index over per-thread op counts
+ * (1.0 is perfectly fair, 1/n means one thread did all the work) and the
+ * min/max per-thread op count ratio.
+ * <p>
+ * Usage: <code>java BenchContention [millis-per-run [nums]]</code>
+ */
+public class BenchContention {
+	static final int  NUMS     = 40000;
+	static final long MILLIS   = 1000;
+	static final int[] READ_PCTS = {50, 90, 99};
+
+	public static void main(String [ ] args) throws Exception {
+		final long millis = args.length > 0 ? Long.parseLong(args[0]) : MILLIS;
+		final int nums    = args.length > 1 ? Integer.parseInt(args[1]) : NUMS;
+		final int cores   = Runtime.getRuntime().availableProcessors();
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## contention bench cores:%d nums:%d millis:%d\n", cores, nums, millis);
+		System.out.println ("###################################\n");
+
+		final List<Integer> threadCounts = new ArrayList<Integer>();
+		for(int n=1; n<cores; n <<= 1)
+			threadCounts.add(n);
+		threadCounts.add(cores);
+
+		final ExecutorService probe = virtualExecutor();
+		final boolean hasVirtual = probe != null;
+		if(hasVirtual)
+			probe.shutdown();
+		else
+			System.out.println("(virtual threads are not available in this JDK - skipping)\n");
+
+		for(int virt=0; virt < (hasVirtual ? 2 : 1); virt++) {
+			for(int readPct : READ_PCTS){
+				System.out.format("-- %s threads, %d%% reads --\n", virt == 0 ? "platform" : "virtual", readPct);
+				for(int threads : threadCounts){
+					for(Setup setup : Setup.values()){
+						final Result r = run(setup, threads, readPct, nums, millis, virt == 1);
+						System.out.format("%-22s threads:%3d  ops/sec:%12.0f  jain:%5.3f  min/max:%5.3f\n",
+								setup.label, threads, r.throughput, r.jain, r.minMax);
+					}
+				}
+				System.out.println();
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// setups
+	// ------------------------------------------------------------------------
+	/** minimal view of a shared map - only what the workload needs */
+	interface Shared {
+		String get(Integer key);
+		String put(Integer key, String value);
+		String remove(Integer key);
+	}
+
+	enum Setup {
+		SYNCHRONIZED ("SplayTreeMap/sync"),
+		LOCK         ("SplayTreeMap/lock"),
+		FAIR_LOCK    ("SplayTreeMap/fairlock"),
+		RW_LOCK      ("SplayTreeMap/rwlock(w)"),
+		TREEMAP_RW   ("TreeMap/rwlock"),
+		SKIPLIST     ("ConcurrentSkipList");
+
+		final String label;
+		Setup(String label) { this.label = label; }
+
+		Shared create() {
+			switch (this) {
+			case SYNCHRONIZED: return wrap(Collections.synchronizedMap(new SplayTreeMap<Integer, String>()));
+			case LOCK:         return new Locked(new SplayTreeMap<Integer, String>(), new ReentrantLock(false));
+			case FAIR_LOCK:    return new Locked(new SplayTreeMap<Integer, String>(), new ReentrantLock(true));
+			case RW_LOCK:      return new RwLocked(new SplayTreeMap<Integer, String>(), false);
+			case TREEMAP_RW:   return new RwLocked(new TreeMap<Integer, String>(), true);
+			case SKIPLIST:     return wrap(new ConcurrentSkipListMap<Integer, String>());
+			}
+			throw new RuntimeException("BUG: unknown setup " + this);
+		}
+	}
+
+	static Shared wrap(final Map<Integer, String> m) {
+		return new Shared() {
+			public String get(Integer key) { return m.get(key); }
+			public String put(Integer key, String value) { return m.put(key, value); }
+			public String remove(Integer key) { return m.remove(key); }
+		};
+	}
+
+	static final class Locked implements Shared {
+		final Map<Integer, String> m;
+		final Lock lock;
+		Locked(Map<Integer, String> m, Lock lock) { this.m = m; this.lock = lock; }
+		public String get(Integer key) {
+			lock.lock();
+			try { return m.get(key); } finally { lock.unlock(); }
+		}
+		public String put(Integer key, String value) {
+			lock.lock();
+			try { return m.put(key, value); } finally { lock.unlock(); }
+		}
+		public String remove(Integer key) {
+			lock.lock();
+			try { return m.remove(key); } finally { lock.unlock(); }
+		}
+	}
+
+	static final class RwLocked implements Shared {
+		final Map<Integer, String> m;
+		final Lock rlock;
+		final Lock wlock;
+		/** @param sharedReads true only if m.get() does not mutate m */
+		RwLocked(Map<Integer, String> m, boolean sharedReads) {
+			final ReadWriteLock rw = new ReentrantReadWriteLock();
+			this.m = m;
+			this.wlock = rw.writeLock();
+			this.rlock = sharedReads ? rw.readLock() : wlock;
+		}
+		public String get(Integer key) {
+			rlock.lock();
+			try { return m.get(key); } finally { rlock.unlock(); }
+		}
+		public String put(Integer key, String value) {
+			wlock.lock();
+			try { return m.put(key, value); } finally { wlock.unlock(); }
+		}
+		public String remove(Integer key) {
+			wlock.lock();
+			try { return m.remove(key); } finally { wlock.unlock(); }
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// driver
+	// ------------------------------------------------------------------------
+	static final class Result {
+		double throughput;
+		double jain;
+		double minMax;
+	}
+
+	public static final Result run(Setup setup, final int threads, final int readPct, final int nums, long millis, boolean virtual)
+		throws InterruptedException
+	{
+		final Shared map = setup.create();
+		for(int i=0; i<nums; i+=2)
+			map.put(i, "v");
+
+		final long[] counts = new long[threads];
+		final CountDownLatch ready = new CountDownLatch(threads);
+		final CountDownLatch go = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicBoolean stop = new AtomicBoolean(false);
+
+		final ExecutorService exec = virtual ? virtualExecutor() : Executors.newFixedThreadPool(threads);
+		for(int t=0; t<threads; t++){
+			final int id = t;
+			exec.execute(new Runnable() {
+				public void run() {
+					final Random rnd = new Random(id * 31 + 7);
+					long n = 0;
+					ready.countDown();
+					try {
+						go.await();
+						for(;;){
+							// check stop every 256 ops to keep the flag off the hot path
+							if((n & 0xff) == 0 && stop.get())
+								break;
+							final Integer key = rnd.nextInt(nums);
+							final int op = rnd.nextInt(100);
+							if(op < readPct)
+								map.get(key);
+							else if((op & 1) == 0)
+								map.put(key, "v");
+							else
+								map.remove(key);
+							n++;
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						counts[id] = n;
+						done.countDown();
+					}
+				}
+			});
+		}
+		ready.await();
+		final long start = System.nanoTime();
+		go.countDown();
+		Thread.sleep(millis);
+		stop.set(true);
+		done.await();
+		final long elapsed = System.nanoTime() - start;
+		exec.shutdown();
+		exec.awaitTermination(10, TimeUnit.SECONDS);
+
+		long total = 0, min = Long.MAX_VALUE, max = 0;
+		double sumsq = 0;
+		for(long c : counts){
+			total += c;
+			sumsq += (double)c * c;
+			min = Math.min(min, c);
+			max = Math.max(max, c);
+		}
+		final Result r = new Result();
+		r.throughput = total / (elapsed / 1e9);
+		r.jain = sumsq == 0 ? 0 : ((double)total * total) / (threads * sumsq);
+		r.minMax = max == 0 ? 0 : (double)min / max;
+		return r;
+	}
+
+	/**
+	 * @return a virtual thread per task executor, or null if the running JDK
+	 * does not support virtual threads.
+	 */
+	static ExecutorService virtualExecutor() {
+		try {
+			final Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+}
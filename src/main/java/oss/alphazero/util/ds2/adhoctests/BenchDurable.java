@@ -0,0 +1,98 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import oss.alphazero.util.ds2.Codec;
+import oss.alphazero.util.ds2.DurableSplayTreeMap;
+import oss.alphazero.util.ds2.DurableSplayTreeMap.SyncPolicy;
+
+/**
+ * {@link DurableSplayTreeMap} bench:
+ * <ol>
+ * <li><b>write throughput</b> of puts per {@link SyncPolicy}, with 1 and with
+ * several writer threads (group commit).</li>
+ * <li><b>recovery time</b> of a map from its log only, and from a checkpoint.</li>
+ * </ol>
+ * Runs in a temporary directory unless one is given; results depend on the
+ * file system and device, so run it on the target one.
+ * <p>
+ * Usage: <code>java BenchDurable [nums [threads [dir]]]</code>
+ */
+public class BenchDurable {
+	static final int NUMS     = 200000;
+	static final int THREADS  = 8;
+	static final long INTERVAL = 10;   // ms, PERIODIC and NEVER
+
+	public static void main(String [ ] args) throws Exception {
+		final int nums    = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int threads = args.length > 1 ? Integer.parseInt(args[1]) : THREADS;
+		final Path base   = args.length > 2 ? Files.createDirectories(Path.of(args[2])) : Files.createTempDirectory("ds2-bench");
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## durable bench nums:%d threads:%d dir:%s\n", nums, threads, base);
+		System.out.println ("###################################\n");
+
+		try {
+			System.out.println("-- write throughput --");
+			for(SyncPolicy policy : SyncPolicy.values()) {
+				// EVERY_COMMIT syncs per write (or batch) - keep its run short
+				final int n = policy == SyncPolicy.EVERY_COMMIT ? Math.max(threads, nums / 20) : nums;
+				writes(base.resolve(policy + "-1"), policy, n, 1);
+				writes(base.resolve(policy + "-" + threads), policy, n, threads);
+			}
+
+			System.out.println("\n-- recovery --");
+			final Path dir = base.resolve("recovery");
+			try(DurableSplayTreeMap<Long, String> map = open(dir, SyncPolicy.NEVER)) {
+				for(long i = 0; i < nums; i++)
+					map.put(i * 7919 % nums, "value-" + i);
+			}
+			recover(dir, "log only");
+			try(DurableSplayTreeMap<Long, String> map = open(dir, SyncPolicy.NEVER)) {
+				map.checkpoint();
+			}
+			recover(dir, "checkpoint");
+		} finally {
+			try(Stream<Path> files = Files.walk(base)) {
+				files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+
+	static DurableSplayTreeMap<Long, String> open(Path dir, SyncPolicy policy) throws IOException {
+		return new DurableSplayTreeMap<Long, String>(dir, Codec.LONG, Codec.STRING, null, policy, INTERVAL);
+	}
+
+	static void writes(Path dir, SyncPolicy policy, int nums, int threads) throws Exception {
+		final long start = System.nanoTime();
+		try(DurableSplayTreeMap<Long, String> map = open(dir, policy)) {
+			final Thread[] ts = new Thread[threads];
+			for(int t = 0; t < threads; t++) {
+				final int id = t;
+				ts[t] = new Thread(() -> {
+					for(long i = id; i < nums; i += threads)
+						map.put(i, "value-" + i);
+				});
+				ts[t].start();
+			}
+			for(Thread t : ts)
+				t.join();
+		}
+		final long delta = System.nanoTime() - start;
+		System.out.format("%-12s threads:%2d  puts:%8d  %10.0f puts/sec\n", policy, threads, nums, nums / (delta / 1e9));
+	}
+
+	static void recover(Path dir, String what) throws IOException {
+		final long start = System.nanoTime();
+		final int size;
+		try(DurableSplayTreeMap<Long, String> map = open(dir, SyncPolicy.NEVER)) {
+			size = map.size();
+		}
+		final long delta = System.nanoTime() - start;
+		System.out.format("from %-10s : %8.1f ms  (%d entries)\n", what, delta / 1e6, size);
+	}
+}
@@ -0,0 +1,159 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import oss.alphazero.util.ds2.EulerTourTree;
+
+/**
+ * {@link EulerTourTree} vs. component labels recomputed by a BFS of the
+ * changed trees after each edge change - run for fewer ops - on a large
+ * random tree: each vertex is linked to one of the 8 before it, in a random
+ * order of the vertex ids. Each op cuts a random edge and links one side to
+ * a random vertex, then queries the connectivity and component size of
+ * random vertices.
+ * <p>
+ * Usage: <code>java BenchEulerTour [nums [ops]]</code>
+ */
+public class BenchEulerTour {
+	static final int NUMS   = 1000000;
+	static final int OPS    = 1000000;
+	static final int WARMUP = 2;
+	static final long SEED  = 307;
+
+	static long sink;
+
+	public static void main(String [ ] args) {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## euler tour bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			eulerTour(nums, ops, report);
+			bfs(nums, Math.max(1, ops / 10000), report);
+		}
+	}
+
+	/** edges of the initial tree: u[i] - v[i] */
+	static int[][] tree(Random rnd, int nums) {
+		final int[] ids = BenchLinkCut.ids(rnd, nums);
+		final int[] u = new int[nums - 1], v = new int[nums - 1];
+		for(int i = 1; i < nums; i++) {
+			u[i - 1] = ids[i];
+			v[i - 1] = ids[Math.max(0, i - 1 - rnd.nextInt(8))];
+		}
+		return new int[][] { u, v };
+	}
+
+	static void eulerTour(int nums, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		final int[][] e = tree(rnd, nums);
+		final int[] eu = e[0], ev = e[1];
+		final EulerTourTree t = new EulerTourTree(nums);
+		for(int i = 0; i < nums - 1; i++)
+			t.link(eu[i], ev[i]);
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			final int k = rnd.nextInt(nums - 1), w = rnd.nextInt(nums);
+			t.cut(eu[k], ev[k]);
+			if(t.connected(eu[k], w))
+				eu[k] = ev[k];                              // link the other side
+			t.link(eu[k], w);
+			ev[k] = w;
+			if(t.connected(rnd.nextInt(nums), rnd.nextInt(nums)))
+				sink++;
+			sink += t.componentSize(rnd.nextInt(nums));
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-14s %10.1f ns/op\n", "EulerTourTree", (double) delta / ops);
+	}
+
+	static void bfs(int nums, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		final int[][] e = tree(rnd, nums);
+		final int[] eu = e[0], ev = e[1];
+		final Graph g = new Graph(nums, 1 + 3 * ops);
+		for(int i = 0; i < nums - 1; i++)
+			g.link(eu[i], ev[i]);
+		g.relabel(0);
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			final int k = rnd.nextInt(nums - 1), w = rnd.nextInt(nums);
+			g.cut(eu[k], ev[k]);
+			g.relabel(eu[k]);
+			g.relabel(ev[k]);
+			if(g.label[eu[k]] == g.label[w])
+				eu[k] = ev[k];
+			g.link(eu[k], w);
+			ev[k] = w;
+			g.relabel(w);
+			if(g.label[rnd.nextInt(nums)] == g.label[rnd.nextInt(nums)])
+				sink++;
+			sink += g.size[g.label[rnd.nextInt(nums)]];
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-14s %10.1f ns/op (%d ops)\n", "BFS relabel", (double) delta / ops, ops);
+	}
+
+	/** adjacency arrays, and component labels and sizes */
+	static final class Graph {
+		final int[][] adj;
+		final int[] degree;
+		final int[] label;
+		final int[] size;
+		final int[] queue;
+		int labels = 0;
+
+		Graph(int n, int labels) {
+			adj = new int[n][2];
+			degree = new int[n];
+			label = new int[n];
+			size = new int[labels + 1];
+			queue = new int[n];
+		}
+		void link(int u, int v) {
+			add(u, v);
+			add(v, u);
+		}
+		void add(int u, int v) {
+			if(degree[u] == adj[u].length)
+				adj[u] = Arrays.copyOf(adj[u], degree[u] * 2);
+			adj[u][degree[u]++] = v;
+		}
+		void cut(int u, int v) {
+			remove(u, v);
+			remove(v, u);
+		}
+		void remove(int u, int v) {
+			for(int i = 0; i < degree[u]; i++)
+				if(adj[u][i] == v) {
+					adj[u][i] = adj[u][--degree[u]];
+					return;
+				}
+		}
+		/** BFS of v's tree, under a new label */
+		void relabel(int v) {
+			final int l = ++labels;
+			int head = 0, tail = 0;
+			label[v] = l;
+			queue[tail++] = v;
+			while(head < tail) {
+				final int x = queue[head++];
+				for(int i = 0; i < degree[x]; i++) {
+					final int y = adj[x][i];
+					if(label[y] != l) {
+						label[y] = l;
+						queue[tail++] = y;
+					}
+				}
+			}
+			size[l] = tail;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.CountingBloomFilter;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * {@link SplayTreeMap} with and without {@link SplayTreeMap#enableFilter(int)}
+ * vs. {@link TreeMap}: containsKey over a trace that is MISSES percent absent
+ * keys and the rest zipf hits - the misses of an unfiltered splay tree pull
+ * cold neighbours to the root and push the hot set down. Reports ns/op for
+ * the mix and for the hits alone, and the filter fill and false positive rate.
+ * <p>
+ * Usage: <code>java BenchFilter [nums [ops [misses]]]</code>
+ */
+public class BenchFilter {
+	static final int NUMS   = 1000000;
+	static final int OPS    = 2000000;
+	static final int MISSES = 50;
+	static final int WARMUP = 2;
+	static final long SEED  = 307;
+
+	static long sink;
+
+	public static void main(String [ ] args) {
+		final int nums   = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops    = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+		final int misses = args.length > 2 ? Integer.parseInt(args[2]) : MISSES;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## filter bench nums:%d ops:%d misses:%d%%\n", nums, ops, misses);
+		System.out.println ("###################################\n");
+
+		// even keys are present, odd keys miss
+		final int[] keys = new int[nums];
+		for(int i = 0; i < nums; i++)
+			keys[i] = 2 * i;
+		BenchTrace.shuffle(keys);
+		final int[] hot = BenchWarmStart.zipf(nums, ops);
+		final Random rnd = new Random(SEED);
+		final int[] trace = new int[ops];
+		final int[] hits = new int[ops];
+		for(int i = 0; i < ops; i++) {
+			hits[i] = keys[hot[i]];
+			trace[i] = rnd.nextInt(100) < misses ? 2 * rnd.nextInt(nums) + 1 : hits[i];
+		}
+
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			run("TreeMap", new TreeMap<Integer, Integer>(), keys, trace, hits, report);
+			run("SplayTreeMap", new SplayTreeMap<Integer, Integer>(), keys, trace, hits, report);
+			final SplayTreeMap<Integer, Integer> filtered = new SplayTreeMap<Integer, Integer>();
+			final CountingBloomFilter<Integer> f = filtered.enableFilter(nums);
+			run("SplayTreeMap+filter", filtered, keys, trace, hits, report);
+			if(report)
+				System.out.format("filter counters:%d (%d KB) fill:%.3f fpr:%.4f saturated:%d\n",
+						f.capacity(), f.capacity() >> 11, f.fill(), f.falsePositiveRate(), f.saturated());
+		}
+	}
+
+	static void run(String name, Map<Integer, Integer> m, int[] keys, int[] trace, int[] hits, boolean report) {
+		for(int k : keys)
+			m.put(k, k);
+
+		long start = System.nanoTime();
+		for(int k : trace)
+			if(m.containsKey(k)) sink++;
+		final long mixed = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int k : hits)
+			if(m.containsKey(k)) sink++;
+		final long hit = System.nanoTime() - start;
+
+		if(report)
+			System.out.format("%-20s mix:%8.1f ns/op  hits:%8.1f ns/op\n",
+					name, (double) mixed / trace.length, (double) hit / hits.length);
+	}
+}
@@ -0,0 +1,140 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.FrozenMap;
+import oss.alphazero.util.ds2.KeyPrefix;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * {@link SplayTreeMap#freeze()} vs. the live {@link SplayTreeMap} and
+ * {@link TreeMap}: uniform and zipf gets and floorKey of absent keys, on one
+ * thread; then gets on THREADS threads sharing the map, for the maps that
+ * allow it without a lock. FrozenMap+kp is frozen from a map with
+ * {@link KeyPrefix#INT}. Reports the freeze time.
+ * <p>
+ * Usage: <code>java BenchFrozen [nums [ops [threads]]]</code>
+ */
+public class BenchFrozen {
+	static final int NUMS    = 1000000;
+	static final int OPS     = 2000000;
+	static final int THREADS = 4;
+	static final int WARMUP  = 2;
+	static final long SEED   = 307;
+
+	static long sink;
+
+	public static void main(String [ ] args) throws InterruptedException {
+		final int nums    = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops     = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+		final int threads = args.length > 2 ? Integer.parseInt(args[2]) : THREADS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## frozen map bench nums:%d ops:%d threads:%d\n", nums, ops, threads);
+		System.out.println ("###################################\n");
+
+		// even keys are present, odd keys miss
+		final int[] keys = new int[nums];
+		for(int i = 0; i < nums; i++)
+			keys[i] = 2 * i;
+		BenchTrace.shuffle(keys);
+		final Random rnd = new Random(SEED);
+		final int[] uniform = new int[ops];
+		final int[] absent = new int[ops];
+		for(int i = 0; i < ops; i++) {
+			uniform[i] = 2 * rnd.nextInt(nums);
+			absent[i] = 2 * rnd.nextInt(nums) + 1;
+		}
+		final int[] zipf = BenchWarmStart.zipf(nums, ops);
+		for(int i = 0; i < ops; i++)
+			zipf[i] = keys[zipf[i]];
+
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			final TreeMap<Integer, Integer> tm = new TreeMap<Integer, Integer>();
+			final SplayTreeMap<Integer, Integer> st = new SplayTreeMap<Integer, Integer>();
+			final SplayTreeMap<Integer, Integer> sp = new SplayTreeMap<Integer, Integer>(null, KeyPrefix.INT);
+			for(int k : keys) {
+				tm.put(k, k);
+				st.put(k, k);
+				sp.put(k, k);
+			}
+			long start = System.nanoTime();
+			final FrozenMap<Integer, Integer> fm = st.freeze();
+			final long freeze = System.nanoTime() - start;
+			start = System.nanoTime();
+			final FrozenMap<Integer, Integer> fp = sp.freeze();
+			final long freezePrefix = System.nanoTime() - start;
+			if(report)
+				System.out.format("freeze: %.1f ms  with prefixes: %.1f ms\n", freeze / 1e6, freezePrefix / 1e6);
+
+			run(report, "TreeMap", tm, uniform, zipf, absent);
+			run(report, "SplayTreeMap", st, uniform, zipf, absent);
+			run(report, "FrozenMap", fm, uniform, zipf, absent);
+			run(report, "FrozenMap+kp", fp, uniform, zipf, absent);
+			shared(report, "TreeMap", tm, uniform, threads);
+			shared(report, "FrozenMap", fm, uniform, threads);
+			shared(report, "FrozenMap+kp", fp, uniform, threads);
+		}
+	}
+
+	static void run(boolean report, String name, Map<Integer, Integer> m, int[] uniform, int[] zipf, int[] absent) {
+		long start = System.nanoTime();
+		for(int k : uniform)
+			sink += m.get(k);
+		final long get = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int k : zipf)
+			sink += m.get(k);
+		final long hot = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		if(m instanceof NavigableMap) {
+			final NavigableMap<Integer, Integer> nm = (NavigableMap<Integer, Integer>) m;
+			for(int k : absent) {
+				final Integer f = nm.floorKey(k);
+				if(f != null) sink += f;
+			}
+		} else {
+			final SplayTreeMap<Integer, Integer> sm = (SplayTreeMap<Integer, Integer>) m;
+			for(int k : absent) {
+				final Integer f = sm.floorKey(k);
+				if(f != null) sink += f;
+			}
+		}
+		final long floor = System.nanoTime() - start;
+
+		if(report)
+			System.out.format("%-13s get:%8.1f ns/op  zipf:%8.1f ns/op  floor:%8.1f ns/op\n", name,
+					(double) get / uniform.length, (double) hot / zipf.length, (double) floor / absent.length);
+	}
+
+	/** gets of the trace on each of n threads */
+	static void shared(boolean report, String name, Map<Integer, Integer> m, int[] trace, int n) throws InterruptedException {
+		final Thread[] threads = new Thread[n];
+		final long[] sums = new long[n];
+		for(int i = 0; i < n; i++) {
+			final int t = i;
+			threads[i] = new Thread(() -> {
+				long sum = 0;
+				for(int j = 0; j < trace.length; j++)
+					sum += m.get(trace[(j + t * 7919) % trace.length]);
+				sums[t] = sum;
+			});
+		}
+		final long start = System.nanoTime();
+		for(Thread t : threads)
+			t.start();
+		for(Thread t : threads)
+			t.join();
+		final long delta = System.nanoTime() - start;
+		for(long s : sums)
+			sink += s;
+		if(report)
+			System.out.format("%-13s %d threads: %8.1f M gets/s\n", name, n, (double) n * trace.length * 1e3 / delta);
+	}
+}
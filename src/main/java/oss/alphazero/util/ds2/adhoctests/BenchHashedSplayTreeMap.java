@@ -0,0 +1,139 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.HashedSplayTreeMap;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * {@link HashedSplayTreeMap} vs. {@link SplayTreeMap}, {@link HashMap} and
+ * {@link TreeMap}: build, uniform and zipf gets, floorKey of absent keys, and
+ * retained heap. Keys are the even ints in a random order, so odd probes miss
+ * and floor to a neighbour. HashedSplayTreeMap runs without and with
+ * {@link HashedSplayTreeMap#setSplayEvery(int)} of SPLAY_EVERY.
+ * <p>
+ * Usage: <code>java BenchHashedSplayTreeMap [nums [ops]]</code>
+ */
+public class BenchHashedSplayTreeMap {
+	static final int NUMS        = 1000000;
+	static final int OPS         = 2000000;
+	static final int SPLAY_EVERY = 16;
+	static final int WARMUP      = 2;
+	static final long SEED       = 307;
+
+	static long sink;
+
+	interface Index {
+		Map<Integer, Integer> map();
+		/** @return floorKey of key; null if not an ordered map */
+		Integer floor(Integer key);
+	}
+
+	public static void main(String [ ] args) {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## hashed splay bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		final int[] keys = new int[nums];
+		for(int i = 0; i < nums; i++)
+			keys[i] = 2 * i;
+		BenchTrace.shuffle(keys);
+		final Random rnd = new Random(SEED);
+		final int[] uniform = new int[ops];
+		for(int i = 0; i < ops; i++)
+			uniform[i] = 2 * rnd.nextInt(nums);
+		final int[] zipf = BenchWarmStart.zipf(nums, ops);
+		for(int i = 0; i < ops; i++)
+			zipf[i] = keys[zipf[i]];
+		final int[] absent = new int[ops];
+		for(int i = 0; i < ops; i++)
+			absent[i] = 2 * rnd.nextInt(nums) + 1;
+
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			run("HashMap", hashMap(), keys, uniform, zipf, absent, report);
+			run("TreeMap", treeMap(), keys, uniform, zipf, absent, report);
+			run("SplayTreeMap", splayTreeMap(), keys, uniform, zipf, absent, report);
+			run("Hashed", hashedSplayTreeMap(0), keys, uniform, zipf, absent, report);
+			run("Hashed/" + SPLAY_EVERY, hashedSplayTreeMap(SPLAY_EVERY), keys, uniform, zipf, absent, report);
+		}
+	}
+
+	static Index hashMap() {
+		final HashMap<Integer, Integer> m = new HashMap<Integer, Integer>();
+		return new Index() {
+			@Override public Map<Integer, Integer> map() { return m; }
+			@Override public Integer floor(Integer key) { return null; }
+		};
+	}
+
+	static Index treeMap() {
+		final TreeMap<Integer, Integer> m = new TreeMap<Integer, Integer>();
+		return new Index() {
+			@Override public Map<Integer, Integer> map() { return m; }
+			@Override public Integer floor(Integer key) { return m.floorKey(key); }
+		};
+	}
+
+	static Index splayTreeMap() {
+		final SplayTreeMap<Integer, Integer> m = new SplayTreeMap<Integer, Integer>();
+		return new Index() {
+			@Override public Map<Integer, Integer> map() { return m; }
+			@Override public Integer floor(Integer key) { return m.floorKey(key); }
+		};
+	}
+
+	static Index hashedSplayTreeMap(int splayEvery) {
+		final HashedSplayTreeMap<Integer, Integer> m = new HashedSplayTreeMap<Integer, Integer>();
+		m.setSplayEvery(splayEvery);
+		return new Index() {
+			@Override public Map<Integer, Integer> map() { return m; }
+			@Override public Integer floor(Integer key) { return m.floorKey(key); }
+		};
+	}
+
+	static void run(String name, Index index, int[] keys, int[] uniform, int[] zipf, int[] absent, boolean report) {
+		final Runtime rt = Runtime.getRuntime();
+		System.gc();
+		final long heap0 = rt.totalMemory() - rt.freeMemory();
+		final Map<Integer, Integer> m = index.map();
+
+		long start = System.nanoTime();
+		for(int k : keys)
+			m.put(k, k);
+		final long build = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int k : uniform)
+			sink += m.get(k);
+		final long get = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int k : zipf)
+			sink += m.get(k);
+		final long hot = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int k : absent) {
+			final Integer f = index.floor(k);
+			if(f != null) sink += f;
+		}
+		final long floor = System.nanoTime() - start;
+
+		System.gc();
+		final long retained = rt.totalMemory() - rt.freeMemory() - heap0;
+		Reference.reachabilityFence(m);
+
+		if(report)
+			System.out.format("%-13s build:%6.1f ns/put  get:%6.1f ns/op  zipf:%6.1f ns/op  floor:%6.1f ns/op  retained:%4d MB\n",
+					name, (double) build / keys.length, (double) get / uniform.length,
+					(double) hot / zipf.length, (double) floor / absent.length, retained >> 20);
+	}
+}
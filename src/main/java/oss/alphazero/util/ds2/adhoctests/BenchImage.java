@@ -0,0 +1,80 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import oss.alphazero.util.ds2.Codec;
+import oss.alphazero.util.ds2.SplayImage;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * Startup bench: rebuilding a map by replaying puts vs. loading a
+ * {@link SplayImage} vs. querying the mapped image in place.
+ * <p>
+ * Usage: <code>java BenchImage [nums [ops]]</code>
+ */
+public class BenchImage {
+	static final int NUMS   = 1000000;
+	static final int OPS    = 1000000;
+	static final int WARMUP = 2;
+	static final long SEED  = 307;
+
+	public static void main(String [ ] args) throws IOException {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## image bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		final Random rnd = new Random(SEED);
+		final long[] keys = new long[nums];
+		for(int i = 0; i < nums; i++)
+			keys[i] = rnd.nextLong();
+
+		final Path path = Files.createTempFile("ds2-bench", ".img");
+		try {
+			for(int i = 0; i <= WARMUP; i++)
+				run(keys, ops, path, i == WARMUP);
+			System.out.format("image size: %d MB\n", Files.size(path) >> 20);
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	static void run(long[] keys, int ops, Path path, boolean report) throws IOException {
+		long start = System.nanoTime();
+		final SplayTreeMap<Long, Long> replayed = new SplayTreeMap<Long, Long>();
+		for(long k : keys)
+			replayed.put(k, k);
+		final long replay = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		SplayImage.write(replayed, Codec.LONG, Codec.LONG, path);
+		final long write = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		final SplayTreeMap<Long, Long> loaded = SplayImage.load(path, Codec.LONG, Codec.LONG);
+		final long load = System.nanoTime() - start;
+		assert loaded.size() == replayed.size();
+
+		final Random rnd = new Random(SEED);
+		start = System.nanoTime();
+		long sum = 0;
+		try(SplayImage.Reader<Long, Long> image = SplayImage.open(path, Codec.LONG, Codec.LONG)) {
+			for(int i = 0; i < ops; i++)
+				sum += image.get(keys[rnd.nextInt(keys.length)]);
+		}
+		final long mapped = System.nanoTime() - start;
+
+		if(report) {
+			System.out.format("replay puts  : %8.1f ms\n", replay / 1e6);
+			System.out.format("write image  : %8.1f ms\n", write / 1e6);
+			System.out.format("load image   : %8.1f ms\n", load / 1e6);
+			System.out.format("open + %d gets on mapped image: %8.1f ms (%.1f ns/get)%s\n",
+					ops, mapped / 1e6, (double) mapped / ops, sum == 42 ? " " : "");
+		}
+	}
+}
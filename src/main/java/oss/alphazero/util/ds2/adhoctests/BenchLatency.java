@@ -0,0 +1,160 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * Per-operation latency bench of {@link SplayTreeMap} vs. {@link TreeMap}.
+ * <p>
+ * Splay tree bounds are amortized, so mean times (e.g. {@link BenchMaps})
+ * hide the occasional O(n) splay. This bench records every operation in a
+ * {@link LatencyHistogram} and reports the percentile distribution for:
+ * <ol>
+ * <li><b>steady</b>: closed loop, mixed get/put/remove over a pre-loaded map.</li>
+ * <li><b>open-loop</b>: same mix issued on a fixed schedule; latency is measured
+ * from the <i>intended</i> start time so stalls are charged to every request
+ * queued behind them (coordinated omission corrected).</li>
+ * <li><b>seq-spike</b>: monotonic inserts followed by lookups of the far end,
+ * i.e. the GAP-free worst case for a splay tree.</li>
+ * </ol>
+ * Usage: <code>java BenchLatency [nums [ops [rate-ops/sec]]]</code>.
+ * If rate is not given, the open-loop rate is half of the measured steady
+ * throughput of TreeMap.
+ */
+public class BenchLatency {
+	static final int NUMS   = 40000;
+	static final int OPS    = 1000000;
+	static final int WARMUP = 3;
+	static final long SEED  = 307;
+
+	/** op mix - percent of gets; remaining is split between put and remove */
+	static final int GET_PCT = 80;
+
+	public static void main(String [ ] args) {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+		long rate      = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## latency bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		// warmup - results discarded
+		for(int i=0; i<WARMUP; i++){
+			steady(new TreeMap<Integer, String>(), nums, ops/10, new LatencyHistogram());
+			steady(new SplayTreeMap<Integer, String>(), nums, ops/10, new LatencyHistogram());
+		}
+
+		System.out.println ("-- steady (closed loop) --");
+		LatencyHistogram h = new LatencyHistogram();
+		final long tmNanos = steady(new TreeMap<Integer, String>(), nums, ops, h);
+		h.print(System.out, "TreeMap");
+		h = new LatencyHistogram();
+		steady(new SplayTreeMap<Integer, String>(), nums, ops, h);
+		h.print(System.out, "SplayTreeMap");
+
+		if(rate <= 0)
+			rate = Math.max(1, (long)(ops / (tmNanos / 1e9)) / 2);
+		final long interval = 1000000000L / rate;
+
+		System.out.format ("\n-- open loop (co-corrected) rate:%d ops/sec --\n", rate);
+		h = new LatencyHistogram();
+		openLoop(new TreeMap<Integer, String>(), nums, ops, interval, h);
+		h.print(System.out, "TreeMap");
+		h = new LatencyHistogram();
+		openLoop(new SplayTreeMap<Integer, String>(), nums, ops, interval, h);
+		h.print(System.out, "SplayTreeMap");
+
+		System.out.println ("\n-- seq-spike (monotonic insert; then far-end finds) --");
+		LatencyHistogram hi = new LatencyHistogram();
+		LatencyHistogram hf = new LatencyHistogram();
+		seqSpike(new TreeMap<Integer, String>(), nums, hi, hf);
+		hi.print(System.out, "TreeMap put");
+		hf.print(System.out, "TreeMap get");
+		hi = new LatencyHistogram();
+		hf = new LatencyHistogram();
+		seqSpike(new SplayTreeMap<Integer, String>(), nums, hi, hf);
+		hi.print(System.out, "SplayTreeMap put");
+		hf.print(System.out, "SplayTreeMap get");
+	}
+
+	// ------------------------------------------------------------------------
+	// workloads
+	// ------------------------------------------------------------------------
+	/** fill the map with even keys in [0, 2*nums) using the Weiss GAP order */
+	static final void preload(Map<Integer, String> t, int nums) {
+		final int gap = 307;
+		for(int i = gap; i != 0; i = (i + gap) % nums)
+			t.put(2*i, "v");
+		t.put(0, "v");
+	}
+
+	/**
+	 * Closed loop mixed workload.
+	 * @return elapsed nanos
+	 */
+	public static final long steady(Map<Integer, String> t, int nums, int ops, LatencyHistogram h) {
+		preload(t, nums);
+		final Random rnd = new Random(SEED);
+		final long start = System.nanoTime();
+		for(int i=0; i<ops; i++){
+			final Integer key = rnd.nextInt(2*nums);
+			final int op = rnd.nextInt(100);
+			final long t0 = System.nanoTime();
+			doOp(t, key, op);
+			h.record(System.nanoTime() - t0);
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Open loop mixed workload. Request i is due at start + i*interval. The
+	 * driver never waits for a late request - it is issued immediately and its
+	 * latency includes the time it spent waiting in the (virtual) queue.
+	 */
+	public static final void openLoop(Map<Integer, String> t, int nums, int ops, long interval, LatencyHistogram h) {
+		preload(t, nums);
+		final Random rnd = new Random(SEED);
+		final long start = System.nanoTime();
+		for(int i=0; i<ops; i++){
+			final Integer key = rnd.nextInt(2*nums);
+			final int op = rnd.nextInt(100);
+			final long due = start + i * interval;
+			while(System.nanoTime() < due)
+				; // spin - sleep granularity is far too coarse
+			doOp(t, key, op);
+			h.record(System.nanoTime() - due);
+		}
+	}
+
+	/**
+	 * Monotonic inserts (linked list shaped splay tree) followed by
+	 * alternating far-end lookups.
+	 */
+	public static final void seqSpike(Map<Integer, String> t, int nums, LatencyHistogram hput, LatencyHistogram hget) {
+		for(int i=0; i<nums; i++){
+			final Integer key = i;
+			final long t0 = System.nanoTime();
+			t.put(key, "v");
+			hput.record(System.nanoTime() - t0);
+		}
+		for(int i=0; i<nums; i++){
+			final Integer key = (i & 1) == 0 ? i/2 : nums - 1 - i/2;
+			final long t0 = System.nanoTime();
+			t.get(key);
+			hget.record(System.nanoTime() - t0);
+		}
+	}
+
+	private static final void doOp(Map<Integer, String> t, Integer key, int op) {
+		if(op < GET_PCT)
+			t.get(key);
+		else if((op & 1) == 0)
+			t.put(key, "v");
+		else
+			t.remove(key);
+	}
+}
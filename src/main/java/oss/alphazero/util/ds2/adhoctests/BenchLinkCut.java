@@ -0,0 +1,108 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Random;
+
+import oss.alphazero.util.ds2.LinkCutTree;
+
+/**
+ * {@link LinkCutTree} vs. naive parent links - whose ops walk to the root,
+ * O(depth), and are run for fewer ops - on a deep forest: each vertex is
+ * linked to one of the 8 before it, in a random order of the vertex ids.
+ * Each op moves a random subtree under a random vertex of another tree,
+ * then queries connectivity and the path min of a random vertex.
+ * <p>
+ * Usage: <code>java BenchLinkCut [nums [ops]]</code>
+ */
+public class BenchLinkCut {
+	static final int NUMS   = 1000000;
+	static final int OPS    = 1000000;
+	static final int WARMUP = 2;
+	static final long SEED  = 307;
+
+	static long sink;
+
+	public static void main(String [ ] args) {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## link-cut bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			linkCut(nums, ops, report);
+			naive(nums, Math.max(1, ops / 1000), report);
+		}
+	}
+
+	/** vertex ids in a random order */
+	static int[] ids(Random rnd, int nums) {
+		final int[] ids = new int[nums];
+		for(int i = 0; i < nums; i++)
+			ids[i] = i;
+		for(int i = nums - 1; i > 0; i--) {
+			final int j = rnd.nextInt(i + 1), x = ids[i];
+			ids[i] = ids[j];
+			ids[j] = x;
+		}
+		return ids;
+	}
+
+	static void linkCut(int nums, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		final LinkCutTree t = new LinkCutTree(nums);
+		for(int v = 0; v < nums; v++)
+			t.setWeight(v, rnd.nextInt(1000000));
+		final int[] ids = ids(rnd, nums);
+		for(int i = 1; i < nums; i++)
+			t.link(ids[i], ids[Math.max(0, i - 1 - rnd.nextInt(8))]);
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			final int v = ids[1 + rnd.nextInt(nums - 1)], w = rnd.nextInt(nums);
+			t.cut(v);
+			if(t.connected(v, w))
+				t.link(v, ids[0]);                          // w is under v: back under the root
+			else
+				t.link(v, w);
+			sink += t.pathMin(rnd.nextInt(nums));
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-12s %10.1f ns/op\n", "LinkCutTree", (double) delta / ops);
+	}
+
+	static void naive(int nums, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		final int[] parent = new int[nums];
+		final long[] weight = new long[nums];
+		for(int v = 0; v < nums; v++)
+			weight[v] = rnd.nextInt(1000000);
+		final int[] ids = ids(rnd, nums);
+		parent[ids[0]] = LinkCutTree.NIL;
+		for(int i = 1; i < nums; i++)
+			parent[ids[i]] = ids[Math.max(0, i - 1 - rnd.nextInt(8))];
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			final int v = ids[1 + rnd.nextInt(nums - 1)], w = rnd.nextInt(nums);
+			parent[v] = LinkCutTree.NIL;
+			if(root(parent, v) == root(parent, w))
+				parent[v] = ids[0];
+			else
+				parent[v] = w;
+			long m = Long.MAX_VALUE;
+			for(int x = rnd.nextInt(nums); x != LinkCutTree.NIL; x = parent[x])
+				m = Math.min(m, weight[x]);
+			sink += m;
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-12s %10.1f ns/op (%d ops)\n", "naive", (double) delta / ops, ops);
+	}
+
+	static int root(int[] parent, int v) {
+		while(parent[v] != LinkCutTree.NIL)
+			v = parent[v];
+		return v;
+	}
+}
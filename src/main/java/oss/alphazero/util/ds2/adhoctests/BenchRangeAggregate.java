@@ -0,0 +1,119 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.AugmentedSplayTreeMap;
+import oss.alphazero.util.ds2.AugmentedSplayTreeMap.Monoid;
+import oss.alphazero.util.ds2.AugmentedSplayTreeMap.Summary;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * Range aggregates - count, sum, min and max over [lo, lo + width) - of
+ * {@link AugmentedSplayTreeMap} vs. range scans of {@link SplayTreeMap} and
+ * {@link TreeMap}, for widths of 10 to 100000 keys; and the cost of keeping
+ * the aggregates on puts.
+ * <p>
+ * Usage: <code>java BenchRangeAggregate [nums [ops]]</code>
+ */
+public class BenchRangeAggregate {
+	static final int NUMS   = 1000000;
+	static final int OPS    =  200000;
+	static final int WARMUP = 2;
+	static final long SEED  = 307;
+	static final int[] WIDTHS = { 10, 1000, 100000 };
+
+	static long sink;
+
+	public static void main(String [ ] args) {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## range aggregate bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		final AugmentedSplayTreeMap<Integer, Long, Summary> aug = new AugmentedSplayTreeMap<Integer, Long, Summary>(Monoid.summary(v -> v));
+		final SplayTreeMap<Integer, Long> splay = new SplayTreeMap<Integer, Long>();
+		final TreeMap<Integer, Long> tree = new TreeMap<Integer, Long>();
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			if(report) System.out.println("-- put --");
+			puts(aug, splay, tree, nums, report);
+			for(int width : WIDTHS) {
+				if(report) System.out.format("\n-- aggregate width:%d --\n", width);
+				final int n = (int) Math.max(100, (long) ops * 10 / width);
+				aggregate(aug, nums, width, n, report);
+				scanSplay(splay, nums, width, n, report);
+				scanTree(tree, nums, width, n, report);
+			}
+		}
+	}
+
+	static void puts(AugmentedSplayTreeMap<Integer, Long, Summary> aug, SplayTreeMap<Integer, Long> splay, TreeMap<Integer, Long> tree, int nums, boolean report) {
+		Random rnd = new Random(SEED);
+		long start = System.nanoTime();
+		for(int i = 0; i < nums; i++)
+			aug.put(rnd.nextInt(nums), (long) i);
+		long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-24s %7.1f ns/op\n", "AugmentedSplayTreeMap", (double) delta / nums);
+		rnd = new Random(SEED);
+		start = System.nanoTime();
+		for(int i = 0; i < nums; i++)
+			splay.put(rnd.nextInt(nums), (long) i);
+		delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-24s %7.1f ns/op\n", "SplayTreeMap", (double) delta / nums);
+		rnd = new Random(SEED);
+		start = System.nanoTime();
+		for(int i = 0; i < nums; i++)
+			tree.put(rnd.nextInt(nums), (long) i);
+		delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-24s %7.1f ns/op\n", "TreeMap", (double) delta / nums);
+	}
+
+	static void aggregate(AugmentedSplayTreeMap<Integer, Long, Summary> m, int nums, int width, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			final int lo = rnd.nextInt(nums);
+			sink += m.aggregate(lo, lo + width).sum;
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-24s %10.1f ns/op\n", "AugmentedSplayTreeMap", (double) delta / ops);
+	}
+
+	static void scanSplay(SplayTreeMap<Integer, Long> m, int nums, int width, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		final long[] s = new long[4];
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			final int lo = rnd.nextInt(nums);
+			s[0] = s[1] = 0; s[2] = Long.MAX_VALUE; s[3] = Long.MIN_VALUE;
+			m.range(lo, lo + width, (k, v) -> { s[0]++; s[1] += v; s[2] = Math.min(s[2], v); s[3] = Math.max(s[3], v); });
+			sink += s[1];
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-24s %10.1f ns/op\n", "SplayTreeMap scan", (double) delta / ops);
+	}
+
+	static void scanTree(TreeMap<Integer, Long> m, int nums, int width, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			final int lo = rnd.nextInt(nums);
+			long count = 0, sum = 0, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+			for(long v : m.subMap(lo, lo + width).values()) {
+				count++; sum += v; min = Math.min(min, v); max = Math.max(max, v);
+			}
+			sink += sum + count + min + max;
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-24s %10.1f ns/op\n", "TreeMap scan", (double) delta / ops);
+	}
+}
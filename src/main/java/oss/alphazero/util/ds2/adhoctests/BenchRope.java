@@ -0,0 +1,87 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import oss.alphazero.util.ds2.SplayRope;
+
+/**
+ * {@link SplayRope} vs. {@link ArrayList} as an edit buffer:
+ * <ol>
+ * <li><b>random inserts</b>: build a sequence by inserts at random positions.</li>
+ * <li><b>cursor edits</b>: a cursor that moves a few positions at a time,
+ * mostly typing at it, sometimes deleting a short run - in a large buffer.</li>
+ * <li><b>scan</b>: get(i) for every i.</li>
+ * </ol>
+ * Usage: <code>java BenchRope [nums [ops]]</code>
+ */
+public class BenchRope {
+	static final int NUMS   = 200000;
+	static final int OPS    = 200000;
+	static final int WARMUP = 2;
+	static final long SEED  = 307;
+
+	static long sink;
+
+	public static void main(String [ ] args) {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## rope bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			if(report) System.out.println("-- random inserts --");
+			final List<Integer> list = randomInserts("ArrayList", new ArrayList<Integer>(), nums, report);
+			final List<Integer> rope = randomInserts("SplayRope", new SplayRope<Integer>(), nums, report);
+			if(report) System.out.println("\n-- cursor edits --");
+			cursorEdits("ArrayList", list, ops, report);
+			cursorEdits("SplayRope", rope, ops, report);
+			if(report) System.out.println("\n-- scan --");
+			scan("ArrayList", list, report);
+			scan("SplayRope", rope, report);
+		}
+	}
+
+	static List<Integer> randomInserts(String name, List<Integer> l, int nums, boolean report) {
+		final Random rnd = new Random(SEED);
+		final long start = System.nanoTime();
+		for(int i = 0; i < nums; i++)
+			l.add(rnd.nextInt(i + 1), i);
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-12s %8.1f ns/op\n", name, (double) delta / nums);
+		return l;
+	}
+
+	static void cursorEdits(String name, List<Integer> l, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		int cursor = l.size() / 2;
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			cursor = Math.max(0, Math.min(l.size() - 16, cursor + rnd.nextInt(9) - 4));
+			if(rnd.nextInt(8) == 0) {
+				l.subList(cursor, cursor + 1 + rnd.nextInt(8)).clear();
+			} else {
+				l.add(cursor, i);
+				cursor++;
+			}
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-12s %8.1f ns/op  size:%d\n", name, (double) delta / ops, l.size());
+	}
+
+	static void scan(String name, List<Integer> l, boolean report) {
+		final int n = l.size();
+		final long start = System.nanoTime();
+		for(int i = 0; i < n; i++)
+			sink += l.get(i);
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-12s %8.1f ns/op\n", name, (double) delta / n);
+	}
+}
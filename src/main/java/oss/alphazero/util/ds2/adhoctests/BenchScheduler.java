@@ -0,0 +1,208 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import oss.alphazero.util.ds2.SplayPriorityQueue;
+import oss.alphazero.util.ds2.SplayScheduler;
+
+/**
+ * {@link SplayPriorityQueue} and {@link SplayScheduler} bench:
+ * <ol>
+ * <li><b>hold</b>: the classic priority queue model - poll the least, offer it
+ * plus a random increment - vs. {@link PriorityQueue}.</li>
+ * <li><b>arm/cancel</b>: timeouts with a constant delay, each op arms one and
+ * cancels a random pending one, before it expires - vs. {@link ScheduledThreadPoolExecutor}
+ * (remove on cancel) and {@link DelayQueue}, whose remove is O(n) and is run
+ * for fewer ops.</li>
+ * <li><b>expiry</b>: timers with delays spread after they are all armed - the
+ * lateness of their tasks, vs. ScheduledThreadPoolExecutor.</li>
+ * </ol>
+ * Usage: <code>java BenchScheduler [pending [ops]]</code>
+ */
+public class BenchScheduler {
+	static final int PENDING = 100000;
+	static final int OPS     = 2000000;
+	static final int WARMUP  = 2;
+	static final long SEED   = 307;
+
+	public static void main(String [ ] args) throws Exception {
+		final int pending = args.length > 0 ? Integer.parseInt(args[0]) : PENDING;
+		final int ops     = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## scheduler bench pending:%d ops:%d\n", pending, ops);
+		System.out.println ("###################################\n");
+
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			if(report) System.out.println("-- hold --");
+			hold("PriorityQueue", new PriorityQueue<Long>(), pending, ops, report);
+			hold("SplayPriorityQueue", new SplayPriorityQueue<Long>(), pending, ops, report);
+			if(report) System.out.println("\n-- arm/cancel --");
+			armCancelSplay(pending, ops, report);
+			armCancelExecutor(pending, ops, report);
+			armCancelDelayQueue(pending, Math.max(1, ops / 1000), report);
+			if(report) System.out.println("\n-- expiry --");
+			expirySplay(pending, report);
+			expiryExecutor(pending, report);
+		}
+	}
+
+	static void hold(String name, Queue<Long> q, int pending, int ops, boolean report) {
+		final Random rnd = new Random(SEED);
+		for(int i = 0; i < pending; i++)
+			q.offer((long) rnd.nextInt(pending));
+		final long start = System.nanoTime();
+		for(int i = 0; i < ops; i++)
+			q.offer(q.poll() + rnd.nextInt(pending));
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-36s %7.1f ns/op\n", name, (double) delta / ops);
+	}
+
+	static void armCancelSplay(int pending, int ops, boolean report) {
+		final Runnable task = () -> { };
+		try(SplayScheduler<Integer> s = new SplayScheduler<Integer>()) {
+			final int[] keys = new int[pending];
+			for(int i = 0; i < pending; i++)
+				s.schedule(keys[i] = i, 1, TimeUnit.HOURS, task);
+			final Random rnd = new Random(SEED);
+			final long start = System.nanoTime();
+			for(int i = pending; i < pending + ops; i++) {
+				final int j = rnd.nextInt(pending);
+				s.schedule(i, 1, TimeUnit.HOURS, task);
+				s.cancel(keys[j]);
+				keys[j] = i;
+			}
+			final long delta = System.nanoTime() - start;
+			if(report)
+				System.out.format("%-36s %7.1f ns/op  %6.2f M arm+cancel/sec\n", "SplayScheduler", (double) delta / ops, ops / (delta / 1e3));
+		}
+	}
+
+	static void armCancelExecutor(int pending, int ops, boolean report) {
+		final Runnable task = () -> { };
+		final ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(1);
+		stpe.setRemoveOnCancelPolicy(true);
+		try {
+			final Map<Integer, ScheduledFuture<?>> futures = new HashMap<Integer, ScheduledFuture<?>>();
+			final int[] keys = new int[pending];
+			for(int i = 0; i < pending; i++)
+				futures.put(keys[i] = i, stpe.schedule(task, 1, TimeUnit.HOURS));
+			final Random rnd = new Random(SEED);
+			final long start = System.nanoTime();
+			for(int i = pending; i < pending + ops; i++) {
+				final int j = rnd.nextInt(pending);
+				futures.put(i, stpe.schedule(task, 1, TimeUnit.HOURS));
+				futures.remove(keys[j]).cancel(false);
+				keys[j] = i;
+			}
+			final long delta = System.nanoTime() - start;
+			if(report)
+				System.out.format("%-36s %7.1f ns/op  %6.2f M arm+cancel/sec\n", "ScheduledThreadPoolExecutor", (double) delta / ops, ops / (delta / 1e3));
+		} finally {
+			stpe.shutdownNow();
+		}
+	}
+
+	/** a DelayQueue element */
+	static final class Timeout implements Delayed {
+		final long deadline;
+		Timeout(long delay, TimeUnit unit) {
+			deadline = System.nanoTime() + unit.toNanos(delay);
+		}
+		@Override public long getDelay(TimeUnit unit) {
+			return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		@Override public int compareTo(Delayed o) {
+			return Long.signum(deadline - ((Timeout) o).deadline);
+		}
+	}
+
+	static void armCancelDelayQueue(int pending, int ops, boolean report) {
+		final DelayQueue<Timeout> q = new DelayQueue<Timeout>();
+		final Map<Integer, Timeout> timeouts = new HashMap<Integer, Timeout>();
+		final int[] keys = new int[pending];
+		for(int i = 0; i < pending; i++) {
+			final Timeout t = new Timeout(1, TimeUnit.HOURS);
+			timeouts.put(keys[i] = i, t);
+			q.add(t);
+		}
+		final Random rnd = new Random(SEED);
+		final long start = System.nanoTime();
+		for(int i = pending; i < pending + ops; i++) {
+			final int j = rnd.nextInt(pending);
+			final Timeout t = new Timeout(1, TimeUnit.HOURS);
+			timeouts.put(i, t);
+			q.add(t);
+			q.remove(timeouts.remove(keys[j]));
+			keys[j] = i;
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-36s %7.1f ns/op  %6.2f M arm+cancel/sec (%d ops)\n", "DelayQueue", (double) delta / ops, ops / (delta / 1e3), ops);
+	}
+
+	/** delays, in us, spread over 300-500ms: past the arming of all */
+	static long delay(Random rnd) {
+		return 300000 + rnd.nextInt(200000);
+	}
+
+	static void lateness(String name, long[] late, boolean report) {
+		Arrays.sort(late);
+		if(report)
+			System.out.format("%-36s lateness p50: %6d us  p99: %6d us\n", name, late[late.length / 2] / 1000, late[late.length * 99 / 100] / 1000);
+	}
+
+	static void expirySplay(int timers, boolean report) throws InterruptedException {
+		final Random rnd = new Random(SEED);
+		final CountDownLatch done = new CountDownLatch(timers);
+		final long[] late = new long[timers];
+		try(SplayScheduler<Integer> s = new SplayScheduler<Integer>()) {
+			for(int i = 0; i < timers; i++) {
+				final int k = i;
+				final long delay = delay(rnd);
+				final long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(delay);
+				s.schedule(i, delay, TimeUnit.MICROSECONDS, () -> {
+					late[k] = System.nanoTime() - deadline;
+					done.countDown();
+				});
+			}
+			done.await();
+		}
+		lateness("SplayScheduler", late, report);
+	}
+
+	static void expiryExecutor(int timers, boolean report) throws InterruptedException {
+		final Random rnd = new Random(SEED);
+		final CountDownLatch done = new CountDownLatch(timers);
+		final long[] late = new long[timers];
+		final ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(1);
+		try {
+			for(int i = 0; i < timers; i++) {
+				final int k = i;
+				final long delay = delay(rnd);
+				final long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(delay);
+				stpe.schedule(() -> {
+					late[k] = System.nanoTime() - deadline;
+					done.countDown();
+				}, delay, TimeUnit.MICROSECONDS);
+			}
+			done.await();
+		} finally {
+			stpe.shutdownNow();
+		}
+		lateness("ScheduledThreadPoolExecutor", late, report);
+	}
+}
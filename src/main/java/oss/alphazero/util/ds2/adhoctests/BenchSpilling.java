@@ -0,0 +1,88 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import oss.alphazero.util.ds2.Codec;
+import oss.alphazero.util.ds2.SpillingSplayTreeMap;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * {@link SpillingSplayTreeMap} vs. {@link SplayTreeMap}: gets on a hot working
+ * set of HOT keys (within budget) with a MISS fraction of gets on all keys.
+ * <p>
+ * Usage: <code>java BenchSpilling [nums [budget [ops]]]</code>
+ */
+public class BenchSpilling {
+	static final int NUMS   = 1000000;
+	static final int BUDGET =  100000;
+	static final int OPS    = 2000000;
+	static final double HOT  = 0.5;     // of budget
+	static final double MISS = 0.01;    // gets outside the working set
+	static final int WARMUP = 2;
+	static final long SEED  = 307;
+
+	public static void main(String [ ] args) throws IOException {
+		final int nums   = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int budget = args.length > 1 ? Integer.parseInt(args[1]) : BUDGET;
+		final int ops    = args.length > 2 ? Integer.parseInt(args[2]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## spilling bench nums:%d budget:%d ops:%d\n", nums, budget, ops);
+		System.out.println ("###################################\n");
+
+		final Path file = Files.createTempFile("ds2-bench", ".spill");
+		try {
+			for(int i = 0; i <= WARMUP; i++)
+				run(nums, budget, ops, file, i == WARMUP);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	static int key(Random rnd, int nums, int hot) {
+		final int i = rnd.nextDouble() < MISS ? rnd.nextInt(nums) : rnd.nextInt(hot);
+		return (int) (i * 2654435761L % nums);      // spread over the key space
+	}
+
+	static void run(int nums, int budget, int ops, Path file, boolean report) throws IOException {
+		final int hot = (int) (budget * HOT);
+
+		long start = System.nanoTime();
+		final SplayTreeMap<Integer, String> heap = new SplayTreeMap<Integer, String>();
+		for(int i = 0; i < nums; i++)
+			heap.put(i, "value-" + i);
+		final long heapLoad = System.nanoTime() - start;
+
+		Random rnd = new Random(SEED);
+		long sum = 0;
+		start = System.nanoTime();
+		for(int i = 0; i < ops; i++)
+			sum += heap.get(key(rnd, nums, hot)).length();
+		final long heapGets = System.nanoTime() - start;
+
+		try(SpillingSplayTreeMap<Integer, String> spilling =
+				new SpillingSplayTreeMap<Integer, String>(file, budget, Codec.INT, Codec.STRING)) {
+			start = System.nanoTime();
+			for(int i = 0; i < nums; i++)
+				spilling.put(i, "value-" + i);
+			final long spillLoad = System.nanoTime() - start;
+
+			rnd = new Random(SEED);
+			start = System.nanoTime();
+			for(int i = 0; i < ops; i++)
+				sum -= spilling.get(key(rnd, nums, hot)).length();
+			final long spillGets = System.nanoTime() - start;
+			assert sum == 0;
+
+			if(report) {
+				System.out.format("SplayTreeMap         load: %8.1f ms  gets: %6.1f ns/op\n", heapLoad / 1e6, (double) heapGets / ops);
+				System.out.format("SpillingSplayTreeMap load: %8.1f ms  gets: %6.1f ns/op\n", spillLoad / 1e6, (double) spillGets / ops);
+				System.out.format("  heap entries: %d  spilled: %d  spill bytes: %d MB  garbage: %d MB\n",
+						spilling.heapEntries(), spilling.spilledEntries(), spilling.spillBytes() >> 20, spilling.garbageBytes() >> 20);
+			}
+		}
+	}
+}
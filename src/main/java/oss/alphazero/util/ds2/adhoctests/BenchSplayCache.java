@@ -0,0 +1,68 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import oss.alphazero.util.ds2.SplayCache;
+import oss.alphazero.util.ds2.SplayCache.Eviction;
+
+/**
+ * {@link SplayCache} vs. a {@link LinkedHashMap} LRU: hit ratio and time per
+ * op of read-through lookups on skewed (zipf) traffic.
+ * <p>
+ * Usage: <code>java BenchSplayCache [nums [capacity [ops]]]</code>
+ */
+public class BenchSplayCache {
+	static final int NUMS     = 1000000;
+	static final int CAPACITY =   50000;
+	static final int OPS      = 4000000;
+	static final int WARMUP   = 2;
+
+	public static void main(String [ ] args) {
+		final int nums     = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int capacity = args.length > 1 ? Integer.parseInt(args[1]) : CAPACITY;
+		final int ops      = args.length > 2 ? Integer.parseInt(args[2]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## cache bench nums:%d capacity:%d ops:%d\n", nums, capacity, ops);
+		System.out.println ("###################################\n");
+
+		final int[] traffic = BenchWarmStart.zipf(nums, ops);
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			lru(traffic, capacity, report);
+			for(Eviction eviction : Eviction.values())
+				splay(traffic, capacity, eviction, report);
+		}
+	}
+
+	static void lru(int[] traffic, int capacity, boolean report) {
+		final Map<Integer, Integer> cache = new LinkedHashMap<Integer, Integer>(capacity * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+				return size() > capacity;
+			}
+		};
+		long hits = 0;
+		final long start = System.nanoTime();
+		for(int k : traffic) {
+			if(cache.get(k) != null)
+				hits++;
+			else
+				cache.put(k, k);
+		}
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-20s hit ratio: %.4f  %6.1f ns/op\n", "LinkedHashMap LRU", (double) hits / traffic.length, (double) delta / traffic.length);
+	}
+
+	static void splay(int[] traffic, int capacity, Eviction eviction, boolean report) {
+		final SplayCache<Integer, Integer> cache = new SplayCache<Integer, Integer>(capacity, null, null, eviction);
+		final long start = System.nanoTime();
+		for(int k : traffic)
+			cache.computeIfAbsent(k, key -> key);
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-20s hit ratio: %.4f  %6.1f ns/op\n", "SplayCache " + eviction, cache.hitRatio(), (double) delta / traffic.length);
+	}
+}
@@ -0,0 +1,133 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import oss.alphazero.util.ds2.MultiSplayTree;
+import oss.alphazero.util.ds2.SplayTree;
+
+/**
+ * {@link MultiSplayTree} vs. {@link SplayTree} vs. {@link TreeSet}: lookups
+ * replayed from access traces, over the set of keys of the trace.
+ * <p>
+ * A recorded trace is a text file of int keys, one per line. Without one,
+ * the bench replays synthetic traces over <code>nums</code> keys:
+ * <ol>
+ * <li><b>uniform</b>: random keys.</li>
+ * <li><b>zipf</b>: {@link BenchWarmStart#zipf(int, int)} - a static hot set.</li>
+ * <li><b>working-set</b>: random keys of a window of WINDOW keys, spread
+ * over the key space, that moves to a new random place every PHASE ops.</li>
+ * <li><b>scan</b>: keys in order, repeatedly - the dynamic finger case.</li>
+ * </ol>
+ * Usage: <code>java BenchTrace [nums [ops [trace-file]]]</code>
+ */
+public class BenchTrace {
+	static final int NUMS   = 1000000;
+	static final int OPS    = 1000000;
+	static final int WINDOW =    1024;
+	static final int PHASE  =  100000;
+	static final int WARMUP = 2;
+	static final long SEED  = 307;
+
+	static long sink;
+
+	public static void main(String [ ] args) throws IOException {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## trace bench nums:%d ops:%d\n", nums, ops);
+		System.out.println ("###################################\n");
+
+		if(args.length > 2) {
+			final List<String> lines = Files.readAllLines(Paths.get(args[2]));
+			final int[] trace = new int[lines.size()];
+			for(int i = 0; i < trace.length; i++)
+				trace[i] = Integer.parseInt(lines.get(i).trim());
+			run(args[2], distinct(trace), trace);
+			return;
+		}
+		final int[] keys = new int[nums];
+		for(int i = 0; i < nums; i++)
+			keys[i] = i;
+		final Random rnd = new Random(SEED);
+		final int[] uniform = new int[ops];
+		for(int i = 0; i < ops; i++)
+			uniform[i] = rnd.nextInt(nums);
+		run("uniform", keys, uniform);
+		run("zipf", keys, BenchWarmStart.zipf(nums, ops));
+		final int[] window = new int[ops];
+		int base = 0;
+		for(int i = 0; i < ops; i++) {
+			if(i % PHASE == 0)
+				base = rnd.nextInt(nums);
+			window[i] = (int) ((base + rnd.nextInt(WINDOW) * 2654435761L) % nums);
+		}
+		run("working-set", keys, window);
+		final int[] scan = new int[ops];
+		for(int i = 0; i < ops; i++)
+			scan[i] = i % nums;
+		run("scan", keys, scan);
+	}
+
+	/** load the keys in a random order, and replay the trace */
+	static void run(String name, int[] keys, int[] trace) {
+		shuffle(keys);
+		System.out.format("-- %s keys:%d --\n", name, keys.length);
+		for(int i = 0; i <= WARMUP; i++) {
+			final boolean report = i == WARMUP;
+			final SplayTree<Integer> st = new SplayTree<Integer>();
+			final MultiSplayTree<Integer> mt = new MultiSplayTree<Integer>();
+			final TreeSet<Integer> ts = new TreeSet<Integer>();
+			for(int k : keys) {
+				st.insert(k);
+				mt.insert(k);
+				ts.add(k);
+			}
+			long start = System.nanoTime();
+			for(int k : trace)
+				if(st.contains(k)) sink++;
+			report(report, "SplayTree", start, trace.length);
+			start = System.nanoTime();
+			for(int k : trace)
+				if(mt.contains(k)) sink++;
+			report(report, "MultiSplayTree", start, trace.length);
+			start = System.nanoTime();
+			for(int k : trace)
+				if(ts.contains(k)) sink++;
+			report(report, "TreeSet", start, trace.length);
+		}
+		System.out.println();
+	}
+
+	static void report(boolean report, String name, long start, int ops) {
+		final long delta = System.nanoTime() - start;
+		if(report)
+			System.out.format("%-16s %8.1f ns/op\n", name, (double) delta / ops);
+	}
+
+	/** @return the distinct keys of the trace */
+	static int[] distinct(int[] trace) {
+		final int[] sorted = trace.clone();
+		Arrays.sort(sorted);
+		int n = 0;
+		for(int i = 0; i < sorted.length; i++)
+			if(i == 0 || sorted[i] != sorted[i - 1])
+				sorted[n++] = sorted[i];
+		return Arrays.copyOf(sorted, n);
+	}
+
+	static void shuffle(int[] keys) {
+		final Random rnd = new Random(SEED);
+		for(int i = keys.length - 1; i > 0; i--) {
+			final int j = rnd.nextInt(i + 1), x = keys[i];
+			keys[i] = keys[j];
+			keys[j] = x;
+		}
+	}
+}
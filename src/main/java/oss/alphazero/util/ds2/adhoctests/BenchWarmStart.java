@@ -0,0 +1,112 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import oss.alphazero.util.ds2.Codec;
+import oss.alphazero.util.ds2.SplayImage;
+import oss.alphazero.util.ds2.SplayImage.WarmStart;
+import oss.alphazero.util.ds2.SplayStats;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * {@link SplayImage} warm start bench: a map of nums shuffled inserts, splayed by
+ * nums gets of skewed (zipf) traffic, is written with each {@link WarmStart}, loaded, and the same traffic replayed.
+ * Reports the load time, and the mean and p99 latency of the first ops after the
+ * load - the cold start a balanced load pays until the hot keys are splayed up.
+ * Run with <code>-Dds2.stats=true</code> to also report the mean splay path
+ * length of those ops, which is independent of the machine.
+ * <p>
+ * Usage: <code>java BenchWarmStart [nums [ops [hot]]]</code>
+ */
+public class BenchWarmStart {
+	static final int NUMS   = 1000000;
+	static final int OPS    =   20000;   // first ops after load
+	static final int HOT    =    1024;   // hot keys, WarmStart.hot
+	static final double SKEW = 1.1;      // zipf exponent
+	static final int WARMUP = 3;
+	static final long SEED  = 307;
+
+	public static void main(String [ ] args) throws IOException {
+		final int nums = args.length > 0 ? Integer.parseInt(args[0]) : NUMS;
+		final int ops  = args.length > 1 ? Integer.parseInt(args[1]) : OPS;
+		final int hot  = args.length > 2 ? Integer.parseInt(args[2]) : HOT;
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## warm start bench nums:%d ops:%d hot:%d\n", nums, ops, hot);
+		System.out.println ("###################################\n");
+
+		final int[] traffic = zipf(nums, nums + ops);
+		final SplayTreeMap<Integer, Integer> map = new SplayTreeMap<Integer, Integer>();
+		final Random rnd = new Random(SEED);
+		final int[] order = new int[nums];
+		for(int i = 0; i < nums; i++) {                     // shuffled inserts
+			final int j = rnd.nextInt(i + 1);
+			order[i] = order[j];
+			order[j] = i;
+		}
+		for(int k : order)
+			map.put(k, k);
+		for(int i = 0; i < nums; i++)                       // the traffic before the image
+			map.get(traffic[i]);
+
+		final WarmStart[] modes = { WarmStart.NONE, WarmStart.hot(hot), WarmStart.SHAPE };
+		final String[] names = { "none", "hot(" + hot + ")", "shape" };
+		final Path dir = Files.createTempDirectory("ds2-bench");
+		try {
+			for(int m = 0; m < modes.length; m++) {
+				final Path path = dir.resolve(m + ".img");
+				SplayImage.write(map, Codec.INT, Codec.INT, path, modes[m]);
+				for(int i = 0; i <= WARMUP; i++)
+					run(path, traffic, ops, names[m], Files.size(path), i == WARMUP);
+			}
+		} finally {
+			for(Path p : Files.list(dir).toArray(Path[]::new))
+				Files.delete(p);
+			Files.delete(dir);
+		}
+	}
+
+	/** keys by zipf rank, the hottest spread over the key space */
+	static int[] zipf(int nums, int n) {
+		final double[] cdf = new double[nums];
+		double sum = 0;
+		for(int i = 0; i < nums; i++)
+			cdf[i] = sum += 1 / Math.pow(i + 1, SKEW);
+		final Random rnd = new Random(SEED);
+		final int[] keys = new int[n];
+		for(int i = 0; i < n; i++) {
+			int r = Arrays.binarySearch(cdf, rnd.nextDouble() * sum);
+			r = r < 0 ? Math.min(-r - 1, nums - 1) : r;
+			keys[i] = (int) (r * 2654435761L % nums);
+		}
+		return keys;
+	}
+
+	static void run(Path path, int[] traffic, int ops, String name, long bytes, boolean report) throws IOException {
+		long start = System.nanoTime();
+		final SplayTreeMap<Integer, Integer> map = SplayImage.load(path, Codec.INT, Codec.INT);
+		final long load = System.nanoTime() - start;
+		final SplayStats stats = SplayStats.ENABLED ? map.enableStats() : null;
+
+		final long[] lat = new long[ops];
+		long sum = 0;
+		for(int i = 0; i < ops; i++) {
+			start = System.nanoTime();
+			sum += map.get(traffic[traffic.length - ops + i]);
+			lat[i] = System.nanoTime() - start;
+		}
+		assert sum >= 0;
+		if(report) {
+			final long total = Arrays.stream(lat).sum();
+			Arrays.sort(lat);
+			System.out.format("%-10s load: %7.1f ms  image: %6d KB  first %d gets mean: %6.1f ns  p99: %7d ns\n",
+					name, load / 1e6, bytes >> 10, ops, (double) total / ops, lat[ops * 99 / 100]);
+			if(stats != null)
+				System.out.format("%-10s mean path length: %5.1f\n", "", stats.getMeanPathLength());
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.PrintStream;
+
+/**
+ * A minimal log-linear latency histogram (in the spirit of HdrHistogram)
+ * for the ad-hoc benches. Values below {@link #SUB_BUCKETS} are recorded
+ * exactly; larger values are bucketed with {@link #SUB_BUCKET_BITS} bits
+ * of precision (&lt; 1% relative error). Reported percentile values are
+ * the upper bound of the bucket they fall in, i.e. conservative.
+ * <p>
+ * Not thread-safe: use one histogram per recording thread and
+ * {@link #add(LatencyHistogram)} them afterwards.
+ */
+public class LatencyHistogram {
+	static final int SUB_BUCKET_BITS = 7;
+	static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+	static final int BUCKET_COUNT    = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	/** standard percentiles reported by {@link #print(PrintStream, String)} */
+	static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9, 99.99};
+
+	private final long[] counts = new long[BUCKET_COUNT];
+	private long count;
+	private long sum;
+	private long max;
+	private long min = Long.MAX_VALUE;
+
+	// ------------------------------------------------------------------------
+	// Recording
+	// ------------------------------------------------------------------------
+	/**
+	 * Record a single latency value.
+	 * @param nanos latency in nanoseconds; negative values are clamped to 0
+	 */
+	public final void record(long nanos) {
+		if(nanos < 0)
+			nanos = 0;
+		counts[index(nanos)]++;
+		count++;
+		sum += nanos;
+		if(nanos > max) max = nanos;
+		if(nanos < min) min = nanos;
+	}
+
+	/** merge the content of other into this histogram */
+	public final void add(LatencyHistogram other) {
+		for(int i=0; i<BUCKET_COUNT; i++)
+			counts[i] += other.counts[i];
+		count += other.count;
+		sum += other.sum;
+		if(other.max > max) max = other.max;
+		if(other.min < min) min = other.min;
+	}
+
+	public final void reset() {
+		java.util.Arrays.fill(counts, 0L);
+		count = sum = max = 0;
+		min = Long.MAX_VALUE;
+	}
+
+	// ------------------------------------------------------------------------
+	// Queries
+	// ------------------------------------------------------------------------
+	public final long count() { return count; }
+	public final long max() { return max; }
+	public final long min() { return count == 0 ? 0 : min; }
+	public final double mean() { return count == 0 ? 0 : (double)sum / count; }
+
+	/**
+	 * @param percentile in range [0, 100]
+	 * @return upper bound (in nanos) of the bucket holding the given percentile
+	 */
+	public final long percentile(double percentile) {
+		if(count == 0)
+			return 0;
+		long rank = (long) Math.ceil((percentile / 100.0) * count);
+		if(rank < 1) rank = 1;
+		long seen = 0;
+		for(int i=0; i<BUCKET_COUNT; i++){
+			seen += counts[i];
+			if(seen >= rank)
+				return Math.min(highestEquivalent(i), max);
+		}
+		return max;
+	}
+
+	/**
+	 * Print the percentile distribution on a single line.
+	 * @param out
+	 * @param label
+	 */
+	public final void print(PrintStream out, String label) {
+		out.format("%-28s n:%9d mean:%9.1f", label, count, mean());
+		for(double p : PERCENTILES)
+			out.format(" p%s:%9d", trim(p), percentile(p));
+		out.format(" max:%10d (ns)\n", max);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Ops
+	// ------------------------------------------------------------------------
+	static int index(long v) {
+		if(v < SUB_BUCKETS)
+			return (int) v;
+		final int shift = (63 - Long.numberOfLeadingZeros(v)) - SUB_BUCKET_BITS;
+		final int sub = (int)(v >>> shift);
+		return (shift + 1) * SUB_BUCKETS + (sub - SUB_BUCKETS);
+	}
+
+	static long lowestEquivalent(int index) {
+		if(index < SUB_BUCKETS)
+			return index;
+		final int shift = index / SUB_BUCKETS - 1;
+		final long sub = (index % SUB_BUCKETS) + SUB_BUCKETS;
+		return sub << shift;
+	}
+
+	static long highestEquivalent(int index) {
+		if(index + 1 >= BUCKET_COUNT)
+			return Long.MAX_VALUE;
+		return lowestEquivalent(index + 1) - 1;
+	}
+
+	private static String trim(double p) {
+		return p == Math.rint(p) ? String.valueOf((long)p) : String.valueOf(p);
+	}
+}
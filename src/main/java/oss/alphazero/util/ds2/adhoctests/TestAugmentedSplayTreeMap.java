@@ -0,0 +1,176 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.AugmentedSplayTreeMap;
+import oss.alphazero.util.ds2.AugmentedSplayTreeMap.Monoid;
+import oss.alphazero.util.ds2.AugmentedSplayTreeMap.Summary;
+
+/**
+ * Run with -ea
+ */
+public class TestAugmentedSplayTreeMap {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) {
+		testAggregates();
+		testKeyOrder();
+		testMergeAndRange();
+	}
+
+	/** summary of the values of m */
+	static Summary scan(Map<?, Long> m) {
+		Summary s = Summary.EMPTY;
+		for(long v : m.values())
+			s = s.combine(Summary.of(v));
+		return s;
+	}
+
+	/** versus scans of a TreeMap */
+	public static void testAggregates() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests range aggregates\n");
+		System.out.println ("###################################\n");
+
+		final AugmentedSplayTreeMap<Integer, Long, Summary> m = new AugmentedSplayTreeMap<Integer, Long, Summary>(Monoid.summary(v -> v));
+		final AugmentedSplayTreeMap<Integer, Long, Long> sums = new AugmentedSplayTreeMap<Integer, Long, Long>(Monoid.sum(v -> v), Comparator.reverseOrder());
+		final TreeMap<Integer, Long> ref = new TreeMap<Integer, Long>();
+		assert m.aggregate().equals(Summary.EMPTY) && m.aggregate(0, NUMS).equals(Summary.EMPTY) : "empty";
+
+		final Random rnd = new Random(GAP);
+		for(int i = 0; i < NUMS * 4; i++) {
+			final int k = rnd.nextInt(NUMS);
+			switch(rnd.nextInt(5)) {
+			case 0: case 1:
+				final long v = rnd.nextInt(2000) - 1000;
+				assert eq(m.put(k, v), ref.put(k, v)) : "put";
+				sums.put(k, v);
+				break;
+			case 2:
+				assert eq(m.remove(k), ref.remove(k)) : "remove";
+				sums.remove(k);
+				break;
+			case 3:
+				assert eq(m.get(k), ref.get(k)) : "get";
+				break;
+			default:
+				final int lo = rnd.nextInt(NUMS), hi = lo + rnd.nextInt(NUMS / 8);
+				final Summary s = m.aggregate(lo, hi);
+				assert s.equals(scan(ref.subMap(lo, hi))) : "aggregate [" + lo + ", " + hi + "): " + s + " expected " + scan(ref.subMap(lo, hi));
+				assert sums.aggregate(hi - 1, lo - 1) == scan(ref.subMap(lo, hi)).sum : "reverse order sum";
+			}
+			assert m.size() == ref.size() : "size";
+		}
+		assert m.aggregate().equals(scan(ref)) : "aggregate";
+		assert m.aggregate(null, null).equals(scan(ref));
+		assert m.aggregate(NUMS / 2, null).equals(scan(ref.tailMap(NUMS / 2)));
+		assert m.aggregate(null, NUMS / 2).equals(scan(ref.headMap(NUMS / 2)));
+		assert m.aggregate(NUMS / 2, NUMS / 4).equals(Summary.EMPTY) : "empty range";
+		assert m.firstKey().equals(ref.firstKey()) && m.lastKey().equals(ref.lastKey());
+
+		// count, min and max monoids
+		final AugmentedSplayTreeMap<Integer, Long, Long> counts = new AugmentedSplayTreeMap<Integer, Long, Long>(Monoid.count());
+		final AugmentedSplayTreeMap<Integer, Long, Long> mins = new AugmentedSplayTreeMap<Integer, Long, Long>(Monoid.min(Comparator.naturalOrder()));
+		final AugmentedSplayTreeMap<Integer, Long, Long> maxs = new AugmentedSplayTreeMap<Integer, Long, Long>(Monoid.max(Comparator.naturalOrder()));
+		for(Map.Entry<Integer, Long> e : ref.entrySet()) {
+			counts.put(e.getKey(), e.getValue());
+			mins.put(e.getKey(), e.getValue());
+			maxs.put(e.getKey(), e.getValue());
+		}
+		for(int lo = 0; lo < NUMS; lo += GAP) {
+			final Summary s = scan(ref.subMap(lo, lo + GAP * 3));
+			assert counts.aggregate(lo, lo + GAP * 3) == s.count : "count";
+			assert s.count == 0 ? mins.aggregate(lo, lo + GAP * 3) == null : mins.aggregate(lo, lo + GAP * 3) == s.min : "min";
+			assert s.count == 0 ? maxs.aggregate(lo, lo + GAP * 3) == null : maxs.aggregate(lo, lo + GAP * 3) == s.max : "max";
+		}
+		try {
+			m.put(null, 1L);
+			assert false : "null key";
+		} catch (IllegalArgumentException e) { }
+		try {
+			m.put(1, null);
+			assert false : "null value";
+		} catch (IllegalArgumentException e) { }
+		System.out.println(" - range aggregate tests successfully completed");
+	}
+
+	/** a non commutative monoid: values are combined in key order */
+	public static void testKeyOrder() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests aggregate key order\n");
+		System.out.println ("###################################\n");
+
+		final Monoid<String, String> concat = Monoid.of("", s -> s, String::concat);
+		final AugmentedSplayTreeMap<Integer, String, String> m = new AugmentedSplayTreeMap<Integer, String, String>(concat);
+		final NavigableMap<Integer, String> ref = new TreeMap<Integer, String>();
+		for(int i = GAP; i != 0; i = (i + GAP) % 1000) {
+			final String s = String.valueOf((char) ('a' + i % 26));
+			m.put(i, s);
+			ref.put(i, s);
+		}
+		final Random rnd = new Random(GAP);
+		for(int i = 0; i < NUMS / 4; i++) {
+			final int lo = rnd.nextInt(1000), hi = lo + rnd.nextInt(200);
+			assert m.aggregate(lo, hi).equals(String.join("", ref.subMap(lo, hi).values())) : "order of [" + lo + ", " + hi + ")";
+			if(i % 3 == 0)
+				m.get(rnd.nextInt(1000));
+		}
+		assert m.aggregate().equals(String.join("", ref.values()));
+
+		// monotonic inserts leave a path: deep query ends are splayed
+		final AugmentedSplayTreeMap<Integer, Long, Long> path = new AugmentedSplayTreeMap<Integer, Long, Long>(Monoid.sum(v -> v));
+		for(int i = 0; i < NUMS; i++)
+			path.put(i, (long) i);
+		for(int i = 0; i < NUMS; i += GAP) {
+			final long lo = rnd.nextInt(NUMS), hi = lo + rnd.nextInt(NUMS / 4);
+			final long n = Math.min(hi, NUMS) - lo;
+			assert path.aggregate((int) lo, (int) hi) == (n <= 0 ? 0 : n * (lo + lo + n - 1) / 2) : "sum of [" + lo + ", " + hi + ")";
+		}
+		System.out.println(" - aggregate key order tests successfully completed");
+	}
+
+	/** per minute buckets of a metric */
+	public static void testMergeAndRange() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests merge and range\n");
+		System.out.println ("###################################\n");
+
+		final AugmentedSplayTreeMap<Long, Long, Summary> buckets = new AugmentedSplayTreeMap<Long, Long, Summary>(Monoid.summary(v -> v));
+		final TreeMap<Long, Long> ref = new TreeMap<Long, Long>();
+		for(int i = 0; i < NUMS; i++) {
+			final long minute = i * GAP % 1440;
+			buckets.merge(minute, (long) i % 100, Long::sum);
+			ref.merge(minute, (long) i % 100, Long::sum);
+		}
+		assert buckets.size() == ref.size();
+		for(long h = 0; h < 24; h++)
+			assert buckets.aggregate(h * 60, h * 60 + 60).equals(scan(ref.subMap(h * 60, h * 60 + 60))) : "hour " + h;
+		assert buckets.merge(0L, 0L, (a, b) -> null) == null && !buckets.containsKey(0L) : "merge to null removes";
+		ref.remove(0L);
+		assert buckets.aggregate().equals(scan(ref));
+
+		final List<Long> keys = new ArrayList<Long>();
+		buckets.range(60L, 120L, (k, v) -> keys.add(k));
+		assert keys.equals(new ArrayList<Long>(ref.subMap(60L, 120L).keySet())) : "range";
+		keys.clear();
+		buckets.range(null, 5L, (k, v) -> keys.add(k));
+		assert keys.equals(new ArrayList<Long>(ref.headMap(5L).keySet())) : "range head";
+		try {
+			buckets.range(0L, 10L, (k, v) -> buckets.remove(k));
+			assert false : "modified by action";
+		} catch (ConcurrentModificationException e) { }
+		System.out.println(" - merge and range tests successfully completed");
+	}
+
+	static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
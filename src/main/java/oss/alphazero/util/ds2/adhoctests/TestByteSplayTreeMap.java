@@ -0,0 +1,174 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.ByteSplayTreeMap;
+import oss.alphazero.util.ds2.KeyPrefix;
+import oss.alphazero.util.ds2.TreeShape;
+
+/**
+ * Run with -ea
+ */
+public class TestByteSplayTreeMap {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) {
+		testAgainstTreeMap();
+		testProbes();
+		testCompact();
+	}
+
+	/** random keys of 0..19 bytes from a 4 letter alphabet, incl. 0x00 and 0xFF */
+	static byte[] randomKey(Random rnd) {
+		final byte[] k = new byte[rnd.nextInt(20)];
+		for(int j = 0; j < k.length; j++)
+			k[j] = (byte) (rnd.nextInt(4) * 85);
+		return k;
+	}
+
+	public static void testAgainstTreeMap() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests against TreeMap\n");
+		System.out.println ("###################################\n");
+
+		final Random rnd = new Random(GAP);
+		final ByteSplayTreeMap<Integer> t = new ByteSplayTreeMap<Integer>(64);  // many slabs
+		final TreeMap<byte[], Integer> ref = new TreeMap<byte[], Integer>(KeyPrefix.UNSIGNED_BYTES);
+		for(int i = 0; i < NUMS * 4; i++) {
+			final byte[] k = randomKey(rnd);
+			switch(rnd.nextInt(4)) {
+			case 0:
+			case 1:
+				assert eq(t.put(k, i), ref.put(k, i)) : "put " + Arrays.toString(k);
+				break;
+			case 2:
+				assert eq(t.remove(k), ref.remove(k)) : "remove " + Arrays.toString(k);
+				break;
+			default:
+				assert eq(t.get(k), ref.get(k)) : "get " + Arrays.toString(k);
+			}
+			assert t.size() == ref.size() : "size";
+		}
+		final byte[] big = new byte[200];  // larger than a slab
+		Arrays.fill(big, (byte) 0x55);
+		assert t.insert(big, -1) && !t.insert(big, -2) && t.get(big) == -1 : "oversized key";
+		ref.put(big, -1);
+
+		assert Arrays.equals(t.minKey(), ref.firstKey()) && Arrays.equals(t.maxKey(), ref.lastKey()) : "min/max";
+		final TreeShape shape = TreeShape.of(t);
+		assert shape.size() == ref.size() : "shape size";
+		System.out.format(" - %s\n", shape);
+
+		for(Map.Entry<byte[], Integer> e : ref.entrySet())
+			if(!e.getValue().equals(t.get(e.getKey())))
+				System.err.println("Error: get fails for " + Arrays.toString(e.getKey()));
+		while(!ref.isEmpty()) {
+			final byte[] k = ref.pollFirstEntry().getKey();
+			assert Arrays.equals(k, t.minKey()) : "order at " + Arrays.toString(k);
+			t.remove(k);
+		}
+		assert t.isEmpty() && t.minKey() == null : "not empty";
+		System.out.println(" - TreeMap tests successfully completed");
+	}
+
+	public static void testProbes() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests slice and ByteBuffer probes\n");
+		System.out.println ("###################################\n");
+
+		final ByteSplayTreeMap<String> t = new ByteSplayTreeMap<String>();
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			t.put(key(i), String.valueOf(i));
+
+		final byte[] buf = new byte[32];
+		final ByteBuffer heap = ByteBuffer.allocate(32);
+		final ByteBuffer direct = ByteBuffer.allocateDirect(32);
+		for(int i = 1; i < NUMS; i++) {
+			final byte[] k = key(i);
+			System.arraycopy(k, 0, buf, 7, k.length);
+			assert String.valueOf(i).equals(t.get(buf, 7, k.length)) : "slice get " + i;
+
+			heap.clear();
+			heap.position(3);
+			heap.put(k).flip().position(3);
+			assert String.valueOf(i).equals(t.get(heap.slice())) : "heap buffer get " + i;
+			assert heap.position() == 3 : "probe moved the buffer";
+
+			direct.clear();
+			direct.put(k).flip();
+			assert t.containsKey(direct) : "direct buffer contains " + i;
+		}
+		assert t.get(buf, 7, 3) == null : "short slice";
+
+		for(int i = 1; i < NUMS; i += 2) {
+			direct.clear();
+			direct.put(key(i)).flip();
+			assert t.remove(direct) != null : "direct buffer remove " + i;
+		}
+		for(int i = 1; i < NUMS; i++)
+			assert t.containsKey(key(i)) == (i % 2 == 0) : "contains after removes " + i;
+
+		boolean didcheck = false;
+		try {
+			t.get(buf, 30, 3);
+		} catch (IndexOutOfBoundsException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "did not check slice bounds";
+		}
+		didcheck = false;
+		try {
+			t.put((byte[]) null, "v");
+		} catch (IllegalArgumentException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "did not reject null key";
+		}
+		System.out.println(" - probe tests successfully completed");
+	}
+
+	public static void testCompact() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests compact\n");
+		System.out.println ("###################################\n");
+
+		final ByteSplayTreeMap<Integer> t = new ByteSplayTreeMap<Integer>(4096);
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			t.put(key(i), i);
+		for(int i = 1; i < NUMS; i += 2)
+			t.remove(key(i));
+		final long garbage = t.garbageBytes();
+		final long arena = t.arenaBytes();
+		final long height = TreeShape.of(t).height();
+		assert garbage > 0 : "no garbage after removes";
+
+		t.compact();
+		assert t.garbageBytes() == 0 && t.arenaBytes() < arena : "compact did not reclaim";
+		assert TreeShape.of(t).height() == height : "compact changed the shape";
+		for(int i = 1; i < NUMS; i++)
+			assert (t.get(key(i)) != null) == (i % 2 == 0) : "get after compact " + i;
+		System.out.format(" - arena:%d garbage:%d -> arena:%d\n", arena, garbage, t.arenaBytes());
+		for(int i = 1; i < NUMS; i += 2)
+			t.put(key(i), i);
+		assert t.size() == NUMS - 1 : "size after reinsert";
+
+		t.clear();
+		t.compact();
+		assert t.isEmpty() && t.get(key(2)) == null : "clear";
+		System.out.println(" - compact tests successfully completed");
+	}
+
+	/** composite key: 4 byte tenant, 8 byte id */
+	static byte[] key(int i) {
+		return ByteBuffer.allocate(12).putInt(i % 64).putLong(i).array();
+	}
+
+	static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
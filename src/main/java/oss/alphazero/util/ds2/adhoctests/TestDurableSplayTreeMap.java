@@ -0,0 +1,338 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import oss.alphazero.util.ds2.Codec;
+import oss.alphazero.util.ds2.DurableSplayTreeMap;
+import oss.alphazero.util.ds2.DurableSplayTreeMap.SyncPolicy;
+
+/**
+ * Run with -ea
+ */
+public class TestDurableSplayTreeMap {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) throws Exception {
+		final Path dir = Files.createTempDirectory("ds2-durable");
+		try {
+			testRecovery(dir.resolve("recovery"));
+			testCheckpoints(dir.resolve("checkpoints"));
+			testTornTail(dir.resolve("torn"));
+			testTornMiddle(dir.resolve("torn-middle"));
+			testLargeRecords(dir.resolve("large"));
+			testLogFailure(dir.resolve("failure"));
+			testRejectedKey(dir.resolve("rejected"));
+			testCheckpointFailure(dir.resolve("checkpoint-failure"));
+			testGroupCommit(dir.resolve("group"));
+		} finally {
+			try(Stream<Path> files = Files.walk(dir)) {
+				files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+
+	static DurableSplayTreeMap<Integer, String> open(Path dir) throws IOException {
+		return new DurableSplayTreeMap<Integer, String>(dir, Codec.INT, Codec.STRING);
+	}
+
+	static void check(DurableSplayTreeMap<Integer, String> map, TreeMap<Integer, String> ref, String what) {
+		assert map.size() == ref.size() : what + ": size " + map.size() + " expected " + ref.size();
+		for(java.util.Map.Entry<Integer, String> e : ref.entrySet()) {
+			assert map.containsKey(e.getKey()) : what + ": missing " + e.getKey();
+			final String v = map.get(e.getKey());
+			assert v == null ? e.getValue() == null : v.equals(e.getValue()) : what + ": value of " + e.getKey();
+		}
+	}
+
+	/** random mutations against a TreeMap */
+	static void mutate(DurableSplayTreeMap<Integer, String> map, TreeMap<Integer, String> ref, Random rnd, int ops) {
+		for(int i = 0; i < ops; i++) {
+			final int k = rnd.nextInt(NUMS / 4);
+			switch(rnd.nextInt(4)) {
+			case 0:
+				assert map.insert(k, "i" + i) == !ref.containsKey(k) : "insert";
+				if(!ref.containsKey(k))
+					ref.put(k, "i" + i);
+				break;
+			case 1:
+				assert map.delete(k) == ref.containsKey(k) : "delete";
+				ref.remove(k);
+				break;
+			case 2:
+				final String v = i % 10 == 0 ? null : "p" + i;
+				map.put(k, v);
+				ref.put(k, v);
+				break;
+			default:
+				map.remove(k);
+				ref.remove(k);
+			}
+		}
+	}
+
+	public static void testRecovery(Path dir) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests log replay\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		final Random rnd = new Random(GAP);
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			mutate(map, ref, rnd, NUMS / 4);
+		}
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			check(map, ref, "first recovery");
+			mutate(map, ref, rnd, NUMS / 4);
+		}
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			check(map, ref, "second recovery");
+		}
+		System.out.println(" - log replay tests successfully completed");
+	}
+
+	public static void testCheckpoints(Path dir) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests checkpoints\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		final Random rnd = new Random(GAP);
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			mutate(map, ref, rnd, NUMS / 4);
+			map.checkpoint();
+			mutate(map, ref, rnd, NUMS / 4);
+			map.setCheckpointThreshold(64 * 1024);          // automatic
+			mutate(map, ref, rnd, NUMS / 2);
+		}
+		try(Stream<Path> files = Files.list(dir)) {
+			final long images = files.filter(p -> p.getFileName().toString().endsWith(".img")).count();
+			assert images == 1 : "old checkpoints not removed: " + images;
+		}
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			check(map, ref, "recovery from checkpoint");
+		}
+		System.out.println(" - checkpoint tests successfully completed");
+	}
+
+	public static void testTornTail(Path dir) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests torn log tail\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			mutate(map, ref, new Random(GAP), NUMS / 4);
+		}
+		// crash during a write: half a record at the end of the last segment
+		final Path last;
+		try(Stream<Path> files = Files.list(dir)) {
+			last = files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted().reduce((a, b) -> b).get();
+		}
+		final long size = Files.size(last);
+		Files.write(last, new byte[]{ 0, 0, 0, 40, 1, 2, 3, 4, 1, 0, 0 }, StandardOpenOption.APPEND);
+
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			check(map, ref, "recovery after torn tail");
+			assert Files.size(last) == size : "torn tail not truncated";
+			map.put(-1, "after");
+			ref.put(-1, "after");
+		}
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			check(map, ref, "recovery after torn tail and restart");
+		}
+		System.out.println(" - torn log tail tests successfully completed");
+	}
+
+	/** a bad record in an earlier segment fails recovery and is not truncated */
+	public static void testTornMiddle(Path dir) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests torn record before the last segment\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		final Random rnd = new Random(GAP);
+		for(int session = 0; session < 2; session++) {      // a segment per session
+			try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+				mutate(map, ref, rnd, NUMS / 8);
+			}
+		}
+		final Path first;
+		try(Stream<Path> files = Files.list(dir)) {
+			first = files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted().findFirst().get();
+		}
+		final byte[] bytes = Files.readAllBytes(first);
+		bytes[bytes.length / 2] ^= 0x55;
+		Files.write(first, bytes);
+		try {
+			open(dir).close();
+			assert false : "recovered past a torn record";
+		} catch (IOException e) { }
+		assert Files.size(first) == bytes.length : "earlier segment truncated";
+		System.out.println(" - torn record before the last segment tests successfully completed");
+	}
+
+	/** records around and larger than the replay read buffer */
+	public static void testLargeRecords(Path dir) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests large log records\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		final Random rnd = new Random(GAP);
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			for(int i = 0; i < 64; i++) {
+				final char[] v = new char[rnd.nextInt(i % 16 == 0 ? 3 << 20 : 200 << 10)];
+				java.util.Arrays.fill(v, (char) ('a' + i % 26));
+				map.put(i, new String(v));
+				ref.put(i, new String(v));
+			}
+		}
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			check(map, ref, "recovery of large records");
+		}
+		System.out.println(" - large log record tests successfully completed");
+	}
+
+	/** after a log write failure nothing more is acknowledged */
+	public static void testLogFailure(Path dir) throws Exception {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests log failure\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		final DurableSplayTreeMap<Integer, String> map = open(dir);
+		mutate(map, ref, new Random(GAP), NUMS / 8);
+		assert map.failure() == null : "failure of a sound log";
+
+		// fail the log: close its channel under the map
+		final java.lang.reflect.Field wal = DurableSplayTreeMap.class.getDeclaredField("wal");
+		wal.setAccessible(true);
+		((java.nio.channels.FileChannel) wal.get(map)).close();
+		final Runnable[] ops = { () -> map.put(-1, "lost"), () -> map.put(-2, "lost"), map::sync, map::checkpoint };
+		for(int i = 0; i < ops.length; i++) {
+			try {
+				ops[i].run();
+				assert false : "op " + i + " after log failure";
+			} catch (java.io.UncheckedIOException e) { }
+		}
+		assert map.failure() != null : "no failure";
+		try {
+			map.close();
+			assert false : "close after log failure";
+		} catch (IOException e) { }
+
+		try(DurableSplayTreeMap<Integer, String> m = open(dir)) {
+			check(m, ref, "recovery after log failure");
+			assert !m.containsKey(-1) && !m.containsKey(-2) : "recovered unacknowledged writes";
+		}
+		System.out.println(" - log failure tests successfully completed");
+	}
+
+	/** a mutation the map rejects is not logged */
+	public static void testRejectedKey(Path dir) throws Exception {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests rejected key\n");
+		System.out.println ("###################################\n");
+
+		// negative keys are not comparable
+		final java.util.Comparator<Integer> order = (a, b) -> {
+			if(a < 0 || b < 0)
+				throw new ClassCastException("negative key");
+			return Integer.compare(a, b);
+		};
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		try(DurableSplayTreeMap<Integer, String> map = new DurableSplayTreeMap<Integer, String>(dir, Codec.INT, Codec.STRING,
+				order, DurableSplayTreeMap.SyncPolicy.EVERY_COMMIT, 1)) {
+			mutate(map, ref, new Random(GAP), NUMS / 8);
+			final Runnable[] ops = { () -> map.put(-1, "x"), () -> map.insert(-2, "x"), () -> map.delete(-3), () -> map.remove(-4) };
+			for(int i = 0; i < ops.length; i++) {
+				try {
+					ops[i].run();
+					assert false : "op " + i + " of a rejected key";
+				} catch (ClassCastException e) { }
+			}
+			check(map, ref, "after rejected keys");
+		}
+		try(DurableSplayTreeMap<Integer, String> map = new DurableSplayTreeMap<Integer, String>(dir, Codec.INT, Codec.STRING,
+				order, DurableSplayTreeMap.SyncPolicy.EVERY_COMMIT, 1)) {
+			check(map, ref, "recovery after rejected keys");
+		}
+		System.out.println(" - rejected key tests successfully completed");
+	}
+
+	/** a failed automatic checkpoint is reported, and backs off */
+	public static void testCheckpointFailure(Path dir) throws Exception {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests automatic checkpoint failure\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		final Random rnd = new Random(GAP);
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			// block the next segment
+			final Path current;
+			try(Stream<Path> files = Files.list(dir)) {
+				current = files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted().reduce((a, b) -> b).get();
+			}
+			final long seq = Long.parseLong(current.getFileName().toString().substring(4, 20));
+			final Path blocker = dir.resolve(String.format("wal-%016d.log", seq + 1));
+			Files.createFile(blocker);
+
+			map.setCheckpointThreshold(16 * 1024);
+			for(int i = 0; i < 100 && map.checkpointFailure() == null; i++) {
+				mutate(map, ref, rnd, 500);
+				Thread.sleep(10);
+			}
+			assert map.checkpointFailure() != null : "checkpoint failure not reported";
+			assert Files.exists(current) : "log removed by a failed checkpoint";
+
+			Files.delete(blocker);
+			for(int i = 0; i < 100 && map.checkpointFailure() != null; i++) {
+				mutate(map, ref, rnd, 500);
+				Thread.sleep(10);
+			}
+			assert map.checkpointFailure() == null : "checkpoint failure not cleared";
+		}
+		try(DurableSplayTreeMap<Integer, String> map = open(dir)) {
+			check(map, ref, "recovery after checkpoint failure");
+		}
+		System.out.println(" - automatic checkpoint failure tests successfully completed");
+	}
+
+	public static void testGroupCommit(Path dir) throws Exception {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests concurrent writers\n");
+		System.out.println ("###################################\n");
+
+		final int threads = 4, per = 2000;
+		for(SyncPolicy policy : SyncPolicy.values()) {
+			final Path d = dir.resolve(policy.name());
+			try(DurableSplayTreeMap<Integer, String> map =
+					new DurableSplayTreeMap<Integer, String>(d, Codec.INT, Codec.STRING, null, policy, 5)) {
+				final Thread[] ts = new Thread[threads];
+				for(int t = 0; t < threads; t++) {
+					final int base = t * per;
+					ts[t] = new Thread(() -> {
+						for(int i = 0; i < per; i++)
+							map.put(base + i, "v" + i);
+					});
+					ts[t].start();
+				}
+				for(Thread t : ts)
+					t.join();
+			}
+			try(DurableSplayTreeMap<Integer, String> map = open(d)) {
+				assert map.size() == threads * per : policy + ": lost writes " + map.size();
+			}
+		}
+		System.out.println(" - concurrent writer tests successfully completed");
+	}
+}
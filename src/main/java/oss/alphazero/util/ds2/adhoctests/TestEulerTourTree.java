@@ -0,0 +1,182 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import oss.alphazero.util.ds2.EulerTourTree;
+
+/**
+ * Run with -ea
+ */
+public class TestEulerTourTree {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) {
+		testPath();
+		testRandomOps();
+	}
+
+	/** a forest of adjacency lists, searched - the reference */
+	static final class Naive {
+		final List<List<Integer>> adj = new ArrayList<List<Integer>>();
+		final long[] weight;
+		int edges;
+
+		Naive(int n) {
+			for(int v = 0; v < n; v++)
+				adj.add(new ArrayList<Integer>());
+			weight = new long[n];
+		}
+		void link(int u, int v) {
+			adj.get(u).add(v);
+			adj.get(v).add(u);
+			edges++;
+		}
+		boolean cut(int u, int v) {
+			if(!adj.get(u).remove(Integer.valueOf(v)))
+				return false;
+			adj.get(v).remove(Integer.valueOf(u));
+			edges--;
+			return true;
+		}
+		/** @return size and weight sum of the vertices reached from v, not through p */
+		long[] search(int v, int p) {
+			final boolean[] seen = new boolean[weight.length];
+			final List<Integer> stack = new ArrayList<Integer>();
+			seen[v] = true;
+			if(p >= 0)
+				seen[p] = true;
+			stack.add(v);
+			long count = 0, sum = 0;
+			while(!stack.isEmpty()) {
+				final int x = stack.remove(stack.size() - 1);
+				count++;
+				sum += weight[x];
+				for(int y : adj.get(x))
+					if(!seen[y]) {
+						seen[y] = true;
+						stack.add(y);
+					}
+			}
+			return new long[] { count, sum };
+		}
+		boolean connected(int u, int v) {
+			final boolean[] seen = new boolean[weight.length];
+			final List<Integer> stack = new ArrayList<Integer>();
+			seen[u] = true;
+			stack.add(u);
+			while(!stack.isEmpty()) {
+				final int x = stack.remove(stack.size() - 1);
+				if(x == v)
+					return true;
+				for(int y : adj.get(x))
+					if(!seen[y]) {
+						seen[y] = true;
+						stack.add(y);
+					}
+			}
+			return false;
+		}
+	}
+
+	public static void testPath() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests a long path\n");
+		System.out.println ("###################################\n");
+
+		final EulerTourTree t = new EulerTourTree(NUMS);
+		for(int v = 0; v < NUMS; v++)
+			t.setWeight(v, v * GAP % NUMS);
+		for(int v = 1; v < NUMS; v++)
+			t.link(v, v - 1);                               // 0 - 1 - ... - NUMS-1
+		assert t.edges() == NUMS - 1 && t.hasEdge(NUMS / 2, NUMS / 2 - 1) && !t.hasEdge(0, 2);
+		assert t.connected(0, NUMS - 1) && t.componentSize(NUMS / 2) == NUMS;
+		assert t.componentSum(0) == (long) NUMS * (NUMS - 1) / 2 : "component sum";   // GAP is prime to NUMS
+		assert t.subtreeSize(NUMS / 2, NUMS / 2 - 1) == NUMS - NUMS / 2 : "subtree size";
+		assert t.subtreeSize(NUMS / 2 - 1, NUMS / 2) == NUMS / 2 : "subtree size, other side";
+		assert t.subtreeSum(NUMS - 1, NUMS - 2) == (NUMS - 1) * GAP % NUMS : "subtree sum";
+
+		assert t.cut(NUMS / 2, NUMS / 2 - 1) && !t.connected(0, NUMS - 1) : "cut";
+		assert t.componentSize(0) == NUMS / 2 && t.componentSize(NUMS - 1) == NUMS - NUMS / 2;
+		assert !t.cut(NUMS / 2, NUMS / 2 - 1) && t.edges() == NUMS - 2 : "cut a non edge";
+
+		t.link(0, NUMS - 1);                                // a path again, reversed halves
+		assert t.connected(NUMS / 2 - 1, NUMS / 2) && t.subtreeSize(0, NUMS - 1) == NUMS / 2;
+		try {
+			t.link(NUMS / 2, NUMS / 2 - 1);
+			assert false : "link of connected";
+		} catch (IllegalArgumentException e) { }
+		try {
+			t.subtreeSize(0, 2);
+			assert false : "subtree of a non edge";
+		} catch (IllegalArgumentException e) { }
+		try {
+			t.connected(0, NUMS);
+			assert false : "vertex out of range";
+		} catch (IllegalArgumentException e) { }
+		System.out.println(" - long path tests successfully completed");
+	}
+
+	/** versus naive adjacency lists */
+	public static void testRandomOps() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests random ops\n");
+		System.out.println ("###################################\n");
+
+		final int n = 2000;
+		final EulerTourTree t = new EulerTourTree(n);
+		final Naive ref = new Naive(n);
+		final List<int[]> edges = new ArrayList<int[]>();
+		final Random rnd = new Random(GAP);
+		for(int v = 0; v < n; v++) {
+			final long w = rnd.nextInt(1000);
+			t.setWeight(v, w);
+			ref.weight[v] = w;
+		}
+		for(int i = 0; i < NUMS * 2; i++) {
+			final int u = rnd.nextInt(n), v = rnd.nextInt(n);
+			final boolean connected = ref.connected(u, v);
+			assert t.connected(u, v) == connected : "connected " + u + " " + v;
+			switch(rnd.nextInt(6)) {
+			case 0: case 1:
+				if(!connected) {
+					t.link(u, v);
+					ref.link(u, v);
+					edges.add(new int[] { u, v });
+				}
+				break;
+			case 2:
+				if(!edges.isEmpty()) {
+					final int[] e = edges.remove(rnd.nextInt(edges.size()));
+					final boolean flip = rnd.nextBoolean();
+					assert t.cut(flip ? e[1] : e[0], flip ? e[0] : e[1]) && ref.cut(e[0], e[1]) : "cut";
+				}
+				if(!ref.adj.get(u).contains(v))
+					assert !t.cut(u, v) : "cut of a non edge";
+				assert t.edges() == ref.edges : "edges";
+				break;
+			case 3:
+				final long[] c = ref.search(u, -1);
+				assert t.componentSize(u) == c[0] : "componentSize";
+				assert t.componentSum(u) == c[1] : "componentSum";
+				break;
+			case 4:
+				if(!ref.adj.get(u).isEmpty()) {
+					final int p = ref.adj.get(u).get(rnd.nextInt(ref.adj.get(u).size()));
+					final long[] s = ref.search(u, p);
+					assert t.subtreeSize(u, p) == s[0] : "subtreeSize";
+					assert t.subtreeSum(u, p) == s[1] : "subtreeSum";
+				}
+				break;
+			default:
+				final long w = rnd.nextInt(1000);
+				t.setWeight(u, w);
+				ref.weight[u] = w;
+				assert t.weight(u) == w : "weight";
+			}
+		}
+		System.out.println(" - random ops tests successfully completed");
+	}
+}
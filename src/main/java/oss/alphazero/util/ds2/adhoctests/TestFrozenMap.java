@@ -0,0 +1,215 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import oss.alphazero.util.ds2.FrozenMap;
+import oss.alphazero.util.ds2.KeyPrefix;
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * Run with -ea
+ */
+public class TestFrozenMap {
+	static final int NUMS    = 40000;
+	static final int GAP     =   307;
+	static final int THREADS =     4;
+
+	public static void main(String [ ] args) throws InterruptedException {
+		testFreeze();
+		testNavigableMap(null, null);
+		testNavigableMap(Collections.reverseOrder(), null);
+		testNavigableMap(null, KeyPrefix.INT);
+		testReadOnly();
+		testThreads();
+	}
+
+	/** freeze does not change the map, and later changes are not seen */
+	public static void testFreeze() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests freeze\n");
+		System.out.println ("###################################\n");
+
+		final SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>();
+		assert t.freeze().isEmpty() && t.freeze().size() == 0 : "empty freeze";
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			t.put(i, "v" + i);
+		final FrozenMap<Integer, String> f = t.freeze();
+		assert f.size() == NUMS - 1 && t.size() == NUMS - 1 : "size";
+		for(int i = 1; i < NUMS; i++)
+			assert f.get(i).equals("v" + i) : "get " + i;
+		t.remove(1);
+		t.put(NUMS, "new");
+		assert f.containsKey(1) && !f.containsKey(NUMS) && f.size() == NUMS - 1 : "frozen copy changed";
+		assert f.get(0) == null && f.getOrDefault(0, "d").equals("d") : "absent key";
+		try {
+			f.get(null);
+			assert false : "did not prevent get with null key";
+		} catch (IllegalArgumentException e) { }
+		System.out.println(" - freeze tests successfully completed");
+	}
+
+	/** maps and all their views versus TreeMap, for sizes around powers of 2 */
+	public static void testNavigableMap(Comparator<Integer> order, KeyPrefix<? super Integer> prefix) {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests NavigableMap comparator:%s prefix:%s\n", order == null ? "natural" : "reverse", prefix != null);
+		System.out.println ("###################################\n");
+
+		final Random rnd = new Random(GAP);
+		for(int n : new int[]{ 0, 1, 2, 3, 6, 7, 8, 9, 100, 1023, 1024, 5000 }) {
+			final SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>(order, prefix);
+			final TreeMap<Integer, String> ref = new TreeMap<Integer, String>(order);
+			for(int i = 0; i < n; i++) {
+				final int k = 2 * ((i * 7919) % n);                 // even keys, not in order
+				t.put(k, k % 3 == 0 ? null : "v" + k);
+				ref.put(k, k % 3 == 0 ? null : "v" + k);
+			}
+			final FrozenMap<Integer, String> f = t.freeze();
+			check(f, ref, n, rnd, 3);
+		}
+		System.out.println(" - NavigableMap tests successfully completed");
+	}
+
+	/** compare f to ref, then random views of both, to depth */
+	static void check(NavigableMap<Integer, String> f, NavigableMap<Integer, String> ref, int n, Random rnd, int depth) {
+		assert f.size() == ref.size() && f.isEmpty() == ref.isEmpty() : "size " + ref.size();
+		assert f.equals(ref) && ref.equals(f) && f.hashCode() == ref.hashCode() : "equals";
+		assert f.toString().equals(ref.toString()) : "toString";
+		assert new ArrayList<Integer>(f.keySet()).equals(new ArrayList<Integer>(ref.keySet())) : "keys";
+		assert new ArrayList<String>(f.values()).equals(new ArrayList<String>(ref.values())) : "values";
+		assert new ArrayList<Integer>(f.descendingKeySet()).equals(new ArrayList<Integer>(ref.descendingKeySet())) : "descending keys";
+		final ArrayList<Integer> fe = new ArrayList<Integer>(), iter = new ArrayList<Integer>();
+		f.forEach((k, v) -> fe.add(k));
+		f.navigableKeySet().descendingIterator().forEachRemaining(iter::add);
+		assert fe.equals(new ArrayList<Integer>(ref.keySet())) : "forEach";
+		assert iter.equals(new ArrayList<Integer>(ref.navigableKeySet().descendingSet())) : "descending iterator";
+		assert Objects.equals(f.comparator(), ref.comparator())
+				|| f.comparator().compare(1, 2) == ref.comparator().compare(1, 2) : "comparator";
+		assert Objects.equals(f.firstEntry(), ref.firstEntry()) && Objects.equals(f.lastEntry(), ref.lastEntry()) : "first/last";
+		if(ref.isEmpty()) {
+			try {
+				f.firstKey();
+				assert false : "firstKey of empty map";
+			} catch (NoSuchElementException e) { }
+		} else {
+			assert f.firstKey().equals(ref.firstKey()) && f.lastKey().equals(ref.lastKey()) : "first/last key";
+		}
+		for(int k = -3; k <= 2 * n + 3; k++) {
+			assert Objects.equals(f.get(k), ref.get(k)) && f.containsKey(k) == ref.containsKey(k) : "get " + k;
+			assert Objects.equals(f.lowerEntry(k), ref.lowerEntry(k)) : "lower " + k;
+			assert Objects.equals(f.floorEntry(k), ref.floorEntry(k)) : "floor " + k;
+			assert Objects.equals(f.ceilingEntry(k), ref.ceilingEntry(k)) : "ceiling " + k;
+			assert Objects.equals(f.higherEntry(k), ref.higherEntry(k)) : "higher " + k;
+			assert Objects.equals(f.navigableKeySet().floor(k), ref.navigableKeySet().floor(k)) : "key set floor " + k;
+		}
+		assert f.containsValue(null) == ref.containsValue(null) : "containsValue";
+		if(depth == 0)
+			return;
+
+		check(f.descendingMap(), ref.descendingMap(), n, rnd, depth - 1);
+		for(int i = 0; i < 3; i++) {
+			final int a = rnd.nextInt(2 * n + 6) - 3, b = rnd.nextInt(2 * n + 6) - 3;
+			final boolean ai = rnd.nextBoolean(), bi = rnd.nextBoolean();
+			final NavigableMap<Integer, String> fv, rv;
+			switch(i) {
+			case 0:
+				final Comparator<? super Integer> c = ref.comparator();
+				final boolean inOrder = c == null ? a <= b : c.compare(a, b) <= 0;
+				final int from = inOrder ? a : b, to = inOrder ? b : a;
+				fv = view(() -> f.subMap(from, ai, to, bi));
+				rv = view(() -> ref.subMap(from, ai, to, bi));
+				break;
+			case 1:
+				fv = view(() -> f.headMap(a, ai));
+				rv = view(() -> ref.headMap(a, ai));
+				break;
+			default:
+				fv = view(() -> f.tailMap(b, bi));
+				rv = view(() -> ref.tailMap(b, bi));
+			}
+			assert (fv == null) == (rv == null) : "view bounds";
+			if(fv != null)
+				check(fv, rv, n, rnd, depth - 1);
+		}
+	}
+
+	interface View {
+		NavigableMap<Integer, String> get();
+	}
+
+	/** @return the view; null if out of range */
+	static NavigableMap<Integer, String> view(View v) {
+		try {
+			return v.get();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	public static void testReadOnly() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests read-only\n");
+		System.out.println ("###################################\n");
+
+		final SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>();
+		for(int i = 0; i < 10; i++)
+			t.put(i, "v" + i);
+		final FrozenMap<Integer, String> f = t.freeze();
+		final Runnable[] mutators = {
+			() -> f.put(1, "x"), () -> f.remove(1), () -> f.clear(), () -> f.putAll(t),
+			() -> f.pollFirstEntry(), () -> f.headMap(5).clear(), () -> f.firstEntry().setValue("x"),
+			() -> f.keySet().remove(1), () -> f.navigableKeySet().pollLast(), () -> f.merge(1, "x", String::concat),
+			() -> f.entrySet().iterator().remove(), () -> f.replaceAll((k, v) -> v)
+		};
+		for(int i = 0; i < mutators.length; i++) {
+			try {
+				mutators[i].run();
+				assert false : "mutator " + i;
+			} catch (UnsupportedOperationException e) { }
+		}
+		assert f.size() == 10 && f.get(1).equals("v1") : "read-only map changed";
+		System.out.println(" - read-only tests successfully completed");
+	}
+
+	/** readers share one frozen map without locks */
+	public static void testThreads() throws InterruptedException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests shared reads threads:%d\n", THREADS);
+		System.out.println ("###################################\n");
+
+		final SplayTreeMap<Integer, Integer> t = new SplayTreeMap<Integer, Integer>();
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			t.put(i, -i);
+		final FrozenMap<Integer, Integer> f = t.freeze();
+		final AtomicInteger errors = new AtomicInteger();
+		final Thread[] threads = new Thread[THREADS];
+		for(int i = 0; i < THREADS; i++) {
+			final int seed = i;
+			threads[i] = new Thread(() -> {
+				final Random rnd = new Random(seed);
+				for(int j = 0; j < NUMS * 10; j++) {
+					final int k = rnd.nextInt(NUMS + 1);
+					final Integer v = f.get(k);
+					final Map.Entry<Integer, Integer> e = f.floorEntry(k);
+					if(k == 0 || k == NUMS ? v != null : v != -k)
+						errors.incrementAndGet();
+					if(k > 0 && e.getKey() != Math.min(k, NUMS - 1))
+						errors.incrementAndGet();
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		assert errors.get() == 0 : "errors " + errors.get();
+		System.out.println(" - shared read tests successfully completed");
+	}
+}
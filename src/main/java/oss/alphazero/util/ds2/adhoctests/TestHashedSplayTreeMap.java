@@ -0,0 +1,128 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.HashedSplayTreeMap;
+
+/**
+ * Run with -ea
+ */
+public class TestHashedSplayTreeMap {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) {
+		testAsMap();
+		testRandomOps(0);
+		testRandomOps(3);
+		testCollisions();
+	}
+
+	/** keys with few hash codes: long probe runs */
+	static final class Colliding implements Comparable<Colliding> {
+		final int k;
+		Colliding(int k) { this.k = k; }
+		@Override public int hashCode() { return k % 7; }
+		@Override public boolean equals(Object o) { return o instanceof Colliding && ((Colliding) o).k == k; }
+		@Override public int compareTo(Colliding o) { return Integer.compare(k, o.k); }
+	}
+
+	public static void testAsMap() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests Map interface\n");
+		System.out.println ("###################################\n");
+
+		final HashedSplayTreeMap<Integer, String> t = new HashedSplayTreeMap<Integer, String>();
+		try {
+			t.put(null, "v");
+			assert false : "did not prevent put with null key";
+		} catch (IllegalArgumentException e) { }
+		try {
+			t.get(null);
+			assert false : "did not prevent get with null key";
+		} catch (IllegalArgumentException e) { }
+		assert t.firstKey() == null && t.floorKey(0) == null && t.remove(0) == null;
+
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			assert t.put(i, "v" + i) == null : "on put of " + i;
+		assert t.size() == NUMS - 1 && t.put(GAP, "w").equals("v" + GAP) && t.get(GAP).equals("w") : "replace";
+		for(int i = 1; i < NUMS; i+= 2)
+			assert t.remove(i) != null : "on remove of " + i;
+		assert t.size() == NUMS / 2 - 1 : "size after removes";
+		for(int i = 2; i < NUMS; i+=2)
+			assert t.containsKey(i) && t.get(i).equals(i == GAP ? "w" : "v" + i) : "get fails for " + i;
+		for(int i = 1; i < NUMS; i+=2)
+			assert !t.containsKey(i) && t.getOrDefault(i, "d").equals("d") : "found removed " + i;
+		assert t.firstKey() == 2 && t.lastKey() == NUMS - 2 : "first/last";
+		assert t.floorKey(NUMS / 2 + 1) == NUMS / 2 && t.ceilingKey(NUMS / 2 + 1) == NUMS / 2 + 2 : "floor/ceiling";
+
+		assert t.merge(2, "x", (a, b) -> a + b).equals("v2x") && t.computeIfAbsent(1, k -> "c").equals("c") : "defaults";
+		assert t.get(1).equals("c") && t.firstKey() == 1 : "computeIfAbsent";
+		t.compute(1, (k, v) -> null);
+		assert !t.containsKey(1) && t.size() == NUMS / 2 - 1 : "compute to null";
+
+		t.clear();
+		assert t.isEmpty() && t.get(2) == null && t.firstKey() == null : "clear";
+		System.out.println(" - Map interface tests successfully completed");
+	}
+
+	/** versus TreeMap */
+	public static void testRandomOps(int splayEvery) {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests random ops splayEvery:%d\n", splayEvery);
+		System.out.println ("###################################\n");
+
+		final HashedSplayTreeMap<Integer, Integer> t = new HashedSplayTreeMap<Integer, Integer>();
+		t.setSplayEvery(splayEvery);
+		final TreeMap<Integer, Integer> ref = new TreeMap<Integer, Integer>();
+		final Random rnd = new Random(GAP);
+		for(int i = 0; i < NUMS * 5; i++) {
+			final int k = rnd.nextInt(NUMS / 4);
+			switch(rnd.nextInt(6)) {
+			case 0: case 1:
+				assert Objects.equals(t.put(k, i), ref.put(k, i)) : "put " + k;
+				break;
+			case 2:
+				assert Objects.equals(t.remove(k), ref.remove(k)) : "remove " + k;
+				break;
+			case 3:
+				assert Objects.equals(t.get(k), ref.get(k)) : "get " + k;
+				break;
+			case 4:
+				assert Objects.equals(t.floorKey(k), ref.floorKey(k)) : "floor " + k;
+				assert Objects.equals(t.ceilingKey(k), ref.ceilingKey(k)) : "ceiling " + k;
+				break;
+			default:
+				final List<Integer> keys = new ArrayList<Integer>();
+				t.range(k, k + 50, (key, v) -> keys.add(key));
+				assert keys.equals(new ArrayList<Integer>(ref.subMap(k, k + 50).keySet())) : "range " + k;
+				assert t.size() == ref.size() : "size";
+			}
+		}
+		System.out.println(" - random ops tests successfully completed");
+	}
+
+	public static void testCollisions() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests colliding hashes\n");
+		System.out.println ("###################################\n");
+
+		final HashedSplayTreeMap<Colliding, Integer> t = new HashedSplayTreeMap<Colliding, Integer>();
+		final TreeMap<Colliding, Integer> ref = new TreeMap<Colliding, Integer>();
+		final Random rnd = new Random(GAP);
+		for(int i = 0; i < NUMS / 4; i++) {
+			final Colliding k = new Colliding(rnd.nextInt(500));
+			if(rnd.nextInt(3) == 0)
+				assert Objects.equals(t.remove(k), ref.remove(k)) : "remove " + k.k;
+			else
+				assert Objects.equals(t.put(k, i), ref.put(k, i)) : "put " + k.k;
+			final Colliding q = new Colliding(rnd.nextInt(500));
+			assert Objects.equals(t.get(q), ref.get(q)) : "get " + q.k;
+		}
+		System.out.println(" - colliding hash tests successfully completed");
+	}
+}
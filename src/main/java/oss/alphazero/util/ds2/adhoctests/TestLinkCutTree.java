@@ -0,0 +1,203 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import oss.alphazero.util.ds2.LinkCutTree;
+
+/**
+ * Run with -ea
+ */
+public class TestLinkCutTree {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) {
+		testPath();
+		testRandomOps();
+	}
+
+	/** a forest of parent links - the reference */
+	static final class Naive {
+		final int[] parent;
+		final long[] weight;
+
+		Naive(int n) {
+			parent = new int[n];
+			weight = new long[n];
+			Arrays.fill(parent, LinkCutTree.NIL);
+		}
+		int root(int v) {
+			while(parent[v] != LinkCutTree.NIL)
+				v = parent[v];
+			return v;
+		}
+		int depth(int v) {
+			int d = 0;
+			for(; parent[v] != LinkCutTree.NIL; v = parent[v])
+				d++;
+			return d;
+		}
+		void evert(int v) {
+			int prev = LinkCutTree.NIL;
+			while(v != LinkCutTree.NIL) {
+				final int p = parent[v];
+				parent[v] = prev;
+				prev = v;
+				v = p;
+			}
+		}
+		int lca(int u, int v) {
+			int du = depth(u), dv = depth(v);
+			for(; du > dv; du--) u = parent[u];
+			for(; dv > du; dv--) v = parent[v];
+			while(u != v) { u = parent[u]; v = parent[v]; }
+			return u;
+		}
+		long sum(int v) {
+			long s = 0;
+			for(; v != LinkCutTree.NIL; v = parent[v])
+				s += weight[v];
+			return s;
+		}
+		long min(int v) {
+			long m = Long.MAX_VALUE;
+			for(; v != LinkCutTree.NIL; v = parent[v])
+				m = Math.min(m, weight[v]);
+			return m;
+		}
+		void add(int v, long d) {
+			for(; v != LinkCutTree.NIL; v = parent[v])
+				weight[v] += d;
+		}
+		/** path u to v: through the lca */
+		long sum(int u, int v) {
+			final int a = lca(u, v);
+			return sum(u) + sum(v) - 2 * sum(a) + weight[a];
+		}
+		long min(int u, int v) {
+			final int a = lca(u, v);
+			long m = weight[a];
+			for(; u != a; u = parent[u]) m = Math.min(m, weight[u]);
+			for(; v != a; v = parent[v]) m = Math.min(m, weight[v]);
+			return m;
+		}
+	}
+
+	public static void testPath() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests a long path\n");
+		System.out.println ("###################################\n");
+
+		final LinkCutTree t = new LinkCutTree(NUMS);
+		for(int v = 0; v < NUMS; v++)
+			t.setWeight(v, v * GAP % NUMS);
+		for(int v = 1; v < NUMS; v++)
+			t.link(v, v - 1);                               // 0 <- 1 <- ... <- NUMS-1
+		assert t.findRoot(NUMS - 1) == 0 && t.parent(NUMS - 1) == NUMS - 2 && t.parent(0) == LinkCutTree.NIL;
+		assert t.pathSum(NUMS - 1) == (long) NUMS * (NUMS - 1) / 2 : "path sum";     // GAP is prime to NUMS
+		assert t.pathMin(NUMS - 1) == 0 && t.pathMinVertex(NUMS - 1) == 0 : "path min";
+		assert t.lca(NUMS / 3, NUMS / 2) == NUMS / 3 : "lca";
+		assert t.connected(0, NUMS - 1);
+
+		t.pathAdd(NUMS / 2, 1);
+		assert t.weight(0) == 1 && t.weight(NUMS / 2) == NUMS / 2 * GAP % NUMS + 1 && t.weight(NUMS / 2 + 1) == (NUMS / 2 + 1) * GAP % NUMS : "path add";
+		assert t.pathMin(NUMS - 1) == 1 : "path min after add";
+
+		assert t.cut(NUMS / 2) && !t.connected(0, NUMS - 1) : "cut";
+		assert t.findRoot(NUMS - 1) == NUMS / 2 && t.lca(0, NUMS - 1) == LinkCutTree.NIL;
+		assert !t.cut(NUMS / 2) : "cut a root";
+
+		t.evert(NUMS - 1);
+		assert t.findRoot(NUMS / 2) == NUMS - 1 && t.parent(NUMS / 2) == NUMS / 2 + 1 : "evert";
+		try {
+			t.link(NUMS / 2, 0);
+			assert false : "link of a non root";
+		} catch (IllegalArgumentException e) { }
+		try {
+			t.link(NUMS - 1, NUMS / 2);
+			assert false : "link of connected";
+		} catch (IllegalArgumentException e) { }
+		try {
+			t.pathSum(0, NUMS - 1);
+			assert false : "path of not connected";
+		} catch (IllegalArgumentException e) { }
+		try {
+			t.cut(NUMS);
+			assert false : "vertex out of range";
+		} catch (IllegalArgumentException e) { }
+		System.out.println(" - long path tests successfully completed");
+	}
+
+	/** versus naive parent links */
+	public static void testRandomOps() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests random ops\n");
+		System.out.println ("###################################\n");
+
+		final int n = 2000;
+		final LinkCutTree t = new LinkCutTree(n);
+		final Naive ref = new Naive(n);
+		final Random rnd = new Random(GAP);
+		for(int v = 0; v < n; v++) {
+			final long w = rnd.nextInt(1000);
+			t.setWeight(v, w);
+			ref.weight[v] = w;
+		}
+		for(int i = 0; i < NUMS * 2; i++) {
+			final int u = rnd.nextInt(n), v = rnd.nextInt(n);
+			final boolean connected = ref.root(u) == ref.root(v);
+			assert t.connected(u, v) == connected : "connected " + u + " " + v;
+			switch(rnd.nextInt(9)) {
+			case 0: case 1:
+				final int r = ref.root(u);
+				if(!connected) {
+					t.link(r, v);
+					ref.parent[r] = v;
+				}
+				break;
+			case 2:
+				assert t.cut(u) == (ref.parent[u] != LinkCutTree.NIL) : "cut";
+				ref.parent[u] = LinkCutTree.NIL;
+				break;
+			case 3:
+				t.evert(u);
+				ref.evert(u);
+				break;
+			case 4:
+				assert t.findRoot(u) == ref.root(u) : "findRoot";
+				assert t.parent(u) == ref.parent[u] : "parent";
+				break;
+			case 5:
+				assert t.lca(u, v) == (connected ? ref.lca(u, v) : LinkCutTree.NIL) : "lca";
+				break;
+			case 6:
+				assert t.pathSum(u) == ref.sum(u) : "pathSum";
+				assert t.pathMin(u) == ref.min(u) : "pathMin";
+				assert ref.weight[t.pathMinVertex(u)] == ref.min(u) : "pathMinVertex";
+				break;
+			case 7:
+				final long d = rnd.nextInt(21) - 10;
+				if(connected && rnd.nextBoolean()) {
+					t.pathAdd(u, v, d);
+					final int a = ref.lca(u, v);
+					for(int x = u; x != a; x = ref.parent[x]) ref.weight[x] += d;
+					for(int x = v; x != a; x = ref.parent[x]) ref.weight[x] += d;
+					ref.weight[a] += d;
+				} else {
+					t.pathAdd(u, d);
+					ref.add(u, d);
+				}
+				break;
+			default:
+				if(connected) {
+					assert t.pathSum(u, v) == ref.sum(u, v) : "pathSum(u, v)";
+					assert t.pathMin(u, v) == ref.min(u, v) : "pathMin(u, v)";
+					assert t.findRoot(u) == ref.root(u) : "root restored";
+				}
+				assert t.weight(u) == ref.weight[u] : "weight";
+			}
+		}
+		System.out.println(" - random ops tests successfully completed");
+	}
+}
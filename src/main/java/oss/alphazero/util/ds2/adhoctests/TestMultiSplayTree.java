@@ -0,0 +1,113 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.TreeSet;
+
+import oss.alphazero.util.ds2.MultiSplayTree;
+
+/**
+ * Run with -ea
+ */
+public class TestMultiSplayTree {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) {
+		testAsSplayTree();
+		testMonotonic();
+		testRandomOps();
+	}
+
+	/** the 'Weiss' tests of SplayTree */
+	public static void testAsSplayTree() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests SplayTree interface\n");
+		System.out.println ("###################################\n");
+
+		final MultiSplayTree<Integer> t = new MultiSplayTree<Integer>();
+		try {
+			t.insert(null);
+			assert false : "did not prevent insert with null key";
+		} catch (IllegalArgumentException e) { }
+		try {
+			t.delete(null);
+			assert false : "did not prevent delete with null key";
+		} catch (IllegalArgumentException e) { }
+		assert !t.contains(null) && t.minKey() == null && t.find(1) == null;
+
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			assert t.insert(i) : "on insert of " + i;
+		assert t.size() == NUMS - 1 && !t.insert(GAP) : "size after inserts";
+		for(int i = 1; i < NUMS; i+= 2)
+			assert t.delete(i) : "on remove of " + i;
+		assert !t.delete(1) && t.size() == NUMS / 2 - 1 : "size after removes";
+		assert t.minKey() == 2 && t.maxKey() == NUMS - 2 : "min/max";
+		for(int i = 2; i < NUMS; i+=2)
+			assert t.contains(i) && t.find(i).key() == i : "find fails for " + i;
+		for(int i = 1; i < NUMS; i+=2)
+			assert !t.contains(i) : "found deleted item " + i;
+
+		final MultiSplayTree<Integer> r = new MultiSplayTree<Integer>(Collections.reverseOrder());
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			r.insert(i);
+		assert r.minKey() == NUMS - 1 && r.maxKey() == 1 : "comparator order";
+		System.out.println(" - SplayTree interface tests successfully completed");
+	}
+
+	/** monotonic inserts and deletes: scapegoat and shrink rebuilds */
+	public static void testMonotonic() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests monotonic inserts and deletes\n");
+		System.out.println ("###################################\n");
+
+		final MultiSplayTree<Integer> t = new MultiSplayTree<Integer>();
+		for(int i = 0; i < NUMS; i++)
+			assert t.insert(i) : "on insert of " + i;
+		for(int i = 0; i < NUMS; i++)
+			assert t.contains(i) : "find fails for " + i;
+		for(int i = 0; i < NUMS / 2; i++) {
+			assert t.minKey() == i : "min " + i;
+			assert t.delete(i) : "on remove of " + i;
+		}
+		for(int i = NUMS - 1; i >= NUMS / 2; i--) {
+			assert t.maxKey() == i : "max " + i;
+			assert t.delete(i) : "on remove of " + i;
+		}
+		assert t.isEmpty() && t.size() == 0;
+		System.out.println(" - monotonic tests successfully completed");
+	}
+
+	/** versus TreeSet */
+	public static void testRandomOps() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests random ops\n");
+		System.out.println ("###################################\n");
+
+		final MultiSplayTree<Integer> t = new MultiSplayTree<Integer>();
+		final TreeSet<Integer> ref = new TreeSet<Integer>();
+		final Random rnd = new Random(GAP);
+		for(int i = 0; i < NUMS * 10; i++) {
+			final int bound = i % 4000 < 200 ? 64 : NUMS;    // bursts over a small working set
+			final Integer k = rnd.nextInt(bound);
+			switch(rnd.nextInt(4)) {
+			case 0:
+				assert t.insert(k) == ref.add(k) : "insert " + k;
+				break;
+			case 1:
+				assert t.delete(k) == ref.remove(k) : "delete " + k;
+				break;
+			case 2:
+				assert t.contains(k) == ref.contains(k) : "contains " + k;
+				break;
+			default:
+				assert t.size() == ref.size() : "size";
+				if(!ref.isEmpty())
+					assert t.minKey().equals(ref.first()) && t.maxKey().equals(ref.last()) : "min/max";
+			}
+		}
+		for(Integer k : ref)
+			assert t.contains(k) : "contains " + k;
+		System.out.println(" - random ops tests successfully completed");
+	}
+}
@@ -0,0 +1,139 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.Codec;
+import oss.alphazero.util.ds2.SpillingSplayTreeMap;
+
+/**
+ * Run with -ea
+ */
+public class TestSpillingSplayTreeMap {
+	static final int NUMS   = 40000;
+	static final int GAP    =   307;
+	static final int BUDGET =  1024;
+
+	public static void main(String [ ] args) throws IOException {
+		final Path file = Files.createTempFile("ds2-spill", ".bin");
+		try {
+			testBudget(file);
+			testRandomOps(file);
+			testHotSet(file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	static SpillingSplayTreeMap<Integer, String> open(Path file) throws IOException {
+		return new SpillingSplayTreeMap<Integer, String>(file, BUDGET, Codec.INT, Codec.STRING);
+	}
+
+	static void check(SpillingSplayTreeMap<Integer, String> map, TreeMap<Integer, String> ref, String what) {
+		assert map.size() == ref.size() : what + ": size " + map.size() + " expected " + ref.size();
+		for(Map.Entry<Integer, String> e : ref.entrySet()) {
+			assert map.containsKey(e.getKey()) : what + ": missing " + e.getKey();
+			final String v = map.get(e.getKey());
+			assert v == null ? e.getValue() == null : v.equals(e.getValue()) : what + ": value of " + e.getKey();
+		}
+	}
+
+	public static void testBudget(Path file) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests heap budget\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		try(SpillingSplayTreeMap<Integer, String> map = open(file)) {
+			for(int i = 0; i < NUMS; i++) {
+				final int k = i * GAP % NUMS;
+				assert map.insert(k, "v" + k) : "insert " + k;
+				ref.put(k, "v" + k);
+				assert map.heapEntries() <= BUDGET : "over budget: " + map.heapEntries();
+			}
+			assert map.size() == NUMS;
+			assert map.spilledEntries() == NUMS - map.heapEntries();
+			assert map.spilledEntries() >= NUMS - BUDGET : "spilled " + map.spilledEntries();
+			assert map.spillBytes() > 0;
+			System.out.format(" - heap:%d spilled:%d spill bytes:%d\n", map.heapEntries(), map.spilledEntries(), map.spillBytes());
+
+			assert map.minKey() == 0 && map.maxKey() == NUMS - 1 : "min/max";
+			check(map, ref, "after inserts");
+			assert map.garbageBytes() > 0 : "reloads leave garbage";
+			map.compact();
+			assert map.garbageBytes() == 0;
+			assert Files.size(file) <= map.spillBytes() + (1 << 24) : "compacted file size";
+			check(map, ref, "after compact");
+		}
+		assert !Files.exists(file) : "spill file not deleted";
+		System.out.println(" - heap budget tests successfully completed");
+	}
+
+	public static void testRandomOps(Path file) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests random ops\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, String> ref = new TreeMap<Integer, String>();
+		final Random rnd = new Random(GAP);
+		try(SpillingSplayTreeMap<Integer, String> map = open(file)) {
+			for(int i = 0; i < NUMS * 4; i++) {
+				final int k = rnd.nextInt(NUMS / 2);
+				switch(rnd.nextInt(5)) {
+				case 0:
+					assert map.insert(k, "i" + i) == !ref.containsKey(k) : "insert";
+					if(!ref.containsKey(k))
+						ref.put(k, "i" + i);
+					break;
+				case 1:
+					assert map.delete(k) == ref.containsKey(k) : "delete";
+					ref.remove(k);
+					break;
+				case 2:
+					final String v = i % 10 == 0 ? null : "p" + i;
+					final String old = map.put(k, v);
+					assert old == null ? ref.get(k) == null : old.equals(ref.get(k)) : "put";
+					ref.put(k, v);
+					break;
+				case 3:
+					final String r = map.remove(k);
+					assert r == null ? ref.get(k) == null : r.equals(ref.get(k)) : "remove";
+					ref.remove(k);
+					break;
+				default:
+					final String g = map.get(k);
+					assert g == null ? ref.get(k) == null : g.equals(ref.get(k)) : "get";
+				}
+			}
+			check(map, ref, "random ops");
+		}
+		System.out.println(" - random ops tests successfully completed");
+	}
+
+	public static void testHotSet(Path file) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests hot working set\n");
+		System.out.println ("###################################\n");
+
+		try(SpillingSplayTreeMap<Integer, String> map = open(file)) {
+			for(int i = 0; i < NUMS; i++)
+				map.put(i, "v" + i);
+
+			// a working set well within budget stays on the heap once loaded
+			final int hot = BUDGET / 4;
+			final Random rnd = new Random(GAP);
+			for(int i = 0; i < NUMS; i++)
+				map.get(rnd.nextInt(hot) * GAP % NUMS);
+			final long garbage = map.garbageBytes();
+			for(int i = 0; i < NUMS; i++)
+				assert map.get(rnd.nextInt(hot) * GAP % NUMS) != null;
+			assert map.garbageBytes() == garbage : "working set reloaded: " + (map.garbageBytes() - garbage) + " bytes";
+			assert map.heapEntries() <= BUDGET : "over budget: " + map.heapEntries();
+		}
+		System.out.println(" - hot working set tests successfully completed");
+	}
+}
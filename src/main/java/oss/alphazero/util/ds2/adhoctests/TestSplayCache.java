@@ -0,0 +1,163 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import oss.alphazero.util.ds2.SplayCache;
+import oss.alphazero.util.ds2.SplayCache.Eviction;
+
+/**
+ * Run with -ea
+ */
+public class TestSplayCache {
+	static final int NUMS     = 40000;
+	static final int GAP      =   307;
+	static final int CAPACITY =  1024;
+
+	public static void main(String [ ] args) {
+		for(Eviction eviction : Eviction.values()) {
+			testCapacity(eviction);
+			testHotSet(eviction);
+		}
+		testWeigher();
+		testRange();
+	}
+
+	public static void testCapacity(Eviction eviction) {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests capacity and listeners - %s\n", eviction);
+		System.out.println ("###################################\n");
+
+		final SplayCache<Integer, String> cache = new SplayCache<Integer, String>(CAPACITY, null, null, eviction);
+		final Set<Integer> evicted = new HashSet<Integer>();
+		cache.addEvictionListener((k, v) -> {
+			assert v.equals("v" + k) : "evicted value of " + k;
+			assert evicted.add(k) : "evicted twice: " + k;
+		});
+		for(int i = 0; i < NUMS; i++) {
+			final int k = i * GAP % NUMS;
+			assert cache.put(k, "v" + k) == null : "put " + k;
+			assert cache.size() <= CAPACITY : "over capacity: " + cache.size();
+		}
+		assert cache.size() == CAPACITY && cache.weight() == CAPACITY : "size " + cache.size();
+		assert cache.evictions() == NUMS - CAPACITY && evicted.size() == NUMS - CAPACITY : "evictions " + cache.evictions();
+
+		// every key is cached or was evicted, and is found iff cached
+		for(int k = 0; k < NUMS; k++) {
+			final String v = cache.get(k);
+			assert (v != null) != evicted.contains(k) : "cached and evicted: " + k;
+		}
+		assert cache.hits() == CAPACITY && cache.misses() == NUMS - CAPACITY : "hits " + cache.hits() + " misses " + cache.misses();
+		assert cache.hitRatio() == (double) CAPACITY / NUMS;
+
+		// replace and remove are not evictions
+		final long evictions = cache.evictions();
+		final int some = cache.size() > 0 ? firstKey(cache) : -1;
+		assert cache.put(some, "v" + some).equals("v" + some) : "replace";
+		assert cache.remove(some).equals("v" + some) : "remove";
+		assert cache.remove(some) == null;
+		assert cache.size() == CAPACITY - 1 && cache.evictions() == evictions;
+
+		cache.resetStats();
+		assert cache.hits() == 0 && cache.misses() == 0 && cache.evictions() == 0;
+		try {
+			new SplayCache<Integer, String>(0);
+			assert false : "zero capacity";
+		} catch (IllegalArgumentException e) { }
+		System.out.println(" - capacity tests successfully completed");
+	}
+
+	/** a skewed working set within capacity stays cached */
+	public static void testHotSet(Eviction eviction) {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests hot working set - %s\n", eviction);
+		System.out.println ("###################################\n");
+
+		final SplayCache<Integer, Integer> cache = new SplayCache<Integer, Integer>(CAPACITY, null, null, eviction);
+		final Random rnd = new Random(GAP);
+		final int hot = CAPACITY / 8;
+		for(int i = 0; i < NUMS * 4; i++) {
+			// 1 in 2 lookups on the hot set, the rest a scan of cold keys
+			final int k = i % 2 == 0 ? rnd.nextInt(hot) : hot + i % (NUMS * 2);
+			cache.computeIfAbsent(k, key -> key);
+		}
+		cache.resetStats();
+		for(int i = 0; i < NUMS; i++)
+			cache.computeIfAbsent(rnd.nextInt(hot), key -> key);
+		System.out.format(" - %s hot set hit ratio: %.4f\n", eviction, cache.hitRatio());
+		assert cache.hitRatio() > 0.9 : eviction + " hit ratio " + cache.hitRatio();
+		System.out.println(" - hot working set tests successfully completed");
+	}
+
+	public static void testWeigher() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests weighed capacity\n");
+		System.out.println ("###################################\n");
+
+		final long capacity = 64 * 1024;
+		final SplayCache<Integer, String> cache = new SplayCache<Integer, String>(capacity, (k, v) -> v.length(), null, Eviction.LRU);
+		final Random rnd = new Random(GAP);
+		for(int i = 0; i < NUMS; i++) {
+			final int k = rnd.nextInt(NUMS);
+			cache.put(k, "x".repeat(rnd.nextInt(256)));
+			assert cache.weight() <= capacity : "over capacity: " + cache.weight();
+		}
+		final long[] sum = { 0 };
+		cache.range(null, null, (k, v) -> sum[0] += v.length());
+		assert sum[0] == cache.weight() : "weight " + cache.weight() + " sum " + sum[0];
+
+		// heavier than the capacity: evicted right away, and nothing else
+		cache.put(-3, "x");
+		final List<Integer> evicted = new ArrayList<Integer>();
+		cache.addEvictionListener((k, v) -> evicted.add(k));
+		final int size = cache.size();
+		final long weight = cache.weight();
+		final String heavy = "x".repeat((int) capacity + 1);
+		assert cache.put(-1, heavy) == null : "heavy put";
+		assert evicted.equals(List.of(-1)) && !cache.containsKey(-1) : "heavy put evicted " + evicted;
+		assert cache.size() == size && cache.weight() == weight : "heavy put changed the cache";
+		final long misses = cache.misses();
+		assert cache.computeIfAbsent(-2, k -> heavy) == heavy : "heavy load";
+		assert evicted.equals(List.of(-1, -2)) && !cache.containsKey(-2) : "heavy load evicted " + evicted;
+		assert cache.size() == size && cache.weight() == weight && cache.misses() == misses + 1 : "heavy load changed the cache";
+		// replacing a cached entry removes it; only the heavy one is evicted
+		assert cache.put(-3, heavy).equals("x") : "heavy replace";
+		assert evicted.equals(List.of(-1, -2, -3)) && !cache.containsKey(-3) : "heavy replace evicted " + evicted;
+		assert cache.size() == size - 1 && cache.weight() == weight - 1 : "heavy replace changed the cache";
+		try {
+			new SplayCache<Integer, String>(capacity, (k, v) -> -1, null, Eviction.LRU).put(1, "");
+			assert false : "negative weight";
+		} catch (IllegalArgumentException e) { }
+		System.out.println(" - weighed capacity tests successfully completed");
+	}
+
+	public static void testRange() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests range scans\n");
+		System.out.println ("###################################\n");
+
+		final SplayCache<Integer, Integer> cache = new SplayCache<Integer, Integer>(CAPACITY);
+		for(int i = 0; i < CAPACITY; i++)
+			cache.put(i * 2, i);
+		final List<Integer> keys = new ArrayList<Integer>();
+		cache.range(100, 200, (k, v) -> {
+			assert v == k / 2;
+			keys.add(k);
+		});
+		assert keys.size() == 50 && keys.get(0) == 100 && keys.get(49) == 198 : "range " + keys;
+		assert cache.hits() == 0 && cache.misses() == 0 : "scan counted";
+		System.out.println(" - range scan tests successfully completed");
+	}
+
+	static int firstKey(SplayCache<Integer, ?> cache) {
+		final int[] first = { -1 };
+		cache.range(null, null, (k, v) -> {
+			if(first[0] < 0)
+				first[0] = k;
+		});
+		return first[0];
+	}
+}
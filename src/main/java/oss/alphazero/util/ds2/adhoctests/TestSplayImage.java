@@ -0,0 +1,288 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.Codec;
+import oss.alphazero.util.ds2.KeyPrefix;
+import oss.alphazero.util.ds2.SplayImage;
+import oss.alphazero.util.ds2.SplayTreeMap;
+import oss.alphazero.util.ds2.TreeShape;
+
+/**
+ * Run with -ea
+ */
+public class TestSplayImage {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) throws IOException {
+		final Path dir = Files.createTempDirectory("ds2-image");
+		try {
+			testCodecOrder();
+			testRoundTrip(dir);
+			testEmptyAndCorrupt(dir);
+			testWriteAsync(dir);
+			testWarmStart(dir);
+		} finally {
+			for(Path p : Files.list(dir).toArray(Path[]::new))
+				Files.delete(p);
+			Files.delete(dir);
+		}
+	}
+
+	public static void testCodecOrder() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests codec order\n");
+		System.out.println ("###################################\n");
+
+		final Random rnd = new Random(GAP);
+		final String alphabet = "\u0000a\u007f\u0080\u07ff\u0800\ud800\udc00\ue000\uffff";
+		for(int i = 0; i < NUMS; i++) {
+			final String a = randomString(rnd, alphabet), b = randomString(rnd, alphabet);
+			assert Integer.signum(a.compareTo(b)) == Integer.signum(Arrays.compareUnsigned(Codec.STRING.encode(a), Codec.STRING.encode(b)))
+				: "STRING order: " + a + " " + b;
+			assert a.equals(decode(Codec.STRING, Codec.STRING.encode(a))) : "STRING round trip";
+
+			final long x = rnd.nextLong() >> rnd.nextInt(64), y = rnd.nextLong() >> rnd.nextInt(64);
+			assert Integer.signum(Long.compare(x, y)) == Integer.signum(Arrays.compareUnsigned(Codec.LONG.encode(x), Codec.LONG.encode(y))) : "LONG order";
+			assert decode(Codec.LONG, Codec.LONG.encode(x)) == x : "LONG round trip";
+
+			final int u = (int) x, v = (int) y;
+			assert Integer.signum(Integer.compare(u, v)) == Integer.signum(Arrays.compareUnsigned(Codec.INT.encode(u), Codec.INT.encode(v))) : "INT order";
+			assert decode(Codec.INT, Codec.INT.encode(u)) == u : "INT round trip";
+		}
+		System.out.println(" - codec order tests successfully completed");
+	}
+
+	public static void testRoundTrip(Path dir) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests write, open and load\n");
+		System.out.println ("###################################\n");
+
+		final SplayTreeMap<String, Long> map = new SplayTreeMap<String, Long>();
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			map.put("key-" + i, i % 7 == 0 ? null : (long) i);
+		final Path path = dir.resolve("map.img");
+		SplayImage.write(map, Codec.STRING, Codec.LONG, path);
+
+		try(SplayImage.Reader<String, Long> image = SplayImage.open(path, Codec.STRING, Codec.LONG)) {
+			assert image.size() == map.size() : "image size";
+			for(int i = 1; i < NUMS; i++) {
+				assert image.containsKey("key-" + i) : "image contains " + i;
+				final Long v = image.get("key-" + i);
+				assert i % 7 == 0 ? v == null : v == i : "image get " + i;
+			}
+			assert !image.containsKey("key-0") && !image.containsKey("key-") && image.get("zzz") == null : "image miss";
+
+			final List<String> order = new ArrayList<String>();
+			image.forEach((k, v) -> order.add(k));
+			final List<String> sorted = new ArrayList<String>(order);
+			sorted.sort(null);
+			assert order.equals(sorted) && order.size() == map.size() : "image order";
+		}
+
+		final SplayTreeMap<String, Long> loaded = SplayImage.load(path, Codec.STRING, Codec.LONG);
+		assert loaded.size() == map.size() : "loaded size";
+		final TreeShape shape = TreeShape.of(loaded);
+		assert shape.height() == shape.optimalHeight() : "loaded tree not balanced: " + shape;
+		for(int i = 1; i < NUMS; i++)
+			assert loaded.containsKey("key-" + i) && eq(loaded.get("key-" + i), map.get("key-" + i)) : "loaded get " + i;
+		System.out.format(" - loaded: %s\n", shape);
+
+		// codec inconsistent with the map order
+		final SplayTreeMap<Integer, Integer> reversed = new SplayTreeMap<Integer, Integer>(java.util.Collections.<Integer>reverseOrder());
+		for(int i = 0; i < 10; i++)
+			reversed.put(i, i);
+		boolean didcheck = false;
+		try {
+			SplayImage.write(reversed, Codec.INT, Codec.INT, dir.resolve("reversed.img"));
+		} catch (IllegalArgumentException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "did not reject codec inconsistent with map order";
+		}
+		assert !Files.exists(dir.resolve("reversed.img")) : "partial image left behind";
+
+		// bytes and a TreeMap cross check
+		final TreeMap<Long, Integer> ref = new TreeMap<Long, Integer>();
+		final SplayTreeMap<Long, Integer> longs = new SplayTreeMap<Long, Integer>();
+		final Random rnd = new Random(GAP);
+		for(int i = 0; i < NUMS; i++) {
+			final long k = rnd.nextLong();
+			ref.put(k, i);
+			longs.put(k, i);
+		}
+		SplayImage.write(longs, Codec.LONG, Codec.INT, path);   // replaces
+		final SplayTreeMap<Long, Integer> back = SplayImage.load(path, Codec.LONG, Codec.INT);
+		while(!ref.isEmpty()) {
+			final java.util.Map.Entry<Long, Integer> e = ref.pollFirstEntry();
+			assert e.getKey().equals(back.minKey()) && e.getValue().equals(back.remove(e.getKey())) : "long round trip";
+		}
+		System.out.println(" - image round trip tests successfully completed");
+	}
+
+	public static void testEmptyAndCorrupt(Path dir) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests empty and corrupt images\n");
+		System.out.println ("###################################\n");
+
+		final Path path = dir.resolve("empty.img");
+		SplayImage.write(new SplayTreeMap<byte[], byte[]>(KeyPrefix.UNSIGNED_BYTES), Codec.BYTES, Codec.BYTES, path);
+		try(SplayImage.Reader<byte[], byte[]> image = SplayImage.open(path, Codec.BYTES, Codec.BYTES)) {
+			assert image.size() == 0 && image.get(new byte[]{1}) == null : "empty image";
+		}
+		assert SplayImage.load(path, Codec.BYTES, Codec.BYTES).isEmpty() : "empty load";
+
+		final Path bad = dir.resolve("bad.img");
+		Files.write(bad, new byte[100]);
+		boolean didcheck = false;
+		try {
+			SplayImage.open(bad, Codec.BYTES, Codec.BYTES);
+		} catch (IOException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "did not reject a bad image";
+		}
+
+		// an index entry past the data
+		final SplayTreeMap<Integer, Integer> map = new SplayTreeMap<Integer, Integer>();
+		for(int i = 0; i < 100; i++)
+			map.put(i, i);
+		final Path good = dir.resolve("good.img");
+		SplayImage.write(map, Codec.INT, Codec.INT, good);
+		final byte[] bytes = Files.readAllBytes(good);
+		java.nio.ByteBuffer.wrap(bytes).putLong(64 + 16 * 7, bytes.length);
+		final Path entry = dir.resolve("bad-entry.img");
+		Files.write(entry, bytes);
+		didcheck = false;
+		try {
+			SplayImage.open(entry, Codec.INT, Codec.INT);
+		} catch (IOException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "did not reject a bad index entry";
+		}
+
+		// closed readers are unmapped
+		final SplayImage.Reader<Integer, Integer> image = SplayImage.open(good, Codec.INT, Codec.INT);
+		assert image.get(7) == 7 : "open image";
+		image.close();
+		image.close();                      // idempotent
+		didcheck = false;
+		try {
+			image.get(7);
+		} catch (IllegalStateException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "read of a closed image";
+		}
+		System.out.println(" - empty and corrupt image tests successfully completed");
+	}
+
+	public static void testWriteAsync(Path dir) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests background image write\n");
+		System.out.println ("###################################\n");
+
+		final TreeMap<Integer, Integer> ref = new TreeMap<Integer, Integer>();
+		final SplayTreeMap<Integer, Integer> map = new SplayTreeMap<Integer, Integer>();
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS) {
+			map.put(i, i);
+			ref.put(i, i);
+		}
+		final Path path = dir.resolve("async.img");
+		final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
+		try {
+			final java.util.concurrent.CompletableFuture<Path> done = SplayImage.writeAsync(map, Codec.INT, Codec.INT, path, executor);
+			// the map is in use while the image is written
+			for(int i = 0; i < NUMS; i++) {
+				if(i % 3 == 0)
+					map.remove(i);
+				else
+					map.put(i, -i);
+			}
+			assert done.join().equals(path);
+		} finally {
+			executor.shutdown();
+		}
+		final SplayTreeMap<Integer, Integer> back = SplayImage.load(path, Codec.INT, Codec.INT);
+		assert back.size() == ref.size() : "image size";
+		for(java.util.Map.Entry<Integer, Integer> e : ref.entrySet())
+			assert e.getValue().equals(back.get(e.getKey())) : "image value of " + e.getKey();
+		System.out.println(" - background image write tests successfully completed");
+	}
+
+	public static void testWarmStart(Path dir) throws IOException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests warm start\n");
+		System.out.println ("###################################\n");
+
+		final SplayTreeMap<Integer, Integer> map = new SplayTreeMap<Integer, Integer>();
+		for(int i = 0; i < NUMS; i++)
+			map.put(i * GAP % NUMS, i);
+		final Random rnd = new Random(GAP);
+		for(int i = 0; i < NUMS; i++)
+			map.get(rnd.nextInt(64) * GAP);
+		final List<Integer> order = map.hotKeys(NUMS);
+		assert order.size() == NUMS;
+
+		// shape: the loaded tree is the written one, node for node
+		final Path shaped = dir.resolve("shape.img");
+		SplayImage.write(map, Codec.INT, Codec.INT, shaped, SplayImage.WarmStart.SHAPE);
+		SplayTreeMap<Integer, Integer> back = SplayImage.load(shaped, Codec.INT, Codec.INT);
+		assert back.size() == NUMS;
+		assert back.hotKeys(NUMS).equals(order) : "shape not restored";
+		for(int i = 0; i < NUMS; i++)
+			assert back.get(i * GAP % NUMS) == i : "value of " + i * GAP % NUMS;
+
+		// hot keys: the loaded tree has the written hot keys on top
+		final Path hot = dir.resolve("hot.img");
+		try(SplayTreeMap.Snapshot<Integer, Integer> snapshot = map.snapshot()) {
+			SplayImage.write(snapshot, Codec.INT, Codec.INT, hot, SplayImage.WarmStart.hot(64));
+		}
+		back = SplayImage.load(hot, Codec.INT, Codec.INT);
+		assert back.size() == NUMS;
+		assert back.hotKeys(1).equals(order.subList(0, 1)) : "root not restored";
+		assert back.hotKeys(256).containsAll(order.subList(0, 16)) : "hot keys not restored";
+		for(int i = 0; i < NUMS; i++)
+			assert back.get(i * GAP % NUMS) == i : "value of " + i * GAP % NUMS;
+
+		// a warm start section is validated
+		final byte[] bytes = Files.readAllBytes(shaped);
+		bytes[bytes.length - 1] = 0;                    // drop the last nodes' children
+		final Path corrupt = dir.resolve("corrupt-shape.img");
+		Files.write(corrupt, bytes);
+		try {
+			SplayImage.load(corrupt, Codec.INT, Codec.INT);
+			assert false : "corrupt shape loaded";
+		} catch (IOException expected) { }
+		try {
+			SplayImage.WarmStart.hot(0);
+			assert false : "hot(0)";
+		} catch (IllegalArgumentException expected) { }
+		System.out.println(" - warm start tests successfully completed");
+	}
+
+	static String randomString(Random rnd, String alphabet) {
+		final StringBuilder sb = new StringBuilder();
+		for(int j = rnd.nextInt(6); j > 0; j--)
+			sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+		return sb.toString();
+	}
+
+	static <T> T decode(Codec<T> codec, byte[] b) {
+		return codec.decode(ByteBuffer.wrap(b), 0, b.length);
+	}
+
+	static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -0,0 +1,152 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import oss.alphazero.util.ds2.SplayPriorityQueue;
+
+/**
+ * Run with -ea
+ */
+public class TestSplayPriorityQueue {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) {
+		testOrder();
+		testRandomOps();
+		testRemoveAndIterator();
+	}
+
+	public static void testOrder() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests queue order\n");
+		System.out.println ("###################################\n");
+
+		final SplayPriorityQueue<Integer> q = new SplayPriorityQueue<Integer>();
+		assert q.peekFirst() == null && q.peekLast() == null && q.poll() == null && q.pollLast() == null : "empty";
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS) {
+			q.add(i);
+			assert q.peekFirst() == Math.min(GAP, i) || q.peekFirst() < i : "peekFirst";
+		}
+		assert q.size() == NUMS - 1;
+		assert q.peekFirst() == 1 && q.peekLast() == NUMS - 1 : "peek ends";
+		for(int i = 1; i < NUMS / 2; i++) {
+			assert q.peekFirst() == i : "peekFirst " + q.peekFirst() + " expected " + i;
+			assert q.pollFirst() == i : "pollFirst";
+			assert q.pollLast() == NUMS - i : "pollLast";
+		}
+		assert q.size() == 1 && q.peekFirst() == NUMS / 2 && q.peekLast() == NUMS / 2;
+		assert q.poll() == NUMS / 2 && q.isEmpty() && q.peekFirst() == null;
+
+		// equal elements are FIFO, per a comparator on part of the element
+		final SplayPriorityQueue<int[]> p = new SplayPriorityQueue<int[]>(Comparator.comparingInt((int[] a) -> a[0]));
+		for(int i = 0; i < NUMS; i++)
+			p.offer(new int[] { i * GAP % 64, i });
+		int last = -1, prio = -1;
+		while(!p.isEmpty()) {
+			final int[] a = p.poll();
+			assert a[0] > prio || (a[0] == prio && a[1] > last) : "FIFO of equal elements";
+			prio = a[0];
+			last = a[1];
+		}
+		try {
+			q.offer(null);
+			assert false : "null element";
+		} catch (IllegalArgumentException e) { }
+		System.out.println(" - queue order tests successfully completed");
+	}
+
+	/** versus a TreeMap of counts */
+	public static void testRandomOps() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests random ops\n");
+		System.out.println ("###################################\n");
+
+		final SplayPriorityQueue<Integer> q = new SplayPriorityQueue<Integer>();
+		final TreeMap<Integer, Integer> ref = new TreeMap<Integer, Integer>();
+		final Random rnd = new Random(GAP);
+		int size = 0;
+		for(int i = 0; i < NUMS * 4; i++) {
+			final int k = rnd.nextInt(NUMS / 8);
+			switch(rnd.nextInt(6)) {
+			case 0: case 1:
+				q.offer(k);
+				ref.merge(k, 1, Integer::sum);
+				size++;
+				break;
+			case 2:
+				final Integer first = q.pollFirst();
+				assert first == null ? ref.isEmpty() : first.equals(ref.firstKey()) : "pollFirst";
+				if(first != null) { ref.computeIfPresent(first, (x, n) -> n == 1 ? null : n - 1); size--; }
+				break;
+			case 3:
+				final Integer last = q.pollLast();
+				assert last == null ? ref.isEmpty() : last.equals(ref.lastKey()) : "pollLast";
+				if(last != null) { ref.computeIfPresent(last, (x, n) -> n == 1 ? null : n - 1); size--; }
+				break;
+			case 4:
+				final boolean had = ref.containsKey(k);
+				assert q.remove(k) == had : "remove " + k;
+				if(had) { ref.computeIfPresent(k, (x, n) -> n == 1 ? null : n - 1); size--; }
+				break;
+			default:
+				assert q.contains(k) == ref.containsKey(k) : "contains " + k;
+			}
+			assert q.size() == size : "size";
+			assert q.peekFirst() == null ? ref.isEmpty() : q.peekFirst().equals(ref.firstKey()) : "peekFirst";
+		}
+		System.out.println(" - random ops tests successfully completed");
+	}
+
+	public static void testRemoveAndIterator() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests remove and iterator\n");
+		System.out.println ("###################################\n");
+
+		final SplayPriorityQueue<Integer> q = new SplayPriorityQueue<Integer>();
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			q.offer(i % 1000);
+		final List<Integer> seen = new ArrayList<Integer>();
+		for(Integer e : q)
+			seen.add(e);
+		assert seen.size() == q.size();
+		for(int i = 1; i < seen.size(); i++)
+			assert seen.get(i - 1) <= seen.get(i) : "iterator order";
+
+		// remove the odd elements through the iterator, while others splay
+		int removed = 0;
+		for(Iterator<Integer> it = q.iterator(); it.hasNext(); ) {
+			if(it.next() % 2 == 1) {
+				it.remove();
+				removed++;
+			}
+		}
+		assert q.size() == seen.size() - removed;
+		for(Integer e : q)
+			assert e % 2 == 0 : "iterator remove left " + e;
+		final int even = q.size();
+		assert q.removeIf(e -> e >= 500);
+		assert !q.removeIf(e -> e >= 500);
+		assert q.peekLast() < 500 && q.size() == even / 2 : "removeIf";
+		int prev = -1, n = 0;
+		for(Integer e : q) { assert e >= prev : "removeIf order"; prev = e; n++; }
+		assert n == q.size() && q.peekFirst() == 0;
+
+		final Iterator<Integer> it = q.iterator();
+		it.next();
+		q.offer(0);
+		try {
+			it.next();
+			assert false : "modified while iterating";
+		} catch (ConcurrentModificationException e) { }
+		q.clear();
+		assert q.isEmpty() && q.size() == 0 && q.peekFirst() == null && !q.iterator().hasNext();
+		System.out.println(" - remove and iterator tests successfully completed");
+	}
+}
@@ -0,0 +1,174 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import oss.alphazero.util.ds2.SplayRope;
+
+/**
+ * Run with -ea
+ */
+public class TestSplayRope {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) {
+		testPositional();
+		testRandomOps();
+		testSplitConcat();
+	}
+
+	public static void testPositional() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests positional ops\n");
+		System.out.println ("###################################\n");
+
+		final SplayRope<Integer> rope = new SplayRope<Integer>();
+		final List<Integer> ref = new ArrayList<Integer>();
+		for(int i = 0; i < NUMS; i++) {
+			final int at = i * GAP % (i + 1);
+			rope.add(at, i);
+			ref.add(at, i);
+		}
+		assert rope.size() == NUMS && rope.equals(ref) : "add at index";
+		for(int i = 0; i < NUMS; i += GAP)
+			assert rope.get(i).equals(ref.get(i)) : "get " + i;
+		for(int i = 0; i < NUMS; i++)                       // sequential
+			assert rope.get(i).equals(ref.get(i)) : "get " + i;
+		assert rope.set(NUMS / 2, -1).equals(ref.set(NUMS / 2, -1)) && rope.get(NUMS / 2) == -1 : "set";
+		for(int i = 0; i < NUMS / 2; i++) {
+			final int at = i * GAP % rope.size();
+			assert rope.remove(at).equals(ref.remove(at)) : "remove " + at;
+		}
+		assert rope.equals(ref) && rope.hashCode() == ref.hashCode() : "after removes";
+
+		rope.add(null);
+		assert rope.get(rope.size() - 1) == null && rope.contains(null) : "null element";
+		rope.remove(rope.size() - 1);
+		try {
+			rope.get(rope.size());
+			assert false : "index out of bounds";
+		} catch (IndexOutOfBoundsException e) { }
+		try {
+			rope.add(-1, 0);
+			assert false : "index out of bounds";
+		} catch (IndexOutOfBoundsException e) { }
+		System.out.println(" - positional ops tests successfully completed");
+	}
+
+	/** versus an ArrayList */
+	public static void testRandomOps() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests random ops\n");
+		System.out.println ("###################################\n");
+
+		final SplayRope<Integer> rope = new SplayRope<Integer>();
+		final List<Integer> ref = new ArrayList<Integer>();
+		final Random rnd = new Random(GAP);
+		for(int i = 0; i < NUMS; i++) {
+			final int n = ref.size();
+			final int a = rnd.nextInt(n + 1), b = rnd.nextInt(n + 1);
+			final int from = Math.min(a, b), to = Math.max(a, b);
+			switch(rnd.nextInt(8)) {
+			case 0: case 1: case 2:
+				rope.add(a, i);
+				ref.add(a, i);
+				break;
+			case 3:
+				if(n > 0) {
+					final int at = rnd.nextInt(n);
+					assert rope.remove(at).equals(ref.remove(at)) : "remove";
+				}
+				break;
+			case 4:
+				rope.reverse(from, to);
+				Collections.reverse(ref.subList(from, to));
+				break;
+			case 5:
+				if(to - from < 64) {
+					rope.removeRange(from, to);
+					ref.subList(from, to).clear();
+				}
+				break;
+			case 6:
+				final List<Integer> more = new ArrayList<Integer>();
+				for(int j = rnd.nextInt(16); j > 0; j--)
+					more.add(-j);
+				rope.addAll(a, more);
+				ref.addAll(a, more);
+				break;
+			default:
+				if(n > 0) {
+					final int at = rnd.nextInt(n);
+					assert rope.get(at).equals(ref.get(at)) : "get " + at;
+				}
+			}
+			assert rope.size() == ref.size() : "size";
+			if(i % 1000 == 0)
+				assert rope.equals(ref) : "contents at " + i;
+		}
+		assert rope.equals(ref) : "contents";
+
+		// forEach and the iterator are in order, and respect pending reversals
+		rope.reverse(0, rope.size());
+		Collections.reverse(ref);
+		final List<Integer> seen = new ArrayList<Integer>();
+		rope.forEach(seen::add);
+		assert seen.equals(ref) : "forEach";
+		seen.clear();
+		for(Iterator<Integer> it = rope.iterator(); it.hasNext(); )
+			seen.add(it.next());
+		assert seen.equals(ref) : "iterator";
+		try {
+			rope.forEach(e -> rope.get(rope.size() / 2));
+			assert false : "splayed by action";
+		} catch (ConcurrentModificationException e) { }
+		rope.subList(10, 20).clear();
+		ref.subList(10, 20).clear();
+		assert rope.equals(ref) : "subList clear";
+		System.out.println(" - random ops tests successfully completed");
+	}
+
+	public static void testSplitConcat() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests split and concat\n");
+		System.out.println ("###################################\n");
+
+		final List<Integer> ref = new ArrayList<Integer>();
+		for(int i = 0; i < NUMS; i++)
+			ref.add(i);
+		final SplayRope<Integer> rope = new SplayRope<Integer>(ref);
+		assert rope.equals(ref);
+
+		// cut into pieces, reverse each, join them back in reverse order
+		final List<SplayRope<Integer>> pieces = new ArrayList<SplayRope<Integer>>();
+		for(int at = NUMS - GAP; at > 0; at -= GAP)
+			pieces.add(rope.split(at));
+		pieces.add(rope.split(0));
+		assert rope.isEmpty() : "split all";
+		int total = 0;
+		for(SplayRope<Integer> p : pieces) {
+			total += p.size();
+			p.reverse(0, p.size());
+		}
+		assert total == NUMS;
+		final SplayRope<Integer> joined = new SplayRope<Integer>();
+		for(SplayRope<Integer> p : pieces) {
+			joined.concat(p);
+			assert p.isEmpty() : "concat empties";
+		}
+		Collections.reverse(ref);
+		assert joined.equals(ref) : "split, reverse and concat";
+		try {
+			joined.concat(joined);
+			assert false : "concat to self";
+		} catch (IllegalArgumentException e) { }
+		joined.clear();
+		assert joined.isEmpty() && joined.size() == 0;
+		System.out.println(" - split and concat tests successfully completed");
+	}
+}
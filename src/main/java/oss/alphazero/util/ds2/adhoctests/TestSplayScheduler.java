@@ -0,0 +1,146 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import oss.alphazero.util.ds2.SplayScheduler;
+
+/**
+ * Run with -ea
+ */
+public class TestSplayScheduler {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String [ ] args) throws InterruptedException {
+		testExpiry();
+		testCancel();
+		testClose();
+	}
+
+	public static void testExpiry() throws InterruptedException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests timer expiry\n");
+		System.out.println ("###################################\n");
+
+		try(SplayScheduler<Integer> s = new SplayScheduler<Integer>()) {
+			final List<Integer> fired = Collections.synchronizedList(new ArrayList<Integer>());
+			final CountDownLatch done = new CountDownLatch(NUMS);
+			final long[] deadlines = new long[NUMS];       // estimates: at most the actual
+			final long[] ran = new long[NUMS];
+			final long start = System.nanoTime();
+			// deadlines in 20 buckets of 5ms, after all are armed, armed out of order
+			for(int i = 0; i < NUMS; i++) {
+				final int k = i * GAP % NUMS;
+				s.schedule(k, 500 + 5 * (k % 20), TimeUnit.MILLISECONDS, () -> {
+					ran[k] = System.nanoTime();
+					fired.add(k);
+					done.countDown();
+				});
+				final long now = System.nanoTime();
+				deadlines[k] = now + s.delay(k, TimeUnit.NANOSECONDS);
+			}
+			assert done.await(10, TimeUnit.SECONDS) : "timers not expired: " + done.getCount();
+			assert System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(595) : "expired early";
+			assert s.size() == 0;
+			for(int k = 0; k < NUMS; k++)
+				assert ran[k] >= deadlines[k] : "expired early: " + k;
+			for(int i = 1; i < NUMS; i++) {
+				final int a = fired.get(i - 1), b = fired.get(i);
+				assert deadlines[a] <= deadlines[b] + TimeUnit.MILLISECONDS.toNanos(10) : "deadline order at " + i + ": " + a + " " + b;
+			}
+
+			// a later, earlier timer wakes the thread
+			final CountDownLatch early = new CountDownLatch(1);
+			s.schedule(-1, 1, TimeUnit.HOURS, () -> { });
+			s.schedule(-2, 10, TimeUnit.MILLISECONDS, early::countDown);
+			assert early.await(5, TimeUnit.SECONDS) : "earlier timer not expired";
+			assert s.isScheduled(-1) && !s.isScheduled(-2);
+			assert s.delay(-1, TimeUnit.MINUTES) > 58 && s.delay(-2, TimeUnit.MINUTES) == null;
+		}
+		System.out.println(" - timer expiry tests successfully completed");
+	}
+
+	public static void testCancel() throws InterruptedException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests cancel and re-arm\n");
+		System.out.println ("###################################\n");
+
+		try(SplayScheduler<Integer> s = new SplayScheduler<Integer>()) {
+			final AtomicInteger fired = new AtomicInteger();
+			final CountDownLatch done = new CountDownLatch(NUMS / 2);
+			for(int i = 0; i < NUMS; i++)
+				s.schedule(i, 500, TimeUnit.MILLISECONDS, () -> { fired.incrementAndGet(); done.countDown(); });
+			for(int i = 0; i < NUMS; i += 2)
+				assert s.cancel(i) : "cancel " + i;
+			assert !s.cancel(0) : "cancelled twice";
+			assert s.size() == NUMS / 2;
+
+			// re-arming replaces
+			assert s.schedule(1, 600, TimeUnit.MILLISECONDS, () -> { fired.incrementAndGet(); done.countDown(); }) : "re-arm";
+			assert done.await(10, TimeUnit.SECONDS) : "timers not expired: " + done.getCount();
+			Thread.sleep(100);
+			assert fired.get() == NUMS / 2 : "fired " + fired.get();
+			assert s.size() == 0;
+
+			// cancelled timers are purged, and the pending ones still expire
+			final CountDownLatch kept = new CountDownLatch(NUMS / GAP + 1);
+			for(int i = 0; i < NUMS; i++)
+				s.schedule(i, 300 + i % 100, TimeUnit.MILLISECONDS, i % GAP == 0 ? kept::countDown : () -> fired.incrementAndGet());
+			for(int i = 0; i < NUMS; i++)
+				assert i % GAP == 0 || s.cancel(i) : "cancel " + i;
+			assert s.size() == NUMS / GAP + 1;
+			assert kept.await(10, TimeUnit.SECONDS) : "timers not expired: " + kept.getCount();
+			assert fired.get() == NUMS / 2 : "cancelled timer fired";
+
+			// tasks may re-arm themselves, and a failing task does not stop the scheduler
+			final CountDownLatch ticks = new CountDownLatch(5);
+			final Runnable[] tick = new Runnable[1];
+			tick[0] = () -> {
+				ticks.countDown();
+				if(ticks.getCount() > 0)
+					s.schedule(0, 1, TimeUnit.MILLISECONDS, tick[0]);
+			};
+			final Thread.UncaughtExceptionHandler quiet = (t, e) -> { };
+			final CountDownLatch handled = new CountDownLatch(1);
+			s.schedule(1, 0, TimeUnit.MILLISECONDS, () -> {
+				Thread.currentThread().setUncaughtExceptionHandler((t, e) -> handled.countDown());
+				throw new RuntimeException("task failure");
+			});
+			assert handled.await(5, TimeUnit.SECONDS) : "failure not reported";
+			s.schedule(2, 0, TimeUnit.MILLISECONDS, () -> Thread.currentThread().setUncaughtExceptionHandler(quiet));
+			s.schedule(0, 0, TimeUnit.MILLISECONDS, tick[0]);
+			assert ticks.await(5, TimeUnit.SECONDS) : "periodic task";
+			assert !s.isScheduled(0) : "periodic task re-armed";
+		}
+		System.out.println(" - cancel and re-arm tests successfully completed");
+	}
+
+	public static void testClose() throws InterruptedException {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests close\n");
+		System.out.println ("###################################\n");
+
+		final AtomicInteger fired = new AtomicInteger();
+		final SplayScheduler<String> s = new SplayScheduler<String>("test-scheduler");
+		s.schedule("a", 50, TimeUnit.MILLISECONDS, fired::incrementAndGet);
+		s.close();
+		s.close();                              // idempotent
+		Thread.sleep(100);
+		assert fired.get() == 0 : "pending timer fired after close";
+		assert s.size() == 0;
+		try {
+			s.schedule("b", 1, TimeUnit.MILLISECONDS, fired::incrementAndGet);
+			assert false : "schedule after close";
+		} catch (IllegalStateException e) { }
+		try {
+			s.schedule(null, 1, TimeUnit.MILLISECONDS, fired::incrementAndGet);
+			assert false : "null key";
+		} catch (IllegalArgumentException e) { }
+		System.out.println(" - close tests successfully completed");
+	}
+}
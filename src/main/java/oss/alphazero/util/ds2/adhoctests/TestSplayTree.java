@@ -1,6 +1,7 @@
 package oss.alphazero.util.ds2.adhoctests;
 
 import oss.alphazero.util.ds2.SplayTree;
+import oss.alphazero.util.ds2.TreeShape;
 
 /**
  * @author Joubin Houshyar <alphazero@sensesay.net>
@@ -23,6 +24,7 @@ public class TestSplayTree {
 		System.out.format("*** NOTE: enable assert with Java -ea ...*** \n");
 
 		testAsSplayTree();
+		testRebalance();
 	}
 	
 	public static void testAsSplayTree () {
@@ -128,4 +130,53 @@ public class TestSplayTree {
 				System.err.println("Error: contains fails - found deleted item " + i);
 		System.out.println(" - negative containment tests successfully completed");
 	}
+
+	public static void testRebalance() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests rebalance and latency guard\n");
+		System.out.println ("###################################\n");
+
+		// monotonic inserts build a list
+		SplayTree<Integer> t = new SplayTree<Integer>();
+		t.rebalance(); // no-op on empty tree
+		for(int i = 0; i < NUMS; i++)
+			t.insert(i);
+		assert TreeShape.of(t).height() == NUMS : "expected a linked list";
+
+		t.rebalance();
+		TreeShape shape = TreeShape.of(t);
+		assert shape.height() == shape.optimalHeight() : "not balanced: " + shape;
+		assert shape.size() == NUMS && t.size() == NUMS : "rebalance lost nodes";
+		for(int i = 0; i < NUMS; i++)
+			if(t.find(i) == null)
+				System.err.println("Error: find fails after rebalance for " + i);
+		System.out.format(" - rebalance: %s\n", shape);
+
+		// guard bounds the depth of the far end access
+		t = new SplayTree<Integer>();
+		t.setRebalanceFactor(3.0);
+		for(int i = 0; i < NUMS; i++)
+			t.insert(i);
+		t.find(0);
+		shape = TreeShape.of(t);
+		assert shape.height() <= 3 * shape.optimalHeight() + 1 : "guard did not rebalance: " + shape;
+		assert t.size() == NUMS : "guard lost nodes";
+		System.out.format(" - guard: %s\n", shape);
+		for(int i = NUMS-1; i >= 0; i--)
+			if(t.find(i) == null)
+				System.err.println("Error: find fails with guard for " + i);
+		for(int i = 0; i < NUMS; i+=2)
+			t.delete(i);
+		assert t.size() == NUMS/2 : "size after deletes with guard";
+
+		boolean didcheck = false;
+		try {
+			t.setRebalanceFactor(1.0);
+		} catch (IllegalArgumentException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "did not reject rebalance factor 1.0";
+		}
+		System.out.println(" - rebalance tests successfully completed");
+	}
 }
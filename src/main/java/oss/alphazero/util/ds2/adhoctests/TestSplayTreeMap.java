@@ -2,7 +2,11 @@ package oss.alphazero.util.ds2.adhoctests;
 
 import java.util.Map;
 
+import oss.alphazero.util.ds2.CountingBloomFilter;
+import oss.alphazero.util.ds2.KeyPrefix;
+import oss.alphazero.util.ds2.SplayStats;
 import oss.alphazero.util.ds2.SplayTreeMap;
+import oss.alphazero.util.ds2.TreeShape;
 
 /**
  * @author Joubin Houshyar <alphazero@sensesay.net>
@@ -26,6 +30,56 @@ public class TestSplayTreeMap {
 
 		testAsSplayTree();
 		testAsMap();
+		testRebalance();
+		testComputeFamily();
+		testComparator();
+		testKeyPrefix();
+		testSnapshot();
+		testRange();
+		testFilter();
+		testStats();
+	}
+
+	/**
+	 * Counts with -Dds2.stats=true; else checks the counters stay at zero
+	 */
+	public static void testStats() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests SplayStats enabled:%s\n", SplayStats.ENABLED);
+		System.out.println ("###################################\n");
+
+		SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>();
+		SplayStats stats = t.enableStats();
+		assert stats == t.enableStats() : "enableStats is not idempotent";
+		final int on = SplayStats.ENABLED ? 1 : 0;          // counters stay at zero when disabled
+
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			t.insert(i, "v");
+		assert stats.getInserts() == on * (NUMS - 1) : "insert count " + stats.getInserts();
+
+		for(int i = 1; i < NUMS; i+= 2)
+			t.delete(i);
+		assert stats.getDeletes() == on * (NUMS / 2) : "delete count " + stats.getDeletes();
+
+		for(int i = 0; i < NUMS; i++)
+			t.find(i);
+		assert stats.getFindHits() == on * (NUMS / 2 - 1) : "find hits " + stats.getFindHits();
+		assert stats.getFindMisses() == on * (NUMS / 2 + 1) : "find misses " + stats.getFindMisses();
+
+		long histotal = 0;
+		for(long n : stats.getPathLengthHistogram())
+			histotal += n;
+		assert histotal == stats.getSplays() : "histogram total and splay count mismatch";
+		assert stats.getComparisons() >= stats.getSplays() : "fewer comparisons than splays";
+		assert (stats.getSplays() > 0) == SplayStats.ENABLED : "splay count " + stats.getSplays();
+		if(!SplayStats.ENABLED)
+			assert stats.getRotations() == 0 && stats.getComparisons() == 0 && stats.getMaxPathLength() == 0
+					&& stats.getRebalances() == 0 : "counted while disabled: " + stats;
+
+		stats.register("TestSplayTreeMap");
+		stats.unregister();
+		System.out.format(" - %s\n", stats);
+		System.out.println(" - stats tests successfully completed");
 	}
 	
 	public static void testAsMap() {
@@ -216,4 +270,438 @@ public class TestSplayTreeMap {
 				System.err.println("Error: containsKey fails - found deleted item " + i);
 		System.out.println(" - negative containment tests successfully completed");
 	}
+
+	public static void testRebalance() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests rebalance and latency guard\n");
+		System.out.println ("###################################\n");
+
+		// monotonic inserts build a list
+		SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>();
+		t.rebalance(); // no-op on empty tree
+		for(int i = 0; i < NUMS; i++)
+			t.insert(i, "v");
+		assert TreeShape.of(t).height() == NUMS : "expected a linked list";
+
+		t.rebalance();
+		TreeShape shape = TreeShape.of(t);
+		assert shape.height() == shape.optimalHeight() : "not balanced: " + shape;
+		assert shape.size() == NUMS && t.size() == NUMS : "rebalance lost nodes";
+		for(int i = 0; i < NUMS; i++)
+			if(t.find(i) == null)
+				System.err.println("Error: find fails after rebalance for " + i);
+		System.out.format(" - rebalance: %s\n", shape);
+
+		// guard bounds the depth of the far end access
+		t = new SplayTreeMap<Integer, String>();
+		t.setRebalanceFactor(3.0);
+		for(int i = 0; i < NUMS; i++)
+			t.insert(i, "v");
+		t.find(0);
+		shape = TreeShape.of(t);
+		assert shape.height() <= 3 * shape.optimalHeight() + 1 : "guard did not rebalance: " + shape;
+		assert t.size() == NUMS : "guard lost nodes";
+		System.out.format(" - guard: %s\n", shape);
+		for(int i = NUMS-1; i >= 0; i--)
+			if(t.find(i) == null)
+				System.err.println("Error: find fails with guard for " + i);
+		for(int i = 0; i < NUMS; i+=2)
+			t.delete(i);
+		assert t.size() == NUMS/2 : "size after deletes with guard";
+
+		boolean didcheck = false;
+		try {
+			t.setRebalanceFactor(1.0);
+		} catch (IllegalArgumentException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "did not reject rebalance factor 1.0";
+		}
+		System.out.println(" - rebalance tests successfully completed");
+	}
+
+	public static void testComputeFamily() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests Map update operations\n");
+		System.out.println ("###################################\n");
+
+		// put / remove / Entry#setValue
+		SplayTreeMap<Integer, Integer> t = new SplayTreeMap<Integer, Integer>();
+		assert t.put(1, 10) == null : "put of new key";
+		assert t.put(1, 11) == 10 : "put should return old value";
+		assert t.remove(1) == 11 && t.isEmpty() : "remove";
+		assert t.remove(1) == null : "remove of missing key";
+		t.put(2, 20);
+		final Map.Entry<Integer, Integer> e2 = t.find(2);
+		assert e2.setValue(21) == 20 : "setValue should return old value";
+
+		// putIfAbsent / replace / conditional remove
+		assert t.putIfAbsent(2, 22) == 21 && t.get(2) == 21 : "putIfAbsent on present key";
+		assert t.putIfAbsent(3, 30) == null && t.get(3) == 30 : "putIfAbsent on missing key";
+		t.put(4, null);
+		assert t.putIfAbsent(4, 40) == null && t.get(4) == 40 : "putIfAbsent on null value";
+		assert t.replace(5, 50) == null && !t.containsKey(5) : "replace of missing key";
+		assert t.replace(4, 41) == 40 : "replace";
+		assert !t.replace(4, 40, 42) && t.replace(4, 41, 42) && t.get(4) == 42 : "conditional replace";
+		assert !t.remove(4, 41) && t.remove(4, 42) && !t.containsKey(4) : "conditional remove";
+		assert t.getOrDefault(4, -1) == -1 && t.getOrDefault(3, -1) == 30 : "getOrDefault";
+
+		// compute family
+		assert t.computeIfAbsent(6, k -> k * 10) == 60 : "computeIfAbsent on missing key";
+		assert t.computeIfAbsent(6, k -> -1) == 60 : "computeIfAbsent on present key";
+		assert t.computeIfAbsent(7, k -> null) == null && !t.containsKey(7) : "computeIfAbsent to null";
+		assert t.computeIfPresent(7, (k, v) -> 1) == null && !t.containsKey(7) : "computeIfPresent on missing key";
+		assert t.computeIfPresent(6, (k, v) -> v + 1) == 61 : "computeIfPresent";
+		assert t.computeIfPresent(6, (k, v) -> null) == null && !t.containsKey(6) : "computeIfPresent to null";
+		assert t.compute(8, (k, v) -> v == null ? 1 : v + 1) == 1 : "compute on missing key";
+		assert t.compute(8, (k, v) -> v == null ? 1 : v + 1) == 2 : "compute on present key";
+		assert t.compute(8, (k, v) -> null) == null && !t.containsKey(8) : "compute to null";
+
+		boolean didcheck = false;
+		try {
+			final SplayTreeMap<Integer, Integer> m = t;
+			m.computeIfAbsent(9, k -> m.put(k + 1, 0));
+		} catch (java.util.ConcurrentModificationException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "did not detect modification by function";
+		}
+		assert t.remove(10) == 0 : "function side effect";
+
+		// merge as a counter - and against a TreeMap
+		t = new SplayTreeMap<Integer, Integer>();
+		final java.util.TreeMap<Integer, Integer> ref = new java.util.TreeMap<Integer, Integer>();
+		for(int i = GAP, j = 0; j < NUMS; i = (i + GAP) % NUMS, j++) {
+			final int k = i % 1000;
+			t.merge(k, 1, Integer::sum);
+			ref.merge(k, 1, Integer::sum);
+			if(j % 7 == 0) {
+				t.merge(k, 1, (a, b) -> null);
+				ref.merge(k, 1, (a, b) -> null);
+			}
+		}
+		assert t.size() == ref.size() : "merge size: " + t.size() + " expected " + ref.size();
+		for(Map.Entry<Integer, Integer> e : ref.entrySet())
+			if(!e.getValue().equals(t.get(e.getKey())))
+				System.err.println("Error: merge mismatch for " + e.getKey());
+
+		// putAll overwrites per Map#putAll
+		final SplayTreeMap<Integer, Integer> u = new SplayTreeMap<Integer, Integer>();
+		u.put(3, -1);
+		u.putAll(ref);
+		assert u.get(3).equals(ref.get(3)) : "putAll did not overwrite";
+
+		System.out.println(" - Map update tests successfully completed");
+	}
+
+	public static void testComparator() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests Comparator order\n");
+		System.out.println ("###################################\n");
+
+		// reverse order
+		final SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>(java.util.Collections.<Integer>reverseOrder());
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			t.put(i, "v");
+		assert t.minKey() == NUMS-1 && t.maxKey() == 1 : "reverse order min/max";
+		for(int i = 1; i < NUMS; i+= 2)
+			t.remove(i);
+		for(int i = 1; i < NUMS; i++)
+			if(t.containsKey(i) != (i % 2 == 0))
+				System.err.println("Error: containsKey fails with comparator for " + i);
+
+		// keys that are not Comparable
+		final SplayTreeMap<int[], String> u = new SplayTreeMap<int[], String>((a, b) -> Integer.compare(a[0], b[0]));
+		for(int i = 0; i < 100; i++)
+			u.put(new int[]{ (i * GAP) % 100 }, "v");
+		assert u.size() == 100 && u.minKey()[0] == 0 && u.maxKey()[0] == 99 : "comparator on non-Comparable keys";
+
+		boolean didcheck = false;
+		try {
+			final SplayTreeMap<int[], String> v = new SplayTreeMap<int[], String>();
+			v.put(new int[]{1}, "v");
+			v.put(new int[]{2}, "v");
+		} catch (ClassCastException e) {
+			didcheck = true;
+		} finally {
+			assert didcheck : "natural order on non-Comparable keys";
+		}
+		System.out.println(" - Comparator tests successfully completed");
+	}
+
+	public static void testKeyPrefix() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests node key prefixes\n");
+		System.out.println ("###################################\n");
+
+		// strings with shared prefixes, short strings and chars beyond 8 bits
+		final java.util.Random rnd = new java.util.Random(GAP);
+		final String alphabet = "ab\u00e9\u00ff\u0100\u4e2d";
+		final SplayTreeMap<String, Integer> t = new SplayTreeMap<String, Integer>(null, KeyPrefix.STRING);
+		final java.util.TreeMap<String, Integer> ref = new java.util.TreeMap<String, Integer>();
+		for(int i = 0; i < NUMS; i++) {
+			final StringBuilder sb = new StringBuilder();
+			for(int j = rnd.nextInt(12); j > 0; j--)
+				sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+			final String k = sb.toString();
+			assert (t.put(k, i) == null) == (ref.put(k, i) == null) : "put with prefix: " + k;
+		}
+		assert t.size() == ref.size() : "size with prefix";
+		for(Map.Entry<String, Integer> e : ref.entrySet())
+			if(!e.getValue().equals(t.get(e.getKey())))
+				System.err.println("Error: get fails with prefix for " + e.getKey());
+		while(!ref.isEmpty()) {
+			final String k = ref.pollFirstEntry().getKey();
+			assert k.equals(t.minKey()) : "order with prefix at " + k;
+			t.remove(k);
+		}
+
+		// unsigned byte[] keys
+		final SplayTreeMap<byte[], Integer> u = new SplayTreeMap<byte[], Integer>(KeyPrefix.UNSIGNED_BYTES, KeyPrefix.BYTES);
+		final java.util.TreeMap<byte[], Integer> bref = new java.util.TreeMap<byte[], Integer>(KeyPrefix.UNSIGNED_BYTES);
+		for(int i = 0; i < NUMS; i++) {
+			final byte[] k = new byte[rnd.nextInt(12)];
+			for(int j = 0; j < k.length; j++)
+				k[j] = (byte) (rnd.nextInt(4) * 85);    // 0x00, 0x55, 0xAA, 0xFF
+			assert (u.put(k, i) == null) == (bref.put(k, i) == null) : "put with byte prefix";
+		}
+		assert u.size() == bref.size() : "size with byte prefix";
+		while(!bref.isEmpty()) {
+			final byte[] k = bref.pollFirstEntry().getKey();
+			assert java.util.Arrays.equals(k, u.minKey()) : "order with byte prefix";
+			u.remove(k);
+		}
+
+		// signed Long and Integer keys, extremes included
+		final SplayTreeMap<Long, Integer> l = new SplayTreeMap<Long, Integer>(null, KeyPrefix.LONG);
+		final SplayTreeMap<Integer, Integer> n = new SplayTreeMap<Integer, Integer>(null, KeyPrefix.INT);
+		final java.util.TreeSet<Long> lref = new java.util.TreeSet<Long>();
+		final java.util.TreeSet<Integer> nref = new java.util.TreeSet<Integer>();
+		for(long k : new long[]{ Long.MIN_VALUE, Long.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0, 1 }) {
+			l.put(k, 0);
+			lref.add(k);
+			n.put((int) k, 0);
+			nref.add((int) k);
+		}
+		for(int i = 0; i < NUMS; i++) {
+			final long k = rnd.nextLong() >> rnd.nextInt(64);
+			l.put(k, i);
+			lref.add(k);
+			n.put((int) k, i);
+			nref.add((int) k);
+		}
+		assert l.size() == lref.size() && n.size() == nref.size() : "size with number prefix";
+		while(!lref.isEmpty()) {
+			final Long k = lref.pollFirst();
+			assert k.equals(l.minKey()) : "order with long prefix at " + k;
+			l.remove(k);
+		}
+		while(!nref.isEmpty()) {
+			final Integer k = nref.pollFirst();
+			assert k.equals(n.minKey()) : "order with int prefix at " + k;
+			n.remove(k);
+		}
+		System.out.println(" - key prefix tests successfully completed");
+	}
+
+	public static void testSnapshot() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests snapshots\n");
+		System.out.println ("###################################\n");
+
+		final SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>();
+		final java.util.TreeMap<Integer, String> ref = new java.util.TreeMap<Integer, String>();
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS) {
+			t.put(i, "v" + i);
+			ref.put(i, "v" + i);
+		}
+		t.setRebalanceFactor(2.0);          // rebalances copy while a snapshot is open
+
+		// read the snapshot in another thread while the map is mutated
+		final SplayTreeMap.Snapshot<Integer, String> s = t.snapshot();
+		final java.util.TreeMap<Integer, String> frozen = new java.util.TreeMap<Integer, String>(ref);
+		final java.util.List<Integer> seen = new java.util.ArrayList<Integer>();
+		final boolean[] same = { true };
+		final Thread reader = new Thread(() -> {
+			s.forEach((k, v) -> {
+				seen.add(k);
+				same[0] &= v.equals(frozen.get(k));
+			});
+		});
+		reader.start();
+		final java.util.Random rnd = new java.util.Random(GAP);
+		for(int i = 0; i < NUMS * 2; i++) {
+			final int k = rnd.nextInt(NUMS);
+			switch(rnd.nextInt(3)) {
+			case 0: t.put(k, "p" + i); ref.put(k, "p" + i); break;
+			case 1: t.remove(k); ref.remove(k); break;
+			default: t.get(k);
+			}
+		}
+		t.rebalance();
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		assert s.size() == frozen.size() : "snapshot size";
+		assert seen.equals(new java.util.ArrayList<Integer>(frozen.keySet())) : "snapshot keys changed";
+		assert same[0] : "snapshot values changed";
+
+		// a second read, after more mutations, sees the same
+		final java.util.List<Integer> again = new java.util.ArrayList<Integer>();
+		s.forEach((k, v) -> again.add(k));
+		assert again.equals(seen) : "snapshot changed";
+		s.close();
+		s.close();                          // idempotent
+		try {
+			s.forEach((k, v) -> { });
+			assert false : "closed snapshot read";
+		} catch (IllegalStateException e) { }
+
+		// the map itself, with and without open snapshots
+		assert t.size() == ref.size() : "map size";
+		for(Map.Entry<Integer, String> e : ref.entrySet())
+			assert e.getValue().equals(t.get(e.getKey())) : "map value of " + e.getKey();
+		for(int i = 0; i < NUMS; i++)
+			assert t.containsKey(i) == ref.containsKey(i) : "map containment of " + i;
+
+		// the latency guard trips in the join splay of a remove, on the left subtree alone
+		final SplayTreeMap<Integer, String> u = new SplayTreeMap<Integer, String>();
+		for(int i = 999; i > 0; i--)
+			u.put(i, "v" + i);
+		u.get(999);
+		u.setRebalanceFactor(2.0);
+		final SplayTreeMap.Snapshot<Integer, String> us = u.snapshot();
+		assert u.remove(999).equals("v999") : "remove of the root";
+		assert u.size() == 998 : "size after remove " + u.size();
+		for(int i = 0; i <= 1000; i++)
+			assert (u.get(i) != null) == (i > 0 && i < 999) : "map containment of " + i;
+		final int[] count = { 0 };
+		us.forEach((k, v) -> count[0]++);
+		assert count[0] == 999 : "snapshot size " + count[0];
+		us.close();
+		System.out.println(" - snapshot tests successfully completed");
+	}
+
+	public static void testRange() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests range scans\n");
+		System.out.println ("###################################\n");
+
+		final SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>();
+		final java.util.TreeMap<Integer, String> ref = new java.util.TreeMap<Integer, String>();
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS) {
+			if(i % 3 == 0)
+				continue;
+			t.put(i, "v" + i);
+			ref.put(i, "v" + i);
+		}
+		final java.util.Random rnd = new java.util.Random(GAP);
+		for(int i = 0; i < 1000; i++) {
+			final int from = rnd.nextInt(NUMS + 10) - 5;
+			final int to = from + rnd.nextInt(i % 10 == 0 ? NUMS : 100);
+			final java.util.List<Integer> keys = new java.util.ArrayList<Integer>();
+			t.range(from, to, (k, v) -> {
+				assert v.equals("v" + k) : "range value of " + k;
+				keys.add(k);
+			});
+			assert keys.equals(new java.util.ArrayList<Integer>(ref.subMap(from, to).keySet())) : "range [" + from + ", " + to + ")";
+		}
+
+		// open bounds
+		final java.util.List<Integer> all = new java.util.ArrayList<Integer>();
+		t.range(null, null, (k, v) -> all.add(k));
+		assert all.equals(new java.util.ArrayList<Integer>(ref.keySet())) : "unbounded range";
+		final java.util.List<Integer> head = new java.util.ArrayList<Integer>();
+		t.range(null, NUMS / 2, (k, v) -> head.add(k));
+		assert head.equals(new java.util.ArrayList<Integer>(ref.headMap(NUMS / 2).keySet())) : "head range";
+		final java.util.List<Integer> tail = new java.util.ArrayList<Integer>();
+		t.range(NUMS / 2, null, (k, v) -> tail.add(k));
+		assert tail.equals(new java.util.ArrayList<Integer>(ref.tailMap(NUMS / 2).keySet())) : "tail range";
+		new SplayTreeMap<Integer, String>().range(0, 10, (k, v) -> { assert false : "empty range"; });
+
+		try {
+			t.range(0, NUMS, (k, v) -> t.remove(k));
+			assert false : "range with modifying action";
+		} catch (java.util.ConcurrentModificationException e) { }
+
+		// floor and ceiling
+		for(int i = 0; i < 1000; i++) {
+			final int k = rnd.nextInt(NUMS + 10) - 5;
+			assert java.util.Objects.equals(t.floorKey(k), ref.floorKey(k)) : "floor " + k;
+			assert java.util.Objects.equals(t.ceilingKey(k), ref.ceilingKey(k)) : "ceiling " + k;
+		}
+		assert new SplayTreeMap<Integer, String>().floorKey(0) == null : "empty floor";
+		System.out.println(" - range scan tests successfully completed");
+	}
+
+	public static void testFilter() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## tests membership filter\n");
+		System.out.println ("###################################\n");
+
+		final SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>();
+		final java.util.TreeMap<Integer, String> ref = new java.util.TreeMap<Integer, String>();
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS) {
+			t.put(i, "v" + i);
+			ref.put(i, "v" + i);
+		}
+		assert t.filter() == null : "filter before enable";
+		try {
+			t.enableFilter(0);
+			assert false : "did not prevent filter of size 0";
+		} catch (IllegalArgumentException e) { }
+
+		// undersized: filter must still have no false negatives
+		CountingBloomFilter<Integer> f = t.enableFilter(NUMS / 8);
+		assert f == t.filter() && f.size() == t.size() : "filter size after enable";
+		final java.util.Random rnd = new java.util.Random(GAP);
+		for(int i = 0; i < NUMS * 4; i++) {
+			final Integer k = rnd.nextInt(2 * NUMS);
+			switch(rnd.nextInt(6)) {
+			case 0:
+				assert java.util.Objects.equals(t.put(k, "v" + k), ref.put(k, "v" + k)) : "put " + k;
+				break;
+			case 1:
+				assert java.util.Objects.equals(t.remove(k), ref.remove(k)) : "remove " + k;
+				break;
+			case 2:
+				assert t.delete(k) == (ref.remove(k) != null) : "delete " + k;
+				break;
+			case 3:
+				assert java.util.Objects.equals(t.computeIfPresent(k, (x, v) -> null),
+						ref.computeIfPresent(k, (x, v) -> null)) : "computeIfPresent " + k;
+				break;
+			default:
+				assert java.util.Objects.equals(t.get(k), ref.get(k)) : "get " + k;
+				assert t.containsKey(k) == ref.containsKey(k) : "containsKey " + k;
+			}
+		}
+		assert f.size() == t.size() && t.size() == ref.size() : "filter size after ops";
+		for(Integer k : ref.keySet())
+			assert f.mightContain(k) && t.containsKey(k) : "false negative " + k;
+
+		// resize: a larger filter has fewer false positives
+		f = t.enableFilter(2 * NUMS);
+		assert f.size() == t.size() && f.fill() < 0.5 && f.saturated() == 0 : "filter after resize";
+		int passed = 0;
+		for(int k = 2 * NUMS; k < 4 * NUMS; k++)
+			if(f.mightContain(k))
+				passed++;
+		assert passed < 2 * NUMS / 50 : "false positives " + passed;
+		assert f.falsePositiveRate() < 0.02 : "estimated false positive rate " + f.falsePositiveRate();
+		t.disableFilter();
+		assert t.filter() == null && t.size() == ref.size() : "disable";
+
+		// keys without a value hashCode
+		final SplayTreeMap<byte[], Integer> b = new SplayTreeMap<byte[], Integer>(KeyPrefix.UNSIGNED_BYTES, KeyPrefix.BYTES);
+		b.enableFilter(NUMS, java.util.Arrays::hashCode);
+		for(int i = 0; i < NUMS; i += 2)
+			b.put(Integer.toString(i).getBytes(), i);
+		for(int i = 0; i < NUMS; i++)
+			assert b.containsKey(Integer.toString(i).getBytes()) == (i % 2 == 0) : "byte[] key " + i;
+		System.out.format(" - fill:%.3f fpr:%.4f passed:%d\n", f.fill(), f.falsePositiveRate(), passed);
+		System.out.println(" - membership filter tests successfully completed");
+	}
 }
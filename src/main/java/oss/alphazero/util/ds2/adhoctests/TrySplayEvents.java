@@ -0,0 +1,40 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import oss.alphazero.util.ds2.SplayTreeMap;
+
+/**
+ * Provokes deep splays for a JFR recording. Run with e.g.
+ * <pre>
+ * java -XX:StartFlightRecording=filename=ds2.jfr,settings=profile TrySplayEvents
+ * jfr print --events oss.alphazero.util.ds2.DeepSplay,oss.alphazero.util.ds2.SplayShape ds2.jfr
+ * </pre>
+ */
+public class TrySplayEvents {
+	static final int NUMS = 40000;
+
+	public static void main(String[] args) throws InterruptedException {
+		final long millis = args.length > 0 ? Long.parseLong(args[0]) : 12000;
+
+		SplayTreeMap<Integer, String> t = new SplayTreeMap<Integer, String>();
+		t.setDeepSplayThreshold(NUMS / 2);
+		t.enableShapeEvents("TrySplayEvents");
+
+		System.out.println ("\n###################################");
+		System.out.format  ("## provoke deep splays for %d millis\n", millis);
+		System.out.println ("###################################\n");
+
+		final long end = System.currentTimeMillis() + millis;
+		int rounds = 0;
+		while(System.currentTimeMillis() < end) {
+			// monotonic inserts build a left spine; far end lookup walks it
+			for(int i=0; i<NUMS; i++)
+				t.insert(i, "v");
+			t.find(0);
+			for(int i=0; i<NUMS; i++)
+				t.delete(i);
+			rounds++;
+			Thread.sleep(100);
+		}
+		System.out.format(" - %d rounds, one deep splay each\n", rounds);
+	}
+}
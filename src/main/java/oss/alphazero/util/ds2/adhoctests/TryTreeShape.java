@@ -0,0 +1,71 @@
+package oss.alphazero.util.ds2.adhoctests;
+
+import oss.alphazero.util.ds2.SplayTree;
+import oss.alphazero.util.ds2.SplayTreeMap;
+import oss.alphazero.util.ds2.TreeShape;
+
+/**
+ * Java side take on draw-tree.c: builds a monotonic splay tree, draws it,
+ * splays a few nodes and draws it again. Then compares the shape summary of a
+ * large tree built in GAP order with one built in monotonic order.
+ * <p>
+ * Usage: <code>java TryTreeShape [n [dot]]</code> -- with "dot" the last
+ * drawing is also emitted in Graphviz DOT.
+ */
+public class TryTreeShape {
+	static final int NUMS = 40000;
+	static final int GAP  =   307;
+
+	public static void main(String[] args) {
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 15;
+		final boolean dot = args.length > 1 && args[1].equals("dot");
+
+		tryDrawing(n, dot);
+		tryLargeShapes();
+	}
+
+	public static void tryDrawing(int n, boolean dot) {
+		System.out.println ("\n###################################");
+		System.out.format  ("## draw a %d node splay tree\n", n);
+		System.out.println ("###################################\n");
+
+		SplayTree<Integer> t = new SplayTree<Integer>();
+		for(int i=0; i<n; i++)
+			t.insert(i);
+
+		System.out.println(TreeShape.of(t).toAscii());
+		for(int k : new int[]{0, n/2, n-1}) {
+			t.find(k);
+			System.out.format("-- after splay(%d) --\n", k);
+			System.out.println(TreeShape.of(t).toAscii());
+		}
+		if(dot)
+			System.out.println(TreeShape.of(t).toDot());
+	}
+
+	public static void tryLargeShapes() {
+		System.out.println ("\n###################################");
+		System.out.format  ("## shapes of %d node trees\n", NUMS);
+		System.out.println ("###################################\n");
+
+		SplayTreeMap<Integer, String> gap = new SplayTreeMap<Integer, String>();
+		for(int i = GAP; i != 0; i = (i + GAP) % NUMS)
+			gap.insert(i, "v");
+		TreeShape shape = TreeShape.of(gap);
+		System.out.println("-- GAP order inserts --");
+		System.out.print(shape.summary());
+
+		SplayTreeMap<Integer, String> seq = new SplayTreeMap<Integer, String>();
+		for(int i = 0; i < NUMS; i++)
+			seq.insert(i, "v");
+		shape = TreeShape.of(seq);
+		System.out.println("-- monotonic inserts --");
+		System.out.print(shape.summary());
+		assert shape.height() == NUMS : "monotonic inserts should build a list";
+		assert shape.skew() == -1.0 : "monotonic inserts should build a left list";
+
+		// inspection must not splay
+		final TreeShape again = TreeShape.of(seq);
+		assert again.totalPathLength() == shape.totalPathLength() : "inspection modified the tree";
+	}
+}